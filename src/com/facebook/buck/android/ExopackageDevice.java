@@ -17,6 +17,7 @@
 package com.facebook.buck.android;
 
 import com.android.ddmlib.InstallException;
+import com.google.common.collect.ImmutableMap;
 
 import java.io.File;
 import java.nio.file.Path;
@@ -47,6 +48,23 @@ public interface ExopackageDevice {
       Path targetDevicePath,
       Path source) throws Exception;
 
+  /**
+   * Installs several files at once, sending them to the agent over a single connection.
+   *
+   * @param targetDeviceDir the directory on the device that the files are installed into.
+   * @param sources the files to install, by their paths relative to {@code targetDeviceDir}.
+   */
+  void installFiles(
+      String agentCommand,
+      int port,
+      Path targetDeviceDir,
+      ImmutableMap<Path, Path> sources) throws Exception;
+
+  /**
+   * @return the contents of the file at {@code path}, or an empty string if it can't be read.
+   */
+  String readFile(String path) throws Exception;
+
   void mkDirP(String mkdirCommand, String dirpath) throws Exception;
 
   String getProperty(String name) throws Exception;
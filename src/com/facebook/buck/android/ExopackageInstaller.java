@@ -37,7 +37,6 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Predicates;
 import com.google.common.base.Splitter;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
@@ -45,12 +44,18 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closer;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -99,6 +104,15 @@ public class ExopackageInstaller {
   @VisibleForTesting
   static final Pattern RESOURCES_FILE_PATTERN = Pattern.compile("([0-9a-f]+)\\.apk");
 
+  /**
+   * Lists every file we have installed under the data root with the hash of its contents, so that
+   * an install can tell what is on the device already by reading a single file.
+   */
+  @VisibleForTesting
+  static final Path INSTALL_MANIFEST = Paths.get("install-manifest.txt");
+
+  private static final String INSTALL_MANIFEST_HEADER = "exopackage-install-manifest 1";
+
   private static final Pattern LINE_ENDING = Pattern.compile("\r?\n");
   public static final Path EXOPACKAGE_INSTALL_ROOT = Paths.get("/data/local/tmp/exopackage/");
 
@@ -298,19 +312,22 @@ public class ExopackageInstaller {
       }
 
       // TODO(cjhopman): We should clear out the directories on the device for types we don't
-      // install.
+      // install when there is no install manifest.
+      ImmutableList.Builder<ExoDirectory> directories = ImmutableList.builder();
       if (exopackageInfo.getDexInfo().isPresent()) {
-        installSecondaryDexFiles();
+        directories.add(getSecondaryDexDirectory());
       }
 
       if (exopackageInfo.getNativeLibsInfo().isPresent()) {
-        installNativeLibraryFiles();
+        directories.addAll(getNativeLibraryDirectories());
       }
 
       if (exopackageInfo.getResourcesInfo().isPresent()) {
-        installResourcesFiles();
+        directories.add(getResourcesDirectory());
       }
 
+      installDirectories(directories.build());
+
       // TODO(dreiss): Make this work on Gingerbread.
       try (SimplePerfEvent.Scope ignored = SimplePerfEvent.scope(eventBus, "kill_app")) {
         device.stopPackage(packageName);
@@ -319,15 +336,7 @@ public class ExopackageInstaller {
       return true;
     }
 
-    private void installSecondaryDexFiles() throws Exception {
-      final ImmutableMap<String, Path> hashToSources = getRequiredDexFiles();
-      final ImmutableSet<String> requiredHashes = hashToSources.keySet();
-      final ImmutableSet<String> presentHashes = prepareSecondaryDexDir(requiredHashes);
-      final Set<String> hashesToInstall = Sets.difference(requiredHashes, presentHashes);
-
-      Map<String, Path> filesToInstallByHash =
-          Maps.filterKeys(hashToSources, hashesToInstall::contains);
-
+    private ExoDirectory getSecondaryDexDirectory() throws Exception {
       // This is a bit gross.  It was a late addition.  Ideally, we could eliminate this, but
       // it wouldn't be terrible if we don't.  We store the dexed jars on the device
       // with the full SHA-1 hashes in their names.  This is the format that the loader uses
@@ -343,15 +352,15 @@ public class ExopackageInstaller {
               "secondary-(\\d+)\\.dex\\.jar (\\p{XDigit}{40}) ",
               "secondary-$2.dex.jar $2 ");
 
-      installFiles(
-          "secondary_dex",
-          ImmutableMap.copyOf(filesToInstallByHash),
-          metadataContents,
+      return new ExoDirectory(
+          SECONDARY_DEX_DIR,
+          DEX_FILE_PATTERN,
           "secondary-%s.dex.jar",
-          SECONDARY_DEX_DIR);
+          getRequiredDexFiles(),
+          metadataContents);
     }
 
-    private void installResourcesFiles() throws Exception {
+    private ExoDirectory getResourcesDirectory() throws Exception {
       ResourcesInfo info = exopackageInfo.getResourcesInfo().get();
 
       ImmutableMap.Builder<String, Path> hashToSourcesBuilder = ImmutableMap.builder();
@@ -365,20 +374,12 @@ public class ExopackageInstaller {
         hashToSourcesBuilder.put(hash, path);
       }
 
-      final ImmutableMap<String, Path> hashToSources = hashToSourcesBuilder.build();
-      final ImmutableSet<String> requiredHashes = hashToSources.keySet();
-      final ImmutableSet<String> presentHashes = prepareResourcesDir(requiredHashes);
-      final Set<String> hashesToInstall = Sets.difference(requiredHashes, presentHashes);
-
-      Map<String, Path> filesToInstallByHash =
-          Maps.filterKeys(hashToSources, hashesToInstall::contains);
-
-      installFiles(
-          "resources",
-          ImmutableMap.copyOf(filesToInstallByHash),
-          metadataContent,
+      return new ExoDirectory(
+          RESOURCES_DIR,
+          RESOURCES_FILE_PATTERN,
           "%s.apk",
-          RESOURCES_DIR);
+          hashToSourcesBuilder.build(),
+          metadataContent);
     }
 
     private ImmutableList<String> getDeviceAbis() throws Exception {
@@ -403,24 +404,25 @@ public class ExopackageInstaller {
       return abis.build();
     }
 
-    private void installNativeLibraryFiles() throws Exception {
+    private ImmutableList<ExoDirectory> getNativeLibraryDirectories() throws Exception {
       ImmutableMultimap<String, Path> allLibraries = getAllLibraries();
       ImmutableSet.Builder<String> providedLibraries = ImmutableSet.builder();
+      ImmutableList.Builder<ExoDirectory> directories = ImmutableList.builder();
       for (String abi : getDeviceAbis()) {
         ImmutableMap<String, Path> libraries =
             getRequiredLibrariesForAbi(allLibraries, abi, providedLibraries.build());
 
-        installNativeLibrariesForAbi(abi, libraries);
+        if (!libraries.isEmpty()) {
+          directories.add(getNativeLibraryDirectory(abi, libraries));
+        }
         providedLibraries.addAll(libraries.keySet());
       }
+      return directories.build();
     }
 
-    private void installNativeLibrariesForAbi(String abi, ImmutableMap<String, Path> libraries)
-        throws Exception {
-      if (libraries.isEmpty()) {
-        return;
-      }
-
+    private ExoDirectory getNativeLibraryDirectory(
+        String abi,
+        ImmutableMap<String, Path> libraries) {
       String metadataContents = Joiner.on('\n').join(
           FluentIterable.from(libraries.entrySet()).transform(
               input -> {
@@ -431,18 +433,12 @@ public class ExopackageInstaller {
                 return String.format("%s native-%s.so", libname, hash);
               }));
 
-      ImmutableSet<String> requiredHashes = libraries.keySet();
-      ImmutableSet<String> presentHashes = prepareNativeLibsDir(abi, requiredHashes);
-
-      Map<String, Path> filesToInstallByHash =
-          Maps.filterKeys(libraries, Predicates.not(presentHashes::contains));
-
-      installFiles(
-          "native_library",
-          ImmutableMap.copyOf(filesToInstallByHash),
-          metadataContents,
+      return new ExoDirectory(
+          NATIVE_LIBS_DIR.resolve(abi),
+          NATIVE_LIB_PATTERN,
           "native-%s.so",
-          NATIVE_LIBS_DIR.resolve(abi));
+          libraries,
+          metadataContents);
     }
 
     /**
@@ -566,20 +562,100 @@ public class ExopackageInstaller {
       return builder.build();
     }
 
-    private ImmutableSet<String> prepareSecondaryDexDir(ImmutableSet<String> requiredHashes)
-        throws Exception {
-      return prepareDirectory(SECONDARY_DEX_DIR, DEX_FILE_PATTERN, requiredHashes);
+    /**
+     * Brings the directories on the device up to date, sending only the files that aren't there
+     * already, all at once.  What is there already is read from the install manifest left by the
+     * previous install or, if there isn't one, found by listing the directories.
+     */
+    private void installDirectories(ImmutableList<ExoDirectory> directories) throws Exception {
+      ImmutableMap.Builder<Path, String> requiredBuilder = ImmutableMap.builder();
+      for (ExoDirectory directory : directories) {
+        for (String hash : directory.filesByHash.keySet()) {
+          requiredBuilder.put(directory.getDevicePath(hash), hash);
+        }
+        requiredBuilder.put(
+            directory.getMetadataDevicePath(),
+            hashContents(directory.metadataContents));
+      }
+      ImmutableMap<Path, String> required = requiredBuilder.build();
+
+      Set<Path> present;
+      Optional<ImmutableMap<Path, String>> installed = readInstallManifest();
+      if (installed.isPresent()) {
+        present = Maps.difference(required, installed.get()).entriesInCommon().keySet();
+        Set<Path> stale = Sets.difference(installed.get().keySet(), required.keySet());
+        if (present.size() == required.size() && stale.isEmpty()) {
+          LOG.debug("All %d exopackage files are installed already.", required.size());
+          return;
+        }
+        // Remove the manifest before changing anything, so that if we fail part way through, the
+        // next install lists the directories rather than trusting it.
+        device.rmFiles(dataRoot.toString(), ImmutableList.of(INSTALL_MANIFEST.toString()));
+        for (Map.Entry<Path, Collection<Path>> entry :
+            Multimaps.index(stale, Path::getParent).asMap().entrySet()) {
+          device.rmFiles(
+              dataRoot.resolve(entry.getKey()).toString(),
+              FluentIterable.from(entry.getValue())
+                  .transform(path -> path.getFileName().toString()));
+        }
+        Set<Path> installedDirectories =
+            FluentIterable.from(installed.get().keySet()).transform(Path::getParent).toSet();
+        for (ExoDirectory directory : directories) {
+          if (!installedDirectories.contains(directory.directory)) {
+            makeDirectory(directory.directory);
+          }
+        }
+      } else {
+        ImmutableSet.Builder<Path> presentBuilder = ImmutableSet.builder();
+        for (ExoDirectory directory : directories) {
+          for (String hash : prepareDirectory(
+              directory.directory,
+              directory.filePattern,
+              directory.filesByHash.keySet())) {
+            presentBuilder.add(directory.getDevicePath(hash));
+          }
+        }
+        present = presentBuilder.build();
+      }
+
+      try (Closer closer = Closer.create()) {
+        ImmutableMap.Builder<Path, Path> filesToSend = ImmutableMap.builder();
+        for (ExoDirectory directory : directories) {
+          for (Map.Entry<String, Path> entry : directory.filesByHash.entrySet()) {
+            Path devicePath = directory.getDevicePath(entry.getKey());
+            if (!present.contains(devicePath)) {
+              filesToSend.put(devicePath, projectFilesystem.resolve(entry.getValue()));
+            }
+          }
+          // The metadata goes after the files it lists.
+          if (!present.contains(directory.getMetadataDevicePath())) {
+            filesToSend.put(
+                directory.getMetadataDevicePath(),
+                writeTemporaryFile(closer, directory.metadataContents));
+          }
+        }
+        // The files are written in order, so the manifest is only written if all of them were.
+        filesToSend.put(
+            INSTALL_MANIFEST,
+            writeTemporaryFile(closer, formatInstallManifest(required)));
+        sendFiles(filesToSend.build());
+      }
     }
 
-    private ImmutableSet<String> prepareNativeLibsDir(
-        String abi,
-        ImmutableSet<String> requiredHashes) throws Exception {
-      return prepareDirectory(NATIVE_LIBS_DIR.resolve(abi), NATIVE_LIB_PATTERN, requiredHashes);
+    private Optional<ImmutableMap<Path, String>> readInstallManifest() throws Exception {
+      try (SimplePerfEvent.Scope ignored =
+               SimplePerfEvent.scope(eventBus, "read_install_manifest")) {
+        return parseInstallManifest(
+            device.readFile(dataRoot.resolve(INSTALL_MANIFEST).toString()));
+      }
     }
 
-    private ImmutableSet<String> prepareResourcesDir(ImmutableSet<String> requiredHashes)
-        throws Exception {
-      return prepareDirectory(RESOURCES_DIR, RESOURCES_FILE_PATTERN, requiredHashes);
+    private void makeDirectory(Path dirname) throws Exception {
+      // Kind of a hack here.  The java agent can't force the proper permissions on the
+      // directories it creates, so we use the command-line "mkdir -p" instead of the java agent.
+      // Fortunately, "mkdir -p" seems to work on all devices where we use use the java agent.
+      String mkdirP = useNativeAgent ? getAgentCommand() + "mkdir-p" : "mkdir -p";
+      device.mkDirP(mkdirP, dataRoot.resolve(dirname).toString());
     }
 
     private ImmutableSet<String> prepareDirectory(
@@ -588,11 +664,7 @@ public class ExopackageInstaller {
         ImmutableSet<String> requiredHashes) throws Exception {
       try (SimplePerfEvent.Scope ignored = SimplePerfEvent.scope(eventBus, "prepare_" + dirname)) {
         String dirPath = dataRoot.resolve(dirname).toString();
-        // Kind of a hack here.  The java agent can't force the proper permissions on the
-        // directories it creates, so we use the command-line "mkdir -p" instead of the java agent.
-        // Fortunately, "mkdir -p" seems to work on all devices where we use use the java agent.
-        String mkdirP = useNativeAgent ? getAgentCommand() + "mkdir-p" : "mkdir -p";
-        device.mkDirP(mkdirP, dirPath);
+        makeDirectory(dirname);
 
         String output = device.listDir(dirPath);
 
@@ -606,43 +678,36 @@ public class ExopackageInstaller {
       }
     }
 
-    private void installFiles(
-        String filesType,
-        ImmutableMap<String, Path> filesToInstallByHash,
-        String metadataFileContents,
-        String filenameFormat,
-        Path destinationDirRelativeToDataRoot) throws Exception {
-      try (SimplePerfEvent.Scope ignored1 =
-               SimplePerfEvent.scope(eventBus, "multi_install_" + filesType)) {
+    private Path writeTemporaryFile(Closer closer, String contents) throws IOException {
+      NamedTemporaryFile temp = closer.register(new NamedTemporaryFile("metadata", "tmp"));
+      com.google.common.io.Files.write(contents.getBytes(Charsets.UTF_8), temp.get().toFile());
+      return temp.get();
+    }
+
+    /**
+     * @param files the files to send, by their paths on the device relative to the data root.
+     */
+    private void sendFiles(ImmutableMap<Path, Path> files) throws Exception {
+      try (SimplePerfEvent.Scope ignored1 = SimplePerfEvent.scope(
+          eventBus,
+          PerfEventId.of("multi_install_exo_files"),
+          "files", files.size())) {
         device.createForward(agentPort, agentPort);
-        Path destinationDir = dataRoot.resolve(destinationDirRelativeToDataRoot);
         try {
-          for (Map.Entry<String, Path> entry : filesToInstallByHash.entrySet()) {
-            Path destination = destinationDir.resolve(
-                String.format(filenameFormat, entry.getKey()));
-            Path source = entry.getValue();
-
-            try (SimplePerfEvent.Scope ignored2 =
-                     SimplePerfEvent.scope(eventBus, "install_" + filesType)) {
-              device.installFile(
-                  getAgentCommand(),
-                  agentPort,
-                  destination,
-                  projectFilesystem.resolve(source));
-            }
-          }
-          try (SimplePerfEvent.Scope ignored3 =
-                   SimplePerfEvent.scope(eventBus, "install_" + filesType + "_metadata")) {
-            try (NamedTemporaryFile temp = new NamedTemporaryFile("metadata", "tmp")) {
-              com.google.common.io.Files.write(
-                  metadataFileContents.getBytes(Charsets.UTF_8),
-                  temp.get().toFile());
-              device.installFile(
-                  getAgentCommand(),
-                  agentPort,
-                  destinationDir.resolve("metadata.txt"),
-                  temp.get());
+          if (useNativeAgent) {
+            // The native agent can only receive one file at a time.
+            for (Map.Entry<Path, Path> entry : files.entrySet()) {
+              try (SimplePerfEvent.Scope ignored2 =
+                       SimplePerfEvent.scope(eventBus, "install_exo_file")) {
+                device.installFile(
+                    getAgentCommand(),
+                    agentPort,
+                    dataRoot.resolve(entry.getKey()),
+                    entry.getValue());
+              }
             }
+          } else {
+            device.installFiles(getAgentCommand(), agentPort, dataRoot, files);
           }
         } finally {
           try {
@@ -661,6 +726,40 @@ public class ExopackageInstaller {
     }
   }
 
+  /**
+   * Files of one kind that the app loads from one directory under the data root, along with the
+   * metadata file that tells it what they are.
+   */
+  private static class ExoDirectory {
+    /** Relative to the data root. */
+    final Path directory;
+    final Pattern filePattern;
+    final String filenameFormat;
+    final ImmutableMap<String, Path> filesByHash;
+    final String metadataContents;
+
+    ExoDirectory(
+        Path directory,
+        Pattern filePattern,
+        String filenameFormat,
+        ImmutableMap<String, Path> filesByHash,
+        String metadataContents) {
+      this.directory = directory;
+      this.filePattern = filePattern;
+      this.filenameFormat = filenameFormat;
+      this.filesByHash = filesByHash;
+      this.metadataContents = metadataContents;
+    }
+
+    Path getDevicePath(String hash) {
+      return directory.resolve(String.format(filenameFormat, hash));
+    }
+
+    Path getMetadataDevicePath() {
+      return directory.resolve("metadata.txt");
+    }
+  }
+
   private ImmutableMultimap<String, Path> getAllLibraries() throws IOException {
     ExopackageInfo.NativeLibsInfo nativeLibsInfo = exopackageInfo.getNativeLibsInfo().get();
     return parseExopackageInfoMetadata(
@@ -824,6 +923,47 @@ public class ExopackageInstaller {
     return Optional.of(new PackageInfo(codePath, nativeLibPath, versionCode));
   }
 
+  private static String hashContents(String contents) {
+    return Hashing.sha1().hashString(contents, Charsets.UTF_8).toString();
+  }
+
+  /**
+   * Parses the install manifest left on the device by a previous install.
+   *
+   * @return the hashes of the installed files, by their paths relative to the data root, or absent
+   *     if {@code contents} isn't a complete manifest.
+   */
+  @VisibleForTesting
+  static Optional<ImmutableMap<Path, String>> parseInstallManifest(String contents) {
+    Iterator<String> lines = Splitter.on(LINE_ENDING).omitEmptyStrings().split(contents).iterator();
+    if (!lines.hasNext() || !lines.next().equals(INSTALL_MANIFEST_HEADER)) {
+      return Optional.empty();
+    }
+    Map<Path, String> files = new LinkedHashMap<>();
+    Splitter splitter = Splitter.on(' ').limit(2);
+    while (lines.hasNext()) {
+      List<String> parts = splitter.splitToList(lines.next());
+      if (parts.size() != 2) {
+        return Optional.empty();
+      }
+      Path path = Paths.get(parts.get(1));
+      if (path.isAbsolute() || path.getParent() == null) {
+        return Optional.empty();
+      }
+      files.put(path, parts.get(0));
+    }
+    return Optional.of(ImmutableMap.copyOf(files));
+  }
+
+  @VisibleForTesting
+  static String formatInstallManifest(ImmutableMap<Path, String> files) {
+    StringBuilder builder = new StringBuilder(INSTALL_MANIFEST_HEADER).append('\n');
+    for (Map.Entry<Path, String> entry : files.entrySet()) {
+      builder.append(entry.getValue()).append(' ').append(entry.getKey()).append('\n');
+    }
+    return builder.toString();
+  }
+
   /**
    * @param output  Output of "ls" command.
    * @param filePattern  A {@link Pattern} that is used to check if a file is valid, and if it
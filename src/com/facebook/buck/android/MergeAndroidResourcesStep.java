@@ -26,12 +26,16 @@ import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.concurrent.MoreFutures;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -40,10 +44,18 @@ import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Sets;
 import com.google.common.collect.SortedSetMultimap;
 import com.google.common.collect.TreeMultimap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharSource;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -55,11 +67,25 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.SortedSet;
 import java.util.stream.Collectors;
 
 public class MergeAndroidResourcesStep implements Step {
   private static final Logger LOG = Logger.get(MergeAndroidResourcesStep.class);
 
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  /**
+   * Symbols files rarely change between builds, so their parsed contents are shared by the whole
+   * process, keyed by the hash of the file. Bounded by the total number of entries held.
+   */
+  private static final long MAX_CACHED_ENTRIES = 2_000_000;
+  private static final Cache<HashCode, ImmutableList<RDotTxtEntry>> PARSED_SYMBOLS_FILES =
+      CacheBuilder.newBuilder()
+          .maximumWeight(MAX_CACHED_ENTRIES)
+          .<HashCode, ImmutableList<RDotTxtEntry>>weigher((hash, entries) -> entries.size())
+          .build();
+
   private final ProjectFilesystem filesystem;
   private final SourcePathResolver pathResolver;
   private final ImmutableList<HasAndroidResourceDeps> androidResourceDeps;
@@ -157,7 +183,9 @@ public class MergeAndroidResourcesStep implements Step {
   @Override
   public StepExecutionResult execute(ExecutionContext context) {
     try {
-      doExecute();
+      doExecute(
+          context.getExecutorService(ExecutorPool.CPU),
+          context.getConcurrencyLimit().threadLimit);
       return StepExecutionResult.SUCCESS;
     } catch (IOException e) {
       e.printStackTrace(context.getStdErr());
@@ -167,7 +195,8 @@ public class MergeAndroidResourcesStep implements Step {
     }
   }
 
-  private void doExecute() throws IOException, DuplicateResourceException {
+  private void doExecute(ListeningExecutorService executorService, int parallelism)
+      throws IOException, DuplicateResourceException {
     // In order to convert a symbols file to R.java, all resources of the same type are grouped
     // into a static class of that name. The static class contains static values that correspond to
     // the resource (type, name, value) tuples. See RDotTxtEntry.
@@ -211,7 +240,9 @@ public class MergeAndroidResourcesStep implements Step {
         symbolsFileToResourceDeps.build(),
         bannedDuplicateResourceTypes,
         filesystem,
-        useOldStyleableFormat);
+        useOldStyleableFormat,
+        executorService,
+        parallelism);
 
     // If a resource_union_package was specified, copy all resource into that package,
     // unless they are already present.
@@ -227,7 +258,7 @@ public class MergeAndroidResourcesStep implements Step {
       }
     }
 
-    writePerPackageRDotJava(rDotJavaPackageToResources, filesystem);
+    writePerPackageRDotJava(rDotJavaPackageToResources, filesystem, executorService, parallelism);
     Set<String> emptyPackages = Sets.difference(
         ImmutableSet.copyOf(symbolsFileToRDotJavaPackage.values()),
         rDotJavaPackageToResources.keySet());
@@ -248,78 +279,109 @@ public class MergeAndroidResourcesStep implements Step {
     }
   }
 
+  /**
+   * Writes an R.java for each package. The contents of the files are generated in parallel, but
+   * they are written on this thread, in order.
+   */
   @VisibleForTesting
   void writePerPackageRDotJava(
       SortedSetMultimap<String, RDotTxtEntry> packageToResources,
+      ProjectFilesystem filesystem,
+      ListeningExecutorService executorService,
+      int parallelism) throws IOException {
+    try (MoreFutures.InFlightFutures<Map.Entry<String, String>, IOException> inFlight =
+             MoreFutures.inFlight(
+                 parallelism,
+                 IOException.class,
+                 packageAndContents -> writeRDotJava(packageAndContents, filesystem))) {
+      for (String rDotJavaPackage : packageToResources.keySet()) {
+        SortedSet<RDotTxtEntry> resources = packageToResources.get(rDotJavaPackage);
+        inFlight.add(
+            executorService.submit(
+                () -> new AbstractMap.SimpleEntry<>(
+                    rDotJavaPackage,
+                    generateRDotJava(rDotJavaPackage, resources))));
+      }
+      inFlight.finish();
+    }
+  }
+
+  private void writeRDotJava(
+      Map.Entry<String, String> packageAndContents,
       ProjectFilesystem filesystem) throws IOException {
-    for (String rDotJavaPackage : packageToResources.keySet()) {
-      Path outputFile = getPathToRDotJava(rDotJavaPackage);
-      filesystem.mkdirs(outputFile.getParent());
-      try (PrintWriter writer = new PrintWriter(filesystem.newFileOutputStream(outputFile))) {
-        writer.format("package %s;\n\n", rDotJavaPackage);
-        writer.format("public class %s {\n", rName);
-
-        ImmutableList.Builder<String> customDrawablesBuilder = ImmutableList.builder();
-        ImmutableList.Builder<String> grayscaleImagesBuilder = ImmutableList.builder();
-        RType lastType = null;
-
-        for (RDotTxtEntry res : packageToResources.get(rDotJavaPackage)) {
-          RType type = res.type;
-          if (!type.equals(lastType)) {
-            // If the previous type needs to be closed, close it.
-            if (lastType != null) {
-              writer.println("  }\n");
-            }
+    Path outputFile = getPathToRDotJava(packageAndContents.getKey());
+    filesystem.mkdirs(outputFile.getParent());
+    filesystem.writeContentsToPath(packageAndContents.getValue(), outputFile);
+  }
 
-            // Now start the block for the new type.
-            writer.format("  public static class %s {\n", type);
-            lastType = type;
-          }
+  private String generateRDotJava(String rDotJavaPackage, SortedSet<RDotTxtEntry> resources) {
+    StringBuilder builder = new StringBuilder(64 * (resources.size() + 4));
+    builder.append("package ").append(rDotJavaPackage).append(";\n\n");
+    builder.append("public class ").append(rName).append(" {\n");
 
-          // Write out the resource.
-          // Write as an int.
-          writer.format(
-              "    public static%s%s %s=%s;\n",
-              forceFinalResourceIds ? " final " : " ",
-              res.idType,
-              res.name,
-              res.idValue);
-
-          if (type == RType.DRAWABLE &&
-              res.customType == RDotTxtEntry.CustomDrawableType.CUSTOM) {
-            customDrawablesBuilder.add(res.idValue);
-          } else if (type == RType.DRAWABLE &&
-              res.customType == RDotTxtEntry.CustomDrawableType.GRAYSCALE_IMAGE) {
-            grayscaleImagesBuilder.add(res.idValue);
-          }
-        }
+    ImmutableList.Builder<String> customDrawablesBuilder = ImmutableList.builder();
+    ImmutableList.Builder<String> grayscaleImagesBuilder = ImmutableList.builder();
+    RType lastType = null;
 
-        // If some type was written (e.g., the for loop was entered), then the last type needs to be
-        // closed.
+    for (RDotTxtEntry res : resources) {
+      RType type = res.type;
+      if (!type.equals(lastType)) {
+        // If the previous type needs to be closed, close it.
         if (lastType != null) {
-          writer.println("  }\n");
-        }
-
-        ImmutableList<String> customDrawables = customDrawablesBuilder.build();
-        if (customDrawables.size() > 0) {
-          // Add a new field for the custom drawables.
-          writer.format("  public static final int[] custom_drawables = ");
-          writer.format("{ %s };\n", Joiner.on(",").join(customDrawables));
-          writer.format("\n");
+          builder.append("  }\n").append(LINE_SEPARATOR);
         }
 
-        ImmutableList<String> grayscaleImages = grayscaleImagesBuilder.build();
-        if (grayscaleImages.size() > 0) {
-          // Add a new field for the custom drawables.
-          writer.format("  public static final int[] grayscale_images = ");
-          writer.format("{ %s };\n", Joiner.on(",").join(grayscaleImages));
-          writer.format("\n");
-        }
+        // Now start the block for the new type.
+        builder.append("  public static class ").append(type).append(" {\n");
+        lastType = type;
+      }
 
-        // Close the class definition.
-        writer.println("}");
+      // Write out the resource.
+      // Write as an int.
+      builder
+          .append("    public static")
+          .append(forceFinalResourceIds ? " final " : " ")
+          .append(res.idType)
+          .append(' ')
+          .append(res.name)
+          .append('=')
+          .append(res.idValue)
+          .append(";\n");
+
+      if (type == RType.DRAWABLE &&
+          res.customType == RDotTxtEntry.CustomDrawableType.CUSTOM) {
+        customDrawablesBuilder.add(res.idValue);
+      } else if (type == RType.DRAWABLE &&
+          res.customType == RDotTxtEntry.CustomDrawableType.GRAYSCALE_IMAGE) {
+        grayscaleImagesBuilder.add(res.idValue);
       }
     }
+
+    // If some type was written (e.g., the for loop was entered), then the last type needs to be
+    // closed.
+    if (lastType != null) {
+      builder.append("  }\n").append(LINE_SEPARATOR);
+    }
+
+    ImmutableList<String> customDrawables = customDrawablesBuilder.build();
+    if (customDrawables.size() > 0) {
+      // Add a new field for the custom drawables.
+      builder.append("  public static final int[] custom_drawables = ");
+      builder.append("{ ").append(Joiner.on(",").join(customDrawables)).append(" };\n");
+      builder.append("\n");
+    }
+
+    ImmutableList<String> grayscaleImages = grayscaleImagesBuilder.build();
+    if (grayscaleImages.size() > 0) {
+      // Add a new field for the custom drawables.
+      builder.append("  public static final int[] grayscale_images = ");
+      builder.append("{ ").append(Joiner.on(",").join(grayscaleImages)).append(" };\n");
+      builder.append("\n");
+    }
+
+    // Close the class definition.
+    builder.append("}").append(LINE_SEPARATOR);
+    return builder.toString();
   }
 
   @VisibleForTesting
@@ -330,6 +392,42 @@ public class MergeAndroidResourcesStep implements Step {
       EnumSet<RType> bannedDuplicateResourceTypes,
       ProjectFilesystem filesystem,
       boolean useOldStyleableFormat) throws DuplicateResourceException {
+    return sortSymbols(
+        symbolsFileToRDotJavaPackage,
+        uberRDotTxtIds,
+        symbolsFileToResourceDeps,
+        bannedDuplicateResourceTypes,
+        filesystem,
+        useOldStyleableFormat,
+        MoreExecutors.newDirectExecutorService(),
+        1);
+  }
+
+  /**
+   * As {@link #sortSymbols(Map, Optional, ImmutableMap, EnumSet, ProjectFilesystem, boolean)}, but
+   * reads and parses the symbols files on {@code executorService}, at most {@code parallelism} at
+   * a time. Assigning ids depends on the order of the files, so that is still done on this thread.
+   */
+  static SortedSetMultimap<String, RDotTxtEntry> sortSymbols(
+      Map<Path, String> symbolsFileToRDotJavaPackage,
+      Optional<ImmutableMap<RDotTxtEntry, String>> uberRDotTxtIds,
+      ImmutableMap<Path, HasAndroidResourceDeps> symbolsFileToResourceDeps,
+      EnumSet<RType> bannedDuplicateResourceTypes,
+      ProjectFilesystem filesystem,
+      boolean useOldStyleableFormat,
+      ListeningExecutorService executorService,
+      int parallelism) throws DuplicateResourceException {
+    Map<Path, ImmutableList<RDotTxtEntry>> symbolsFileToEntries;
+    try {
+      symbolsFileToEntries = readSymbolsFiles(
+          symbolsFileToRDotJavaPackage.keySet(),
+          filesystem,
+          executorService,
+          parallelism);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+
     // If we're reenumerating, start at 0x7f01001 so that the resulting file is human readable.
     // This value range (0x7f010001 - ...) is easier to spot as an actual resource id instead of
     // other values in styleable which can be enumerated integers starting at 0.
@@ -349,22 +447,12 @@ public class MergeAndroidResourcesStep implements Step {
 
     for (Map.Entry<Path, String> entry : symbolsFileToRDotJavaPackage.entrySet()) {
       Path symbolsFile = entry.getKey();
-      // Read the symbols file and parse each line as a Resource.
-      List<String> linesInSymbolsFile;
-      try {
-        linesInSymbolsFile =
-            filesystem.readLines(symbolsFile)
-                .stream()
-                .filter(input -> !Strings.isNullOrEmpty(input))
-                .collect(Collectors.toList());
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
+      List<RDotTxtEntry> entriesInSymbolsFile = symbolsFileToEntries.get(symbolsFile);
 
       String packageName = entry.getValue();
 
-      for (int index = 0; index < linesInSymbolsFile.size(); index++) {
-        RDotTxtEntry resource = getResourceAtIndex(linesInSymbolsFile, index);
+      for (int index = 0; index < entriesInSymbolsFile.size(); index++) {
+        RDotTxtEntry resource = entriesInSymbolsFile.get(index);
 
         if (uberRDotTxtIds.isPresent()) {
           Preconditions.checkNotNull(finalIds);
@@ -386,7 +474,7 @@ public class MergeAndroidResourcesStep implements Step {
 
         } else if (resource.idType == IdType.INT_ARRAY && resource.type == RType.STYLEABLE) {
           Map<RDotTxtEntry, String> styleableResourcesMap = getStyleableResources(
-              resourceToIdValuesMap, linesInSymbolsFile, resource, index + 1
+              resourceToIdValuesMap, entriesInSymbolsFile, resource, index + 1
           );
 
           for (RDotTxtEntry styleableResource : styleableResourcesMap.keySet()) {
@@ -445,7 +533,7 @@ public class MergeAndroidResourcesStep implements Step {
 
   private static Map<RDotTxtEntry, String> getStyleableResources(
       Map<RDotTxtEntry, String> resourceToIdValuesMap,
-      List<String> linesInSymbolsFile,
+      List<RDotTxtEntry> entriesInSymbolsFile,
       RDotTxtEntry resource,
       int index) {
 
@@ -453,11 +541,9 @@ public class MergeAndroidResourcesStep implements Step {
     List<String> givenResourceIds = null;
 
     for (int styleableIndex = 0;
-         styleableIndex + index < linesInSymbolsFile.size(); styleableIndex++) {
+         styleableIndex + index < entriesInSymbolsFile.size(); styleableIndex++) {
 
-      RDotTxtEntry styleableResource = getResourceAtIndex(
-          linesInSymbolsFile, styleableIndex + index
-      );
+      RDotTxtEntry styleableResource = entriesInSymbolsFile.get(styleableIndex + index);
 
       String styleablePrefix = resource.name + "_";
 
@@ -513,13 +599,60 @@ public class MergeAndroidResourcesStep implements Step {
     return styleableResourceMap;
   }
 
-  private static RDotTxtEntry getResourceAtIndex(List<String> linesInSymbolsFile, int index) {
-    String line = linesInSymbolsFile.get(index);
-
-    Optional<RDotTxtEntry> parsedEntry = RDotTxtEntry.parse(line);
-    Preconditions.checkState(parsedEntry.isPresent(), "Should be able to match '%s'.", line);
+  /**
+   * Reads and parses {@code symbolsFiles} in parallel.
+   */
+  private static Map<Path, ImmutableList<RDotTxtEntry>> readSymbolsFiles(
+      Collection<Path> symbolsFiles,
+      ProjectFilesystem filesystem,
+      ListeningExecutorService executorService,
+      int parallelism) throws IOException {
+    Map<Path, ImmutableList<RDotTxtEntry>> symbolsFileToEntries = new HashMap<>();
+    try (MoreFutures.InFlightFutures<Map.Entry<Path, ImmutableList<RDotTxtEntry>>, IOException>
+             inFlight = MoreFutures.inFlight(
+                 parallelism,
+                 IOException.class,
+                 entry -> symbolsFileToEntries.put(entry.getKey(), entry.getValue()))) {
+      for (Path symbolsFile : symbolsFiles) {
+        inFlight.add(
+            executorService.submit(
+                () -> new AbstractMap.SimpleEntry<>(
+                    symbolsFile,
+                    readSymbolsFile(filesystem, symbolsFile))));
+      }
+      inFlight.finish();
+    }
+    return symbolsFileToEntries;
+  }
 
-    return parsedEntry.get();
+  /**
+   * Reads the resources from a symbols file, skipping the parse if a file with the same contents
+   * was read before.
+   */
+  private static ImmutableList<RDotTxtEntry> readSymbolsFile(
+      ProjectFilesystem filesystem,
+      Path symbolsFile) throws IOException {
+    byte[] contents;
+    try (InputStream is = filesystem.newFileInputStream(symbolsFile)) {
+      contents = ByteStreams.toByteArray(is);
+    }
+    HashCode hash = Hashing.murmur3_128().hashBytes(contents);
+    ImmutableList<RDotTxtEntry> entries = PARSED_SYMBOLS_FILES.getIfPresent(hash);
+    if (entries == null) {
+      ImmutableList.Builder<RDotTxtEntry> builder = ImmutableList.builder();
+      String text = new String(contents, StandardCharsets.UTF_8);
+      for (String line : CharSource.wrap(text).readLines()) {
+        if (Strings.isNullOrEmpty(line)) {
+          continue;
+        }
+        Optional<RDotTxtEntry> parsedEntry = RDotTxtEntry.parse(line);
+        Preconditions.checkState(parsedEntry.isPresent(), "Should be able to match '%s'.", line);
+        builder.add(parsedEntry.get());
+      }
+      entries = builder.build();
+      PARSED_SYMBOLS_FILES.put(hash, entries);
+    }
+    return entries;
   }
 
   @Override
@@ -17,6 +17,7 @@
 package com.facebook.buck.android;
 
 import com.facebook.buck.android.PreDexMerge.BuildOutput;
+import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.AddToRuleKey;
@@ -84,6 +85,8 @@ import javax.annotation.Nullable;
 public class PreDexMerge extends AbstractBuildRule
     implements InitializableFromDisk<BuildOutput> {
 
+  private static final Logger LOG = Logger.get(PreDexMerge.class);
+
   /** Options to use with {@link DxStep} when merging pre-dexed files. */
   private static final EnumSet<DxStep.Option> DX_MERGE_OPTIONS = EnumSet.of(
       DxStep.Option.USE_CUSTOM_DX_IF_AVAILABLE,
@@ -92,6 +95,7 @@ public class PreDexMerge extends AbstractBuildRule
 
   private static final String PRIMARY_DEX_HASH_KEY = "primary_dex_hash";
   private static final String SECONDARY_DEX_DIRECTORIES_KEY = "secondary_dex_directories";
+  private static final String REUSED_SECONDARY_DEXES_KEY = "reused_secondary_dexes";
 
   private final Path primaryDexPath;
   @AddToRuleKey
@@ -264,7 +268,7 @@ public class PreDexMerge extends AbstractBuildRule
     }
     final ImmutableMap<Path, Sha1HashCode> dexInputHashes = dexInputHashesBuilder.build();
 
-    steps.add(
+    final SmartDexingStep smartDexingStep =
         new SmartDexingStep(
             getProjectFilesystem(),
             primaryDexPath,
@@ -276,7 +280,24 @@ public class PreDexMerge extends AbstractBuildRule
             DX_MERGE_OPTIONS,
             dxExecutorService,
             xzCompressionLevel,
-            dxMaxHeapSize));
+            dxMaxHeapSize);
+    steps.add(smartDexingStep);
+
+    // Record how many of the secondary dexes were left as they were, as only the groups whose
+    // pre-dexed libraries changed had to be merged again.
+    steps.add(new AbstractExecutionStep("record_reused_secondary_dexes") {
+      @Override
+      public StepExecutionResult execute(ExecutionContext context) {
+        int reused = smartDexingStep.getReusedSecondaryOutputCount();
+        LOG.debug(
+            "%s: reused %d of %d secondary dexes.",
+            getBuildTarget(),
+            reused,
+            smartDexingStep.getSecondaryOutputCount());
+        buildableContext.addMetadata(REUSED_SECONDARY_DEXES_KEY, String.valueOf(reused));
+        return StepExecutionResult.SUCCESS;
+      }
+    });
 
     // Record the primary dex SHA1 so exopackage apks can use it to compute their ABI keys.
     // Single dex apks cannot be exopackages, so they will never need ABI keys.
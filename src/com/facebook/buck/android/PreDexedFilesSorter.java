@@ -55,6 +55,16 @@ import java.util.Set;
  */
 public class PreDexedFilesSorter {
 
+  /**
+   * A secondary dex may be closed early, at a group boundary, once it is at least this full.
+   */
+  private static final double MIN_FILL_BEFORE_BOUNDARY = 0.9;
+
+  /**
+   * On average, one in this many pre-dexed libraries is a group boundary.
+   */
+  private static final int GROUP_BOUNDARY_INTERVAL = 4;
+
   private final Optional<DexWithClasses> rDotJavaDex;
   private final ImmutableMultimap<APKModule, DexWithClasses> dexFilesToMerge;
   private final ClassNameFilter primaryDexFilter;
@@ -143,6 +153,13 @@ public class PreDexedFilesSorter {
     return resultBuilder.build();
   }
 
+  private static boolean isGroupBoundary(DexWithClasses dexWithClasses) {
+    int hash = Hashing.murmur3_32()
+        .hashString(dexWithClasses.getPathToDexFile().toString(), Charsets.UTF_8)
+        .asInt();
+    return Math.floorMod(hash, GROUP_BOUNDARY_INTERVAL) == 0;
+  }
+
   private boolean mustBeInPrimaryDex(DexWithClasses dexWithClasses) {
     for (String className : dexWithClasses.getClassNames()) {
       if (primaryDexFilter.matches(className)) {
@@ -158,6 +175,7 @@ public class PreDexedFilesSorter {
     private List<DexWithClasses> primaryDexContents;
     private int currentDexSize;
     private List<DexWithClasses> currentDexContents;
+    private boolean currentDexAtBoundary;
 
     private final APKModule apkModule;
     private final ProjectFilesystem filesystem;
@@ -183,11 +201,22 @@ public class PreDexedFilesSorter {
       dexInputsHashes.put(dexWithClasses.getPathToDexFile(), dexWithClasses.getClassesHash());
     }
 
+    /**
+     * Adds a pre-dexed library to the current secondary dex, or starts a new one.
+     * <p>
+     * Filling each dex greedily would mean a library growing or being added shifts every later
+     * library into a different dex, so all of them would have to be merged again. Instead, a dex
+     * that is nearly full is also closed after a library which is a group boundary, chosen by its
+     * path alone. A change then only moves libraries as far as the next boundary, and the dexes
+     * after it keep their inputs, and so are reused by {@link SmartDexingStep}.
+     */
     public void addDex(DexWithClasses dexWithClasses) {
-      // If we're over the size threshold, start writing to a new dex
-      if (dexWithClasses.getWeightEstimate() + currentDexSize > dexWeightLimit) {
+      // If we're over the size threshold or at a boundary, start writing to a new dex
+      if (dexWithClasses.getWeightEstimate() + currentDexSize > dexWeightLimit ||
+          currentDexAtBoundary) {
         currentDexSize = 0;
         currentDexContents = new ArrayList<>();
+        currentDexAtBoundary = false;
       }
 
       // If this is the first class in the dex, initialize it with a canary and add it to the set of
@@ -209,6 +238,9 @@ public class PreDexedFilesSorter {
       currentDexContents.add(dexWithClasses);
       dexInputsHashes.put(dexWithClasses.getPathToDexFile(), dexWithClasses.getClassesHash());
       currentDexSize += dexWithClasses.getWeightEstimate();
+      currentDexAtBoundary =
+          currentDexSize >= dexWeightLimit * MIN_FILL_BEFORE_BOUNDARY &&
+          isGroupBoundary(dexWithClasses);
     }
 
     Result getResult() {
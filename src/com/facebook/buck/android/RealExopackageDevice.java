@@ -24,7 +24,12 @@ import com.facebook.buck.log.Logger;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Closer;
 
 import java.io.File;
@@ -33,7 +38,9 @@ import java.io.OutputStream;
 import java.net.Socket;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import javax.annotation.Nullable;
@@ -170,6 +177,66 @@ class RealExopackageDevice implements ExopackageDevice {
       final Path source) throws Exception {
     Preconditions.checkArgument(source.isAbsolute());
     Preconditions.checkArgument(targetDevicePath.isAbsolute());
+    String targetFileName = targetDevicePath.toString();
+    sendToAgent(
+        agentCommand + "receive-file " + port + " " + Files.size(source) + " " + targetFileName,
+        port,
+        com.google.common.io.Files.asByteSource(source.toFile()));
+
+    // The standard Java libraries on Android always create new files un-readable by other users.
+    // We use the shell user or root to create these files, so we need to explicitly set the mode
+    // to allow the app to read them.  Ideally, the agent would do this automatically, but
+    // there's no easy way to do this in Java.  We can drop this if we drop support for the
+    // Java agent.
+    AdbHelper.executeCommandWithErrorChecking(device, "chmod 644 " + targetFileName);
+  }
+
+  @Override
+  public void installFiles(
+      String agentCommand,
+      int port,
+      Path targetDeviceDir,
+      ImmutableMap<Path, Path> sources) throws Exception {
+    Preconditions.checkArgument(targetDeviceDir.isAbsolute());
+    if (sources.isEmpty()) {
+      return;
+    }
+    // See AgentMain.doReceiveFiles for the layout of the payload.
+    List<ByteSource> payload = new ArrayList<>();
+    for (Map.Entry<Path, Path> entry : sources.entrySet()) {
+      Preconditions.checkArgument(!entry.getKey().isAbsolute());
+      Preconditions.checkArgument(entry.getValue().isAbsolute());
+      ByteArrayDataOutput header = ByteStreams.newDataOutput();
+      header.writeUTF(entry.getKey().toString());
+      header.writeInt(Math.toIntExact(Files.size(entry.getValue())));
+      payload.add(ByteSource.wrap(header.toByteArray()));
+      payload.add(com.google.common.io.Files.asByteSource(entry.getValue().toFile()));
+    }
+    sendToAgent(
+        agentCommand + "receive-files " + port + " " + sources.size() + " " + targetDeviceDir,
+        port,
+        ByteSource.concat(payload));
+
+    // As in installFile, but for all of the files in as few commands as we can.
+    String commandPrefix = "cd " + targetDeviceDir + " && chmod 644 ";
+    final int overhead = commandPrefix.length() + 100;
+    for (List<String> chmodArgs : chunkArgs(
+        FluentIterable.from(sources.keySet()).transform(Object::toString),
+        MAX_ADB_COMMAND_SIZE - overhead)) {
+      String command = commandPrefix + Joiner.on(' ').join(chmodArgs);
+      LOG.debug("Executing %s", command);
+      AdbHelper.executeCommandWithErrorChecking(device, command);
+    }
+  }
+
+  /**
+   * Runs {@code receiveCommand}, which starts the agent receiving on {@code port}, and sends it
+   * {@code payload} once it has told us its secret key.
+   */
+  private void sendToAgent(
+      String receiveCommand,
+      final int port,
+      final ByteSource payload) throws Exception {
     Closer closer = Closer.create();
     CollectingOutputReceiver receiver = new CollectingOutputReceiver() {
 
@@ -207,9 +274,9 @@ class RealExopackageDevice implements ExopackageDevice {
                     0,
                     AgentUtil.TEXT_SECRET_KEY_SIZE).getBytes());
             LOG.verbose("Wrote key");
-            com.google.common.io.Files.asByteSource(source.toFile()).copyTo(outToDevice);
+            payload.copyTo(outToDevice);
             outToDevice.flush();
-            LOG.verbose("Wrote file");
+            LOG.verbose("Wrote payload");
           }
         } catch (IOException e) {
           throw new RuntimeException(e);
@@ -217,13 +284,7 @@ class RealExopackageDevice implements ExopackageDevice {
       }
     };
 
-    String targetFileName = targetDevicePath.toString();
-    String command =
-        "umask 022 && " +
-            agentCommand +
-            "receive-file " + port + " " + Files.size(source) + " " +
-            targetFileName +
-            " ; echo -n :$?";
+    String command = "umask 022 && " + receiveCommand + " ; echo -n :$?";
     LOG.debug("Executing %s", command);
 
     // If we fail to execute the command, stash the exception.  My experience during development
@@ -250,13 +311,13 @@ class RealExopackageDevice implements ExopackageDevice {
     if (shellException != null) {
       throw shellException;
     }
+  }
 
-    // The standard Java libraries on Android always create new files un-readable by other users.
-    // We use the shell user or root to create these files, so we need to explicitly set the mode
-    // to allow the app to read them.  Ideally, the agent would do this automatically, but
-    // there's no easy way to do this in Java.  We can drop this if we drop support for the
-    // Java agent.
-    AdbHelper.executeCommandWithErrorChecking(device, "chmod 644 " + targetFileName);
+  @Override
+  public String readFile(String path) throws Exception {
+    return AdbHelper.executeCommandWithErrorChecking(
+        device,
+        "cat " + path + " 2>/dev/null | cat");
   }
 
   @Override
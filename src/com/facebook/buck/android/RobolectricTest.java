@@ -172,6 +172,13 @@ public class RobolectricTest extends JavaTest {
     return ImmutableSet.copyOf(context.getAndroidPlatformTarget().getBootclasspathEntries());
   }
 
+  @Override
+  protected boolean canSelectByLoadedClasses() {
+    // Robolectric loads the code under test with a class loader of its own, and it reads resources
+    // which aren't classes at all.
+    return false;
+  }
+
   @Override
   protected void onAmendVmArgs(
       ImmutableList.Builder<String> vmArgsBuilder,
@@ -80,6 +80,7 @@ public class SmartDexingStep implements Step {
   }
 
   private final ProjectFilesystem filesystem;
+  private final Path primaryOutputPath;
   private final Supplier<Multimap<Path, Path>> outputToInputsSupplier;
   private final Optional<Path> secondaryOutputDir;
   private final DexInputHashesProvider dexInputHashesProvider;
@@ -89,6 +90,9 @@ public class SmartDexingStep implements Step {
   private final Optional<Integer> xzCompressionLevel;
   private final Optional<String> dxMaxHeapSize;
 
+  private int secondaryOutputCount;
+  private int reusedSecondaryOutputCount;
+
   /**
    * @param primaryOutputPath Path for the primary dex artifact.
    * @param primaryInputsToDex Set of paths to include as inputs for the primary dex artifact.
@@ -115,6 +119,7 @@ public class SmartDexingStep implements Step {
       Optional<Integer> xzCompressionLevel,
       Optional<String> dxMaxHeapSize) {
     this.filesystem = filesystem;
+    this.primaryOutputPath = primaryOutputPath;
     this.outputToInputsSupplier = Suppliers.memoize(
         () -> {
           final ImmutableMultimap.Builder<Path, Path> map = ImmutableMultimap.builder();
@@ -137,6 +142,21 @@ public class SmartDexingStep implements Step {
     return Runtime.getRuntime().availableProcessors();
   }
 
+  /**
+   * @return the number of secondary dex files produced by the last execution of this step.
+   */
+  public int getSecondaryOutputCount() {
+    return secondaryOutputCount;
+  }
+
+  /**
+   * @return the number of secondary dex files which the last execution of this step left as they
+   *     were, because their inputs hadn't changed.
+   */
+  public int getReusedSecondaryOutputCount() {
+    return reusedSecondaryOutputCount;
+  }
+
   @Override
   public StepExecutionResult execute(ExecutionContext context) throws InterruptedException {
     try {
@@ -295,11 +315,19 @@ public class SmartDexingStep implements Step {
     }
 
     ImmutableList.Builder<ImmutableList<Step>> stepGroups = new ImmutableList.Builder<>();
+    secondaryOutputCount = 0;
+    reusedSecondaryOutputCount = 0;
     for (DxPseudoRule pseudoRule : pseudoRules.build()) {
+      boolean isSecondary = !pseudoRule.outputPath.equals(primaryOutputPath);
+      if (isSecondary) {
+        secondaryOutputCount++;
+      }
       if (!pseudoRule.checkIsCached()) {
         ImmutableList.Builder<Step> steps = ImmutableList.builder();
         pseudoRule.buildInternal(steps);
         stepGroups.add(steps.build());
+      } else if (isSecondary) {
+        reusedSecondaryOutputCount++;
       }
     }
 
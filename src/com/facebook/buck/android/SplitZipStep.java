@@ -17,12 +17,14 @@
 package com.facebook.buck.android;
 
 import com.facebook.buck.dalvik.DalvikAwareZipSplitterFactory;
+import com.facebook.buck.dalvik.DalvikStatsCache;
 import com.facebook.buck.dalvik.ZipSplitter;
 import com.facebook.buck.dalvik.ZipSplitterFactory;
 import com.facebook.buck.dalvik.firstorder.FirstOrderHelper;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.MoreCollectors;
@@ -185,7 +187,10 @@ public class SplitZipStep implements Step {
       ZipSplitterFactory zipSplitterFactory;
       zipSplitterFactory = new DalvikAwareZipSplitterFactory(
           dexSplitMode.getLinearAllocHardLimit(),
-          wantedInPrimaryZip);
+          wantedInPrimaryZip,
+          new DalvikStatsCache(
+              context.getExecutorService(ExecutorPool.CPU),
+              context.getConcurrencyLimit().threadLimit));
 
       outputFiles = zipSplitterFactory.newInstance(
           filesystem,
@@ -19,15 +19,18 @@ package com.facebook.buck.android.aapt;
 import com.facebook.buck.android.AaptStep;
 import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
 import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.counters.Counter;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.XmlDomParser;
+import com.facebook.buck.util.concurrent.MoreFutures;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
@@ -38,26 +41,26 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Ordering;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-
 /**
  * Step which parses resources in an android {@code res} directory and compiles them into a
  * {@code R.txt} file, following the exact same format as the Android build tool {@code aapt}.
@@ -74,16 +77,6 @@ public class MiniAapt implements Step {
   private static final String ITEM_TAG = "item";
   private static final String CUSTOM_DRAWABLE_PREFIX = "app-";
 
-  private static final XPathExpression ANDROID_ID_USAGE =
-      createExpression("//@*[starts-with(., '@') and " +
-              "not(starts-with(., '@+')) and " +
-              "not(starts-with(., '@android:')) and " +
-              "not(starts-with(., '@null'))]");
-
-  private static final XPathExpression ANDROID_ID_DEFINITION =
-      createExpression("//@*[starts-with(., '@+') and " +
-              "not(starts-with(., '@+android:id'))]");
-
   private static final ImmutableMap<String, RType> RESOURCE_TYPES = getResourceTypes();
   private static final ImmutableSet<String> IGNORED_TAGS = ImmutableSet.of(
       "eat-comment",
@@ -132,14 +125,6 @@ public class MiniAapt implements Step {
     this.isGrayscaleImageProcessingEnabled = isGrayscaleImageProcessingEnabled;
   }
 
-  private static XPathExpression createExpression(String expressionStr) {
-    try {
-      return XPathFactory.newInstance().newXPath().compile(expressionStr);
-    } catch (XPathExpressionException e) {
-      throw new RuntimeException(e);
-    }
-  }
-
   private static ImmutableMap<String, RType> getResourceTypes() {
     ImmutableMap.Builder<String, RType> types = ImmutableMap.builder();
     for (RType rType : RType.values()) {
@@ -151,6 +136,14 @@ public class MiniAapt implements Step {
     return types.build();
   }
 
+  /**
+   * @return counters of how many resource xml files were scanned for ids, how many of them could
+   *     be skipped as they had been scanned before, and how fast the others were parsed.
+   */
+  public static ImmutableList<Counter> getCounters() {
+    return ResourceXmlScanner.getCounters();
+  }
+
   @VisibleForTesting
   AaptResourceCollector getResourceCollector() {
     return resourceCollector;
@@ -162,8 +155,12 @@ public class MiniAapt implements Step {
 
     try {
       collectResources(filesystem, context.getBuckEventBus());
-      processXmlFilesForIds(filesystem, references);
-    } catch (IOException | XPathExpressionException | ResourceParseException e) {
+      processXmlFilesForIds(
+          filesystem,
+          references,
+          context.getExecutorService(ExecutorPool.CPU),
+          context.getConcurrencyLimit().threadLimit);
+    } catch (IOException | ResourceParseException e) {
       context.logError(e, "Error parsing resources to generate resource IDs for %s.", resDirectory);
       return StepExecutionResult.ERROR;
     }
@@ -463,10 +460,13 @@ public class MiniAapt implements Step {
 
   void processXmlFilesForIds(
       ProjectFilesystem filesystem,
-      ImmutableSet.Builder<RDotTxtEntry> references)
-      throws IOException, XPathExpressionException, ResourceParseException {
+      ImmutableSet.Builder<RDotTxtEntry> references,
+      ListeningExecutorService executorService,
+      int parallelism)
+      throws IOException, ResourceParseException {
     Path absoluteResDir = resolver.getAbsolutePath(resDirectory);
     Path relativeResDir = resolver.getRelativePath(resDirectory);
+    List<Path> xmlFiles = new ArrayList<>();
     for (Path path :
         filesystem.getFilesUnderPath(absoluteResDir, input -> input.toString().endsWith(".xml"))) {
       String dirname = relativeResDir.relativize(path).getName(0).toString();
@@ -474,7 +474,27 @@ public class MiniAapt implements Step {
         // Ignore files under values* directories.
         continue;
       }
-      processXmlFile(filesystem, path, references);
+      xmlFiles.add(path);
+    }
+
+    // Scan the files in parallel, but add what was found in the original order of the files, as
+    // that decides the values given to the ids.
+    try (MoreFutures.InFlightFutures<
+             Map.Entry<Path, ResourceXmlScanner.Result>,
+             ResourceParseException> inFlight =
+             MoreFutures.inFlight(
+                 parallelism,
+                 ResourceParseException.class,
+                 xmlFileAndResult -> addIdsAndReferences(
+                     xmlFileAndResult.getKey(),
+                     xmlFileAndResult.getValue(),
+                     references))) {
+      for (Path xmlFile : xmlFiles) {
+        inFlight.add(
+            executorService.submit(
+                () -> new AbstractMap.SimpleEntry<>(xmlFile, scanXmlFile(filesystem, xmlFile))));
+      }
+      inFlight.finish();
     }
   }
 
@@ -483,47 +503,53 @@ public class MiniAapt implements Step {
       ProjectFilesystem filesystem,
       Path xmlFile,
       ImmutableSet.Builder<RDotTxtEntry> references)
-      throws IOException, XPathExpressionException, ResourceParseException {
+      throws IOException, ResourceParseException {
+    addIdsAndReferences(xmlFile, scanXmlFile(filesystem, xmlFile), references);
+  }
+
+  private static ResourceXmlScanner.Result scanXmlFile(ProjectFilesystem filesystem, Path xmlFile)
+      throws IOException, ResourceParseException {
+    byte[] contents;
     try (InputStream stream = filesystem.newFileInputStream(xmlFile)) {
-      Document dom = parseXml(xmlFile, stream);
-      NodeList nodesWithIds =
-          (NodeList) ANDROID_ID_DEFINITION.evaluate(dom, XPathConstants.NODESET);
-      for (int i = 0; i < nodesWithIds.getLength(); i++) {
-        String resourceName = nodesWithIds.item(i).getNodeValue();
-        if (!resourceName.startsWith(ID_DEFINITION_PREFIX)) {
-          throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
-        }
-        Preconditions.checkState(resourceName.startsWith(ID_DEFINITION_PREFIX));
+      contents = ByteStreams.toByteArray(stream);
+    }
+    return ResourceXmlScanner.scan(xmlFile, contents);
+  }
 
-        resourceCollector.addIntResourceIfNotPresent(
-            RType.ID,
-            resourceName.substring(ID_DEFINITION_PREFIX.length()));
+  private void addIdsAndReferences(
+      Path xmlFile,
+      ResourceXmlScanner.Result result,
+      ImmutableSet.Builder<RDotTxtEntry> references)
+      throws ResourceParseException {
+    for (String resourceName : result.definitions) {
+      if (!resourceName.startsWith(ID_DEFINITION_PREFIX)) {
+        throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
       }
 
-      NodeList nodesUsingIds =
-          (NodeList) ANDROID_ID_USAGE.evaluate(dom, XPathConstants.NODESET);
-      for (int i = 0; i < nodesUsingIds.getLength(); i++) {
-        String resourceName = nodesUsingIds.item(i).getNodeValue();
-        int slashPosition = resourceName.indexOf('/');
-        if (resourceName.charAt(0) != '@' || slashPosition == -1) {
-          throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
-        }
-
-        String rawRType = resourceName.substring(1, slashPosition);
-        String name = resourceName.substring(slashPosition + 1);
+      resourceCollector.addIntResourceIfNotPresent(
+          RType.ID,
+          resourceName.substring(ID_DEFINITION_PREFIX.length()));
+    }
 
-        String nodeName = nodesUsingIds.item(i).getNodeName();
-        if (name.startsWith("android:") || nodeName.startsWith("tools:")) {
-          continue;
-        }
-        if (!RESOURCE_TYPES.containsKey(rawRType)) {
-          throw new ResourceParseException("Invalid reference '%s' in '%s'", resourceName, xmlFile);
-        }
-        RType rType = Preconditions.checkNotNull(RESOURCE_TYPES.get(rawRType));
+    for (ResourceXmlScanner.Attribute attribute : result.references) {
+      String resourceName = attribute.value;
+      int slashPosition = resourceName.indexOf('/');
+      if (resourceName.charAt(0) != '@' || slashPosition == -1) {
+        throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
+      }
 
+      String rawRType = resourceName.substring(1, slashPosition);
+      String name = resourceName.substring(slashPosition + 1);
 
-        references.add(new FakeRDotTxtEntry(IdType.INT, rType, sanitizeName(name)));
+      if (name.startsWith("android:") || attribute.name.startsWith("tools:")) {
+        continue;
       }
+      if (!RESOURCE_TYPES.containsKey(rawRType)) {
+        throw new ResourceParseException("Invalid reference '%s' in '%s'", resourceName, xmlFile);
+      }
+      RType rType = Preconditions.checkNotNull(RESOURCE_TYPES.get(rawRType));
+
+      references.add(new FakeRDotTxtEntry(IdType.INT, rType, sanitizeName(name)));
     }
   }
 
@@ -135,6 +135,12 @@ public class RDotTxtEntry implements Comparable<RDotTxtEntry> {
   public final String idValue;
   public final CustomDrawableType customType;
 
+  /**
+   * {@link #name} split on underscores, as used by {@link #compareTo(RDotTxtEntry)}. Entries are
+   * compared many times while being sorted, so this is only done once.
+   */
+  private final String[] nameParts;
+
   public RDotTxtEntry(
       IdType idType,
       RType type,
@@ -154,6 +160,16 @@ public class RDotTxtEntry implements Comparable<RDotTxtEntry> {
     this.name = name;
     this.idValue = idValue;
     this.customType = customType;
+    this.nameParts = name.split("_");
+  }
+
+  private RDotTxtEntry(RDotTxtEntry entry, String idValue) {
+    this.idType = entry.idType;
+    this.type = entry.type;
+    this.name = entry.name;
+    this.idValue = idValue;
+    this.customType = entry.customType;
+    this.nameParts = entry.nameParts;
   }
 
   public int getNumArrayValues() {
@@ -168,7 +184,7 @@ public class RDotTxtEntry implements Comparable<RDotTxtEntry> {
   }
 
   public RDotTxtEntry copyWithNewIdValue(String newIdValue) {
-    return new RDotTxtEntry(idType, type, name, newIdValue, customType);
+    return new RDotTxtEntry(this, newIdValue);
   }
 
   public static Optional<RDotTxtEntry> parse(String rDotTxtLine) {
@@ -218,8 +234,8 @@ public class RDotTxtEntry implements Comparable<RDotTxtEntry> {
 
     ComparisonChain comparisonChain = ComparisonChain.start().compare(this.type, that.type);
 
-    String [] thisNameParts = this.name.split("_");
-    String [] thatNameParts = that.name.split("_");
+    String [] thisNameParts = this.nameParts;
+    String [] thatNameParts = that.nameParts;
 
     int index = 0;
     while (index < thisNameParts.length && index < thatNameParts.length) {
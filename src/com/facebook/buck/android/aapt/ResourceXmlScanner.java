@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.IntegerCounter;
+import com.facebook.buck.counters.SamplingCounter;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Finds the attributes of a resource xml file which define or refer to resources, as
+ * {@link MiniAapt} needs them, by streaming through the file rather than building a DOM and
+ * querying it.
+ * <p>
+ * The results only depend on the contents of the file, so they are kept, by the hash of the
+ * contents, for the whole process: a file that hasn't changed since it was last scanned isn't
+ * parsed again.
+ */
+final class ResourceXmlScanner {
+
+  private static final String COUNTER_CATEGORY = "mini_aapt";
+
+  private static final IntegerCounter FILES_PARSED =
+      new IntegerCounter(COUNTER_CATEGORY, "xml_files_parsed", ImmutableMap.of());
+  private static final IntegerCounter FILES_REUSED =
+      new IntegerCounter(COUNTER_CATEGORY, "xml_files_reused", ImmutableMap.of());
+  private static final SamplingCounter PARSE_KILOBYTES_PER_SECOND =
+      new SamplingCounter(COUNTER_CATEGORY, "xml_parse_kilobytes_per_second", ImmutableMap.of());
+
+  /** Bounds the cache by the total number of attributes it holds. */
+  private static final long MAX_CACHED_ATTRIBUTES = 2_000_000;
+
+  private static final Cache<HashCode, Result> RESULTS = CacheBuilder.newBuilder()
+      .maximumWeight(MAX_CACHED_ATTRIBUTES)
+      .<HashCode, Result>weigher(
+          (hash, result) -> 1 + result.definitions.size() + result.references.size())
+      .build();
+
+  private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+  /**
+   * Attributes of an element are visited in the order of their names, as they were when they were
+   * found by XPath on a DOM, so that ids are defined in the same order as they used to be.
+   */
+  private static final Comparator<Attribute> BY_NAME = Comparator.comparing(a -> a.name);
+
+  private ResourceXmlScanner() {
+  }
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+  /**
+   * @return the counters of this scanner, shared by all of the builds of this process.
+   */
+  static ImmutableList<Counter> getCounters() {
+    return ImmutableList.of(FILES_PARSED, FILES_REUSED, PARSE_KILOBYTES_PER_SECOND);
+  }
+
+  /**
+   * @param xmlFile only used in error messages.
+   * @param contents the contents of {@code xmlFile}.
+   * @return the attributes found in {@code contents}.
+   */
+  static Result scan(Path xmlFile, byte[] contents) throws MiniAapt.ResourceParseException {
+    HashCode hash = Hashing.murmur3_128().hashBytes(contents);
+    Result result = RESULTS.getIfPresent(hash);
+    if (result != null) {
+      FILES_REUSED.inc();
+      return result;
+    }
+    try {
+      result = RESULTS.get(hash, () -> parse(xmlFile, contents));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), MiniAapt.ResourceParseException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+    FILES_PARSED.inc();
+    return result;
+  }
+
+  private static Result parse(Path xmlFile, byte[] contents)
+      throws MiniAapt.ResourceParseException {
+    long start = System.nanoTime();
+    ImmutableList.Builder<String> definitions = ImmutableList.builder();
+    ImmutableList.Builder<Attribute> references = ImmutableList.builder();
+    try {
+      XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(
+          new ByteArrayInputStream(contents));
+      try {
+        List<Attribute> attributes = new ArrayList<>();
+        while (reader.hasNext()) {
+          if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+            continue;
+          }
+          attributes.clear();
+          for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String value = reader.getAttributeValue(i);
+            if (value.startsWith("@")) {
+              attributes.add(new Attribute(getAttributeName(reader, i), value));
+            }
+          }
+          attributes.sort(BY_NAME);
+          for (Attribute attribute : attributes) {
+            if (attribute.value.startsWith("@+")) {
+              if (!attribute.value.startsWith("@+android:id")) {
+                definitions.add(attribute.value);
+              }
+            } else if (!attribute.value.startsWith("@android:") &&
+                !attribute.value.startsWith("@null")) {
+              references.add(attribute);
+            }
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new MiniAapt.ResourceParseException(
+          "Error parsing xml file '%s': %s.",
+          xmlFile,
+          e.getMessage());
+    }
+    long elapsedNanos = System.nanoTime() - start;
+    if (elapsedNanos > 0) {
+      PARSE_KILOBYTES_PER_SECOND.addSample(
+          contents.length * TimeUnit.SECONDS.toNanos(1) / elapsedNanos / 1024);
+    }
+    return new Result(definitions.build(), references.build());
+  }
+
+  private static String getAttributeName(XMLStreamReader reader, int index) {
+    String prefix = reader.getAttributePrefix(index);
+    String localName = reader.getAttributeLocalName(index);
+    return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+  }
+
+  /**
+   * An attribute whose value refers to a resource.
+   */
+  static final class Attribute {
+    final String name;
+    final String value;
+
+    Attribute(String name, String value) {
+      this.name = name;
+      this.value = value;
+    }
+  }
+
+  /**
+   * What was found in a resource xml file, in document order.
+   */
+  static final class Result {
+    /** Values of attributes defining ids, e.g. {@code @+id/title}. */
+    final ImmutableList<String> definitions;
+    /** Attributes referring to other resources, e.g. {@code android:text="@string/title"}. */
+    final ImmutableList<Attribute> references;
+
+    Result(ImmutableList<String> definitions, ImmutableList<Attribute> references) {
+      this.definitions = definitions;
+      this.references = references;
+    }
+  }
+}
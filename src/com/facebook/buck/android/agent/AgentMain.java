@@ -19,6 +19,7 @@ package com.facebook.buck.android.agent;
 import com.facebook.buck.android.agent.util.AgentUtil;
 
 import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -68,6 +69,8 @@ public class AgentMain {
         doMkdirP(userArgs);
       } else if (command.equals("receive-file")) {
         doReceiveFile(userArgs);
+      } else if (command.equals("receive-files")) {
+        doReceiveFiles(userArgs);
       } else {
         throw new IllegalArgumentException("Unknown command: " + command);
       }
@@ -136,22 +139,50 @@ public class AgentMain {
     ServerSocket serverSocket = null;
     try {
       serverSocket = new ServerSocket(port);
+      InputStream input = acceptAuthenticatedConnection(serverSocket);
+      doRawReceiveFile(path, size, input);
+    } finally {
+      if (serverSocket != null) {
+        serverSocket.close();
+      }
+    }
+  }
 
-      byte[] secretKey = createAndSendSessionKey();
-
-      // Open the connection with appropriate timeouts.
-      serverSocket.setSoTimeout(CONNECT_TIMEOUT_MS);
-      Socket connectionSocket = serverSocket.accept();
-      connectionSocket.setSoTimeout(RECEIVE_TIMEOUT_MS);
-      InputStream input = connectionSocket.getInputStream();
-
-      // Report that the socket has been opened.
-      System.out.write(new byte[]{'z', '1', '\n'});
-      System.out.flush();
+  /**
+   * Receive several files over a single connection and write them to disk, so that the host
+   * doesn't have to run a command on the device for every file it installs.
+   *
+   * <p>Arguments are
+   *   <ol>
+   *     <li>The port to listen on.
+   *     <li>The number of files to receive.
+   *     <li>The directory to write them to.
+   *   </ol>
+   *
+   * <p>The secret key is exchanged as for receive-file.  It is followed by the files, each of
+   * which is sent as its path relative to the directory (as by
+   * {@link java.io.DataOutput#writeUTF}), its size (as by {@link java.io.DataOutput#writeInt})
+   * and its contents.  Every file is received to a temp file and renamed into place, as for
+   * receive-file.
+   */
+  private static void doReceiveFiles(List<String> userArgs) throws IOException {
+    if (userArgs.size() != 3) {
+      throw new IllegalArgumentException("usage: receive-files PORT COUNT DIR");
+    }
 
-      receiveAndValidateSessionKey(secretKey, input);
+    int port = Integer.parseInt(userArgs.get(0));
+    int count = Integer.parseInt(userArgs.get(1));
+    File dir = new File(userArgs.get(2));
 
-      doRawReceiveFile(path, size, input);
+    ServerSocket serverSocket = null;
+    try {
+      serverSocket = new ServerSocket(port);
+      DataInputStream input = new DataInputStream(acceptAuthenticatedConnection(serverSocket));
+      for (int i = 0; i < count; i++) {
+        String relativePath = input.readUTF();
+        int size = input.readInt();
+        doRawReceiveFile(resolveWithin(dir, relativePath), size, input);
+      }
     } finally {
       if (serverSocket != null) {
         serverSocket.close();
@@ -159,6 +190,39 @@ public class AgentMain {
     }
   }
 
+  private static File resolveWithin(File dir, String relativePath) {
+    if (relativePath.startsWith("/") ||
+        Arrays.asList(relativePath.split("/")).contains("..")) {
+      throw new IllegalArgumentException("Refusing to write outside of " + dir + ": " +
+          relativePath);
+    }
+    return new File(dir, relativePath);
+  }
+
+  /**
+   * Sends a new session key to the host, waits for it to connect to {@code serverSocket} and
+   * checks that it sent the key back.
+   *
+   * @return the stream of the payload that follows the key.
+   */
+  private static InputStream acceptAuthenticatedConnection(ServerSocket serverSocket)
+      throws IOException {
+    byte[] secretKey = createAndSendSessionKey();
+
+    // Open the connection with appropriate timeouts.
+    serverSocket.setSoTimeout(CONNECT_TIMEOUT_MS);
+    Socket connectionSocket = serverSocket.accept();
+    connectionSocket.setSoTimeout(RECEIVE_TIMEOUT_MS);
+    InputStream input = connectionSocket.getInputStream();
+
+    // Report that the socket has been opened.
+    System.out.write(new byte[]{'z', '1', '\n'});
+    System.out.flush();
+
+    receiveAndValidateSessionKey(secretKey, input);
+    return input;
+  }
+
   private static byte[] createAndSendSessionKey() throws IOException {
     // Generate a random key to authenticate the network connection.
     // On some devices, I had trouble using SecureRandom in a non-app context
@@ -161,7 +161,8 @@ public class HeaderMap {
 
   @Nullable
   public String lookup(String str) {
-    int hash0 = hashKey(str) & (numBuckets - 1);
+    byte[] lowerCaseKey = toLowerCaseBytes(str);
+    int hash0 = hashKey(lowerCaseKey) & (numBuckets - 1);
 
     int hash = hash0;
     while (true) {
@@ -169,7 +170,7 @@ public class HeaderMap {
       if (bucket == null) {
         return null;
       }
-      if (str.equalsIgnoreCase(getString(bucket.key))) {
+      if (keyEquals(bucket.key, lowerCaseKey)) {
         return getString(bucket.prefix) + getString(bucket.suffix);
       }
 
@@ -323,6 +324,10 @@ public class HeaderMap {
     return new Builder();
   }
 
+  public static Builder builder(int expectedNumEntries) {
+    return new Builder(expectedNumEntries);
+  }
+
   public static class Builder {
 
     static final int DEFAULT_NUM_BUCKETS = 256;
@@ -334,6 +339,18 @@ public class HeaderMap {
       this.headerMap = new HeaderMap(DEFAULT_NUM_BUCKETS, DEFAULT_STRING_BYTES_LENGTH);
     }
 
+    /**
+     * Sizes the table for {@code expectedNumEntries} entries up front, so that it doesn't have to
+     * be rebuilt as they are added.
+     */
+    public Builder(int expectedNumEntries) {
+      int numBuckets = DEFAULT_NUM_BUCKETS;
+      while (expectedNumEntries > numBuckets * MAX_LOAD_FACTOR) {
+        numBuckets *= 2;
+      }
+      this.headerMap = new HeaderMap(numBuckets, DEFAULT_STRING_BYTES_LENGTH);
+    }
+
     public synchronized boolean add(String key, String prefix, String suffix) {
       AddResult result = headerMap.add(key, prefix, suffix);
 
@@ -379,10 +396,10 @@ public class HeaderMap {
 
   // ------------- Internals -----------
 
-  private static int hashKey(String str) {
+  private static byte[] toLowerCaseBytes(String str) {
     // ASCII lowercase is part of the format.
     // UTF8 is the standard filesystem charset.
-    return hashKey(Ascii.toLowerCase(str).getBytes(DEFAULT_CHARSET));
+    return Ascii.toLowerCase(str).getBytes(DEFAULT_CHARSET);
   }
 
   private static int hashKey(byte[] str) {
@@ -405,7 +422,8 @@ public class HeaderMap {
       return AddResult.FAILURE_FULL;
     }
 
-    int hash0 = hashKey(str) & (numBuckets - 1);
+    byte[] lowerCaseKey = toLowerCaseBytes(str);
+    int hash0 = hashKey(lowerCaseKey) & (numBuckets - 1);
 
     int hash = hash0;
     while (true) {
@@ -421,7 +439,7 @@ public class HeaderMap {
         return AddResult.OK;
       }
 
-      if (str.equalsIgnoreCase(getString(bucket.key))) {
+      if (keyEquals(bucket.key, lowerCaseKey)) {
         return AddResult.FAILURE_ALREADY_PRESENT;
       }
 
@@ -436,18 +454,36 @@ public class HeaderMap {
   private String getString(int offset) {
     Preconditions.checkArgument(offset >= 0 && offset <= stringBytesActualLength);
 
-    StringBuffer buffer = new StringBuffer();
-    byte b;
-    while ((offset < stringBytesActualLength) && ((b = stringBytes[offset]) != 0)) {
-      buffer.append((char) b);
-      offset++;
+    int end = offset;
+    while ((end < stringBytesActualLength) && (stringBytes[end] != 0)) {
+      end++;
     }
 
-    if (offset == stringBytesActualLength) {
+    if (end == stringBytesActualLength) {
       // We reached the end of the array without finding a 0.
       return null;
     }
-    return buffer.toString();
+    return new String(stringBytes, offset, end - offset, DEFAULT_CHARSET);
+  }
+
+  /**
+   * Compares the key stored at {@code offset} with {@code lowerCaseKey} ignoring ASCII case, as
+   * clang does, without decoding it.
+   */
+  private boolean keyEquals(int offset, byte[] lowerCaseKey) {
+    if (stringBytesActualLength - offset <= lowerCaseKey.length) {
+      return false;
+    }
+    for (int i = 0; i < lowerCaseKey.length; i++) {
+      byte b = stringBytes[offset + i];
+      if (Ascii.isUpperCase((char) b)) {
+        b = (byte) Ascii.toLowerCase((char) b);
+      }
+      if (b != lowerCaseKey[i]) {
+        return false;
+      }
+    }
+    return stringBytes[offset + lowerCaseKey.length] == 0;
   }
 
   private void putStringByte(byte b) {
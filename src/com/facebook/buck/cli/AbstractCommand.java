@@ -285,12 +285,7 @@ public abstract class AbstractCommand implements Command {
   }
 
   public ConcurrencyLimit getConcurrencyLimit(BuckConfig buckConfig) {
-    return new ConcurrencyLimit(
-        buckConfig.getNumThreads(),
-        buckConfig.getResourceAllocationFairness(),
-        buckConfig.getManagedThreadCount(),
-        buckConfig.getDefaultResourceAmounts(),
-        buckConfig.getMaximumResourceAmounts());
+    return buckConfig.getConcurrencyLimit();
   }
 
   @Override
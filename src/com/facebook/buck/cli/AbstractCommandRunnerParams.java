@@ -30,6 +30,7 @@ import com.facebook.buck.rules.keys.RuleKeyCacheRecycler;
 import com.facebook.buck.shell.WorkerProcessPool;
 import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.timing.Clock;
+import com.facebook.buck.util.ClassLoaderCache;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.ProcessManager;
 import com.facebook.buck.util.cache.StackedFileHashCache;
@@ -84,6 +85,8 @@ public interface AbstractCommandRunnerParams {
 
   Optional<ConcurrentMap<String, WorkerProcessPool>> getPersistentWorkerPools();
 
+  Optional<ClassLoaderCache> getPersistentClassLoaderCache();
+
   BuckConfig getBuckConfig();
 
   StackedFileHashCache getFileHashCache();
@@ -43,6 +43,7 @@ import com.facebook.buck.util.AnsiEnvironmentChecking;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.PatternAndMessage;
+import com.facebook.buck.util.concurrent.ConcurrencyLimit;
 import com.facebook.buck.util.concurrent.ResourceAllocationFairness;
 import com.facebook.buck.util.concurrent.ResourceAmounts;
 import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
@@ -1065,6 +1066,18 @@ public class BuckConfig implements ConfigPathGetter {
             "max_network_io_resource").orElse(estimated.getNetworkIO()));
   }
 
+  /**
+   * @return how many jobs a build may run at once, and the resources they share.
+   */
+  public ConcurrencyLimit getConcurrencyLimit() {
+    return new ConcurrencyLimit(
+        getNumThreads(),
+        getResourceAllocationFairness(),
+        getManagedThreadCount(),
+        getDefaultResourceAmounts(),
+        getMaximumResourceAmounts());
+  }
+
   public boolean getIncludeAutodepsSignature() {
     return getBooleanValue("autodeps", "include_signature", true);
   }
@@ -80,6 +80,7 @@ import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.step.TargetDevice;
 import com.facebook.buck.step.TargetDeviceOptions;
 import com.facebook.buck.timing.Clock;
+import com.facebook.buck.util.ClassLoaderCache;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreExceptions;
@@ -308,6 +309,7 @@ public class BuildCommand extends AbstractCommand {
       BuckEventBus eventBus,
       Optional<TargetDevice> targetDevice,
       Optional<ConcurrentMap<String, WorkerProcessPool>> persistentWorkerPools,
+      Optional<ClassLoaderCache> persistentClassLoaderCache,
       Platform platform,
       ImmutableMap<String, String> environment,
       Clock clock,
@@ -341,6 +343,7 @@ public class BuildCommand extends AbstractCommand {
         adbOptions,
         targetDeviceOptions,
         persistentWorkerPools,
+        persistentClassLoaderCache,
         executors);
   }
 
@@ -873,6 +876,7 @@ public class BuildCommand extends AbstractCommand {
                params.getBuckEventBus(),
                Optional.empty(),
                params.getPersistentWorkerPools(),
+               params.getPersistentClassLoaderCache(),
                rootCellBuckConfig.getPlatform(),
                rootCellBuckConfig.getEnvironment(),
                params.getClock(),
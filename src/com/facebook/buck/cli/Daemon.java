@@ -39,10 +39,13 @@ import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
 import com.facebook.buck.rules.keys.RuleKeyCacheRecycler;
 import com.facebook.buck.shell.WorkerProcessPool;
+import com.facebook.buck.util.ClassLoaderCache;
 import com.facebook.buck.util.RichStream;
 import com.facebook.buck.util.WatchmanWatcher;
 import com.facebook.buck.util.cache.DefaultFileHashCache;
+import com.facebook.buck.util.cache.JarContentHashIndex;
 import com.facebook.buck.util.cache.ProjectFileHashCache;
+import com.facebook.buck.util.cache.StackedFileHashCache;
 import com.facebook.buck.util.cache.WatchedFileHashCache;
 import com.facebook.buck.versions.VersionedTargetGraphCache;
 import com.google.common.collect.ImmutableList;
@@ -75,6 +78,7 @@ final class Daemon implements Closeable {
   private final EventBus fileEventBus;
   private final Optional<WebServer> webServer;
   private final ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools;
+  private final ClassLoaderCache persistentClassLoaderCache;
   private final VersionedTargetGraphCache versionedTargetGraphCache;
   private final ActionGraphCache actionGraphCache;
   private final BroadcastEventListener broadcastEventListener;
@@ -91,16 +95,19 @@ final class Daemon implements Closeable {
 
     // Setup the stacked file hash cache from all cells.
     ImmutableList.Builder<ProjectFileHashCache> hashCachesBuilder = ImmutableList.builder();
+    ImmutableList.Builder<ProjectFileHashCache> watchedHashCaches = ImmutableList.builder();
     allCells.forEach(subCell -> {
       WatchedFileHashCache watchedCache = new WatchedFileHashCache(subCell.getFilesystem());
       fileEventBus.register(watchedCache);
       hashCachesBuilder.add(watchedCache);
+      watchedHashCaches.add(watchedCache);
     });
     hashCachesBuilder.add(
         DefaultFileHashCache.createBuckOutFileHashCache(
             rootCell.getFilesystem().replaceBlacklistedPaths(ImmutableSet.of()),
             rootCell.getFilesystem().getBuckPaths().getBuckOut()));
     this.hashCaches = hashCachesBuilder.build();
+    JarContentHashIndex.getShared().load(getJarContentHashesFile());
 
     this.broadcastEventListener = new BroadcastEventListener();
     this.actionGraphCache = new ActionGraphCache(broadcastEventListener);
@@ -140,6 +147,26 @@ final class Daemon implements Closeable {
     }
     LOG.debug("Using Watchman Cursor: %s", cursor);
     persistentWorkerPools = new ConcurrentHashMap<>();
+    // The watched file hash caches already track the jars in the cells, so reuse their hashes
+    // rather than hashing those jars again. Builds rewrite the jars in buck-out without those
+    // caches hearing about it, so the class loader cache checks and hashes those itself.
+    ImmutableList<Path> buckOutPaths =
+        RichStream.from(allCells)
+            .map(Cell::getFilesystem)
+            .map(filesystem -> filesystem.resolve(filesystem.getBuckPaths().getBuckOut()))
+            .toImmutableList();
+    StackedFileHashCache jarHashCache = new StackedFileHashCache(watchedHashCaches.build());
+    persistentClassLoaderCache = new ClassLoaderCache(
+        path -> {
+          if (buckOutPaths.stream().anyMatch(path::startsWith)) {
+            return Optional.empty();
+          }
+          try {
+            return Optional.of(jarHashCache.get(path));
+          } catch (IOException | RuntimeException e) {
+            return Optional.empty();
+          }
+        });
     JavaUtilsLoggingBuildListener.ensureLogFileIsWritten(rootCell.getFilesystem());
   }
 
@@ -220,6 +247,14 @@ final class Daemon implements Closeable {
     return persistentWorkerPools;
   }
 
+  /**
+   * Class loaders (e.g. for in-process compilers and annotation processors) which are kept across
+   * commands, so that their classes don't have to be loaded and JIT compiled again for every build.
+   */
+  ClassLoaderCache getPersistentClassLoaderCache() {
+    return persistentClassLoaderCache;
+  }
+
   RuleKeyCacheRecycler<RuleKey> getDefaultRuleKeyFactoryCacheRecycler() {
     return defaultRuleKeyFactoryCacheRecycler;
   }
@@ -297,6 +332,21 @@ final class Daemon implements Closeable {
   public void close() throws IOException {
     shutdownPersistentWorkerPools();
     shutdownWebServer();
+    persistentClassLoaderCache.close();
+    saveJarContentHashes();
+  }
+
+  private Path getJarContentHashesFile() {
+    return rootCell.getFilesystem().resolve(
+        rootCell.getFilesystem().getBuckPaths().getJarContentHashesFile());
+  }
+
+  private void saveJarContentHashes() {
+    try {
+      JarContentHashIndex.getShared().save(getJarContentHashesFile());
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to save jar content hashes.");
+    }
   }
 
   private void shutdownPersistentWorkerPools() {
@@ -144,6 +144,7 @@ public class FetchCommand extends BuildCommand {
                params.getBuckEventBus(),
                Optional.empty(),
                params.getPersistentWorkerPools(),
+               params.getPersistentClassLoaderCache(),
                params.getPlatform(),
                params.getEnvironment(),
                params.getClock(),
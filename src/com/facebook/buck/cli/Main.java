@@ -23,6 +23,7 @@ import com.facebook.buck.android.AndroidBuckConfig;
 import com.facebook.buck.android.AndroidDirectoryResolver;
 import com.facebook.buck.android.AndroidPlatformTarget;
 import com.facebook.buck.android.DefaultAndroidDirectoryResolver;
+import com.facebook.buck.android.aapt.MiniAapt;
 import com.facebook.buck.artifact_cache.ArtifactCacheBuckConfig;
 import com.facebook.buck.artifact_cache.ArtifactCaches;
 import com.facebook.buck.artifact_cache.HttpArtifactCacheEvent;
@@ -86,6 +87,7 @@ import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.rules.keys.RuleKeyCacheRecycler;
 import com.facebook.buck.shell.WorkerProcessPool;
 import com.facebook.buck.step.ExecutorPool;
+import com.facebook.buck.step.fs.SymlinkTreeStep;
 import com.facebook.buck.test.TestConfig;
 import com.facebook.buck.test.TestResultSummaryVerbosity;
 import com.facebook.buck.timing.Clock;
@@ -97,6 +99,7 @@ import com.facebook.buck.util.AsyncCloseable;
 import com.facebook.buck.util.BgProcessKiller;
 import com.facebook.buck.util.BuckArgsMethods;
 import com.facebook.buck.util.BuckIsDyingException;
+import com.facebook.buck.util.ClassLoaderCache;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.DefaultProcessExecutor;
 import com.facebook.buck.util.HumanReadableException;
@@ -654,6 +657,8 @@ public final class Main {
         Optional<WebServer> webServer = daemon.flatMap(Daemon::getWebServer);
         Optional<ConcurrentMap<String, WorkerProcessPool>> persistentWorkerPools =
             daemon.map(Daemon::getPersistentWorkerPools);
+        Optional<ClassLoaderCache> persistentClassLoaderCache =
+            daemon.map(Daemon::getPersistentClassLoaderCache);
 
         TestConfig testConfig = new TestConfig(buckConfig);
         ArtifactCacheBuckConfig cacheBuckConfig = new ArtifactCacheBuckConfig(buckConfig);
@@ -900,6 +905,8 @@ public final class Main {
           //
           // The counters will be unregistered once the counter registry is closed.
           counterRegistry.registerCounters(parser.getCounters());
+          counterRegistry.registerCounters(MiniAapt.getCounters());
+          counterRegistry.registerCounters(SymlinkTreeStep.getCounters());
 
           JavaUtilsLoggingBuildListener.ensureLogFileIsWritten(rootCell.getFilesystem());
 
@@ -953,6 +960,7 @@ public final class Main {
                     .setVersionControlStatsGenerator(vcStatsGenerator)
                     .setProcessManager(processManager)
                     .setPersistentWorkerPools(persistentWorkerPools)
+                    .setPersistentClassLoaderCache(persistentClassLoaderCache)
                     .setWebServer(webServer)
                     .setBuckConfig(buckConfig)
                     .setFileHashCache(fileHashCache)
@@ -53,6 +53,7 @@ import com.facebook.buck.step.TargetDeviceOptions;
 import com.facebook.buck.test.CoverageReportFormat;
 import com.facebook.buck.test.TestRunningOptions;
 import com.facebook.buck.util.ForwardingProcessListener;
+import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.ListeningProcessExecutor;
 import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.MoreExceptions;
@@ -136,6 +137,22 @@ public class TestCommand extends BuildCommand {
   @Nullable
   private Boolean isBuildFiltered = null;
 
+  @Option(
+      name = "--skip-unchanged-loaded-classes",
+      usage =
+          "Record the classes loaded by Java tests, and reuse their results for as long as none " +
+          "of those classes change, even if other dependencies of the tests do.")
+  @Nullable
+  private Boolean isSelectingTestsByLoadedClasses = null;
+
+  @Option(
+      name = "--java-test-shards",
+      usage =
+          "Split the test classes of each Java test across this many JVMs running at the same " +
+          "time, balanced by how long each class took the last time it ran.")
+  @Nullable
+  private Integer javaTestShards = null;
+
   // TODO(#9061229): See if we can remove this option entirely. For now, the
   // underlying code has been removed, and this option is ignored.
   @Option(
@@ -255,6 +272,25 @@ public class TestCommand extends BuildCommand {
     return testLabelOptions.shouldExcludeWin();
   }
 
+  private boolean isSelectingTestsByLoadedClasses(BuckConfig buckConfig) {
+    return isSelectingTestsByLoadedClasses != null ?
+        isSelectingTestsByLoadedClasses :
+        buckConfig.getBooleanValue("test", "skip_unchanged_loaded_classes", false);
+  }
+
+  private int getJavaTestShards(BuckConfig buckConfig) {
+    if (isDebugEnabled()) {
+      return 1;
+    }
+    int shards = javaTestShards != null ?
+        javaTestShards :
+        buckConfig.getInteger("test", "java_test_shards").orElse(1);
+    if (shards < 1) {
+      throw new HumanReadableException("The number of Java test shards must be at least 1.");
+    }
+    return shards;
+  }
+
   public boolean isBuildFiltered(BuckConfig buckConfig) {
     return isBuildFiltered != null ?
         isBuildFiltered :
@@ -283,6 +319,9 @@ public class TestCommand extends BuildCommand {
         .setShouldExplainTestSelectorList(testSelectorOptions.shouldExplain())
         .setTestResultCacheMode(getResultsCacheMode(params.getBuckConfig()))
         .setShufflingTests(isShufflingTests)
+        .setSelectingTestsByLoadedClasses(
+            isSelectingTestsByLoadedClasses(params.getBuckConfig()))
+        .setJavaTestShards(getJavaTestShards(params.getBuckConfig()))
         .setPathToXmlTestOutput(Optional.ofNullable(pathToXmlTestOutput))
         .setPathToJavaAgent(Optional.ofNullable(pathToJavaAgent))
         .setCoverageReportFormat(coverageReportFormat)
@@ -573,6 +612,7 @@ public class TestCommand extends BuildCommand {
                 params.getBuckEventBus(),
                 getTargetDeviceOptional(),
                 params.getPersistentWorkerPools(),
+                params.getPersistentClassLoaderCache(),
                 params.getPlatform(),
                 params.getEnvironment(),
                 params.getClock(),
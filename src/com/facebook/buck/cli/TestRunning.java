@@ -185,6 +185,8 @@ public class TestRunning {
     final AtomicInteger lastReportedTestSequenceNumber = new AtomicInteger();
     final List<TestRun> separateTestRuns = new ArrayList<>();
     List<TestRun> parallelTestRuns = new ArrayList<>();
+    int testRulesRun = 0;
+    int testRulesWithUnchangedLoadedClasses = 0;
     for (final TestRule test : tests) {
       // Determine whether the test needs to be executed.
       final Callable<TestResults> resultsInterpreter = getCachingCallable(
@@ -202,6 +204,20 @@ public class TestRunning {
           resultsInterpreter,
           !options.getTestSelectorList().isEmpty(),
           !options.getEnvironmentOverrides().isEmpty());
+      if (isTestRunRequired &&
+          isTestRunAvoidedByLoadedClasses(
+              test,
+              executionContext,
+              sourcePathResolver,
+              options,
+              resultsInterpreter)) {
+        LOG.debug("Classes loaded by %s are unchanged, not running it.", test.getBuildTarget());
+        isTestRunRequired = false;
+        testRulesWithUnchangedLoadedClasses++;
+      }
+      if (isTestRunRequired) {
+        testRulesRun++;
+      }
 
       final Map<String, UUID> testUUIDMap = new HashMap<>();
       final AtomicReference<TestStatusMessageEvent.Started> currentTestStatusMessageEvent =
@@ -329,6 +345,16 @@ public class TestRunning {
       }
     }
 
+    if (options.isSelectingTestsByLoadedClasses()) {
+      String message = String.format(
+          "Running %d of %d test rules, %d skipped as the classes they load are unchanged.",
+          testRulesRun,
+          totalNumberOfTests,
+          testRulesWithUnchangedLoadedClasses);
+      LOG.info(message);
+      params.getBuckEventBus().post(ConsoleEvent.info(message));
+    }
+
     for (TestRun testRun : parallelTestRuns) {
       ListenableFuture<TestResults> testResults = runStepsAndYieldResult(
           stepRunner,
@@ -648,6 +674,32 @@ public class TestRunning {
     return isTestRunRequired;
   }
 
+  /**
+   * Checks whether a test whose rule key has changed still doesn't have to be run, because it is a
+   * Java test which was last run recording the classes it loaded, and none of those have changed
+   * since. The results of that run are then used instead.
+   */
+  @VisibleForTesting
+  static boolean isTestRunAvoidedByLoadedClasses(
+      TestRule test,
+      ExecutionContext executionContext,
+      SourcePathResolver pathResolver,
+      TestRunningOptions options,
+      Callable<TestResults> testResultInterpreter) throws IOException {
+    if (!options.isSelectingTestsByLoadedClasses() ||
+        !(test instanceof JavaTest) ||
+        executionContext.isDebugEnabled() ||
+        !options.getTestSelectorList().isEmpty() ||
+        !options.getEnvironmentOverrides().isEmpty() ||
+        options.getTestResultCacheMode() == TestRunningOptions.TestResultCacheMode.DISABLED ||
+        !test.hasTestResultFiles() ||
+        !((JavaTest) test).areLoadedClassesUnchanged(executionContext, options, pathResolver)) {
+      return false;
+    }
+    return options.getTestResultCacheMode() == TestRunningOptions.TestResultCacheMode.ENABLED ||
+        areTestsSuccessful(testResultInterpreter);
+  }
+
   private static boolean areTestsSuccessful(Callable<TestResults> callable) {
     try {
       return callable.call().isSuccess();
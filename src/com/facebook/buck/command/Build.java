@@ -49,6 +49,7 @@ import com.facebook.buck.step.StepFailedException;
 import com.facebook.buck.step.TargetDevice;
 import com.facebook.buck.step.TargetDeviceOptions;
 import com.facebook.buck.timing.Clock;
+import com.facebook.buck.util.ClassLoaderCache;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.ExceptionWithHumanReadableMessage;
 import com.facebook.buck.util.HumanReadableException;
@@ -122,6 +123,7 @@ public class Build implements Closeable {
       Optional<AdbOptions> adbOptions,
       Optional<TargetDeviceOptions> targetDeviceOptions,
       Optional<ConcurrentMap<String, WorkerProcessPool>> persistentWorkerPools,
+      Optional<ClassLoaderCache> persistentClassLoaderCache,
       Map<ExecutorPool, ListeningExecutorService> executors) {
     this.actionGraph = actionGraph;
     this.ruleResolver = ruleResolver;
@@ -143,6 +145,9 @@ public class Build implements Closeable {
         .setConcurrencyLimit(concurrencyLimit)
         .setAdbOptions(adbOptions)
         .setPersistentWorkerPools(persistentWorkerPools)
+        .setClassLoaderCache(
+            persistentClassLoaderCache.map(ClassLoaderCache::addRef)
+                .orElseGet(ClassLoaderCache::new))
         .setTargetDeviceOptions(targetDeviceOptions)
         .setExecutors(executors)
         .setCellPathResolver(rootCell.getCellPathResolver())
@@ -81,6 +81,15 @@ interface AbstractCxxPlatform extends FlavorConvertible {
   Tool getRanlib();
   List<String> getRanlibflags();
 
+  /**
+   * @return whether archives are written by Buck itself rather than by running the archiver, when
+   *     the archiver's format allows it.
+   */
+  @Value.Default
+  default boolean getUseBuiltinArchiver() {
+    return false;
+  }
+
   SymbolNameTool getSymbolNameTool();
 
   String getSharedLibraryExtension();
@@ -16,23 +16,20 @@
 
 package com.facebook.buck.cxx;
 
-import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
-
 import com.facebook.buck.cxx.elf.Elf;
+import com.facebook.buck.io.MappedFileContentsScrubber;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.fs.FileScrubberStep;
 import com.facebook.buck.util.immutables.BuckStyleTuple;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 
 import org.immutables.value.Value;
 
-import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 
 /**
  * A step which zeros out the program headers of an ELF file.
@@ -44,14 +41,11 @@ abstract class AbstractElfClearProgramHeadersStep implements Step {
   abstract ProjectFilesystem getFilesystem();
   abstract Path getPath();
 
-  @Override
-  public StepExecutionResult execute(ExecutionContext context) throws IOException {
-    try (FileChannel channel =
-             FileChannel.open(
-                 getFilesystem().resolve(getPath()),
-                 StandardOpenOption.READ,
-                 StandardOpenOption.WRITE)) {
-      MappedByteBuffer buffer = channel.map(READ_WRITE, 0, channel.size());
+  /**
+   * @return a scrubber which zeroes out the program headers of an ELF file.
+   */
+  static MappedFileContentsScrubber scrubber() {
+    return buffer -> {
       Elf elf = new Elf(buffer);
       Preconditions.checkState(
           elf.header.e_phoff == (int) elf.header.e_phoff,
@@ -60,8 +54,13 @@ abstract class AbstractElfClearProgramHeadersStep implements Step {
       for (int index = 0; index < elf.header.e_phnum * elf.header.e_phentsize; index++) {
         buffer.put((byte) 0);
       }
-    }
-    return StepExecutionResult.SUCCESS;
+    };
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) throws InterruptedException {
+    return new FileScrubberStep(getFilesystem(), getPath(), ImmutableList.of(scrubber()))
+        .execute(context);
   }
 
   @Override
@@ -16,27 +16,25 @@
 
 package com.facebook.buck.cxx;
 
-import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
-
 import com.facebook.buck.cxx.elf.Elf;
 import com.facebook.buck.cxx.elf.ElfDynamicSection;
 import com.facebook.buck.cxx.elf.ElfHeader;
 import com.facebook.buck.cxx.elf.ElfSection;
+import com.facebook.buck.io.FileScrubber;
+import com.facebook.buck.io.MappedFileContentsScrubber;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.Pair;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.fs.FileScrubberStep;
 import com.facebook.buck.util.immutables.BuckStyleTuple;
+import com.google.common.collect.ImmutableList;
 
 import org.immutables.value.Value;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.EnumSet;
 import java.util.Optional;
 
@@ -59,22 +57,17 @@ abstract class AbstractElfDynamicSectionScrubberStep implements Step {
   abstract ProjectFilesystem getFilesystem();
   abstract Path getPath();
 
-  @Override
-  public StepExecutionResult execute(ExecutionContext context) throws IOException {
-    try (FileChannel channel =
-             FileChannel.open(
-                 getFilesystem().resolve(getPath()),
-                 StandardOpenOption.READ,
-                 StandardOpenOption.WRITE)) {
-      MappedByteBuffer buffer = channel.map(READ_WRITE, 0, channel.size());
+  /**
+   * @return a scrubber which zeroes out the values of all but the whitelisted tags in the
+   *     ".dynamic" section of an ELF file.
+   */
+  static MappedFileContentsScrubber scrubber() {
+    return buffer -> {
       Elf elf = new Elf(buffer);
       Optional<ElfSection> section = elf.getSectionByName(SECTION).map(Pair::getSecond);
       if (!section.isPresent()) {
-        throw new IOException(
-            String.format(
-                "Error parsing ELF file %s: no such section \"%s\"",
-                getPath(),
-                SECTION));
+        throw new FileScrubber.ScrubException(
+            String.format("Error parsing ELF file: no such section \"%s\"", SECTION));
       }
       for (ByteBuffer body = section.get().body; body.hasRemaining(); ) {
         ElfDynamicSection.DTag dTag =
@@ -96,8 +89,13 @@ abstract class AbstractElfDynamicSectionScrubberStep implements Step {
           }
         }
       }
-    }
-    return StepExecutionResult.SUCCESS;
+    };
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) throws InterruptedException {
+    return new FileScrubberStep(getFilesystem(), getPath(), ImmutableList.of(scrubber()))
+        .execute(context);
   }
 
   @Override
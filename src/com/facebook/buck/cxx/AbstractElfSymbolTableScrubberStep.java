@@ -16,16 +16,17 @@
 
 package com.facebook.buck.cxx;
 
-import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
-
 import com.facebook.buck.cxx.elf.Elf;
 import com.facebook.buck.cxx.elf.ElfSection;
 import com.facebook.buck.cxx.elf.ElfSymbolTable;
+import com.facebook.buck.io.FileScrubber;
+import com.facebook.buck.io.MappedFileContentsScrubber;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.Pair;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.fs.FileScrubberStep;
 import com.facebook.buck.util.MoreIterables;
 import com.facebook.buck.util.RichStream;
 import com.facebook.buck.util.immutables.BuckStyleTuple;
@@ -35,11 +36,7 @@ import com.google.common.collect.ImmutableList;
 
 import org.immutables.value.Value;
 
-import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.Optional;
 
 /**
@@ -57,7 +54,7 @@ abstract class AbstractElfSymbolTableScrubberStep implements Step {
   abstract String getSection();
   abstract boolean isAllowMissing();
 
-  private ElfSymbolTable fixUpSymbolTable(ElfSymbolTable table) {
+  private static ElfSymbolTable fixUpSymbolTable(ElfSymbolTable table) {
     ImmutableList.Builder<ElfSymbolTable.Entry> entries = ImmutableList.builder();
 
     // The first symbol serves as the undefined symbol index, so always include it and start
@@ -91,39 +88,40 @@ abstract class AbstractElfSymbolTableScrubberStep implements Step {
     return new ElfSymbolTable(entries.build());
   }
 
-  @Override
-  public StepExecutionResult execute(ExecutionContext context) throws IOException {
-    try (FileChannel channel =
-             FileChannel.open(
-                 getFilesystem().resolve(getPath()),
-                 StandardOpenOption.READ,
-                 StandardOpenOption.WRITE)) {
-      MappedByteBuffer buffer = channel.map(READ_WRITE, 0, channel.size());
+  /**
+   * @return a scrubber which fixes up the symbol table in {@code section} of an ELF file.
+   */
+  static MappedFileContentsScrubber scrubber(String section, boolean allowMissing) {
+    return buffer -> {
       Elf elf = new Elf(buffer);
 
       // Locate the symbol table section.
-      Optional<ElfSection> section = elf.getSectionByName(getSection()).map(Pair::getSecond);
-      if (!section.isPresent()) {
-        if (isAllowMissing()) {
-          return StepExecutionResult.SUCCESS;
+      Optional<ElfSection> symbolTable = elf.getSectionByName(section).map(Pair::getSecond);
+      if (!symbolTable.isPresent()) {
+        if (allowMissing) {
+          return;
         } else {
-          throw new IOException(
-              String.format(
-                  "Error parsing ELF file %s: no such section \"%s\"",
-                  getPath(),
-                  getSection()));
+          throw new FileScrubber.ScrubException(
+              String.format("Error parsing ELF file: no such section \"%s\"", section));
         }
       }
 
       // Read in and fixup the symbol table then write it back out.
-      ElfSymbolTable table = ElfSymbolTable.parse(elf.header.ei_class, section.get().body);
+      ElfSymbolTable table = ElfSymbolTable.parse(elf.header.ei_class, symbolTable.get().body);
       ElfSymbolTable fixedUpTable = fixUpSymbolTable(table);
       Preconditions.checkState(table.entries.size() == fixedUpTable.entries.size());
-      section.get().body.rewind();
-      fixedUpTable.write(elf.header.ei_class, section.get().body);
-    }
+      symbolTable.get().body.rewind();
+      fixedUpTable.write(elf.header.ei_class, symbolTable.get().body);
+    };
+  }
 
-    return StepExecutionResult.SUCCESS;
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) throws InterruptedException {
+    return new FileScrubberStep(
+        getFilesystem(),
+        getPath(),
+        ImmutableList.of(scrubber(getSection(), isAllowMissing())))
+        .execute(context);
   }
 
   @Override
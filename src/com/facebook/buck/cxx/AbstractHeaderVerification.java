@@ -20,10 +20,12 @@ import com.facebook.buck.rules.RuleKeyAppendable;
 import com.facebook.buck.rules.RuleKeyObjectSink;
 import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 
 import org.immutables.value.Value;
 
+import java.util.Optional;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
@@ -54,9 +56,26 @@ abstract class AbstractHeaderVerification implements RuleKeyAppendable {
   @Value.NaturalOrder
   protected abstract ImmutableSortedSet<String> getPlatformWhitelist();
 
+  /**
+   * @return the whitelist regexes which only match the paths starting with some literal string,
+   *     such as {@code /usr/include/.*}, as those strings, which are cheaper to check.
+   */
+  @Value.Derived
+  protected ImmutableList<String> getWhitelistPrefixes() {
+    return Stream.concat(getWhitelist().stream(), getPlatformWhitelist().stream())
+        .map(AbstractHeaderVerification::getLiteralPrefix)
+        .filter(Optional::isPresent)
+        .map(Optional::get)
+        .collect(MoreCollectors.toImmutableList());
+  }
+
+  /**
+   * @return the whitelist regexes which can't be checked as {@link #getWhitelistPrefixes()}.
+   */
   @Value.Derived
   protected Iterable<Pattern> getWhitelistPatterns() {
     return Stream.concat(getWhitelist().stream(), getPlatformWhitelist().stream())
+        .filter(regex -> !getLiteralPrefix(regex).isPresent())
         .map(Pattern::compile)
         .collect(MoreCollectors.toImmutableList());
   }
@@ -71,6 +90,13 @@ abstract class AbstractHeaderVerification implements RuleKeyAppendable {
    * @return whether the given header has been whitelisted.
    */
   public boolean isWhitelisted(String header) {
+    if (!getWhitelistPrefixes().isEmpty() && !containsLineTerminator(header)) {
+      for (String prefix : getWhitelistPrefixes()) {
+        if (header.startsWith(prefix)) {
+          return true;
+        }
+      }
+    }
     for (Pattern pattern : getWhitelistPatterns()) {
       if (pattern.matcher(header).matches()) {
         return true;
@@ -79,6 +105,70 @@ abstract class AbstractHeaderVerification implements RuleKeyAppendable {
     return false;
   }
 
+  /**
+   * @return the string matched by {@code regex} before a trailing {@code .*}, if the rest of it
+   *     only matches that literal string.
+   */
+  static Optional<String> getLiteralPrefix(String regex) {
+    int end = regex.length();
+    if (end > 0 && regex.charAt(end - 1) == '$' &&
+        (end < 2 || regex.charAt(end - 2) != '\\')) {
+      end--;
+    }
+    if (!regex.startsWith(".*", end - 2) ||
+        (end > 2 && regex.charAt(end - 3) == '\\')) {
+      return Optional.empty();
+    }
+    end -= 2;
+    int start = regex.startsWith("^") ? 1 : 0;
+
+    StringBuilder prefix = new StringBuilder();
+    int i = start;
+    while (i < end) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        if (i + 1 >= end) {
+          return Optional.empty();
+        }
+        char escaped = regex.charAt(i + 1);
+        if (escaped == 'Q') {
+          int quoteEnd = regex.indexOf("\\E", i + 2);
+          if (quoteEnd == -1 || quoteEnd + 2 > end) {
+            return Optional.empty();
+          }
+          prefix.append(regex, i + 2, quoteEnd);
+          i = quoteEnd + 2;
+          continue;
+        }
+        // Escaped letters and digits are character classes and back references.
+        if (Character.isLetterOrDigit(escaped)) {
+          return Optional.empty();
+        }
+        prefix.append(escaped);
+        i += 2;
+      } else if (".[]{}()*+?^$|".indexOf(c) != -1) {
+        return Optional.empty();
+      } else {
+        prefix.append(c);
+        i++;
+      }
+    }
+    return Optional.of(prefix.toString());
+  }
+
+  /**
+   * @return whether {@code header} has any of the characters {@code .} doesn't match.
+   */
+  private static boolean containsLineTerminator(String header) {
+    for (int i = 0; i < header.length(); i++) {
+      char c = header.charAt(i);
+      if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   public void appendToRuleKey(RuleKeyObjectSink sink) {
     sink.setReflectively("mode", getMode());
@@ -17,6 +17,7 @@
 package com.facebook.buck.cxx;
 
 import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.AddToRuleKey;
 import com.facebook.buck.rules.BuildContext;
@@ -63,6 +64,8 @@ public class Archive extends AbstractBuildRule implements SupportsInputBasedRule
   private final Path output;
   @AddToRuleKey
   private final ImmutableList<SourcePath> inputs;
+  @AddToRuleKey
+  private final boolean useBuiltinArchiver;
 
   private Archive(
       BuildRuleParams params,
@@ -72,7 +75,8 @@ public class Archive extends AbstractBuildRule implements SupportsInputBasedRule
       ImmutableList<String> ranlibFlags,
       Contents contents,
       Path output,
-      ImmutableList<SourcePath> inputs) {
+      ImmutableList<SourcePath> inputs,
+      boolean useBuiltinArchiver) {
     super(params);
     Preconditions.checkState(
         contents == Contents.NORMAL || archiver.supportsThinArchives(),
@@ -88,6 +92,7 @@ public class Archive extends AbstractBuildRule implements SupportsInputBasedRule
     this.contents = contents;
     this.output = output;
     this.inputs = inputs;
+    this.useBuiltinArchiver = useBuiltinArchiver;
   }
 
   public static Archive from(
@@ -108,7 +113,8 @@ public class Archive extends AbstractBuildRule implements SupportsInputBasedRule
         platform.getRanlibflags(),
         contents,
         output,
-        inputs);
+        inputs,
+        platform.getUseBuiltinArchiver());
   }
 
   /**
@@ -128,6 +134,38 @@ public class Archive extends AbstractBuildRule implements SupportsInputBasedRule
       Contents contents,
       Path output,
       ImmutableList<SourcePath> inputs) {
+    return from(
+        target,
+        baseParams,
+        ruleFinder,
+        archiver,
+        arFlags,
+        ranlib,
+        ranlibFlags,
+        contents,
+        output,
+        inputs,
+        /* useBuiltinArchiver */ false);
+  }
+
+  /**
+   * Like {@link #from(BuildTarget, BuildRuleParams, SourcePathRuleFinder, Archiver, ImmutableList,
+   * Tool, ImmutableList, Contents, Path, ImmutableList)}, but writes the archive with
+   * {@link ArchiveWriter} instead of running the archiver when {@code useBuiltinArchiver} is set
+   * and the archiver supports it.
+   */
+  public static Archive from(
+      BuildTarget target,
+      BuildRuleParams baseParams,
+      SourcePathRuleFinder ruleFinder,
+      Archiver archiver,
+      ImmutableList<String> arFlags,
+      Tool ranlib,
+      ImmutableList<String> ranlibFlags,
+      Contents contents,
+      Path output,
+      ImmutableList<SourcePath> inputs,
+      boolean useBuiltinArchiver) {
 
     // Convert the input build params into ones specialized for this archive build rule.
     // In particular, we only depend on BuildRules directly from the input file SourcePaths.
@@ -150,7 +188,8 @@ public class Archive extends AbstractBuildRule implements SupportsInputBasedRule
         ranlibFlags,
         contents,
         output,
-        inputs);
+        inputs,
+        useBuiltinArchiver && archiver.supportsBuiltinArchiver());
   }
 
   @Override
@@ -173,11 +212,44 @@ public class Archive extends AbstractBuildRule implements SupportsInputBasedRule
               .equals(getProjectFilesystem().getRootPath()));
     }
 
+    if (useBuiltinArchiver) {
+      // The archive is written deterministically, and with its symbol index, in a single step,
+      // unless it holds objects other than ELF objects, which are left to the archiver.
+      Path symbolCache = BuildTargets.getScratchPath(
+          getProjectFilesystem(),
+          getBuildTarget(),
+          "%s/symbols");
+      return ImmutableList.of(
+          MkdirStep.of(getProjectFilesystem(), output.getParent()),
+          MkdirStep.of(getProjectFilesystem(), symbolCache.getParent()),
+          RmStep.of(getProjectFilesystem(), output),
+          new WriteArchiveStep(
+              getProjectFilesystem(),
+              output,
+              inputs.stream()
+                  .map(resolver::getRelativePath)
+                  .collect(MoreCollectors.toImmutableList()),
+              contents == Contents.THIN,
+              symbolCache,
+              getArchiverSteps(resolver)));
+    }
+
+    return ImmutableList.<Step>builder()
+        .add(
+            MkdirStep.of(getProjectFilesystem(), output.getParent()),
+            RmStep.of(getProjectFilesystem(), output))
+        .addAll(getArchiverSteps(resolver))
+        .build();
+  }
+
+  /**
+   * @return the steps which run the archiver, and ranlib and the scrubbers after it, to write the
+   *     archive.
+   */
+  private ImmutableList<Step> getArchiverSteps(SourcePathResolver resolver) {
     ImmutableList.Builder<Step> builder = ImmutableList.builder();
 
     builder.add(
-        MkdirStep.of(getProjectFilesystem(), output.getParent()),
-        RmStep.of(getProjectFilesystem(), output),
         new ArchiveStep(
             getProjectFilesystem(),
             archiver.getEnvironment(resolver),
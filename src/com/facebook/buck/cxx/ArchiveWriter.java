@@ -0,0 +1,259 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.cxx.elf.Elf;
+import com.facebook.buck.cxx.elf.ElfSection;
+import com.facebook.buck.cxx.elf.ElfSectionHeader;
+import com.facebook.buck.cxx.elf.ElfSymbolTable;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes archives in the GNU format, regular or thin, with a symbol index, as {@code ar} followed
+ * by {@code ranlib} would, and with the same deterministic meta-data the archive scrubbers write.
+ */
+final class ArchiveWriter {
+
+  private static final int HEADER_SIZE = 60;
+  private static final int MAX_SHORT_NAME_LENGTH = 15;
+
+  private static final String DATE =
+      Integer.toString(ObjectFileCommonModificationDate.COMMON_MODIFICATION_TIME_STAMP);
+  private static final String MODE = "0100644";
+
+  // Special section indices of symbols which aren't defined in a regular section.
+  private static final int SHN_UNDEF = 0;
+  private static final int SHN_LORESERVE = 0xff00;
+  private static final int SHN_ABS = 0xfff1;
+  private static final int SHN_COMMON = 0xfff2;
+
+  private ArchiveWriter() {}
+
+  /**
+   * An object file to add to an archive.
+   */
+  static final class Member {
+    private final String name;
+    private final Path path;
+    private final long size;
+    private final ImmutableList<String> symbols;
+
+    /**
+     * @param name the name of the member in the archive, which for thin archives is the path to
+     *     the object relative to the archive.
+     * @param path the path to read the object from.
+     * @param symbols the symbols the object defines, to add to the symbol index.
+     */
+    Member(String name, Path path, long size, ImmutableList<String> symbols) {
+      this.name = name;
+      this.path = path;
+      this.size = size;
+      this.symbols = symbols;
+    }
+  }
+
+  /**
+   * @return the global symbols defined by the ELF object in {@code buffer}, in the order they
+   *     appear in its symbol table.
+   */
+  static ImmutableList<String> getDefinedSymbols(ByteBuffer buffer) throws IOException {
+    if (!Elf.isElf(buffer)) {
+      throw new IOException("not an ELF object file");
+    }
+    Elf elf = new Elf(buffer);
+    ImmutableList.Builder<String> symbols = ImmutableList.builder();
+    for (int index = 0; index < elf.getNumberOfSections(); index++) {
+      ElfSection section = elf.getSectionByIndex(index);
+      if (section.header.sh_type != ElfSectionHeader.SHType.SHT_SYMTAB) {
+        continue;
+      }
+      ElfSection stringTable = elf.getSectionByIndex((int) section.header.sh_link);
+      ElfSymbolTable table = ElfSymbolTable.parse(elf.header.ei_class, section.body);
+      for (ElfSymbolTable.Entry entry : table.entries) {
+        if (entry.st_info.st_bind != ElfSymbolTable.Entry.Info.Bind.STB_LOCAL &&
+            entry.st_info.st_type != ElfSymbolTable.Entry.Info.Type.STT_SECTION &&
+            entry.st_info.st_type != ElfSymbolTable.Entry.Info.Type.STT_FILE &&
+            entry.st_shndx != SHN_UNDEF &&
+            (entry.st_shndx < SHN_LORESERVE ||
+                entry.st_shndx == SHN_ABS ||
+                entry.st_shndx == SHN_COMMON)) {
+          symbols.add(stringTable.lookupString(entry.st_name));
+        }
+      }
+    }
+    return symbols.build();
+  }
+
+  /**
+   * Writes an archive holding {@code members}, in order, to {@code output}.
+   */
+  static void write(OutputStream output, boolean thin, List<Member> members) throws IOException {
+    output.write(
+        thin ? ObjectFileScrubbers.GLOBAL_THIN_HEADER : ObjectFileScrubbers.GLOBAL_HEADER);
+    if (members.isEmpty()) {
+      return;
+    }
+
+    // Long names, and every name in a thin archive, are kept in a table of their own which the
+    // member headers refer to by offset.
+    ByteArrayOutputStream longNames = new ByteArrayOutputStream();
+    String[] headerNames = new String[members.size()];
+    for (int i = 0; i < members.size(); i++) {
+      String name = members.get(i).name;
+      if (!thin && name.length() <= MAX_SHORT_NAME_LENGTH) {
+        headerNames[i] = name + "/";
+      } else {
+        headerNames[i] = "/" + longNames.size();
+        longNames.write((name + "/\n").getBytes(Charsets.UTF_8));
+      }
+    }
+    if (longNames.size() % 2 != 0) {
+      longNames.write('\n');
+    }
+
+    // Lay the members out after the symbol index, which holds their offsets. Archives whose
+    // members don't all start within 4GB need an index with 64-bit offsets.
+    int symbolCount = 0;
+    int symbolNamesSize = 0;
+    for (Member member : members) {
+      symbolCount += member.symbols.size();
+      for (String symbol : member.symbols) {
+        symbolNamesSize += symbol.getBytes(Charsets.UTF_8).length + 1;
+      }
+    }
+    long[] offsets = new long[members.size()];
+    int offsetSize = 4;
+    long indexSize =
+        layOut(thin, members, offsetSize, symbolCount, symbolNamesSize, longNames, offsets);
+    if (offsets[offsets.length - 1] > 0xffffffffL) {
+      offsetSize = 8;
+      indexSize =
+          layOut(thin, members, offsetSize, symbolCount, symbolNamesSize, longNames, offsets);
+    }
+
+    writeHeader(output, offsetSize == 4 ? "/" : "/SYM64/", indexSize);
+    writeOffset(output, offsetSize, symbolCount);
+    for (int i = 0; i < members.size(); i++) {
+      for (int j = 0; j < members.get(i).symbols.size(); j++) {
+        writeOffset(output, offsetSize, offsets[i]);
+      }
+    }
+    for (Member member : members) {
+      for (String symbol : member.symbols) {
+        output.write(symbol.getBytes(Charsets.UTF_8));
+        output.write(0);
+      }
+    }
+    if ((offsetSize * (symbolCount + 1L) + symbolNamesSize) % 2 != 0) {
+      output.write(0);
+    }
+
+    if (longNames.size() > 0) {
+      writeHeader(output, "//", longNames.size());
+      longNames.writeTo(output);
+    }
+
+    for (int i = 0; i < members.size(); i++) {
+      Member member = members.get(i);
+      writeHeader(output, headerNames[i], member.size);
+      if (!thin) {
+        long copied = Files.copy(member.path, output);
+        if (copied != member.size) {
+          throw new IOException(
+              String.format(
+                  "%s changed size while being archived: expected %d bytes but read %d",
+                  member.path,
+                  member.size,
+                  copied));
+        }
+        if (member.size % 2 != 0) {
+          output.write('\n');
+        }
+      }
+    }
+  }
+
+  /**
+   * Fills in the offsets of the members' headers in an archive with a symbol index using offsets
+   * of the given size.
+   *
+   * @return the size of the symbol index, padded to an even number of bytes.
+   */
+  private static long layOut(
+      boolean thin,
+      List<Member> members,
+      int offsetSize,
+      int symbolCount,
+      int symbolNamesSize,
+      ByteArrayOutputStream longNames,
+      long[] offsets) {
+    long indexSize = offsetSize * (symbolCount + 1L) + symbolNamesSize;
+    indexSize += indexSize % 2;
+    long offset = ObjectFileScrubbers.GLOBAL_HEADER.length + HEADER_SIZE + indexSize;
+    if (longNames.size() > 0) {
+      offset += HEADER_SIZE + longNames.size();
+    }
+    for (int i = 0; i < members.size(); i++) {
+      offsets[i] = offset;
+      offset += HEADER_SIZE;
+      if (!thin) {
+        offset += members.get(i).size + members.get(i).size % 2;
+      }
+    }
+    return indexSize;
+  }
+
+  private static void writeOffset(OutputStream output, int size, long value) throws IOException {
+    for (int shift = (size - 1) * 8; shift >= 0; shift -= 8) {
+      output.write((int) (value >>> shift));
+    }
+  }
+
+  private static void writeHeader(OutputStream output, String name, long size)
+      throws IOException {
+    StringBuilder header = new StringBuilder(HEADER_SIZE)
+        .append(field(name, 16, false))
+        .append(field(DATE, 12, true))
+        .append(field("0", 6, true))
+        .append(field("0", 6, true))
+        .append(field(MODE, 8, true))
+        .append(field(Long.toString(size), 10, false))
+        .append("`\n");
+    output.write(header.toString().getBytes(Charsets.US_ASCII));
+  }
+
+  private static String field(String value, int length, boolean padStart) {
+    Preconditions.checkArgument(
+        value.length() <= length,
+        "archive header field \"%s\" is longer than %s characters",
+        value,
+        length);
+    return padStart ? Strings.padStart(value, length, ' ') : Strings.padEnd(value, length, ' ');
+  }
+
+}
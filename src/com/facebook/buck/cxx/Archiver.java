@@ -26,6 +26,12 @@ public interface Archiver extends Tool {
 
   boolean supportsThinArchives();
 
+  /**
+   * @return whether this archiver writes archives in the GNU format, which Buck can write itself
+   *     instead of running the archiver.
+   */
+  boolean supportsBuiltinArchiver();
+
   ImmutableList<String> getArchiveOptions(boolean isThinArchive);
 
   ImmutableList<String> outputArgs(String outputPath);
@@ -16,8 +16,8 @@
 
 package com.facebook.buck.cxx;
 
-import com.facebook.buck.io.FileContentsScrubber;
 import com.facebook.buck.io.FileScrubber;
+import com.facebook.buck.io.MappedFileContentsScrubber;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.RuleKeyObjectSink;
 import com.facebook.buck.rules.SourcePath;
@@ -29,8 +29,6 @@ import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
 public class BsdArchiver implements Archiver {
@@ -38,9 +36,8 @@ public class BsdArchiver implements Archiver {
   private static final byte[] EXPECTED_GLOBAL_HEADER = "!<arch>\n".getBytes(Charsets.US_ASCII);
   private static final byte[] LONG_NAME_MARKER = "#1/".getBytes(Charsets.US_ASCII);
 
-  private static final FileContentsScrubber SYMBOL_NAME_TABLE_PADDING_SCRUBBER =
-      file -> {
-        MappedByteBuffer map = file.map(FileChannel.MapMode.READ_WRITE, 0, file.size());
+  private static final MappedFileContentsScrubber SYMBOL_NAME_TABLE_PADDING_SCRUBBER =
+      map -> {
 
         // Grab the global header chunk and verify it's accurate.
         byte[] globalHeader = ObjectFileScrubbers.getBytes(map, EXPECTED_GLOBAL_HEADER.length);
@@ -134,6 +131,11 @@ public class BsdArchiver implements Archiver {
     return false;
   }
 
+  @Override
+  public boolean supportsBuiltinArchiver() {
+    return false;
+  }
+
   @Override
   public ImmutableList<String> getArchiveOptions(boolean isThinArchive) {
     String options = isThinArchive ? "qcT" : "qc";
@@ -195,7 +195,8 @@ public class CxxBinaryDescription implements
               flavoredLinkerMapMode);
       return CxxCompilationDatabase.createCompilationDatabase(
           params,
-          cxxLinkAndCompileRules.compileRules);
+          cxxLinkAndCompileRules.compileRules,
+          cxxBuckConfig.shouldWriteCompilationDatabaseFragments());
     }
 
     if (flavors.contains(CxxCompilationDatabase.UBER_COMPILATION_DATABASE)) {
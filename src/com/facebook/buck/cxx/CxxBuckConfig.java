@@ -272,10 +272,34 @@ public class CxxBuckConfig {
             .build());
   }
 
+  /**
+   * @return how to schedule links in a lane for heavy links, if a threshold for them is set.
+   */
+  public Optional<CxxLinkScheduler> getLinkScheduler() {
+    Optional<Long> thresholdMb = delegate.getLong(cxxSection, "heavy_link_threshold_mb");
+    if (!thresholdMb.isPresent()) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        new CxxLinkScheduler(
+            thresholdMb.get() * 1024 * 1024,
+            delegate.getInteger(cxxSection, "heavy_link_lane_size").orElse(2),
+            delegate.getConcurrencyLimit(),
+            getFlags("heavy_link_threads").orElse(ImmutableList.of())));
+  }
+
   public boolean shouldCacheLinks() {
     return delegate.getBooleanValue(cxxSection, "cache_links", true);
   }
 
+  /**
+   * @return whether compilation databases should also be written as a fragment per directory of
+   *     sources.
+   */
+  public boolean shouldWriteCompilationDatabaseFragments() {
+    return delegate.getBooleanValue(cxxSection, "compilation_database_fragments", false);
+  }
+
   public boolean isPCHEnabled() {
     return delegate.getBooleanValue(cxxSection, "pch_enabled", true);
   }
@@ -291,6 +315,13 @@ public class CxxBuckConfig {
         Archive.Contents.class).orElse(Archive.Contents.NORMAL);
   }
 
+  /**
+   * @return whether to write GNU archives without running the archiver.
+   */
+  public boolean useBuiltinArchiver() {
+    return delegate.getBooleanValue(cxxSection, "use_builtin_archiver", false);
+  }
+
   public ImmutableMap<String, Flavor> getDefaultFlavorsForRuleType(BuildRuleType type) {
     return ImmutableMap.copyOf(
         Maps.transformValues(
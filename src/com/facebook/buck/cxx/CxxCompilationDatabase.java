@@ -34,22 +34,37 @@ import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.step.AbstractExecutionStep;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.fs.MkdirStep;
+import com.facebook.buck.step.fs.RmStep;
 import com.facebook.buck.util.ObjectMappers;
+import com.facebook.buck.util.concurrent.MoreFutures;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
+import javax.annotation.Nullable;
+
 public class CxxCompilationDatabase extends AbstractBuildRule implements HasRuntimeDeps {
   private static final Logger LOG = Logger.get(CxxCompilationDatabase.class);
   public static final Flavor COMPILATION_DATABASE = InternalFlavor.of("compilation-database");
@@ -60,11 +75,24 @@ public class CxxCompilationDatabase extends AbstractBuildRule implements HasRunt
   private final ImmutableSortedSet<CxxPreprocessAndCompile> compileRules;
   @AddToRuleKey(stringify = true)
   private final Path outputJsonFile;
+  @AddToRuleKey
+  private final boolean writeFragments;
   private final ImmutableSortedSet<BuildRule> runtimeDeps;
 
   public static CxxCompilationDatabase createCompilationDatabase(
       BuildRuleParams params,
       Iterable<CxxPreprocessAndCompile> compileAndPreprocessRules) {
+    return createCompilationDatabase(params, compileAndPreprocessRules, false);
+  }
+
+  /**
+   * @param writeFragments whether to also write the entries of the sources in each directory to
+   *     a compilation database of their own, under {@link #getPathToFragments()}.
+   */
+  public static CxxCompilationDatabase createCompilationDatabase(
+      BuildRuleParams params,
+      Iterable<CxxPreprocessAndCompile> compileAndPreprocessRules,
+      boolean writeFragments) {
     ImmutableSortedSet.Builder<BuildRule> deps = ImmutableSortedSet.naturalOrder();
     ImmutableSortedSet.Builder<CxxPreprocessAndCompile> compileRules = ImmutableSortedSet
         .naturalOrder();
@@ -78,12 +106,14 @@ public class CxxCompilationDatabase extends AbstractBuildRule implements HasRunt
             Suppliers.ofInstance(ImmutableSortedSet.of()),
             Suppliers.ofInstance(ImmutableSortedSet.of())),
         compileRules.build(),
+        writeFragments,
         deps.build());
   }
 
   CxxCompilationDatabase(
       BuildRuleParams buildRuleParams,
       ImmutableSortedSet<CxxPreprocessAndCompile> compileRules,
+      boolean writeFragments,
       ImmutableSortedSet<BuildRule> runtimeDeps) {
     super(buildRuleParams);
     LOG.debug(
@@ -95,15 +125,28 @@ public class CxxCompilationDatabase extends AbstractBuildRule implements HasRunt
         getProjectFilesystem(),
         buildRuleParams.getBuildTarget(),
         "__%s.json");
+    this.writeFragments = writeFragments;
     this.runtimeDeps = runtimeDeps;
   }
 
+  /**
+   * @return the directory holding a {@code compile_commands.json} fragment for each directory of
+   *     sources, at the same path relative to it as the sources have relative to their cell, when
+   *     this database writes fragments.
+   */
+  public Path getPathToFragments() {
+    return BuildTargets.getGenPath(getProjectFilesystem(), getBuildTarget(), "__%s_fragments");
+  }
+
   @Override
   public ImmutableList<Step> getBuildSteps(
       BuildContext context,
       BuildableContext buildableContext) {
     ImmutableList.Builder<Step> steps = ImmutableList.builder();
     steps.add(MkdirStep.of(getProjectFilesystem(), outputJsonFile.getParent()));
+    if (writeFragments) {
+      steps.add(RmStep.of(getProjectFilesystem(), getPathToFragments()).withRecursive(true));
+    }
     steps.add(new GenerateCompilationCommandsJson(
         context.getSourcePathResolver(),
         context.getSourcePathResolver().getRelativePath(getSourcePathToOutput())));
@@ -136,6 +179,11 @@ public class CxxCompilationDatabase extends AbstractBuildRule implements HasRunt
 
   class GenerateCompilationCommandsJson extends AbstractExecutionStep {
 
+    private static final String FRAGMENT_NAME = "compile_commands.json";
+
+    // How many entries each thread may have resolved ahead of the one being written.
+    private static final int ENTRIES_AHEAD_PER_THREAD = 16;
+
     private final SourcePathResolver pathResolver;
     private final Path outputRelativePath;
 
@@ -148,9 +196,14 @@ public class CxxCompilationDatabase extends AbstractBuildRule implements HasRunt
     }
 
     @Override
-    public StepExecutionResult execute(ExecutionContext context) {
-      Iterable<CxxCompilationDatabaseEntry> entries = createEntries();
-      return StepExecutionResult.of(writeOutput(entries, context));
+    public StepExecutionResult execute(ExecutionContext context) throws InterruptedException {
+      try {
+        writeOutput(context);
+      } catch (IOException e) {
+        logError(e, context);
+        return StepExecutionResult.ERROR;
+      }
+      return StepExecutionResult.SUCCESS;
     }
 
     @VisibleForTesting
@@ -177,18 +230,125 @@ public class CxxCompilationDatabase extends AbstractBuildRule implements HasRunt
           arguments);
     }
 
-    private int writeOutput(
-        Iterable<CxxCompilationDatabaseEntry> entries,
-        ExecutionContext context) {
-      try (OutputStream outputStream =
-               getProjectFilesystem().newFileOutputStream(outputRelativePath)) {
-        ObjectMappers.WRITER.writeValue(outputStream, entries);
-      } catch (IOException e) {
-        logError(e, context);
-        return 1;
+    /**
+     * @return the directory of the source of {@code compileRule}, relative to its cell.
+     */
+    private Path getSourceDirectory(CxxPreprocessAndCompile compileRule) {
+      Path parent = pathResolver.getRelativePath(compileRule.getInput()).getParent();
+      return parent == null ? Paths.get("") : parent;
+    }
+
+    /**
+     * Writes each entry as soon as it's been resolved, rather than gathering them all first, while
+     * the entries after it are resolved in parallel.
+     */
+    private void writeOutput(ExecutionContext context) throws IOException {
+      // Fragments are written one at a time, so the sources are taken a directory at a time.
+      List<CxxPreprocessAndCompile> rules = new ArrayList<>(compileRules);
+      Map<CxxPreprocessAndCompile, Path> directories = new HashMap<>();
+      if (writeFragments) {
+        for (CxxPreprocessAndCompile compileRule : rules) {
+          directories.put(compileRule, getSourceDirectory(compileRule));
+        }
+        rules.sort(Comparator.comparing(directories::get));
       }
 
-      return 0;
+      int parallelism = context.getConcurrencyLimit().threadLimit;
+      ListeningExecutorService executorService =
+          parallelism > 1 ?
+              context.getExecutorService(ExecutorPool.CPU) :
+              MoreExecutors.newDirectExecutorService();
+      try (EntryWriter writer = new EntryWriter(directories);
+           MoreFutures.InFlightFutures<
+               Map.Entry<CxxPreprocessAndCompile, CxxCompilationDatabaseEntry>,
+               IOException> inFlight =
+               MoreFutures.inFlight(
+                   parallelism * ENTRIES_AHEAD_PER_THREAD,
+                   IOException.class,
+                   ruleAndEntry -> writer.write(ruleAndEntry.getKey(), ruleAndEntry.getValue()))) {
+        for (CxxPreprocessAndCompile compileRule : rules) {
+          inFlight.add(
+              executorService.submit(
+                  () -> new AbstractMap.SimpleEntry<>(compileRule, createEntry(compileRule))));
+        }
+        inFlight.finish();
+        writer.finish();
+      }
+    }
+
+    /**
+     * Writes entries to the compilation database, and to the fragment of the directory of each
+     * one's source if fragments are written.
+     */
+    private class EntryWriter implements Closeable {
+
+      private final Map<CxxPreprocessAndCompile, Path> directories;
+      private final JsonGenerator output;
+      @Nullable
+      private Path fragmentDirectory;
+      @Nullable
+      private JsonGenerator fragment;
+
+      EntryWriter(Map<CxxPreprocessAndCompile, Path> directories) throws IOException {
+        this.directories = directories;
+        this.output =
+            ObjectMappers.createGenerator(
+                new BufferedOutputStream(
+                    getProjectFilesystem().newFileOutputStream(outputRelativePath)));
+        output.writeStartArray();
+      }
+
+      void write(
+          CxxPreprocessAndCompile compileRule,
+          CxxCompilationDatabaseEntry entry) throws IOException {
+        ObjectMappers.WRITER.writeValue(output, entry);
+
+        if (writeFragments) {
+          Path directory = Preconditions.checkNotNull(directories.get(compileRule));
+          if (!directory.equals(fragmentDirectory)) {
+            if (fragment != null) {
+              closeFragment(fragment);
+            }
+            fragmentDirectory = directory;
+            fragment = openFragment(directory);
+          }
+          ObjectMappers.WRITER.writeValue(fragment, entry);
+        }
+      }
+
+      void finish() throws IOException {
+        output.writeEndArray();
+        if (fragment != null) {
+          closeFragment(fragment);
+          fragment = null;
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        try {
+          if (fragment != null) {
+            fragment.close();
+          }
+        } finally {
+          output.close();
+        }
+      }
+    }
+
+    private JsonGenerator openFragment(Path directory) throws IOException {
+      Path path = getPathToFragments().resolve(directory).resolve(FRAGMENT_NAME);
+      getProjectFilesystem().mkdirs(path.getParent());
+      JsonGenerator fragment =
+          ObjectMappers.createGenerator(
+              new BufferedOutputStream(getProjectFilesystem().newFileOutputStream(path)));
+      fragment.writeStartArray();
+      return fragment;
+    }
+
+    private void closeFragment(JsonGenerator fragment) throws IOException {
+      fragment.writeEndArray();
+      fragment.close();
     }
 
     private void logError(Throwable throwable, ExecutionContext context) {
@@ -898,7 +898,7 @@ public class CxxDescriptionEnhancer {
     // Setup the header symlink tree and combine all the preprocessor input from this rule
     // and all dependencies.
     boolean shouldCreatePrivateHeadersSymlinks = xcodePrivateHeadersSymlinks.orElse(
-        cxxBuckConfig.getPrivateHeadersSymlinksEnabled());
+        cxxPlatform.getPrivateHeadersSymlinksEnabled());
     HeaderSymlinkTree headerSymlinkTree = requireHeaderSymlinkTree(
         params,
         resolver,
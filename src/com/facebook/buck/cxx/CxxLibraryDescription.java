@@ -792,7 +792,10 @@ public class CxxLibraryDescription implements
               CxxSourceRuleFactory.PicType.PIC,
               args,
               cxxDeps.get(resolver, cxxPlatform));
-      return CxxCompilationDatabase.createCompilationDatabase(params, objects.keySet());
+      return CxxCompilationDatabase.createCompilationDatabase(
+          params,
+          objects.keySet(),
+          cxxBuckConfig.shouldWriteCompilationDatabaseFragments());
     } else if (params.getBuildTarget().getFlavors()
         .contains(CxxCompilationDatabase.UBER_COMPILATION_DATABASE)) {
       return CxxDescriptionEnhancer.createUberCompilationDatabase(
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.cxx;
 
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.AddToRuleKey;
@@ -28,6 +29,7 @@ import com.facebook.buck.rules.OverrideScheduleRule;
 import com.facebook.buck.rules.RuleScheduleInfo;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.args.Arg;
+import com.facebook.buck.rules.args.StringArg;
 import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.FileScrubberStep;
@@ -35,12 +37,19 @@ import com.facebook.buck.step.fs.LogContentsOfFileStep;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.step.fs.RmStep;
+import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.logging.Level;
 
@@ -48,6 +57,10 @@ public class CxxLink
     extends AbstractBuildRule
     implements SupportsInputBasedRuleKey, ProvidesLinkedBinaryDeps, OverrideScheduleRule {
 
+  private static final int ARCHIVE_MEMBER_HEADER_SIZE = 60;
+  private static final ImmutableSet<String> ARCHIVE_SPECIAL_MEMBERS =
+      ImmutableSet.of("/", "//", "/SYM64/");
+
   @AddToRuleKey
   private final Linker linker;
   @AddToRuleKey(stringify = true)
@@ -58,6 +71,7 @@ public class CxxLink
   private final boolean cacheable;
   @AddToRuleKey
   private boolean thinLto;
+  private final Optional<CxxLinkScheduler> linkScheduler;
 
   public CxxLink(
       BuildRuleParams params,
@@ -67,6 +81,18 @@ public class CxxLink
       Optional<RuleScheduleInfo> ruleScheduleInfo,
       boolean cacheable,
       boolean thinLto) {
+    this(params, linker, output, args, ruleScheduleInfo, cacheable, thinLto, Optional.empty());
+  }
+
+  public CxxLink(
+      BuildRuleParams params,
+      Linker linker,
+      Path output,
+      ImmutableList<Arg> args,
+      Optional<RuleScheduleInfo> ruleScheduleInfo,
+      boolean cacheable,
+      boolean thinLto,
+      Optional<CxxLinkScheduler> linkScheduler) {
     super(params);
     this.linker = linker;
     this.output = output;
@@ -74,6 +100,7 @@ public class CxxLink
     this.ruleScheduleInfo = ruleScheduleInfo;
     this.cacheable = cacheable;
     this.thinLto = thinLto;
+    this.linkScheduler = linkScheduler;
     performChecks(params);
   }
 
@@ -104,6 +131,16 @@ public class CxxLink
     Path fileListPath = getProjectFilesystem().getRootPath().resolve(
         BuildTargets.getScratchPath(getProjectFilesystem(), getBuildTarget(), "%s__filelist.txt"));
 
+    // Heavy links may use the cores they reserved to link with.
+    ImmutableList<Arg> linkArgs = args;
+    if (linkScheduler.isPresent()) {
+      ImmutableList<String> threadsFlags =
+          linkScheduler.get().getThreadsFlags(getEstimatedMemory());
+      if (!threadsFlags.isEmpty()) {
+        linkArgs = ImmutableList.copyOf(Iterables.concat(args, StringArg.from(threadsFlags)));
+      }
+    }
+
     // Try to find all the cell roots used during the link.  This isn't technically correct since,
     // in theory not all inputs need to come from build rules, but it probably works in practice.
     // One way that we know would work is exposing every known cell root paths, since the only rules
@@ -123,7 +160,7 @@ public class CxxLink
             fileListPath,
             linker.fileList(fileListPath),
             output,
-            args,
+            linkArgs,
             linker,
             getBuildTarget().getCellPath(),
             context.getSourcePathResolver()))
@@ -164,7 +201,79 @@ public class CxxLink
 
   @Override
   public RuleScheduleInfo getRuleScheduleInfo() {
-    return ruleScheduleInfo.orElse(RuleScheduleInfo.DEFAULT);
+    RuleScheduleInfo scheduleInfo = ruleScheduleInfo.orElse(RuleScheduleInfo.DEFAULT);
+    if (!linkScheduler.isPresent()) {
+      return scheduleInfo;
+    }
+    return linkScheduler.get().getRuleScheduleInfo(scheduleInfo, getEstimatedMemory());
+  }
+
+  /**
+   * The build engine schedules the link once its deps are built, so the objects and archives it
+   * links, and the linker map written the last time it ran, are there to be measured.
+   */
+  private long getEstimatedMemory() {
+    long inputSize = 0;
+    for (BuildRule dep : getBuildDeps()) {
+      SourcePath depOutput = dep.getSourcePathToOutput();
+      if (depOutput instanceof ExplicitBuildTargetSourcePath) {
+        inputSize += getInputSize(
+            dep.getProjectFilesystem(),
+            ((ExplicitBuildTargetSourcePath) depOutput).getResolvedPath());
+      }
+    }
+    Optional<Path> linkerMapPath = getLinkerMapPath();
+    long linkerMapSize =
+        linkerMapPath.isPresent() ? getFileSize(getProjectFilesystem(), linkerMapPath.get()) : 0;
+    return CxxLinkScheduler.estimateMemory(inputSize, linkerMapSize);
+  }
+
+  /**
+   * @return the size of the input at {@code path}, which for a thin archive is the size of the
+   *     objects it refers to, rather than of the archive, which only holds their headers.
+   */
+  private static long getInputSize(ProjectFilesystem filesystem, Path path) {
+    if (!filesystem.isFile(path)) {
+      return 0;
+    }
+    try (FileChannel channel =
+             FileChannel.open(filesystem.resolve(path), StandardOpenOption.READ)) {
+      ByteBuffer globalHeader = ByteBuffer.allocate(ObjectFileScrubbers.GLOBAL_THIN_HEADER.length);
+      channel.read(globalHeader, 0);
+      if (!Arrays.equals(ObjectFileScrubbers.GLOBAL_THIN_HEADER, globalHeader.array())) {
+        return channel.size();
+      }
+
+      // Sum the sizes the headers of the members give, skipping over the symbol index and the
+      // table of long names, which are the only members whose contents are in the archive.
+      long size = 0;
+      long start = globalHeader.capacity();
+      ByteBuffer header = ByteBuffer.allocate(ARCHIVE_MEMBER_HEADER_SIZE);
+      while (channel.read(header, start) == ARCHIVE_MEMBER_HEADER_SIZE) {
+        header.position(0);
+        String name = new String(ObjectFileScrubbers.getBytes(header, 16), Charsets.US_ASCII);
+        header.position(48);
+        long memberSize = ObjectFileScrubbers.getDecimalStringAsLong(header, 10);
+        start += ARCHIVE_MEMBER_HEADER_SIZE;
+        if (ARCHIVE_SPECIAL_MEMBERS.contains(name.trim())) {
+          start += memberSize + memberSize % 2;
+        } else {
+          size += memberSize;
+        }
+        header.clear();
+      }
+      return size;
+    } catch (IOException | NumberFormatException e) {
+      return getFileSize(filesystem, path);
+    }
+  }
+
+  private static long getFileSize(ProjectFilesystem filesystem, Path path) {
+    try {
+      return filesystem.isFile(path) ? filesystem.getFileSize(path) : 0;
+    } catch (IOException e) {
+      return 0;
+    }
   }
 
   @Override
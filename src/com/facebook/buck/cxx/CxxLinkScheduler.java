@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.rules.RuleScheduleInfo;
+import com.facebook.buck.util.MoreCollectors;
+import com.facebook.buck.util.concurrent.ConcurrencyLimit;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Works out how the build engine should schedule a link from an estimate of the memory it needs.
+ * <p>
+ * Links expected to need at least a threshold of memory are heavy, and go in a lane of their own:
+ * each reserves its share of the build's threads, so that no more than the lane's size of them
+ * run at once, and the memory it's expected to need, so that they don't run alongside more work
+ * than the machine can hold. A heavy link may then pass the linker flags, if any are configured, to
+ * link using its threads.
+ * <p>
+ * Memory is reserved out of the build's maximum memory resource, which is
+ * {@code resources.max_memory_resource} units of {@link ResourceAmountsEstimator#MEMORY_UNIT_SIZE}
+ * and defaults to the JVM's maximum heap rather than the machine's memory. A link expected to need
+ * more than all of it reserves all of it, and runs on its own.
+ */
+public class CxxLinkScheduler {
+
+  static final String THREADS_PLACEHOLDER = "{threads}";
+
+  private final long heavyLinkThreshold;
+  private final int threadsPerHeavyLink;
+  private final int memoryCap;
+  private final ImmutableList<String> threadsFlags;
+
+  /**
+   * @param heavyLinkThreshold the estimated memory, in bytes, from which a link is heavy.
+   * @param laneSize the number of heavy links which may run at once.
+   * @param concurrencyLimit the limits of the build, whose threads are shared between the heavy
+   *     links, and whose maximum memory they reserve theirs out of.
+   * @param threadsFlags the linker flags which make the linker use the threads a heavy link
+   *     reserves, in which {@value #THREADS_PLACEHOLDER} stands for their number.
+   */
+  public CxxLinkScheduler(
+      long heavyLinkThreshold,
+      int laneSize,
+      ConcurrencyLimit concurrencyLimit,
+      ImmutableList<String> threadsFlags) {
+    Preconditions.checkArgument(heavyLinkThreshold >= 0);
+    Preconditions.checkArgument(laneSize > 0, "the heavy link lane must hold at least one link");
+    this.heavyLinkThreshold = heavyLinkThreshold;
+    this.threadsPerHeavyLink =
+        Math.max(1, (concurrencyLimit.threadLimit + laneSize - 1) / laneSize);
+    this.memoryCap = Math.max(1, concurrencyLimit.maximumAmounts.getMemory());
+    this.threadsFlags = threadsFlags;
+  }
+
+  /**
+   * @return a rough estimate, in bytes, of the memory a link needs: the linker holds the
+   *     sections of all of its inputs, and the symbols and sections which its map lists.
+   */
+  static long estimateMemory(long inputSize, long linkerMapSize) {
+    return inputSize + linkerMapSize;
+  }
+
+  private boolean isHeavy(long estimatedMemory) {
+    return estimatedMemory >= heavyLinkThreshold;
+  }
+
+  /**
+   * @param scheduleInfo how links are scheduled otherwise.
+   * @param estimatedMemory the estimated memory, in bytes, the link needs.
+   * @return how to schedule the link.
+   */
+  public RuleScheduleInfo getRuleScheduleInfo(RuleScheduleInfo scheduleInfo, long estimatedMemory) {
+    if (!isHeavy(estimatedMemory)) {
+      return scheduleInfo;
+    }
+    int cpu = Math.max(scheduleInfo.getJobsMultiplier(), threadsPerHeavyLink);
+    int memory =
+        (int) Math.min(
+            memoryCap,
+            Math.max(
+                1,
+                (estimatedMemory + ResourceAmountsEstimator.MEMORY_UNIT_SIZE - 1) /
+                    ResourceAmountsEstimator.MEMORY_UNIT_SIZE));
+    return RuleScheduleInfo.builder()
+        .from(scheduleInfo)
+        .setJobsMultiplier(cpu)
+        .setResourceAmounts(ResourceAmounts.of(cpu, memory, 0, 0))
+        .build();
+  }
+
+  /**
+   * @return the flags to pass the linker so that a link needing the given estimated memory, in
+   *     bytes, uses the threads it reserved, or none if it's not a heavy link.
+   */
+  public ImmutableList<String> getThreadsFlags(long estimatedMemory) {
+    if (!isHeavy(estimatedMemory) || threadsPerHeavyLink <= 1) {
+      return ImmutableList.of();
+    }
+    String threads = String.valueOf(threadsPerHeavyLink);
+    return threadsFlags.stream()
+        .map(flag -> flag.replace(THREADS_PLACEHOLDER, threads))
+        .collect(MoreCollectors.toImmutableList());
+  }
+}
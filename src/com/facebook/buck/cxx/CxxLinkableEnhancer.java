@@ -129,7 +129,8 @@ public class CxxLinkableEnhancer {
         allArgs,
         cxxBuckConfig.getLinkScheduleInfo(),
         cxxBuckConfig.shouldCacheLinks(),
-        thinLto);
+        thinLto,
+        cxxBuckConfig.getLinkScheduler());
   }
 
   /**
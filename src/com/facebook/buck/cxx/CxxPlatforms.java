@@ -121,6 +121,7 @@ public class CxxPlatforms {
                 .map(getArchiver(arDelegate.getClass(), config)::apply)
                 .orElse(arDelegate)))
         .setRanlib(new LazyDelegatingTool(() -> getTool("ranlib", config).orElse(ranlib)))
+        .setUseBuiltinArchiver(config.useBuiltinArchiver())
         .setStrip(getTool("strip", config).orElse(strip))
         .setSharedLibraryExtension(sharedLibraryExtension)
         .setSharedLibraryVersionedExtensionFormat(sharedLibraryVersionedExtensionFormat)
@@ -29,6 +29,7 @@ import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SymlinkTree;
 import com.facebook.buck.rules.keys.SupportsDependencyFileRuleKey;
 import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
+import com.facebook.buck.rules.keys.SupportsPreprocessedRuleKey;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.MkdirStep;
@@ -49,7 +50,8 @@ import java.util.function.Predicate;
  */
 public class CxxPreprocessAndCompile
     extends AbstractBuildRule
-    implements SupportsInputBasedRuleKey, SupportsDependencyFileRuleKey {
+    implements SupportsInputBasedRuleKey, SupportsDependencyFileRuleKey,
+    SupportsPreprocessedRuleKey {
 
   @AddToRuleKey
   private final CxxPreprocessAndCompileStep.Operation operation;
@@ -194,6 +196,27 @@ public class CxxPreprocessAndCompile
   @VisibleForTesting
   CxxPreprocessAndCompileStep makeMainStep(
       SourcePathResolver resolver, Path scratchDir, boolean useArgfile) {
+    return makeStep(resolver, operation, output, scratchDir, useArgfile);
+  }
+
+  @VisibleForTesting
+  CxxPreprocessAndCompileStep makePreprocessStep(SourcePathResolver resolver, Path scratchDir) {
+    Preconditions.checkState(
+        operation == CxxPreprocessAndCompileStep.Operation.PREPROCESS_AND_COMPILE);
+    return makeStep(
+        resolver,
+        CxxPreprocessAndCompileStep.Operation.PREPROCESS,
+        getPreprocessedOutput(),
+        scratchDir,
+        /* useArgfile */ false);
+  }
+
+  private CxxPreprocessAndCompileStep makeStep(
+      SourcePathResolver resolver,
+      CxxPreprocessAndCompileStep.Operation operation,
+      Path output,
+      Path scratchDir,
+      boolean useArgfile) {
 
     // If we're compiling, this will just be empty.
     HeaderPathNormalizer headerPathNormalizer =
@@ -285,6 +308,13 @@ public class CxxPreprocessAndCompile
     return BuildTargets.getScratchPath(getProjectFilesystem(), getBuildTarget(), "%s-tmp");
   }
 
+  private Path getPreprocessScratchPath() {
+    return BuildTargets.getScratchPath(
+        getProjectFilesystem(),
+        getBuildTarget(),
+        "%s-preprocessed");
+  }
+
   @VisibleForTesting
   Optional<PreprocessorDelegate> getPreprocessorDelegate() {
     return preprocessDelegate;
@@ -325,6 +355,27 @@ public class CxxPreprocessAndCompile
     return compilerDelegate.isDependencyFileSupported();
   }
 
+  @Override
+  public boolean usePreprocessedRuleKey() {
+    // Precompiled headers aren't part of the preprocessed source, so they'd be left out of the key.
+    return operation == CxxPreprocessAndCompileStep.Operation.PREPROCESS_AND_COMPILE &&
+        !precompiledHeaderRule.isPresent() &&
+        useDependencyFileRuleKeys();
+  }
+
+  @Override
+  public ImmutableList<Step> getPreprocessSteps(BuildContext context) {
+    return new ImmutableList.Builder<Step>()
+        .addAll(MakeCleanDirectoryStep.of(getProjectFilesystem(), getPreprocessScratchPath()))
+        .add(makePreprocessStep(context.getSourcePathResolver(), getPreprocessScratchPath()))
+        .build();
+  }
+
+  @Override
+  public Path getPreprocessedOutput() {
+    return getPreprocessScratchPath().resolve(output.getFileName().toString() + ".i");
+  }
+
   @Override
   public Predicate<SourcePath> getCoveredByDepFilePredicate() {
     if (preprocessDelegate.isPresent()) {
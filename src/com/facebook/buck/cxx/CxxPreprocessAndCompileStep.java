@@ -190,6 +190,17 @@ public class CxxPreprocessAndCompileStep implements Step {
         .build();
   }
 
+  private ImmutableList<String> makePreprocessArguments(boolean allowColorsInDiagnostics) {
+    return ImmutableList.<String>builder()
+        .addAll(preprocessorCommand.get().getArguments(allowColorsInDiagnostics))
+        .addAll(getLanguageArgs(inputType.getLanguage()))
+        // Only preprocess the source, writing the preprocessed source to the output.
+        .add("-E")
+        .add(input.toString())
+        .add("-o", output.toString())
+        .build();
+  }
+
   private int executeCompilation(ExecutionContext context) throws Exception {
     ProcessExecutorParams.Builder builder =
         makeSubprocessBuilder(context, ImmutableMap.of());
@@ -245,9 +256,12 @@ public class CxxPreprocessAndCompileStep implements Step {
       executor.waitForLaunchedProcess(process);
     }
 
-    // If we generated any error output, print that to the console.
+    // If we generated any error output, print that to the console.  Inputs are only preprocessed
+    // on their own to look the rule up in the cache, and compiling them prints the same output.
     String err = new String(error.toByteArray());
-    if (!err.isEmpty()) {
+    if (!err.isEmpty() && operation == Operation.PREPROCESS) {
+      LOG.debug("%s %s: %s", operation.toString().toLowerCase(), input, err);
+    } else if (!err.isEmpty()) {
       context.getBuckEventBus().post(
           createConsoleEvent(
               context,
@@ -332,6 +346,7 @@ public class CxxPreprocessAndCompileStep implements Step {
       case COMPILE:
       case PREPROCESS_AND_COMPILE:
         return compilerCommand.get().getCommandPrefix();
+      case PREPROCESS:
       case GENERATE_PCH:
         return preprocessorCommand.get().getCommandPrefix();
       // $CASES-OMITTED$
@@ -349,6 +364,8 @@ public class CxxPreprocessAndCompileStep implements Step {
             inputType.getLanguage(),
             inputType.isPreprocessable(),
             allowColorsInDiagnostics);
+      case PREPROCESS:
+        return makePreprocessArguments(allowColorsInDiagnostics);
       case GENERATE_PCH:
         return makeGeneratePchArguments(allowColorsInDiagnostics);
       // $CASES-OMITTED$
@@ -390,6 +407,10 @@ public class CxxPreprocessAndCompileStep implements Step {
      * Run the preprocessor and compiler on source files.
      */
     PREPROCESS_AND_COMPILE,
+    /**
+     * Run only the preprocessor on source files, writing out the preprocessed source.
+     */
+    PREPROCESS,
     GENERATE_PCH,
     ;
 
@@ -399,6 +420,7 @@ public class CxxPreprocessAndCompileStep implements Step {
     public boolean isPreprocess() {
       switch (this) {
         case PREPROCESS_AND_COMPILE:
+        case PREPROCESS:
         case GENERATE_PCH:
           return true;
         case COMPILE:
@@ -415,6 +437,7 @@ public class CxxPreprocessAndCompileStep implements Step {
         case COMPILE:
         case PREPROCESS_AND_COMPILE:
           return true;
+        case PREPROCESS:
         case GENERATE_PCH:
           return false;
       }
@@ -166,10 +166,13 @@ public class CxxPreprocessables {
       public ImmutableSet<BuildRule> visit(BuildRule rule) throws NoSuchBuildTargetException {
         if (rule instanceof CxxPreprocessorDep) {
           CxxPreprocessorDep dep = (CxxPreprocessorDep) rule;
-          deps.putAll(
-              dep.getTransitiveCxxPreprocessorInput(
-                  cxxPlatform,
-                  HeaderVisibility.PUBLIC));
+          // A dep which was already found brought all of its own deps with it.
+          if (!deps.containsKey(dep.getBuildTarget())) {
+            deps.putAll(
+                dep.getTransitiveCxxPreprocessorInput(
+                    cxxPlatform,
+                    HeaderVisibility.PUBLIC));
+          }
           return ImmutableSet.of();
         }
         return traverse.apply(rule) ? rule.getBuildDeps() : ImmutableSet.of();
@@ -305,6 +308,11 @@ public class CxxPreprocessables {
                         key.getVisibility()));
                 for (CxxPreprocessorDep dep :
                     preprocessorDep.getCxxPreprocessorDeps(key.getPlatform())) {
+                  // A dep which was already found brought all of its own deps with it, so
+                  // there's no need to merge them again.
+                  if (builder.containsKey(dep.getBuildTarget())) {
+                    continue;
+                  }
                   builder.putAll(
                       dep.getTransitiveCxxPreprocessorInput(
                           key.getPlatform(),
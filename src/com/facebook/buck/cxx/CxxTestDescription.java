@@ -166,7 +166,8 @@ public class CxxTestDescription implements
               flavoredLinkerMapMode);
       return CxxCompilationDatabase.createCompilationDatabase(
           params,
-          cxxLinkAndCompileRules.compileRules);
+          cxxLinkAndCompileRules.compileRules,
+          cxxBuckConfig.shouldWriteCompilationDatabaseFragments());
     }
 
     if (params.getBuildTarget().getFlavors()
@@ -31,6 +31,7 @@ import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.Tool;
 import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
 import com.facebook.buck.step.Step;
+import com.facebook.buck.step.fs.FileScrubberStep;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
@@ -118,18 +119,19 @@ class ElfSharedLibraryInterface
             context.getSourcePathResolver().getAbsolutePath(input),
             output,
             SECTIONS))
-        .add(ElfClearProgramHeadersStep.of(getProjectFilesystem(), output))
-        .add(ElfSymbolTableScrubberStep.of(
+        // Scrub the extracted sections in a single pass over one mapping of the output.
+        .add(new FileScrubberStep(
             getProjectFilesystem(),
             output,
-            /* section */ ".dynsym",
-            /* allowMissing */ false))
-        .add(ElfSymbolTableScrubberStep.of(
-            getProjectFilesystem(),
-            output,
-            /* section */ ".symtab",
-            /* allowMissing */ true))
-        .add(ElfDynamicSectionScrubberStep.of(getProjectFilesystem(), output))
+            ImmutableList.of(
+                ElfClearProgramHeadersStep.scrubber(),
+                ElfSymbolTableScrubberStep.scrubber(
+                    /* section */ ".dynsym",
+                    /* allowMissing */ false),
+                ElfSymbolTableScrubberStep.scrubber(
+                    /* section */ ".symtab",
+                    /* allowMissing */ true),
+                ElfDynamicSectionScrubberStep.scrubber())))
         .build();
   }
 
@@ -59,7 +59,7 @@ public class HeaderMapStep implements Step {
   @Override
   public StepExecutionResult execute(ExecutionContext context) throws IOException {
     LOG.debug("Writing header map with %d entries to %s", entries.size(), output);
-    HeaderMap.Builder builder = HeaderMap.builder();
+    HeaderMap.Builder builder = HeaderMap.builder(entries.size());
     for (Map.Entry<Path, Path> entry : entries.entrySet()) {
       builder.add(entry.getKey().toString(), entry.getValue());
     }
@@ -20,6 +20,8 @@ import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableMap;
 
 import java.nio.file.Path;
@@ -27,6 +29,8 @@ import java.util.AbstractMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class HeaderPathNormalizer {
 
@@ -44,6 +48,17 @@ public class HeaderPathNormalizer {
    */
   private final ImmutableMap<Path, SourcePath> normalized;
 
+  /**
+   * The same mapping as {@link #normalized}, to look up paths as they're written in depfiles.
+   */
+  private final Supplier<PathTrie<SourcePath>> normalizedTrie;
+
+  /**
+   * The absolute paths of the headers which have been looked up, so that each is resolved once
+   * and shared by all the depfiles which include it.
+   */
+  private final ConcurrentMap<SourcePath, Path> resolvedHeaders = new ConcurrentHashMap<>();
+
   protected HeaderPathNormalizer(
       SourcePathResolver pathResolver,
       ImmutableMap<Path, SourcePath> headers,
@@ -51,6 +66,13 @@ public class HeaderPathNormalizer {
     this.pathResolver = pathResolver;
     this.headers = headers;
     this.normalized = normalized;
+    this.normalizedTrie = Suppliers.memoize(() -> {
+      PathTrie<SourcePath> trie = new PathTrie<>();
+      for (Map.Entry<Path, SourcePath> entry : normalized.entrySet()) {
+        trie.put(entry.getKey(), entry.getValue());
+      }
+      return trie;
+    });
   }
 
   public static HeaderPathNormalizer empty(SourcePathResolver pathResolver) {
@@ -82,6 +104,33 @@ public class HeaderPathNormalizer {
             .resolve(result.get().getKey().relativize(unnormalizedPath)));
   }
 
+  /**
+   * Like {@link #getAbsolutePathForUnnormalizedPath(Path)}, for a path as it's written in a
+   * depfile, without building any {@link Path}s for the headers which are mapped directly.
+   *
+   * @param root the absolute path {@code unnormalizedPath} is relative to, unless it's absolute.
+   */
+  public Optional<Path> getAbsolutePathForUnnormalizedPath(Path root, String unnormalizedPath) {
+    Preconditions.checkArgument(root.isAbsolute());
+    if (!root.getFileSystem().getSeparator().equals("/")) {
+      return getAbsolutePathForUnnormalizedPath(root.resolve(unnormalizedPath).normalize());
+    }
+    PathTrie.Match<SourcePath> match =
+        normalizedTrie.get().findLongestPrefix(root.toString(), unnormalizedPath);
+    if (match == null) {
+      return Optional.empty();
+    }
+    Path absolutePath = resolvedHeaders.computeIfAbsent(
+        match.getValue(),
+        pathResolver::getAbsolutePath);
+    if (match.isExact()) {
+      return Optional.of(absolutePath);
+    }
+    return Optional.of(
+        absolutePath.resolve(
+            match.getKey().relativize(root.resolve(unnormalizedPath).normalize())));
+  }
+
   /**
    * @return the {@link SourcePath} which corresponds to the given absolute path.
    */
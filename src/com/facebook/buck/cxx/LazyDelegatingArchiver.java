@@ -50,6 +50,11 @@ public class LazyDelegatingArchiver implements Archiver {
     return delegate.get().supportsThinArchives();
   }
 
+  @Override
+  public boolean supportsBuiltinArchiver() {
+    return delegate.get().supportsBuiltinArchiver();
+  }
+
   @Override
   public ImmutableList<String> getArchiveOptions(boolean isThinArchive) {
     return delegate.get().getArchiveOptions(isThinArchive);
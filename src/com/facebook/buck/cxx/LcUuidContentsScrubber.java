@@ -16,28 +16,26 @@
 
 package com.facebook.buck.cxx;
 
-import com.facebook.buck.io.FileContentsScrubber;
+import com.facebook.buck.io.MappedFileContentsScrubber;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 
-import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-public class LcUuidContentsScrubber implements FileContentsScrubber {
+public class LcUuidContentsScrubber implements MappedFileContentsScrubber {
 
   private static final byte[] ZERO_UUID = new byte[16];
 
+  // The size of the chunks in which the file is copied out of the mapping to be hashed.
+  private static final int HASH_CHUNK_SIZE = 64 * 1024;
+
   @Override
-  public void scrubFile(FileChannel file) throws IOException, ScrubException {
-    if (!Machos.isMacho(file)) {
+  public void scrubFile(ByteBuffer map) throws ScrubException {
+    if (!Machos.isMacho(map)) {
       return;
     }
 
-    long size = file.size();
-    MappedByteBuffer map = file.map(FileChannel.MapMode.READ_WRITE, 0, size);
-
     try {
       Machos.setUuid(map, ZERO_UUID);
     } catch (Machos.MachoException e) {
@@ -45,9 +43,13 @@ public class LcUuidContentsScrubber implements FileContentsScrubber {
     }
     map.rewind();
 
+    // Hash the file a chunk at a time, rather than a byte at a time.
     Hasher hasher = Hashing.sha1().newHasher();
+    byte[] chunk = new byte[Math.min(HASH_CHUNK_SIZE, map.remaining())];
     while (map.hasRemaining()) {
-      hasher.putByte(map.get());
+      int length = Math.min(chunk.length, map.remaining());
+      map.get(chunk, 0, length);
+      hasher.putBytes(chunk, 0, length);
     }
 
     map.rewind();
@@ -21,10 +21,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.primitives.Ints;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -54,7 +51,7 @@ public class Machos {
 
   private Machos() {}
 
-  static void setUuid(MappedByteBuffer map, byte[] uuid) throws MachoException {
+  static void setUuid(ByteBuffer map, byte[] uuid) throws MachoException {
     int commandsCount = getHeader(map).getCommandsCount();
 
     for (int i = 0; i < commandsCount; i++) {
@@ -71,22 +68,33 @@ public class Machos {
     throw new MachoException("LC_UUID command not found");
   }
 
-  static boolean isMacho(FileChannel file) throws IOException {
-    MappedByteBuffer map = file.map(FileChannel.MapMode.READ_ONLY, 0, MH_MAGIC.length);
-
-    byte[] magic = ObjectFileScrubbers.getBytes(map, MH_MAGIC.length);
+  /**
+   * @return whether the contents of {@code map}, from its start, are a Mach-O file.  The position
+   *     of {@code map} is left alone.
+   */
+  static boolean isMacho(ByteBuffer map) {
+    if (map.limit() < MH_MAGIC.length) {
+      return false;
+    }
+    byte[] magic = new byte[MH_MAGIC.length];
+    for (int i = 0; i < magic.length; i++) {
+      magic[i] = map.get(i);
+    }
     return Arrays.equals(MH_MAGIC, magic) || Arrays.equals(MH_CIGAM, magic) ||
         Arrays.equals(MH_MAGIC_64, magic) || Arrays.equals(MH_CIGAM_64, magic);
   }
 
-  static void relativizeOsoSymbols(FileChannel file, ImmutableCollection<Path> cellRoots)
-      throws IOException, MachoException {
+  /**
+   * Relativizes the paths of the N_OSO symbols of the Mach-O file in {@code map} and compacts its
+   * string table in place, lowering the limit of {@code map} to the new end of the file.
+   */
+  static void relativizeOsoSymbols(ByteBuffer map, ImmutableCollection<Path> cellRoots)
+      throws MachoException {
     for (Path root : cellRoots) {
       Preconditions.checkState(root.isAbsolute());
     }
 
-    long size = file.size();
-    MappedByteBuffer map = file.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    long size = map.limit();
 
     MachoHeader header = getHeader(map);
 
@@ -256,10 +264,10 @@ public class Machos {
         map,
         segmentSize + (newStringTableSize - stringTableSize));
 
-    file.truncate(currentStringTableOffset);
+    map.limit(currentStringTableOffset);
   }
 
-  private static MachoHeader getHeader(MappedByteBuffer map) throws MachoException {
+  private static MachoHeader getHeader(ByteBuffer map) throws MachoException {
     byte[] magic = ObjectFileScrubbers.getBytes(map, MH_MAGIC.length);
     boolean is64bit;
     if (Arrays.equals(MH_MAGIC, magic) || Arrays.equals(MH_CIGAM, magic)) {
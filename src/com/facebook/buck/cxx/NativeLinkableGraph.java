@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.model.BuildTarget;
+import com.google.common.collect.Iterables;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The graph of {@link NativeLinkable}s and their deps on a platform, with each node numbered
+ * densely from zero so that sets of nodes can be held in {@link BitSet}s.
+ * <p>
+ * Nodes, their deps and their transitive closures are only found when they're first asked for,
+ * and are then kept, so that all the links sharing a graph only walk the nodes they have in
+ * common once.
+ */
+final class NativeLinkableGraph {
+
+  private final CxxPlatform cxxPlatform;
+
+  private final Map<BuildTarget, Integer> indices = new HashMap<>();
+  private final List<NativeLinkable> nodes = new ArrayList<>();
+
+  // The deps of each node, or null for the nodes whose deps haven't been asked for yet.
+  private final List<int[]> deps = new ArrayList<>();
+
+  // The transitive closure of each node, or null for those which haven't been asked for yet.
+  private final List<BitSet> closures = new ArrayList<>();
+
+  // The nodes which prefer to be linked as shared libraries.
+  private final BitSet preferredShared = new BitSet();
+
+  NativeLinkableGraph(CxxPlatform cxxPlatform) {
+    this.cxxPlatform = cxxPlatform;
+  }
+
+  CxxPlatform getCxxPlatform() {
+    return cxxPlatform;
+  }
+
+  /**
+   * @return the index of {@code nativeLinkable}, adding it to the graph if it isn't already.
+   */
+  synchronized int getIndex(NativeLinkable nativeLinkable) {
+    Integer index = indices.get(nativeLinkable.getBuildTarget());
+    if (index == null) {
+      index = nodes.size();
+      indices.put(nativeLinkable.getBuildTarget(), index);
+      nodes.add(nativeLinkable);
+      deps.add(null);
+      closures.add(null);
+      if (nativeLinkable.getPreferredLinkage(cxxPlatform) == NativeLinkable.Linkage.SHARED) {
+        preferredShared.set(index);
+      }
+    }
+    return index;
+  }
+
+  synchronized NativeLinkable get(int index) {
+    return nodes.get(index);
+  }
+
+  /**
+   * @return the indices of the deps and exported deps of the given node, in that order.
+   */
+  synchronized int[] getDeps(int index) {
+    int[] nodeDeps = deps.get(index);
+    if (nodeDeps == null) {
+      NativeLinkable nativeLinkable = nodes.get(index);
+      Set<Integer> depIndices = new LinkedHashSet<>();
+      for (NativeLinkable dep :
+           Iterables.concat(
+               nativeLinkable.getNativeLinkableDepsForPlatform(cxxPlatform),
+               nativeLinkable.getNativeLinkableExportedDepsForPlatform(cxxPlatform))) {
+        depIndices.add(getIndex(dep));
+      }
+      nodeDeps = new int[depIndices.size()];
+      int i = 0;
+      for (int dep : depIndices) {
+        nodeDeps[i++] = dep;
+      }
+      deps.set(index, nodeDeps);
+    }
+    return nodeDeps;
+  }
+
+  /**
+   * @return the given node and all the nodes it transitively depends on. The set is shared, and
+   *     must not be modified.
+   */
+  synchronized BitSet getClosure(int index) {
+    BitSet closure = closures.get(index);
+    if (closure != null) {
+      return closure;
+    }
+
+    // Walk down from the node, stopping at the nodes whose closures are already known and taking
+    // those in whole.
+    closure = new BitSet();
+    closure.set(index);
+    Deque<Integer> toVisit = new ArrayDeque<>();
+    toVisit.push(index);
+    while (!toVisit.isEmpty()) {
+      for (int dep : getDeps(toVisit.pop())) {
+        if (closure.get(dep)) {
+          continue;
+        }
+        BitSet depClosure = closures.get(dep);
+        if (depClosure != null) {
+          closure.or(depClosure);
+        } else {
+          closure.set(dep);
+          toVisit.push(dep);
+        }
+      }
+    }
+    closures.set(index, closure);
+    return closure;
+  }
+
+  /**
+   * @return the subset of {@code nodes} which prefer to be linked as shared libraries.
+   */
+  synchronized BitSet getPreferredShared(BitSet nodes) {
+    BitSet shared = (BitSet) nodes.clone();
+    shared.and(preferredShared);
+    return shared;
+  }
+
+}
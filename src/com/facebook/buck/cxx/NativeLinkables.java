@@ -20,25 +20,50 @@ import com.facebook.buck.graph.AbstractBreadthFirstTraversal;
 import com.facebook.buck.graph.MutableDirectedGraph;
 import com.facebook.buck.graph.TopologicalSort;
 import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.Flavor;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.util.HumanReadableException;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Iterables;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class NativeLinkables {
 
+  /**
+   * The deps each {@link NativeLinkable} links against, by platform and link style, shared by all
+   * the links which reach it. Each entry only refers to the direct deps of its linkable, so the
+   * table stays linear in the size of the graph, and is dropped along with the linkable.
+   */
+  private static final LoadingCache<
+        NativeLinkable,
+        ConcurrentMap<Pair<Flavor, Optional<Linker.LinkableDepType>>, LinkableDeps>
+      > LINKABLE_DEPS =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .build(CacheLoader.from(nativeLinkable -> new ConcurrentHashMap<>()));
+
   private NativeLinkables() {}
 
   /**
@@ -176,11 +201,37 @@ public class NativeLinkables {
     return result.build();
   }
 
+  /**
+   * Like {@link #getNativeLinkables(CxxPlatform, Iterable, Linker.LinkableDepType, Predicate)},
+   * following all deps, which lets the deps of each linkable be looked up from those memoized for
+   * previous links rather than found again.
+   */
   public static ImmutableMap<BuildTarget, NativeLinkable> getNativeLinkables(
       final CxxPlatform cxxPlatform,
       Iterable<? extends NativeLinkable> inputs,
       final Linker.LinkableDepType linkStyle) {
-    return getNativeLinkables(cxxPlatform, inputs, linkStyle, x -> true);
+    Map<BuildTarget, NativeLinkable> nativeLinkables =
+        getMemoizedClosure(cxxPlatform, inputs, Optional.of(linkStyle));
+
+    // Order the linkables as the topological sort does, which is by decreasing height in the
+    // graph, then by decreasing target.
+    Map<BuildTarget, Integer> heights = new HashMap<>();
+    for (NativeLinkable nativeLinkable : nativeLinkables.values()) {
+      heights.put(
+          nativeLinkable.getBuildTarget(),
+          getLinkableDeps(cxxPlatform, nativeLinkable, Optional.of(linkStyle)).height);
+    }
+    List<BuildTarget> ordered = new ArrayList<>(nativeLinkables.keySet());
+    ordered.sort(
+        Comparator.<BuildTarget, Integer>comparing(heights::get)
+            .thenComparing(Comparator.naturalOrder())
+            .reversed());
+
+    ImmutableMap.Builder<BuildTarget, NativeLinkable> result = ImmutableMap.builder();
+    for (BuildTarget target : ordered) {
+      result.put(target, nativeLinkables.get(target));
+    }
+    return result.build();
   }
 
   public static Linker.LinkableDepType getLinkStyle(
@@ -242,35 +293,123 @@ public class NativeLinkables {
   public static ImmutableMap<BuildTarget, NativeLinkable> getTransitiveNativeLinkables(
       final CxxPlatform cxxPlatform,
       Iterable<? extends NativeLinkable> inputs) {
+    return ImmutableMap.copyOf(
+        new HashMap<>(getMemoizedClosure(cxxPlatform, inputs, Optional.empty())));
+  }
 
-    final Map<BuildTarget, NativeLinkable> nativeLinkables = new HashMap<>();
+  /**
+   * @param linkStyle the link style to follow the deps of, or none to follow all of them.
+   * @return all the linkables reachable from {@code inputs}, in the order they're found.
+   */
+  private static Map<BuildTarget, NativeLinkable> getMemoizedClosure(
+      CxxPlatform cxxPlatform,
+      Iterable<? extends NativeLinkable> inputs,
+      Optional<Linker.LinkableDepType> linkStyle) {
+    Map<BuildTarget, NativeLinkable> nativeLinkables = new LinkedHashMap<>();
+    Deque<NativeLinkable> toVisit = new ArrayDeque<>();
     for (NativeLinkable nativeLinkable : inputs) {
-      nativeLinkables.put(nativeLinkable.getBuildTarget(), nativeLinkable);
+      if (nativeLinkables.putIfAbsent(nativeLinkable.getBuildTarget(), nativeLinkable) == null) {
+        toVisit.add(nativeLinkable);
+      }
     }
+    while (!toVisit.isEmpty()) {
+      NativeLinkable nativeLinkable = toVisit.remove();
+      for (NativeLinkable dep : getLinkableDeps(cxxPlatform, nativeLinkable, linkStyle).deps) {
+        if (nativeLinkables.putIfAbsent(dep.getBuildTarget(), dep) == null) {
+          toVisit.add(dep);
+        }
+      }
+    }
+    return nativeLinkables;
+  }
 
-    final MutableDirectedGraph<BuildTarget> graph = new MutableDirectedGraph<>();
-    AbstractBreadthFirstTraversal<BuildTarget> visitor =
-        new AbstractBreadthFirstTraversal<BuildTarget>(nativeLinkables.keySet()) {
-          @Override
-          public ImmutableSet<BuildTarget> visit(BuildTarget target) {
-            NativeLinkable nativeLinkable = Preconditions.checkNotNull(nativeLinkables.get(target));
-            graph.addNode(target);
-            ImmutableSet.Builder<BuildTarget> deps = ImmutableSet.builder();
-            for (NativeLinkable dep :
-                 Iterables.concat(
-                     nativeLinkable.getNativeLinkableDepsForPlatform(cxxPlatform),
-                     nativeLinkable.getNativeLinkableExportedDepsForPlatform(cxxPlatform))) {
-              BuildTarget depTarget = dep.getBuildTarget();
-              graph.addEdge(target, depTarget);
-              deps.add(depTarget);
-              nativeLinkables.put(depTarget, dep);
+  /**
+   * @return the memoized deps of {@code root}, finding those of all the linkables below it which
+   *     haven't been memoized yet, deepest first.
+   */
+  private static LinkableDeps getLinkableDeps(
+      CxxPlatform cxxPlatform,
+      NativeLinkable root,
+      Optional<Linker.LinkableDepType> linkStyle) {
+    Pair<Flavor, Optional<Linker.LinkableDepType>> key =
+        new Pair<>(cxxPlatform.getFlavor(), linkStyle);
+    LinkableDeps memoized = LINKABLE_DEPS.getUnchecked(root).get(key);
+    if (memoized != null) {
+      return memoized;
+    }
+
+    Map<NativeLinkable, ImmutableList<NativeLinkable>> pending = new HashMap<>();
+    Deque<NativeLinkable> stack = new ArrayDeque<>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      NativeLinkable nativeLinkable = stack.peek();
+      ConcurrentMap<Pair<Flavor, Optional<Linker.LinkableDepType>>, LinkableDeps> table =
+          LINKABLE_DEPS.getUnchecked(nativeLinkable);
+      if (table.containsKey(key)) {
+        stack.pop();
+        continue;
+      }
+      ImmutableList<NativeLinkable> deps = pending.get(nativeLinkable);
+      if (deps == null) {
+        deps = getDirectDeps(cxxPlatform, nativeLinkable, linkStyle);
+        pending.put(nativeLinkable, deps);
+        boolean depsMemoized = true;
+        for (NativeLinkable dep : deps) {
+          if (!LINKABLE_DEPS.getUnchecked(dep).containsKey(key)) {
+            if (pending.containsKey(dep)) {
+              throw new HumanReadableException(
+                  "%s depends on itself through %s",
+                  dep.getBuildTarget(),
+                  nativeLinkable.getBuildTarget());
             }
-            return deps.build();
+            stack.push(dep);
+            depsMemoized = false;
           }
-        };
-    visitor.start();
+        }
+        if (!depsMemoized) {
+          continue;
+        }
+      }
+      int height = 0;
+      for (NativeLinkable dep : deps) {
+        height = Math.max(height, LINKABLE_DEPS.getUnchecked(dep).get(key).height + 1);
+      }
+      table.putIfAbsent(key, new LinkableDeps(deps, height));
+      pending.remove(nativeLinkable);
+      stack.pop();
+    }
+    return LINKABLE_DEPS.getUnchecked(root).get(key);
+  }
 
-    return ImmutableMap.copyOf(nativeLinkables);
+  private static ImmutableList<NativeLinkable> getDirectDeps(
+      CxxPlatform cxxPlatform,
+      NativeLinkable nativeLinkable,
+      Optional<Linker.LinkableDepType> linkStyle) {
+    if (!linkStyle.isPresent()) {
+      return ImmutableSet.<NativeLinkable>builder()
+          .addAll(nativeLinkable.getNativeLinkableDepsForPlatform(cxxPlatform))
+          .addAll(nativeLinkable.getNativeLinkableExportedDepsForPlatform(cxxPlatform))
+          .build()
+          .asList();
+    }
+
+    // We always traverse a rule's exported native linkables, and if we're linking this
+    // dependency statically, we also need to traverse its deps.
+    ImmutableSet.Builder<NativeLinkable> deps = ImmutableSet.builder();
+    deps.addAll(nativeLinkable.getNativeLinkableExportedDepsForPlatform(cxxPlatform));
+    switch (nativeLinkable.getPreferredLinkage(cxxPlatform)) {
+      case ANY:
+        if (linkStyle.get() != Linker.LinkableDepType.SHARED) {
+          deps.addAll(nativeLinkable.getNativeLinkableDepsForPlatform(cxxPlatform));
+        }
+        break;
+      case SHARED:
+        break;
+      case STATIC:
+        deps.addAll(nativeLinkable.getNativeLinkableDepsForPlatform(cxxPlatform));
+        break;
+    }
+    return deps.build().asList();
   }
 
   /**
@@ -354,4 +493,22 @@ public class NativeLinkables {
     return Optional.empty();
   }
 
+  private static final class LinkableDeps {
+
+    /**
+     * The deps followed from the linkable.
+     */
+    private final ImmutableList<NativeLinkable> deps;
+
+    /**
+     * The length of the longest chain of deps below the linkable.
+     */
+    private final int height;
+
+    private LinkableDeps(ImmutableList<NativeLinkable> deps, int height) {
+      this.deps = deps;
+      this.height = height;
+    }
+  }
+
 }
@@ -16,7 +16,6 @@
 
 package com.facebook.buck.cxx;
 
-import com.facebook.buck.graph.AbstractBreadthFirstTraversal;
 import com.facebook.buck.graph.DirectedAcyclicGraph;
 import com.facebook.buck.graph.MutableDirectedGraph;
 import com.facebook.buck.graph.TopologicalSort;
@@ -24,6 +23,7 @@ import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.model.Flavor;
 import com.facebook.buck.model.InternalFlavor;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleResolver;
@@ -34,21 +34,21 @@ import com.facebook.buck.rules.args.Arg;
 import com.facebook.buck.rules.args.SourcePathArg;
 import com.facebook.buck.rules.args.StringArg;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
-import com.google.common.base.Functions;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Predicates;
-import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Maps;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Sets;
 
 import org.immutables.value.Value;
 
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -63,6 +63,19 @@ public class Omnibus {
 
   private Omnibus() {}
 
+  /**
+   * @return the native linkable graph on {@code cxxPlatform} shared by the omnibus links of all the
+   *     binaries whose rules are made by {@code ruleResolver}.
+   */
+  static NativeLinkableGraph getNativeLinkableGraph(
+      BuildRuleResolver ruleResolver,
+      CxxPlatform cxxPlatform) {
+    return ruleResolver.computeSharedValueIfAbsent(
+        new Pair<>(NativeLinkableGraph.class, cxxPlatform.getFlavor()),
+        NativeLinkableGraph.class,
+        () -> new NativeLinkableGraph(cxxPlatform));
+  }
+
   private static String getOmnibusSoname(CxxPlatform cxxPlatform) {
     return String.format("libomnibus.%s", cxxPlatform.getSharedLibraryExtension());
   }
@@ -81,49 +94,26 @@ public class Omnibus {
     return target.getNativeLinkTargetMode(cxxPlatform).getType() == Linker.LinkType.EXECUTABLE;
   }
 
-  private static Iterable<NativeLinkable> getDeps(
-      NativeLinkable nativeLinkable,
-      CxxPlatform cxxPlatform) {
-    return Iterables.concat(
-        nativeLinkable.getNativeLinkableDepsForPlatform(cxxPlatform),
-        nativeLinkable.getNativeLinkableExportedDepsForPlatform(cxxPlatform));
-  }
-
-  // Returned the dependencies for the given node, which can either be a `NativeLinkable` or a
-  // `NativeLinkTarget`.
-  private static Iterable<? extends NativeLinkable> getDeps(
-      BuildTarget target,
-      Map<BuildTarget, ? extends NativeLinkTarget> nativeLinkTargets,
-      Map<BuildTarget, ? extends NativeLinkable> nativeLinkables,
-      CxxPlatform cxxPlatform) {
-    if (nativeLinkables.containsKey(target)) {
-      NativeLinkable nativeLinkable = Preconditions.checkNotNull(nativeLinkables.get(target));
-      return getDeps(nativeLinkable, cxxPlatform);
-    } else {
-      NativeLinkTarget nativeLinkTarget =
-          Preconditions.checkNotNull(nativeLinkTargets.get(target));
-      return nativeLinkTarget.getNativeLinkTargetDeps(cxxPlatform);
-    }
-  }
-
   // Build the data structure containing bookkeeping which describing the omnibus link for the
   // given included and excluded roots.
   protected static OmnibusSpec buildSpec(
       final CxxPlatform cxxPlatform,
       final Iterable<? extends NativeLinkTarget> includedRoots,
       final Iterable<? extends NativeLinkable> excludedRoots) {
+    return buildSpec(new NativeLinkableGraph(cxxPlatform), includedRoots, excludedRoots);
+  }
 
-    // A map of targets to native linkable objects.  We maintain this, so that we index our
-    // bookkeeping around `BuildTarget` and avoid having to guarantee that all other types are
-    // hashable.
-    final Map<BuildTarget, NativeLinkable> nativeLinkables = new LinkedHashMap<>();
-
-    // The nodes which should *not* be included in the omnibus link.
-    final Set<BuildTarget> excluded = new LinkedHashSet<>();
+  // Build the omnibus bookkeeping using, and adding to, the given graph of native linkables, which
+  // may be shared with the omnibus links of other binaries.
+  protected static OmnibusSpec buildSpec(
+      final NativeLinkableGraph nativeLinkableGraph,
+      final Iterable<? extends NativeLinkTarget> includedRoots,
+      final Iterable<? extends NativeLinkable> excludedRoots) {
+    CxxPlatform cxxPlatform = nativeLinkableGraph.getCxxPlatform();
 
     // Process all the roots included in the omnibus link.
     final Map<BuildTarget, NativeLinkTarget> roots = new LinkedHashMap<>();
-    Map<BuildTarget, NativeLinkable> rootDeps = new LinkedHashMap<>();
+    Set<Integer> rootDeps = new LinkedHashSet<>();
     for (NativeLinkTarget root : includedRoots) {
       roots.put(root.getBuildTarget(), root);
       for (NativeLinkable dep :
@@ -139,93 +129,102 @@ public class Omnibus {
 
         // We only consider deps which aren't *only* statically linked.
         if (linkStyle == Linker.LinkableDepType.SHARED) {
-          rootDeps.put(dep.getBuildTarget(), dep);
-          nativeLinkables.put(dep.getBuildTarget(), dep);
+          rootDeps.add(nativeLinkableGraph.getIndex(dep));
         }
       }
     }
 
-    // Process all roots excluded from the omnibus link, and add them to our running list of
-    // excluded nodes.
-    for (NativeLinkable root : excludedRoots) {
-      nativeLinkables.put(root.getBuildTarget(), root);
-      excluded.add(root.getBuildTarget());
+    // Find all the nodes reachable from the native linkable nodes immediately reachable via the
+    // included roots, so we can discover which of them need to be excluded from the omnibus link.
+    BitSet reachable = new BitSet();
+    for (int rootDep : rootDeps) {
+      reachable.or(nativeLinkableGraph.getClosure(rootDep));
     }
 
-    // Perform the first walk starting from the native linkable nodes immediately reachable via the
-    // included roots.  We'll accomplish two things here:
-    // 1. Build up the map of node names to their native linkable objects.
-    // 2. Perform an initial discovery of dependency nodes to exclude from the omnibus link.
-    new AbstractBreadthFirstTraversal<BuildTarget>(rootDeps.keySet()) {
-      @Override
-      public ImmutableSet<BuildTarget> visit(BuildTarget target) {
-        NativeLinkable nativeLinkable = Preconditions.checkNotNull(nativeLinkables.get(target));
-        ImmutableMap<BuildTarget, NativeLinkable> deps =
-            Maps.uniqueIndex(
-                getDeps(nativeLinkable, cxxPlatform),
-                NativeLinkable::getBuildTarget);
-        nativeLinkables.putAll(deps);
-        if (nativeLinkable.getPreferredLinkage(cxxPlatform) == NativeLinkable.Linkage.SHARED) {
-          excluded.add(target);
-        }
-        return deps.keySet();
-      }
-    }.start();
-
-    // Do another walk to flesh out the transitively excluded nodes.
-    new AbstractBreadthFirstTraversal<BuildTarget>(excluded) {
-      @Override
-      public Iterable<BuildTarget> visit(BuildTarget target) {
-        NativeLinkable nativeLinkable = Preconditions.checkNotNull(nativeLinkables.get(target));
-        ImmutableMap<BuildTarget, NativeLinkable> deps =
-            Maps.uniqueIndex(
-                getDeps(nativeLinkable, cxxPlatform),
-                NativeLinkable::getBuildTarget);
-        nativeLinkables.putAll(deps);
-        excluded.add(target);
-        return deps.keySet();
+    // Exclude the roots excluded from the omnibus link and the reachable nodes which prefer to be
+    // linked as shared libraries, along with everything they transitively depend on.
+    BitSet excluded = new BitSet();
+    for (NativeLinkable root : excludedRoots) {
+      excluded.or(nativeLinkableGraph.getClosure(nativeLinkableGraph.getIndex(root)));
+    }
+    BitSet preferredShared = nativeLinkableGraph.getPreferredShared(reachable);
+    for (int node = preferredShared.nextSetBit(0);
+         node >= 0;
+         node = preferredShared.nextSetBit(node + 1)) {
+      if (!excluded.get(node)) {
+        excluded.or(nativeLinkableGraph.getClosure(node));
       }
-    }.start();
+    }
 
     // And then we can do one last walk to create the actual graph which contain only root and body
     // nodes to include in the omnibus link.
     final MutableDirectedGraph<BuildTarget> graphBuilder = new MutableDirectedGraph<>();
-    final Set<BuildTarget> deps = new LinkedHashSet<>();
-    new AbstractBreadthFirstTraversal<BuildTarget>(Sets.difference(rootDeps.keySet(), excluded)) {
-      @Override
-      public Iterable<BuildTarget> visit(BuildTarget target) {
-        graphBuilder.addNode(target);
-        Set<BuildTarget> keep = new LinkedHashSet<>();
-        for (BuildTarget dep :
-            Iterables.transform(
-                getDeps(target, roots, nativeLinkables, cxxPlatform),
-                NativeLinkable::getBuildTarget)) {
-          if (excluded.contains(dep)) {
-            deps.add(dep);
-          } else {
-            keep.add(dep);
-            graphBuilder.addEdge(target, dep);
+    final Map<BuildTarget, NativeLinkable> included = new HashMap<>();
+    final Set<Integer> deps = new LinkedHashSet<>();
+    BitSet visited = new BitSet();
+    Deque<Integer> toVisit = new ArrayDeque<>();
+    for (int rootDep : rootDeps) {
+      if (!excluded.get(rootDep)) {
+        visited.set(rootDep);
+        toVisit.add(rootDep);
+      }
+    }
+    while (!toVisit.isEmpty()) {
+      int node = toVisit.remove();
+      NativeLinkable nativeLinkable = nativeLinkableGraph.get(node);
+      BuildTarget target = nativeLinkable.getBuildTarget();
+      included.put(target, nativeLinkable);
+      graphBuilder.addNode(target);
+      for (int dep : nativeLinkableGraph.getDeps(node)) {
+        if (excluded.get(dep)) {
+          deps.add(dep);
+        } else {
+          graphBuilder.addEdge(target, nativeLinkableGraph.get(dep).getBuildTarget());
+          if (!visited.get(dep)) {
+            visited.set(dep);
+            toVisit.add(dep);
           }
         }
-        return keep;
       }
-    }.start();
+    }
     DirectedAcyclicGraph<BuildTarget> graph = new DirectedAcyclicGraph<>(graphBuilder);
 
     // Since we add all undefined root symbols into the omnibus library, we also need to include
     // any excluded root deps as deps of omnibus, as they may fulfill these undefined symbols.
     // Also add any excluded nodes that are also root dependencies.
-    deps.addAll(Sets.intersection(rootDeps.keySet(), excluded));
+    for (int rootDep : rootDeps) {
+      if (excluded.get(rootDep)) {
+        deps.add(rootDep);
+      }
+    }
+
+    ImmutableMap.Builder<BuildTarget, NativeLinkable> body = ImmutableMap.builder();
+    for (BuildTarget target : graph.getNodes()) {
+      if (!roots.containsKey(target)) {
+        body.put(target, Preconditions.checkNotNull(included.get(target)));
+      }
+    }
+    ImmutableMap.Builder<BuildTarget, NativeLinkable> depsMap = ImmutableMap.builder();
+    for (int dep : deps) {
+      NativeLinkable nativeLinkable = nativeLinkableGraph.get(dep);
+      depsMap.put(nativeLinkable.getBuildTarget(), nativeLinkable);
+    }
+
+    // The node indices depend on the order the graph was filled in, which may have been by other
+    // binaries, so list the excluded nodes by target to keep the spec deterministic.
+    ImmutableSortedMap.Builder<BuildTarget, NativeLinkable> excludedMap =
+        ImmutableSortedMap.naturalOrder();
+    for (int node = excluded.nextSetBit(0); node >= 0; node = excluded.nextSetBit(node + 1)) {
+      NativeLinkable nativeLinkable = nativeLinkableGraph.get(node);
+      excludedMap.put(nativeLinkable.getBuildTarget(), nativeLinkable);
+    }
 
     return ImmutableOmnibusSpec.builder()
         .graph(graph)
         .roots(roots)
-        .body(
-            FluentIterable.from(graph.getNodes())
-                .filter(Predicates.not(roots.keySet()::contains))
-                .toMap(Functions.forMap(nativeLinkables)))
-        .deps(Maps.asMap(deps, Functions.forMap(nativeLinkables)))
-        .excluded(Maps.asMap(excluded, Functions.forMap(nativeLinkables)))
+        .body(body.build())
+        .deps(depsMap.build())
+        .excluded(excludedMap.build())
         .build();
   }
 
@@ -611,7 +610,11 @@ public class Omnibus {
 
     OmnibusLibraries.Builder libs = OmnibusLibraries.builder();
 
-    OmnibusSpec spec = buildSpec(cxxPlatform, nativeLinkTargetRoots, nativeLinkableRoots);
+    OmnibusSpec spec =
+        buildSpec(
+            getNativeLinkableGraph(ruleResolver, cxxPlatform),
+            nativeLinkTargetRoots,
+            nativeLinkableRoots);
 
     // Create an empty dummy omnibus library, to give the roots something to link against before
     // we have the actual omnibus library available.  Note that this requires that the linker
@@ -16,14 +16,13 @@
 
 package com.facebook.buck.cxx;
 
-import com.facebook.buck.io.FileContentsScrubber;
+import com.facebook.buck.io.MappedFileContentsScrubber;
 import com.google.common.collect.ImmutableCollection;
 
-import java.io.IOException;
-import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 
-public class OsoSymbolsContentsScrubber implements FileContentsScrubber {
+public class OsoSymbolsContentsScrubber implements MappedFileContentsScrubber {
 
   private final ImmutableCollection<Path> cellRoots;
 
@@ -32,7 +31,7 @@ public class OsoSymbolsContentsScrubber implements FileContentsScrubber {
   }
 
   @Override
-  public void scrubFile(FileChannel file) throws IOException, ScrubException {
+  public void scrubFile(ByteBuffer file) throws ScrubException {
     if (!Machos.isMacho(file)) {
       return;
     }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Maps absolute paths to values, one name at a time, to find the value mapped to the longest
+ * prefix of a path given as a string, without building a {@link Path} for it or any of its
+ * prefixes. Only paths separated by {@code /} can be looked up.
+ */
+final class PathTrie<T> {
+
+  private final Node<T> root = new Node<>();
+
+  /**
+   * Maps {@code path}, which must be absolute and normalized, to {@code value}.
+   */
+  void put(Path path, T value) {
+    Preconditions.checkArgument(path.isAbsolute());
+    Node<T> node = root;
+    for (Path name : path) {
+      node = node.children.computeIfAbsent(name.toString(), n -> new Node<>());
+    }
+    node.key = path;
+    node.value = value;
+  }
+
+  /**
+   * Finds the longest mapped prefix of {@code path}, which is resolved against {@code base} unless
+   * it's absolute. Both are normalized lexically, as {@link Path#normalize()} would.
+   *
+   * @param base an absolute path.
+   * @return the mapping found, if any.
+   */
+  @Nullable
+  Match<T> findLongestPrefix(String base, String path) {
+    List<Node<T>> nodes = new ArrayList<>();
+    nodes.add(root);
+    int unmatchedNames = 0;
+    if (!path.startsWith("/")) {
+      unmatchedNames = walk(nodes, unmatchedNames, base);
+    }
+    unmatchedNames = walk(nodes, unmatchedNames, path);
+    for (int i = nodes.size() - 1; i > 0; i--) {
+      Node<T> node = nodes.get(i);
+      if (node.value != null) {
+        return new Match<>(
+            node.key,
+            node.value,
+            unmatchedNames == 0 && i == nodes.size() - 1);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Follows the names of {@code path} down from the last of {@code nodes}, adding those it finds
+   * in the trie to {@code nodes} and counting the ones past the end of it.
+   *
+   * @return the number of names of the path so far which aren't in the trie.
+   */
+  private static <T> int walk(List<Node<T>> nodes, int unmatchedNames, String path) {
+    int start = 0;
+    while (start < path.length()) {
+      int end = path.indexOf('/', start);
+      if (end == -1) {
+        end = path.length();
+      }
+      int length = end - start;
+      if (length == 0 || (length == 1 && path.charAt(start) == '.')) {
+        // Nothing to do, as the name refers to the current directory.
+      } else if (length == 2 && path.charAt(start) == '.' && path.charAt(start + 1) == '.') {
+        if (unmatchedNames > 0) {
+          unmatchedNames--;
+        } else if (nodes.size() > 1) {
+          nodes.remove(nodes.size() - 1);
+        }
+      } else if (unmatchedNames > 0) {
+        unmatchedNames++;
+      } else {
+        Node<T> child = nodes.get(nodes.size() - 1).children.get(path.substring(start, end));
+        if (child == null) {
+          unmatchedNames = 1;
+        } else {
+          nodes.add(child);
+        }
+      }
+      start = end + 1;
+    }
+    return unmatchedNames;
+  }
+
+  static final class Match<T> {
+    private final Path key;
+    private final T value;
+    private final boolean isExact;
+
+    private Match(Path key, T value, boolean isExact) {
+      this.key = key;
+      this.value = value;
+      this.isExact = isExact;
+    }
+
+    /**
+     * @return the mapped prefix.
+     */
+    Path getKey() {
+      return key;
+    }
+
+    T getValue() {
+      return value;
+    }
+
+    /**
+     * @return whether the mapped prefix is the whole path that was looked up.
+     */
+    boolean isExact() {
+      return isExact;
+    }
+  }
+
+  private static final class Node<T> {
+    private final Map<String, Node<T>> children = new HashMap<>();
+    @Nullable
+    private Path key;
+    @Nullable
+    private T value;
+  }
+}
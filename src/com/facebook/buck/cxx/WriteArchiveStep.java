@@ -0,0 +1,340 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.cxx.elf.Elf;
+import com.facebook.buck.io.FileStatus;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.ExecutorPool;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.concurrent.MoreFutures;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+
+import javax.annotation.Nullable;
+
+/**
+ * Create a GNU object archive, regular or thin, with {@link ArchiveWriter} rather than by running
+ * {@code ar} and {@code ranlib}.
+ * <p>
+ * The symbols each object defines are kept in a cache next to the archive, keyed by the object's
+ * file status, so that only the objects which changed since the archive was last written have their
+ * symbols read again. Objects are read in parallel.
+ * <p>
+ * If any of the objects isn't an ELF object, such as the bitcode {@code -flto} compiles to, its
+ * symbols can't be read, and the archive is written by running the archiver's steps instead.
+ */
+public class WriteArchiveStep implements Step {
+
+  private static final Logger LOG = Logger.get(WriteArchiveStep.class);
+
+  private static final int SYMBOL_CACHE_VERSION = 4;
+
+  private final ProjectFilesystem filesystem;
+  private final Path output;
+  private final ImmutableList<Path> inputs;
+  private final boolean thin;
+  private final Path symbolCache;
+  private final ImmutableList<Step> archiverSteps;
+
+  /**
+   * @param archiverSteps the steps which write the archive by running the archiver, for when it
+   *     holds objects whose symbols can't be read.
+   */
+  public WriteArchiveStep(
+      ProjectFilesystem filesystem,
+      Path output,
+      ImmutableList<Path> inputs,
+      boolean thin,
+      Path symbolCache,
+      ImmutableList<Step> archiverSteps) {
+    Preconditions.checkArgument(!output.isAbsolute());
+    for (Path input : inputs) {
+      Preconditions.checkArgument(!input.isAbsolute());
+    }
+    this.filesystem = filesystem;
+    this.output = output;
+    this.inputs = inputs;
+    this.thin = thin;
+    this.symbolCache = symbolCache;
+    this.archiverSteps = archiverSteps;
+  }
+
+  /**
+   * @return the objects to archive, with those found under input directories in sorted order.
+   */
+  private ImmutableList<Path> getAllInputs() throws IOException {
+    ImmutableList.Builder<Path> allInputs = ImmutableList.builder();
+    for (Path input : inputs) {
+      if (filesystem.isDirectory(input)) {
+        allInputs.addAll(new TreeSet<>(filesystem.getFilesUnderPath(input)));
+      } else {
+        allInputs.add(input);
+      }
+    }
+    return allInputs.build();
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    try {
+      if (writeArchive(context)) {
+        return StepExecutionResult.SUCCESS;
+      }
+    } catch (IOException e) {
+      context.logError(e, "Error writing archive %s", output);
+      return StepExecutionResult.ERROR;
+    }
+    for (Step step : archiverSteps) {
+      StepExecutionResult result = step.execute(context);
+      if (!result.isSuccess()) {
+        return result;
+      }
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  /**
+   * @return whether the archive was written, which it isn't if any of the objects isn't an ELF
+   *     object.
+   */
+  private boolean writeArchive(ExecutionContext context) throws IOException {
+    ImmutableList<Path> objects = getAllInputs();
+    Map<Path, CachedSymbols> cachedSymbols = readSymbolCache();
+
+    Map<Path, Optional<CachedSymbols>> symbols = new HashMap<>();
+    readSymbols(objects, cachedSymbols, symbols, context);
+    int reread = 0;
+    for (Path object : objects) {
+      Optional<CachedSymbols> objectSymbols = symbols.get(object);
+      if (!objectSymbols.isPresent()) {
+        LOG.debug("Archive %s: %s isn't an ELF object, running the archiver.", output, object);
+        return false;
+      }
+      if (objectSymbols.get() != cachedSymbols.get(object)) {
+        reread++;
+      }
+    }
+    LOG.debug(
+        "Archive %s: read symbols of %d objects, reused those of %d.",
+        output,
+        reread,
+        objects.size() - reread);
+
+    Path outputDirectory = filesystem.resolve(output).getParent();
+    List<ArchiveWriter.Member> members = new ArrayList<>(objects.size());
+    for (Path object : objects) {
+      CachedSymbols objectSymbols = symbols.get(object).get();
+      members.add(
+          new ArchiveWriter.Member(
+              thin ?
+                  outputDirectory.relativize(filesystem.resolve(object)).toString() :
+                  object.getFileName().toString(),
+              filesystem.resolve(object),
+              objectSymbols.size,
+              objectSymbols.symbols));
+    }
+    try (OutputStream stream =
+             new BufferedOutputStream(filesystem.newFileOutputStream(output))) {
+      ArchiveWriter.write(stream, thin, members);
+    }
+
+    writeSymbolCache(objects, symbols);
+    return true;
+  }
+
+  /**
+   * Reads the symbols of {@code objects} into {@code symbols}, using as many threads as there are
+   * available.
+   */
+  private void readSymbols(
+      List<Path> objects,
+      Map<Path, CachedSymbols> cachedSymbols,
+      Map<Path, Optional<CachedSymbols>> symbols,
+      ExecutionContext context) throws IOException {
+    int parallelism = context.getConcurrencyLimit().threadLimit;
+    if (objects.size() <= 1 || parallelism <= 1) {
+      for (Path object : objects) {
+        symbols.put(object, readSymbols(object, cachedSymbols.get(object)));
+      }
+      return;
+    }
+
+    ListeningExecutorService executorService = context.getExecutorService(ExecutorPool.CPU);
+    try (MoreFutures.InFlightFutures<Map.Entry<Path, Optional<CachedSymbols>>, IOException>
+             inFlight = MoreFutures.inFlight(
+                 parallelism,
+                 IOException.class,
+                 objectAndSymbols ->
+                     symbols.put(objectAndSymbols.getKey(), objectAndSymbols.getValue()))) {
+      for (Path object : objects) {
+        CachedSymbols cached = cachedSymbols.get(object);
+        inFlight.add(
+            executorService.submit(
+                () -> new AbstractMap.SimpleEntry<>(object, readSymbols(object, cached))));
+      }
+      inFlight.finish();
+    }
+  }
+
+  /**
+   * @return the symbols {@code object} defines, which are {@code cached} if its contents haven't
+   *     changed, or nothing if it isn't an ELF object.
+   */
+  private Optional<CachedSymbols> readSymbols(Path object, @Nullable CachedSymbols cached)
+      throws IOException {
+    try (FileChannel channel =
+             FileChannel.open(filesystem.resolve(object), StandardOpenOption.READ)) {
+      long size = channel.size();
+      String status = FileStatus.of(filesystem.resolve(object)).toString();
+      if (cached != null && cached.size == size && cached.status.equals(status)) {
+        return Optional.of(cached);
+      }
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      if (!Elf.isElf(buffer)) {
+        return Optional.empty();
+      }
+      return Optional.of(
+          new CachedSymbols(size, status, ArchiveWriter.getDefinedSymbols(buffer)));
+    } catch (IllegalArgumentException | BufferUnderflowException e) {
+      throw new IOException(String.format("%s: error reading ELF symbols", object), e);
+    } catch (IOException e) {
+      throw new IOException(String.format("%s: %s", object, e.getMessage()), e);
+    }
+  }
+
+  /**
+   * @return the symbols cached when the archive was last written, or nothing if they can't be
+   *     read.
+   */
+  private Map<Path, CachedSymbols> readSymbolCache() {
+    Map<Path, CachedSymbols> cache = new HashMap<>();
+    if (!filesystem.isFile(symbolCache)) {
+      return cache;
+    }
+    try (DataInputStream stream =
+             new DataInputStream(
+                 new BufferedInputStream(filesystem.newFileInputStream(symbolCache)))) {
+      if (stream.readInt() != SYMBOL_CACHE_VERSION) {
+        return cache;
+      }
+      int objectCount = stream.readInt();
+      for (int i = 0; i < objectCount; i++) {
+        Path object = Paths.get(readString(stream));
+        long size = stream.readLong();
+        String status = readString(stream);
+        ImmutableList.Builder<String> symbols = ImmutableList.builder();
+        int symbolCount = stream.readInt();
+        for (int j = 0; j < symbolCount; j++) {
+          symbols.add(readString(stream));
+        }
+        cache.put(object, new CachedSymbols(size, status, symbols.build()));
+      }
+    } catch (IOException e) {
+      LOG.debug(e, "Ignoring unreadable symbol cache %s.", symbolCache);
+      cache.clear();
+    }
+    return cache;
+  }
+
+  private void writeSymbolCache(
+      List<Path> objects,
+      Map<Path, Optional<CachedSymbols>> symbols)
+      throws IOException {
+    try (DataOutputStream stream =
+             new DataOutputStream(
+                 new BufferedOutputStream(filesystem.newFileOutputStream(symbolCache)))) {
+      stream.writeInt(SYMBOL_CACHE_VERSION);
+      stream.writeInt(objects.size());
+      for (Path object : objects) {
+        CachedSymbols objectSymbols = symbols.get(object).get();
+        writeString(stream, object.toString());
+        stream.writeLong(objectSymbols.size);
+        writeString(stream, objectSymbols.status);
+        stream.writeInt(objectSymbols.symbols.size());
+        for (String symbol : objectSymbols.symbols) {
+          writeString(stream, symbol);
+        }
+      }
+    }
+  }
+
+  // Symbol names can be longer than DataOutput#writeUTF allows.
+  private static void writeString(DataOutputStream stream, String string) throws IOException {
+    byte[] bytes = string.getBytes(Charsets.UTF_8);
+    stream.writeInt(bytes.length);
+    stream.write(bytes);
+  }
+
+  private static String readString(DataInputStream stream) throws IOException {
+    byte[] bytes = new byte[stream.readInt()];
+    stream.readFully(bytes);
+    return new String(bytes, Charsets.UTF_8);
+  }
+
+  @Override
+  public String getShortName() {
+    return "archive";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format("write %sarchive %s", thin ? "thin " : "", output);
+  }
+
+  /**
+   * The symbols an object defined when it had the given size and the given file status.
+   */
+  private static final class CachedSymbols {
+    private final long size;
+    private final String status;
+    private final ImmutableList<String> symbols;
+
+    private CachedSymbols(long size, String status, ImmutableList<String> symbols) {
+      this.size = size;
+      this.status = status;
+      this.symbols = symbols;
+    }
+  }
+
+}
@@ -115,7 +115,8 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
       APKModuleGraph apkModuleGraph,
       DexSplitStrategy dexSplitStrategy,
       ZipSplitter.CanaryStrategy canaryStrategy,
-      Path reportDir) {
+      Path reportDir,
+      DalvikStatsCache dalvikStatsCache) {
     if (linearAllocLimit <= 0) {
       throw new HumanReadableException("linear_alloc_hard_limit must be greater than zero.");
     }
@@ -145,7 +146,7 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
     this.reportDir = reportDir;
     this.dexSplitStrategy = dexSplitStrategy;
     this.linearAllocLimit = linearAllocLimit;
-    this.dalvikStatsCache = new DalvikStatsCache();
+    this.dalvikStatsCache = dalvikStatsCache;
   }
 
   public static DalvikAwareZipSplitter splitZip(
@@ -164,7 +165,8 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
       APKModuleGraph apkModuleGraph,
       DexSplitStrategy dexSplitStrategy,
       ZipSplitter.CanaryStrategy canaryStrategy,
-      Path reportDir) {
+      Path reportDir,
+      DalvikStatsCache dalvikStatsCache) {
     return new DalvikAwareZipSplitter(
         filesystem,
         inFiles,
@@ -181,7 +183,8 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
         apkModuleGraph,
         dexSplitStrategy,
         canaryStrategy,
-        reportDir);
+        reportDir,
+        dalvikStatsCache);
   }
 
   @Override
@@ -189,6 +192,9 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
     ClasspathTraverser classpathTraverser = new DefaultClasspathTraverser();
     final Set<String> secondaryTail = new HashSet<String>();
 
+    // Estimate all of the classes up front, as this can be done in parallel.
+    dalvikStatsCache.precompute(inFiles, filesystem);
+
     // Start out by writing the primary zip and recording which entries were added to it.
     primaryOut = newZipOutput(outPrimary);
     secondaryDexWriter.reset();
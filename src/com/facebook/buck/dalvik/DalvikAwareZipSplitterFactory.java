@@ -30,12 +30,21 @@ public class DalvikAwareZipSplitterFactory implements ZipSplitterFactory {
 
   private final long linearAllocLimit;
   private final Set<String> wantedInPrimaryZip;
+  private final DalvikStatsCache dalvikStatsCache;
 
   public DalvikAwareZipSplitterFactory(
       long linearAllocLimit,
       Set<String> wantedInPrimaryZip) {
+    this(linearAllocLimit, wantedInPrimaryZip, new DalvikStatsCache());
+  }
+
+  public DalvikAwareZipSplitterFactory(
+      long linearAllocLimit,
+      Set<String> wantedInPrimaryZip,
+      DalvikStatsCache dalvikStatsCache) {
     this.linearAllocLimit = linearAllocLimit;
     this.wantedInPrimaryZip = wantedInPrimaryZip;
+    this.dalvikStatsCache = dalvikStatsCache;
   }
 
   @Override
@@ -70,6 +79,7 @@ public class DalvikAwareZipSplitterFactory implements ZipSplitterFactory {
         apkModuleGraph,
         dexSplitStrategy,
         canaryStrategy,
-        reportDir);
+        reportDir,
+        dalvikStatsCache);
   }
 }
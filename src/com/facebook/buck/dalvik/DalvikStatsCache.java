@@ -16,22 +16,171 @@
 
 package com.facebook.buck.dalvik;
 
+import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.classes.ClasspathTraversal;
 import com.facebook.buck.jvm.java.classes.FileLike;
-import com.google.common.collect.MapMaker;
+import com.facebook.buck.util.concurrent.MoreFutures;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
-import java.io.InputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
  * Cache to memoize results from DalvikStatsTool.
+ * <p>
+ * Stats only depend on the contents of a class file, so they are shared by the whole process:
+ * the stats of the classes of a jar are kept under the hash of the jar, and those of loose class
+ * files under the hash of the class file. A jar that hasn't changed since a previous build doesn't
+ * have to be estimated again, and the classes of those that have are estimated in parallel by
+ * {@link #precompute(Collection, ProjectFilesystem)}.
  */
-class DalvikStatsCache {
+public class DalvikStatsCache {
+
+  /**
+   * The stats of a class hold the methods and fields it references, so bound the shared caches by
+   * the total number of references they hold.
+   */
+  private static final long MAX_CACHED_REFERENCES = 4_000_000;
+
+  private static final Cache<HashCode, ImmutableMap<String, DalvikStatsTool.Stats>> JAR_STATS =
+      CacheBuilder.newBuilder()
+          .maximumWeight(MAX_CACHED_REFERENCES)
+          .<HashCode, ImmutableMap<String, DalvikStatsTool.Stats>>weigher(
+              (hash, stats) -> stats.values().stream().mapToInt(DalvikStatsCache::weigh).sum())
+          .build();
+
+  private static final Cache<HashCode, DalvikStatsTool.Stats> CLASS_STATS =
+      CacheBuilder.newBuilder()
+          .maximumWeight(MAX_CACHED_REFERENCES)
+          .<HashCode, DalvikStatsTool.Stats>weigher((hash, stats) -> weigh(stats))
+          .build();
+
+  private final ListeningExecutorService executorService;
+  private final int parallelism;
+
+  /**
+   * Stats of the entries seen by this instance, by container and then by relative path.
+   */
+  private final ConcurrentMap<Path, Map<String, DalvikStatsTool.Stats>> statsByContainer =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Creates a cache which estimates classes on the calling thread.
+   */
+  public DalvikStatsCache() {
+    this(MoreExecutors.newDirectExecutorService(), 1);
+  }
+
+  /**
+   * @param executorService used to estimate classes in {@link #precompute}.
+   * @param parallelism the number of classes to estimate at once.
+   */
+  public DalvikStatsCache(ListeningExecutorService executorService, int parallelism) {
+    Preconditions.checkArgument(parallelism > 0);
+    this.executorService = executorService;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Estimates all of the class files in {@code inFiles}, so that {@link #getStats(FileLike)} can
+   * look up the stats of the entries of a {@link ClasspathTraversal} of the same files.
+   */
+  void precompute(Collection<Path> inFiles, ProjectFilesystem filesystem) throws IOException {
+    for (Path inFile : inFiles) {
+      Path path = filesystem.getPathForRelativePath(inFile);
+      String extension = MorePaths.getFileExtension(path);
+      if (filesystem.isFile(path) &&
+          (extension.equalsIgnoreCase("jar") || extension.equalsIgnoreCase("zip"))) {
+        statsByContainer.put(path, getJarStats(path, filesystem));
+      } else {
+        precomputeClassFiles(path, filesystem);
+      }
+    }
+  }
 
-  private final ConcurrentMap<FileLike, DalvikStatsTool.Stats> cache;
+  private ImmutableMap<String, DalvikStatsTool.Stats> getJarStats(
+      Path jar,
+      ProjectFilesystem filesystem) throws IOException {
+    HashCode jarHash = hash(Files.newInputStream(jar));
+    ImmutableMap<String, DalvikStatsTool.Stats> stats = JAR_STATS.getIfPresent(jarHash);
+    if (stats == null) {
+      ConcurrentMap<String, DalvikStatsTool.Stats> statsByName = new ConcurrentHashMap<>();
+      Set<String> seen = new HashSet<>();
+      estimateAll(jar, filesystem, (entry, contents) -> {
+        String name = entry.getRelativePath();
+        if (!seen.add(name)) {
+          // Only the first of several entries with the same name ends up in a dex.
+          return Futures.immediateFuture(null);
+        }
+        return executorService.submit(() -> statsByName.put(name, estimate(entry, contents)));
+      });
+      stats = ImmutableMap.copyOf(statsByName);
+      JAR_STATS.put(jarHash, stats);
+    }
+    return stats;
+  }
 
-  DalvikStatsCache() {
-    cache = new MapMaker().weakKeys().makeMap();
+  private void precomputeClassFiles(Path path, ProjectFilesystem filesystem) throws IOException {
+    estimateAll(path, filesystem, (entry, contents) -> executorService.submit(() -> {
+      DalvikStatsTool.Stats stats = CLASS_STATS.get(
+          hash(new ByteArrayInputStream(contents)),
+          () -> estimate(entry, contents));
+      statsByContainer.put(entry.getContainer(), ImmutableMap.of(entry.getRelativePath(), stats));
+      return null;
+    }));
+  }
+
+  private interface EstimateSubmitter {
+    ListenableFuture<?> submit(FileLike entry, byte[] contents);
+  }
+
+  /**
+   * Reads the class files under {@code path} on this thread, and hands them to
+   * {@code submitter} to be estimated, keeping at most {@link #parallelism} of them in flight.
+   */
+  private void estimateAll(
+      Path path,
+      ProjectFilesystem filesystem,
+      EstimateSubmitter submitter) throws IOException {
+    try (MoreFutures.InFlightFutures<Object, IOException> inFlight =
+             MoreFutures.inFlight(parallelism, IOException.class, result -> {})) {
+      new ClasspathTraversal(ImmutableSet.of(path), filesystem) {
+        @Override
+        public void visit(FileLike entry) throws IOException {
+          if (!entry.getRelativePath().endsWith(".class")) {
+            return;
+          }
+          byte[] contents;
+          try (InputStream is = entry.getInput()) {
+            contents = ByteStreams.toByteArray(is);
+          }
+          inFlight.add(submitter.submit(entry, contents));
+        }
+      }.traverse();
+      inFlight.finish();
+    }
   }
 
   DalvikStatsTool.Stats getStats(FileLike entry) {
@@ -42,19 +191,44 @@ class DalvikStatsCache {
       return DalvikStatsTool.Stats.ZERO;
     }
 
-    DalvikStatsTool.Stats stats = cache.get(entry);
+    Map<String, DalvikStatsTool.Stats> containerStats =
+        statsByContainer.get(entry.getContainer());
+    DalvikStatsTool.Stats stats = containerStats == null ? null : containerStats.get(name);
     if (stats != null) {
       return stats;
     }
 
+    // Not precomputed, so estimate it now. This isn't worth remembering, as it is unlikely to be
+    // asked for again.
     try (InputStream is = entry.getInput()) {
-      stats = DalvikStatsTool.getEstimate(is);
-      cache.put(entry, stats);
-      return stats;
+      return estimate(entry, ByteStreams.toByteArray(is));
     } catch (IOException e) {
       throw new RuntimeException(String.format("Error calculating size for %s.", name), e);
-    } catch (RuntimeException e) {
-      throw new RuntimeException(String.format("Error calculating size for %s.", name), e);
     }
   }
+
+  private static DalvikStatsTool.Stats estimate(FileLike entry, byte[] contents) {
+    try {
+      return DalvikStatsTool.getEstimate(new ByteArrayInputStream(contents));
+    } catch (IOException | RuntimeException e) {
+      throw new RuntimeException(
+          String.format("Error calculating size for %s.", entry.getRelativePath()),
+          e);
+    }
+  }
+
+  private static HashCode hash(InputStream contents) throws IOException {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    try (InputStream is = contents) {
+      byte[] buffer = new byte[8192];
+      for (int read = is.read(buffer); read != -1; read = is.read(buffer)) {
+        hasher.putBytes(buffer, 0, read);
+      }
+    }
+    return hasher.hash();
+  }
+
+  private static int weigh(DalvikStatsTool.Stats stats) {
+    return 1 + stats.methodReferences.size() + stats.fieldReferences.size();
+  }
 }
@@ -331,6 +331,7 @@ public class DistBuildSlaveExecutor {
               Optional.empty(),
               Optional.empty(),
               Optional.empty(),
+              Optional.empty(),
               args.getExecutors())) {
 
         return build.executeAndPrintFailuresToEventBus(
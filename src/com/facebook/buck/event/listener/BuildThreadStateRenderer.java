@@ -123,4 +123,11 @@ public class BuildThreadStateRenderer implements MultiStateRenderer {
         !threadInformation.getRunningStep().isPresent(),
         threadInformation.getElapsedTimeMs());
   }
+
+  @Override
+  public boolean isExecutorIdle(long threadId) {
+    ThreadRenderingInformation threadInformation =
+        Preconditions.checkNotNull(threadInformationMap.get(threadId));
+    return !threadInformation.getStartEvent().isPresent();
+  }
 }
@@ -134,4 +134,10 @@ public class DistBuildSlaveStateRenderer implements MultiStateRenderer {
       return glyph;
     }
   }
+
+  @Override
+  public boolean isExecutorIdle(long slaveID) {
+    // Failed and finished servers are rendered differently from idle ones, so never collapse them.
+    return false;
+  }
 }
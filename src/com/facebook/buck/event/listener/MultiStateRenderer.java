@@ -24,4 +24,5 @@ public interface MultiStateRenderer {
   ImmutableList<Long> getSortedExecutorIds(boolean sortByTime);
   String renderStatusLine(long executorID, StringBuilder lineBuilder);
   String renderShortStatus(long executorID);
+  boolean isExecutorIdle(long executorID);
 }
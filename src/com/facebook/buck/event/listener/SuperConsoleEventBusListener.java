@@ -60,12 +60,15 @@ import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -76,10 +79,12 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 
@@ -96,6 +101,18 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
    */
   private static final int EXPECTED_MAXIMUM_RENDERED_LINE_LENGTH = 128;
 
+  /**
+   * The render scheduler backs off so that rendering uses at most roughly 1/N of a core, where N
+   * is this value. On machines with hundreds of build threads a single frame gets expensive enough
+   * that rendering at the requested rate would steal noticeable CPU from the build.
+   */
+  private static final long RENDER_CPU_BUDGET_DIVISOR = 50;
+
+  /**
+   * Upper bound on how far the render scheduler is allowed to back off.
+   */
+  private static final long MAX_RENDER_INTERVAL_MS = 1000;
+
   private static final Logger LOG = Logger.get(SuperConsoleEventBusListener.class);
 
   @VisibleForTesting
@@ -148,7 +165,20 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
   private final boolean shouldAlwaysSortThreadsByTime;
 
   private final DateFormat dateFormat;
-  private int lastNumLinesPrinted;
+  private ImmutableList<String> lastRenderedLines = ImmutableList.of();
+
+  private final ThreadMXBean threadMXBean;
+  private final AtomicLong renderCpuNanos = new AtomicLong(0);
+  private final AtomicLong renderedFrames = new AtomicLong(0);
+  private final AtomicLong lastRenderCpuNanos = new AtomicLong(0);
+  private volatile long firstRenderTimeMillis = -1;
+
+  // Counts the events which changed what each thread is doing, so that a frame only rebuilds the
+  // parts of the thread lines which may have changed since the previous one.
+  private final AtomicLong threadEventCount = new AtomicLong(0);
+  private final ConcurrentMap<Long, Long> threadEventCounts = new ConcurrentHashMap<>();
+  private final ThreadLinesCache buildThreadLines = new ThreadLinesCache();
+  private final ThreadLinesCache testThreadLines = new ThreadLinesCache();
 
   private Optional<String> parsingStatus = Optional.empty();
   // Save if Watchman reported zero file changes in case we receive an ActionGraphCache hit. This
@@ -183,6 +213,7 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
 
     this.renderScheduler = Executors.newScheduledThreadPool(1,
         new ThreadFactoryBuilder().setNameFormat(getClass().getSimpleName() + "-%d").build());
+    this.threadMXBean = ManagementFactory.getThreadMXBean();
     this.testFormatter = new TestResultFormatter(
         console.getAnsi(),
         console.getVerbosity(),
@@ -205,18 +236,46 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
   }
 
   /**
-   * Schedules a runnable that updates the console output at a fixed interval.
+   * Schedules a runnable that updates the console output. Frames are rendered every
+   * {@code renderInterval}, unless rendering a frame gets expensive, in which case the interval is
+   * stretched to keep the rendering CPU cost bounded.
    */
   public void startRenderScheduler(long renderInterval, TimeUnit timeUnit) {
     LOG.debug("Starting render scheduler (interval %d ms)", timeUnit.toMillis(renderInterval));
-    renderScheduler.scheduleAtFixedRate(() -> {
-      try {
-        SuperConsoleEventBusListener.this.render();
-      } catch (Error | RuntimeException e) {
-        LOG.error(e, "Rendering exception");
-        throw e;
-      }
-    }, /* initialDelay */ renderInterval, /* period */ renderInterval, timeUnit);
+    scheduleNextRender(timeUnit.toMillis(renderInterval), timeUnit.toMillis(renderInterval));
+  }
+
+  private void scheduleNextRender(long delayMs, long minRenderIntervalMs) {
+    try {
+      renderScheduler.schedule(() -> {
+        try {
+          SuperConsoleEventBusListener.this.render();
+        } catch (Error | RuntimeException e) {
+          LOG.error(e, "Rendering exception");
+          throw e;
+        }
+        if (!renderScheduler.isShutdown()) {
+          scheduleNextRender(
+              getAdaptiveRenderIntervalMs(minRenderIntervalMs, lastRenderCpuNanos.get()),
+              minRenderIntervalMs);
+        }
+      }, delayMs, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // The scheduler was shut down between rendering the last frame and scheduling this one.
+      LOG.verbose(e, "Render scheduler already stopped");
+    }
+  }
+
+  /**
+   * @return the delay before the next frame, given the CPU cost of the last one.
+   */
+  @VisibleForTesting
+  static long getAdaptiveRenderIntervalMs(long minRenderIntervalMs, long lastRenderCpuNanos) {
+    long budgetedIntervalMs =
+        TimeUnit.NANOSECONDS.toMillis(lastRenderCpuNanos * RENDER_CPU_BUDGET_DIVISOR);
+    return Math.max(
+        minRenderIntervalMs,
+        Math.min(budgetedIntervalMs, Math.max(minRenderIntervalMs, MAX_RENDER_INTERVAL_MS)));
   }
 
   /**
@@ -230,10 +289,15 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
   @VisibleForTesting
   synchronized void render() {
     LOG.verbose("Rendering");
-    String lastRenderClear = clearLastRender();
-    ImmutableList<String> lines = createRenderLinesAtTime(clock.currentTimeMillis());
+    long renderStartCpuNanos = getCurrentThreadCpuNanos();
+    long currentTimeMillis = clock.currentTimeMillis();
+    if (firstRenderTimeMillis < 0) {
+      firstRenderTimeMillis = currentTimeMillis;
+    }
+    ImmutableList<String> lines = createRenderLinesAtTime(currentTimeMillis);
     ImmutableList<String> logLines = createLogRenderLines();
-    lastNumLinesPrinted = lines.size();
+    String frame = createFrameUpdate(lines, logLines);
+    lastRenderedLines = lines;
 
     // Synchronize on the DirtyPrintStreamDecorator to prevent interlacing of output.
     // We don't log immediately so we avoid locking the console handler to avoid deadlocks.
@@ -247,20 +311,8 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
         stderrDirty = console.getStdErr().isDirty();
         if (stdoutDirty || stderrDirty) {
           stopRenderScheduler();
-        } else if (!lastRenderClear.isEmpty() || !lines.isEmpty() || !logLines.isEmpty()) {
-          Iterable<String> renderedLines = Iterables.concat(
-              MoreIterables.zipAndConcat(
-                  logLines,
-                  Iterables.cycle("\n")),
-              ansi.asNoWrap(
-                  MoreIterables.zipAndConcat(
-                      lines,
-                      Iterables.cycle("\n"))));
-          StringBuilder fullFrame = new StringBuilder(lastRenderClear);
-          for (String part : renderedLines) {
-            fullFrame.append(part);
-          }
-          console.getStdErr().getRawStream().print(fullFrame);
+        } else if (!frame.isEmpty()) {
+          console.getStdErr().getRawStream().print(frame);
         }
       }
     }
@@ -269,6 +321,66 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
           "Stopping console output (stdout dirty %s, stderr dirty %s).",
           stdoutDirty, stderrDirty);
     }
+
+    long frameCpuNanos = getCurrentThreadCpuNanos() - renderStartCpuNanos;
+    lastRenderCpuNanos.set(frameCpuNanos);
+    renderCpuNanos.addAndGet(frameCpuNanos);
+    renderedFrames.incrementAndGet();
+  }
+
+  /**
+   * Creates the output that turns the previously rendered frame into {@code lines}.
+   *
+   * Log lines scroll the status lines, so if there are any, or if the number of status lines
+   * changed, the whole frame is cleared and redrawn. Otherwise only the lines starting at the first
+   * one that differs from the previous frame are rewritten, and nothing at all is written if the
+   * frame did not change.
+   */
+  @VisibleForTesting
+  String createFrameUpdate(ImmutableList<String> lines, ImmutableList<String> logLines) {
+    int firstChangedLine = 0;
+    if (logLines.isEmpty() && lines.size() == lastRenderedLines.size()) {
+      while (firstChangedLine < lines.size() &&
+          lines.get(firstChangedLine).equals(lastRenderedLines.get(firstChangedLine))) {
+        ++firstChangedLine;
+      }
+      if (firstChangedLine == lines.size()) {
+        return "";
+      }
+    }
+
+    StringBuilder frame = new StringBuilder();
+    for (int i = firstChangedLine; i < lastRenderedLines.size(); ++i) {
+      frame.append(ansi.cursorPreviousLine(1));
+      frame.append(ansi.clearLine());
+    }
+    Iterable<String> renderedLines = Iterables.concat(
+        MoreIterables.zipAndConcat(
+            logLines,
+            Iterables.cycle("\n")),
+        ansi.asNoWrap(
+            MoreIterables.zipAndConcat(
+                lines.subList(firstChangedLine, lines.size()),
+                Iterables.cycle("\n"))));
+    for (String part : renderedLines) {
+      frame.append(part);
+    }
+    return frame.toString();
+  }
+
+  private long getCurrentThreadCpuNanos() {
+    if (threadMXBean.isCurrentThreadCpuTimeSupported()) {
+      return threadMXBean.getCurrentThreadCpuTime();
+    }
+    return clock.nanoTime();
+  }
+
+  /**
+   * @return the CPU time spent rendering frames so far, in nanoseconds.
+   */
+  @VisibleForTesting
+  long getTotalRenderCpuNanos() {
+    return renderCpuNanos.get();
   }
 
   /**
@@ -389,13 +501,20 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
     getBuildTraceURLLine(lines);
 
     if (totalBuildMs == UNFINISHED_EVENT_PAIR) {
+      long eventCount = threadEventCount.get();
       MultiStateRenderer renderer = new BuildThreadStateRenderer(
           ansi,
           formatTimeFunction,
           currentTimeMillis,
           threadsToRunningStep,
           buildRuleThreadTracker);
-      renderLines(renderer, lines, maxThreadLines, shouldAlwaysSortThreadsByTime);
+      renderLines(
+          renderer,
+          lines,
+          maxThreadLines,
+          shouldAlwaysSortThreadsByTime,
+          Optional.of(buildThreadLines),
+          eventCount);
     }
 
     long testRunTime = logEventPair(
@@ -409,6 +528,7 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
         lines);
 
     if (testRunTime == UNFINISHED_EVENT_PAIR) {
+      long eventCount = threadEventCount.get();
       MultiStateRenderer renderer = new TestThreadStateRenderer(
           ansi,
           formatTimeFunction,
@@ -417,7 +537,13 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
           threadsToRunningTestStatusMessageEvent,
           threadsToRunningStep,
           buildRuleThreadTracker);
-      renderLines(renderer, lines, maxThreadLines, shouldAlwaysSortThreadsByTime);
+      renderLines(
+          renderer,
+          lines,
+          maxThreadLines,
+          shouldAlwaysSortThreadsByTime,
+          Optional.of(testThreadLines),
+          eventCount);
     }
 
     logEventPair("INSTALLING",
@@ -539,6 +665,21 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
       ImmutableList.Builder<String> lines,
       int maxLines,
       boolean alwaysSortByTime) {
+    renderLines(renderer, lines, maxLines, alwaysSortByTime, Optional.empty(), 0);
+  }
+
+  /**
+   * @param cache the parts of the lines rendered in the previous frame, which are reused for the
+   *     threads which haven't seen any events since.
+   * @param eventCount the number of thread events seen before {@code renderer} was created.
+   */
+  private void renderLines(
+      MultiStateRenderer renderer,
+      ImmutableList.Builder<String> lines,
+      int maxLines,
+      boolean alwaysSortByTime,
+      Optional<ThreadLinesCache> cache,
+      long eventCount) {
     int threadCount = renderer.getExecutorCount();
     int fullLines = threadCount;
     boolean useCompressedLine = false;
@@ -549,12 +690,26 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
     }
     int threadsWithShortStatus = threadCount - fullLines;
     boolean sortByTime = alwaysSortByTime || useCompressedLine;
-    ImmutableList<Long> threadIds = renderer.getSortedExecutorIds(sortByTime);
+    ImmutableList<Long> threadIds;
+    if (cache.isPresent()) {
+      threadIds = cache.get().getSortedThreadIds(renderer, sortByTime, eventCount);
+    } else {
+      threadIds = renderer.getSortedExecutorIds(sortByTime);
+    }
     StringBuilder lineBuilder = new StringBuilder(EXPECTED_MAXIMUM_RENDERED_LINE_LENGTH);
     for (int i = 0; i < fullLines; ++i) {
       long threadId = threadIds.get(i);
-      lineBuilder.delete(0, lineBuilder.length());
-      lines.add(renderer.renderStatusLine(threadId, lineBuilder));
+      if (cache.isPresent()) {
+        lines.add(
+            cache.get().getStatusLine(
+                renderer,
+                threadId,
+                threadEventCounts.getOrDefault(threadId, 0L),
+                lineBuilder));
+      } else {
+        lineBuilder.delete(0, lineBuilder.length());
+        lines.add(renderer.renderStatusLine(threadId, lineBuilder));
+      }
     }
     if (useCompressedLine) {
       lineBuilder.delete(0, lineBuilder.length());
@@ -565,11 +720,21 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
       } else {
         lineBuilder.append(String.format(" MORE %s:", renderer.getExecutorCollectionLabel()));
       }
+      int idleThreads = 0;
       for (int i = fullLines; i < threadIds.size(); ++i) {
         long threadId = threadIds.get(i);
+        if (renderer.isExecutorIdle(threadId)) {
+          // Idle executors all look the same, so just count them instead of printing a glyph each.
+          ++idleThreads;
+          continue;
+        }
         lineBuilder.append(" ");
         lineBuilder.append(renderer.renderShortStatus(threadId));
       }
+      if (idleThreads > 0) {
+        lineBuilder.append(" ");
+        lineBuilder.append(ansi.asSubtleText(String.format(locale, "%d IDLE", idleThreads)));
+      }
       lines.add(lineBuilder.toString());
     }
   }
@@ -602,45 +767,49 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
     }
   }
 
-  /**
-   * @return A string of ansi characters that will clear the last set of lines printed by
-   *     {@link SuperConsoleEventBusListener#createRenderLinesAtTime(long)}.
-   */
-  private String clearLastRender() {
-    StringBuilder result = new StringBuilder();
-    for (int i = 0; i < lastNumLinesPrinted; ++i) {
-      result.append(ansi.cursorPreviousLine(1));
-      result.append(ansi.clearLine());
-    }
-    return result.toString();
-  }
-
   @Override
   @Subscribe
   public void buildRuleStarted(BuildRuleEvent.Started started) {
     super.buildRuleStarted(started);
+    markThreadChanged(started.getThreadId());
   }
 
   @Override
   @Subscribe
   public void buildRuleSuspended(BuildRuleEvent.Suspended suspended) {
     super.buildRuleSuspended(suspended);
+    markThreadChanged(suspended.getThreadId());
   }
 
   @Override
   @Subscribe
   public void buildRuleResumed(BuildRuleEvent.Resumed resumed) {
     super.buildRuleResumed(resumed);
+    markThreadChanged(resumed.getThreadId());
+  }
+
+  @Override
+  @Subscribe
+  public void buildRuleFinished(BuildRuleEvent.Finished finished) {
+    super.buildRuleFinished(finished);
+    markThreadChanged(finished.getThreadId());
+  }
+
+  private void markThreadChanged(long threadId) {
+    threadEventCounts.merge(threadId, 1L, Long::sum);
+    threadEventCount.incrementAndGet();
   }
 
   @Subscribe
   public void stepStarted(StepEvent.Started started) {
     threadsToRunningStep.put(started.getThreadId(), Optional.of(started));
+    markThreadChanged(started.getThreadId());
   }
 
   @Subscribe
   public void stepFinished(StepEvent.Finished finished) {
     threadsToRunningStep.put(finished.getThreadId(), Optional.empty());
+    markThreadChanged(finished.getThreadId());
   }
 
   @Override
@@ -658,6 +827,7 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
   public void artifactCacheStarted(ArtifactCacheEvent.Started started) {
     if (started.getInvocationType() == ArtifactCacheEvent.InvocationType.SYNCHRONOUS) {
       threadsToRunningStep.put(started.getThreadId(), Optional.of(started));
+      markThreadChanged(started.getThreadId());
     }
   }
 
@@ -665,27 +835,32 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
   public void artifactCacheFinished(ArtifactCacheEvent.Finished finished) {
     if (finished.getInvocationType() == ArtifactCacheEvent.InvocationType.SYNCHRONOUS) {
       threadsToRunningStep.put(finished.getThreadId(), Optional.empty());
+      markThreadChanged(finished.getThreadId());
     }
   }
 
   @Subscribe
   public void cacheCheckStarted(BuildRuleCacheEvent.CacheStepStarted started) {
     threadsToRunningStep.put(started.getThreadId(), Optional.of(started));
+    markThreadChanged(started.getThreadId());
   }
 
   @Subscribe
   public void cacheCheckFinished(BuildRuleCacheEvent.CacheStepFinished finished) {
     threadsToRunningStep.put(finished.getThreadId(), Optional.empty());
+    markThreadChanged(finished.getThreadId());
   }
 
   @Subscribe
   public void artifactCompressionStarted(ArtifactCompressionEvent.Started started) {
     threadsToRunningStep.put(started.getThreadId(), Optional.of(started));
+    markThreadChanged(started.getThreadId());
   }
 
   @Subscribe
   public void artifactCompressionFinished(ArtifactCompressionEvent.Finished finished) {
     threadsToRunningStep.put(finished.getThreadId(), Optional.empty());
+    markThreadChanged(finished.getThreadId());
   }
 
   @Subscribe
@@ -733,6 +908,7 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
   @Subscribe
   public void testStatusMessageStarted(TestStatusMessageEvent.Started started) {
     threadsToRunningTestStatusMessageEvent.put(started.getThreadId(), Optional.of(started));
+    markThreadChanged(started.getThreadId());
     synchronized (testStatusMessageBuilder) {
       testStatusMessageBuilder.add(started.getTestStatusMessage());
     }
@@ -743,6 +919,7 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
     threadsToRunningTestStatusMessageEvent.put(
         finished.getThreadId(),
         Optional.empty());
+    markThreadChanged(finished.getThreadId());
     synchronized (testStatusMessageBuilder) {
       testStatusMessageBuilder.add(finished.getTestStatusMessage());
     }
@@ -751,6 +928,7 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
   @Subscribe
   public void testSummaryStarted(TestSummaryEvent.Started started) {
     threadsToRunningTestSummaryEvent.put(started.getThreadId(), Optional.of(started));
+    markThreadChanged(started.getThreadId());
   }
 
   @Subscribe
@@ -758,6 +936,7 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
     threadsToRunningTestSummaryEvent.put(
         finished.getThreadId(),
         Optional.empty());
+    markThreadChanged(finished.getThreadId());
     TestResultSummary testResult = finished.getTestResultSummary();
     ResultType resultType = testResult.getType();
     switch (resultType) {
@@ -881,5 +1060,74 @@ public class SuperConsoleEventBusListener extends AbstractConsoleEventBusListene
     super.close();
     stopRenderScheduler();
     render(); // Ensure final frame is rendered.
+    logRenderCost();
+  }
+
+  private void logRenderCost() {
+    long frames = renderedFrames.get();
+    long cpuNanos = renderCpuNanos.get();
+    long wallMillis = Math.max(1, clock.currentTimeMillis() - firstRenderTimeMillis);
+    LOG.debug(
+        "Rendered %d frames using %d ms of CPU (%.2f ms of CPU per second)",
+        frames,
+        TimeUnit.NANOSECONDS.toMillis(cpuNanos),
+        cpuNanos / 1e6 / (wallMillis / 1000.0));
+  }
+
+  /**
+   * The parts of the thread lines of the previous frame which stay the same until a thread sees
+   * an event: the order of the threads, as all of the busy threads' elapsed times grow alike, and
+   * the lines of the idle threads. The lines of busy threads show their elapsed times, so those are
+   * rendered every frame.
+   */
+  private static final class ThreadLinesCache {
+    private long eventCount = -1;
+    private boolean sortedByTime;
+    private ImmutableList<Long> sortedThreadIds = ImmutableList.of();
+    private final Map<Long, CachedStatusLine> idleLines = new HashMap<>();
+
+    public synchronized ImmutableList<Long> getSortedThreadIds(
+        MultiStateRenderer renderer,
+        boolean sortByTime,
+        long eventCount) {
+      if (eventCount != this.eventCount ||
+          sortByTime != sortedByTime ||
+          sortedThreadIds.size() != renderer.getExecutorCount()) {
+        this.eventCount = eventCount;
+        sortedByTime = sortByTime;
+        sortedThreadIds = renderer.getSortedExecutorIds(sortByTime);
+      }
+      return sortedThreadIds;
+    }
+
+    public synchronized String getStatusLine(
+        MultiStateRenderer renderer,
+        long threadId,
+        long threadEventCount,
+        StringBuilder lineBuilder) {
+      boolean idle = renderer.isExecutorIdle(threadId);
+      CachedStatusLine cached = idleLines.get(threadId);
+      if (idle && cached != null && cached.eventCount == threadEventCount) {
+        return cached.line;
+      }
+      lineBuilder.delete(0, lineBuilder.length());
+      String line = renderer.renderStatusLine(threadId, lineBuilder);
+      if (idle) {
+        idleLines.put(threadId, new CachedStatusLine(threadEventCount, line));
+      } else {
+        idleLines.remove(threadId);
+      }
+      return line;
+    }
+  }
+
+  private static final class CachedStatusLine {
+    private final long eventCount;
+    private final String line;
+
+    private CachedStatusLine(long eventCount, String line) {
+      this.eventCount = eventCount;
+      this.line = line;
+    }
   }
 }
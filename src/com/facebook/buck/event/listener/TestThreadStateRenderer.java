@@ -146,4 +146,11 @@ public class TestThreadStateRenderer implements MultiStateRenderer {
         /* renderSubtle = */ false,
         threadInformation.getElapsedTimeMs());
   }
+
+  @Override
+  public boolean isExecutorIdle(long threadId) {
+    ThreadRenderingInformation threadInformation = Preconditions.checkNotNull(
+        threadInformationMap.get(threadId));
+    return !threadInformation.getBuildTarget().isPresent();
+  }
 }
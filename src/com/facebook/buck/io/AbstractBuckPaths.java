@@ -102,6 +102,14 @@ abstract class AbstractBuckPaths {
     return getLogDir().resolve("offline");
   }
 
+  /**
+   * Where the daemon keeps the hashes of the members of jars while it isn't running.
+   */
+  @Value.Derived
+  public Path getJarContentHashesFile() {
+    return getBuckOut().resolve(".jar_content_hashes");
+  }
+
   @Value.Derived
   public Path getRemoteSandboxDir() {
     return getBuckOut().resolve("remote_sandbox");
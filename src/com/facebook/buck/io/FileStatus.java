@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * The status of a file, which changes whenever its contents do, for caches of what was read from
+ * a file to check that it hasn't been written since.
+ * <p>
+ * The size and modification time alone aren't enough: files unpacked from the artifact cache all
+ * get the same fake modification time, so a file fetched again at the same size looks unchanged.
+ * Where the filesystem has them, the status also includes the inode and the time the status last
+ * changed, which writing or replacing the file always updates.
+ */
+public final class FileStatus {
+
+  private final long size;
+  private final long lastModifiedMillis;
+  @Nullable
+  private final Object fileKey;
+  private final Optional<Long> statusChangeNanos;
+  private final Optional<Object> inode;
+
+  private FileStatus(
+      long size,
+      long lastModifiedMillis,
+      @Nullable Object fileKey,
+      Optional<Long> statusChangeNanos,
+      Optional<Object> inode) {
+    this.size = size;
+    this.lastModifiedMillis = lastModifiedMillis;
+    this.fileKey = fileKey;
+    this.statusChangeNanos = statusChangeNanos;
+    this.inode = inode;
+  }
+
+  public static FileStatus of(Path path, LinkOption... options) throws IOException {
+    return of(path, Files.readAttributes(path, BasicFileAttributes.class, options), options);
+  }
+
+  /**
+   * @param attributes the attributes of {@code path}, for callers which have already read them.
+   */
+  public static FileStatus of(Path path, BasicFileAttributes attributes, LinkOption... options)
+      throws IOException {
+    Optional<Long> statusChangeNanos = Optional.empty();
+    Optional<Object> inode = Optional.empty();
+    try {
+      Map<String, Object> unixAttributes = Files.readAttributes(path, "unix:ctime,ino", options);
+      statusChangeNanos =
+          Optional.of(((FileTime) unixAttributes.get("ctime")).to(TimeUnit.NANOSECONDS));
+      inode = Optional.ofNullable(unixAttributes.get("ino"));
+    } catch (UnsupportedOperationException | IllegalArgumentException e) {
+      // Not a POSIX filesystem, where the modification time and file key are all there is.
+    }
+    return new FileStatus(
+        attributes.size(),
+        attributes.lastModifiedTime().toMillis(),
+        attributes.fileKey(),
+        statusChangeNanos,
+        inode);
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof FileStatus)) {
+      return false;
+    }
+    FileStatus that = (FileStatus) other;
+    return size == that.size &&
+        lastModifiedMillis == that.lastModifiedMillis &&
+        Objects.equals(fileKey, that.fileKey) &&
+        statusChangeNanos.equals(that.statusChangeNanos) &&
+        inode.equals(that.inode);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(size, lastModifiedMillis, fileKey, statusChangeNanos, inode);
+  }
+
+  /**
+   * @return the status as a string which is equal for two statuses exactly when they are, for
+   *     caches which are written to disk.
+   */
+  @Override
+  public String toString() {
+    StringBuilder status = new StringBuilder();
+    status.append(size).append(' ').append(lastModifiedMillis).append(' ').append(fileKey);
+    if (statusChangeNanos.isPresent()) {
+      status.append(' ').append(statusChangeNanos.get());
+    }
+    if (inode.isPresent()) {
+      status.append(' ').append(inode.get());
+    }
+    return status.toString();
+  }
+}
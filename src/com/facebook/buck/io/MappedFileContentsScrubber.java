@@ -0,0 +1,34 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A scrubber which rewrites the contents of a file in place through a memory mapping of it, which
+ * is shared with the other such scrubbers run on the same file.
+ */
+public interface MappedFileContentsScrubber extends FileScrubber {
+
+  /**
+   * Override this method to perform the content modification.
+   *
+   * @param contents the contents of the file, from position 0 to the limit.  To shrink the file,
+   *     lower the limit, and the file will be truncated to it once all scrubbers have run.
+   */
+  void scrubFile(ByteBuffer contents) throws ScrubException;
+}
@@ -48,6 +48,12 @@ abstract class AbstractJUnitJvmArgs {
    */
   abstract Optional<Path> getDirectoryForTestResults();
 
+  /**
+   * @return File to write the classes loaded by the tests to, with their checksums, once they have
+   * run.
+   */
+  abstract Optional<Path> getLoadedClassesFile();
+
   /**
    * @return Path to newline-separated file containing classpath entries with which to run
    * the JVM.
@@ -244,6 +250,10 @@ abstract class AbstractJUnitJvmArgs {
     long timeout = isDebugEnabled() ? 0 : defaultTestTimeoutMillis;
     args.add("--default-test-timeout", String.valueOf(timeout));
 
+    if (getLoadedClassesFile().isPresent()) {
+      args.add("--loaded-classes-file", getLoadedClassesFile().get().toString());
+    }
+
     // Add the test selectors, one per line, in a single argument.
     StringBuilder selectorsArgBuilder = new StringBuilder();
     if (getTestSelectorList().isPresent() &&
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.rules.AbstractBuildRule;
+import com.facebook.buck.rules.AddToRuleKey;
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.ExplicitBuildTargetSourcePath;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
+import com.facebook.buck.step.Step;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Generates the ABI jar of a java library from its sources, by running javac only as far as
+ * entering the sources and then writing out stubs of the types it found.
+ * <p>
+ * Unlike {@link CalculateAbiFromClasses}, this doesn't need the library to have been compiled, only
+ * the ABI jars of its dependencies. Dependents compiling against ABI jars can therefore start as
+ * soon as this finishes, while the full compile of the library is still running.
+ */
+public class CalculateAbiFromSource extends AbstractBuildRule
+    implements CalculateAbi, SupportsInputBasedRuleKey {
+
+  private final SourcePathRuleFinder ruleFinder;
+  @AddToRuleKey
+  private final ImmutableSortedSet<SourcePath> srcs;
+  @AddToRuleKey
+  private final ImmutableSortedSet<SourcePath> resources;
+  @AddToRuleKey(stringify = true)
+  private final Optional<Path> resourcesRoot;
+  @AddToRuleKey
+  private final ImmutableSortedSet<SourcePath> compileTimeClasspathSourcePaths;
+  @AddToRuleKey
+  private final CompileToJarStepFactory compileStepFactory;
+  @AddToRuleKey
+  private final ImmutableSet<Pattern> classesToRemoveFromJar;
+  private final Path outputJar;
+
+  public CalculateAbiFromSource(
+      BuildRuleParams params,
+      SourcePathRuleFinder ruleFinder,
+      ImmutableSortedSet<SourcePath> srcs,
+      ImmutableSortedSet<SourcePath> resources,
+      Optional<Path> resourcesRoot,
+      ImmutableSortedSet<SourcePath> compileTimeClasspathSourcePaths,
+      JavacToJarStepFactory compileStepFactory,
+      ImmutableSet<Pattern> classesToRemoveFromJar) {
+    super(params);
+    this.ruleFinder = ruleFinder;
+    this.srcs = srcs;
+    this.resources = resources;
+    this.resourcesRoot = resourcesRoot;
+    this.compileTimeClasspathSourcePaths = compileTimeClasspathSourcePaths;
+    this.compileStepFactory = compileStepFactory.withAbiCompilationMode();
+    this.classesToRemoveFromJar = classesToRemoveFromJar;
+    this.outputJar = DefaultJavaLibrary.getOutputJarPath(getBuildTarget(), getProjectFilesystem());
+  }
+
+  @Override
+  public ImmutableList<Step> getBuildSteps(
+      BuildContext context,
+      BuildableContext buildableContext) {
+    ImmutableList.Builder<Step> steps = ImmutableList.builder();
+    JavaLibraryRules.addCompileToJarSteps(
+        context,
+        buildableContext,
+        this,
+        Optional.of(outputJar),
+        ruleFinder,
+        srcs,
+        resources,
+        /* postprocessClassesCommands */ ImmutableList.of(),
+        compileTimeClasspathSourcePaths,
+        /* trackClassUsage */ false,
+        /* depFileRelativePath */ null,
+        compileStepFactory,
+        resourcesRoot,
+        /* manifestFile */ Optional.empty(),
+        classesToRemoveFromJar,
+        steps);
+    return steps.build();
+  }
+
+  @Override
+  public SourcePath getSourcePathToOutput() {
+    return new ExplicitBuildTargetSourcePath(getBuildTarget(), outputJar);
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A read-only view of a class usage file: for each jar on the classpath of a compilation, the
+ * paths of the classes within it that were used.
+ * <p>
+ * The file is laid out so that it can be used directly from a (possibly memory-mapped) buffer.
+ * All strings are kept once, sorted, in a string table; jars and their classes refer to them by
+ * index, so the path of a class used from both a library and its ABI jar is only stored once.
+ * Strings are decoded when first asked for. Every index, offset and length in the file is checked
+ * when the view is created, so a corrupt file is rejected there rather than when it's read.
+ * <pre>
+ *   int magic, int version, int stringCount, int jarCount
+ *   int[stringCount] offsets of the strings, relative to the start of the string data
+ *   int[jarCount][3] jar path string index, index of first class, number of classes
+ *   int[] class path string indexes, sorted, grouped by jar
+ *   string data: for each string, an int length followed by that many UTF-8 bytes
+ * </pre>
+ */
+final class ClassUsageFile {
+
+  private static final int MAGIC = 0x42435546;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 4 * 4;
+  private static final int JAR_RECORD_SIZE = 3 * 4;
+
+  private final ByteBuffer buffer;
+  private final int stringCount;
+  private final int jarCount;
+  private final int jarTableOffset;
+  private final int classTableOffset;
+  private final int stringDataOffset;
+  private final String[] decodedStrings;
+
+  private ClassUsageFile(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    check(buffer.remaining() >= HEADER_SIZE, "truncated header");
+    check(buffer.getInt(0) == MAGIC, "not a class usage file");
+    check(buffer.getInt(4) == VERSION, "unsupported version " + buffer.getInt(4));
+    this.stringCount = buffer.getInt(8);
+    this.jarCount = buffer.getInt(12);
+    check(stringCount >= 0 && jarCount >= 0, "negative table size");
+    // The counts come from the file, so work the offsets out in longs, where they can't overflow.
+    long jarTableOffset = HEADER_SIZE + 4L * stringCount;
+    long classTableOffset = jarTableOffset + (long) JAR_RECORD_SIZE * jarCount;
+    check(classTableOffset <= buffer.limit(), "truncated tables");
+    long classCount = jarCount == 0 ? 0 :
+        (long) buffer.getInt((int) classTableOffset - 8) +
+            buffer.getInt((int) classTableOffset - 4);
+    check(classCount >= 0, "negative class count");
+    long stringDataOffset = classTableOffset + 4 * classCount;
+    check(stringDataOffset <= buffer.limit(), "truncated tables");
+    this.jarTableOffset = (int) jarTableOffset;
+    this.classTableOffset = (int) classTableOffset;
+    this.stringDataOffset = (int) stringDataOffset;
+    this.decodedStrings = new String[stringCount];
+
+    for (int jar = 0; jar < jarCount; jar++) {
+      int record = this.jarTableOffset + JAR_RECORD_SIZE * jar;
+      checkStringIndex(buffer.getInt(record));
+      int first = buffer.getInt(record + 4);
+      int count = buffer.getInt(record + 8);
+      check(
+          first >= 0 && count >= 0 && (long) first + count <= classCount,
+          "classes of jar " + jar + " out of bounds");
+    }
+    for (int i = 0; i < classCount; i++) {
+      checkStringIndex(buffer.getInt(this.classTableOffset + 4 * i));
+    }
+    for (int i = 0; i < stringCount; i++) {
+      long offset = stringDataOffset + buffer.getInt(HEADER_SIZE + 4 * i);
+      check(
+          offset >= stringDataOffset && offset + 4 <= buffer.limit(),
+          "string " + i + " out of bounds");
+      int length = buffer.getInt((int) offset);
+      check(
+          length >= 0 && offset + 4 + length <= buffer.limit(),
+          "string " + i + " out of bounds");
+    }
+  }
+
+  private void checkStringIndex(int index) throws IOException {
+    check(index >= 0 && index < stringCount, "string index " + index + " out of bounds");
+  }
+
+  /**
+   * Creates a view of the class usage file held in {@code buffer}, which must not be modified
+   * while the view is in use.
+   */
+  static ClassUsageFile of(ByteBuffer buffer) throws IOException {
+    return new ClassUsageFile(buffer.slice());
+  }
+
+  int getSizeInBytes() {
+    return buffer.limit();
+  }
+
+  int getJarCount() {
+    return jarCount;
+  }
+
+  String getJarPath(int jar) {
+    return getString(buffer.getInt(jarRecord(jar)));
+  }
+
+  int getClassCount(int jar) {
+    return buffer.getInt(jarRecord(jar) + 8);
+  }
+
+  String getClassPath(int jar, int index) {
+    Preconditions.checkElementIndex(index, getClassCount(jar));
+    int first = buffer.getInt(jarRecord(jar) + 4);
+    return getString(buffer.getInt(classTableOffset + 4 * (first + index)));
+  }
+
+  /**
+   * Decodes the whole file. Mostly useful for tests and debugging.
+   */
+  ImmutableMap<String, ImmutableList<String>> toMap() {
+    ImmutableMap.Builder<String, ImmutableList<String>> builder = ImmutableMap.builder();
+    for (int jar = 0; jar < jarCount; jar++) {
+      ImmutableList.Builder<String> classes = ImmutableList.builder();
+      for (int i = 0; i < getClassCount(jar); i++) {
+        classes.add(getClassPath(jar, i));
+      }
+      builder.put(getJarPath(jar), classes.build());
+    }
+    return builder.build();
+  }
+
+  private int jarRecord(int jar) {
+    Preconditions.checkElementIndex(jar, jarCount);
+    return jarTableOffset + JAR_RECORD_SIZE * jar;
+  }
+
+  private String getString(int index) {
+    // Racing threads may both decode the same string, which is harmless.
+    String result = decodedStrings[index];
+    if (result == null) {
+      int offset = stringDataOffset + buffer.getInt(HEADER_SIZE + 4 * index);
+      byte[] bytes = new byte[buffer.getInt(offset)];
+      ByteBuffer data = buffer.duplicate();
+      data.position(offset + 4);
+      data.get(bytes);
+      result = new String(bytes, StandardCharsets.UTF_8);
+      decodedStrings[index] = result;
+    }
+    return result;
+  }
+
+  /**
+   * Encodes {@code classUsageMap}, whose keys and values are expected to be in a deterministic
+   * order already.
+   */
+  static byte[] encode(ImmutableSetMultimap<Path, Path> classUsageMap) {
+    TreeSet<String> sortedStrings = new TreeSet<>();
+    for (Map.Entry<Path, Path> entry : classUsageMap.entries()) {
+      sortedStrings.add(entry.getKey().toString());
+      sortedStrings.add(entry.getValue().toString());
+    }
+    String[] strings = sortedStrings.toArray(new String[sortedStrings.size()]);
+    byte[][] encodedStrings = new byte[strings.length][];
+    int stringDataSize = 0;
+    for (int i = 0; i < strings.length; i++) {
+      encodedStrings[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+      stringDataSize += 4 + encodedStrings[i].length;
+    }
+
+    int jarCount = classUsageMap.keySet().size();
+    int classCount = classUsageMap.size();
+    ByteBuffer out = ByteBuffer.allocate(
+        HEADER_SIZE +
+        4 * strings.length +
+        JAR_RECORD_SIZE * jarCount +
+        4 * classCount +
+        stringDataSize);
+    out.putInt(MAGIC).putInt(VERSION).putInt(strings.length).putInt(jarCount);
+
+    int stringOffset = 0;
+    for (byte[] encodedString : encodedStrings) {
+      out.putInt(stringOffset);
+      stringOffset += 4 + encodedString.length;
+    }
+
+    int firstClass = 0;
+    for (Map.Entry<Path, Collection<Path>> entry : classUsageMap.asMap().entrySet()) {
+      out.putInt(Arrays.binarySearch(strings, entry.getKey().toString()));
+      out.putInt(firstClass);
+      out.putInt(entry.getValue().size());
+      firstClass += entry.getValue().size();
+    }
+    for (Path classPath : classUsageMap.values()) {
+      out.putInt(Arrays.binarySearch(strings, classPath.toString()));
+    }
+
+    for (byte[] encodedString : encodedStrings) {
+      out.putInt(encodedString.length);
+      out.put(encodedString);
+    }
+    return out.array();
+  }
+
+  private static void check(boolean expression, String message) throws IOException {
+    if (!expression) {
+      throw new IOException("Invalid class usage file: " + message);
+    }
+  }
+}
@@ -20,32 +20,50 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.rules.ArchiveMemberSourcePath;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.util.HumanReadableException;
-import com.facebook.buck.util.ObjectMappers;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Provides utility methods for reading dependency file entries.
  */
 class DefaultClassUsageFileReader {
+  /**
+   * Decoded class usage files, keyed by the hash of their contents. The same files get read over
+   * and over again when computing dep file rule keys, and hashing a file is much cheaper than
+   * decoding it.
+   */
+  private static final Cache<HashCode, ClassUsageFile> CACHE = CacheBuilder.newBuilder()
+      .maximumWeight(64 * 1024 * 1024)
+      .<HashCode, ClassUsageFile>weigher((hash, file) -> file.getSizeInBytes())
+      .build();
+
   /**
    * Utility code, not instantiable
    */
   private DefaultClassUsageFileReader() {}
 
-  private static ImmutableMap<String, ImmutableList<String>> loadClassUsageMap(
-      Path mapFilePath) throws IOException {
-    return ObjectMappers.readValue(
-        mapFilePath.toFile(),
-        new TypeReference<ImmutableMap<String, ImmutableList<String>>>() {
-        });
+  static ClassUsageFile loadClassUsageFile(Path mapFilePath) throws IOException {
+    byte[] contents = Files.readAllBytes(mapFilePath);
+    try {
+      return CACHE.get(
+          Hashing.murmur3_128().hashBytes(contents),
+          () -> ClassUsageFile.of(ByteBuffer.wrap(contents)));
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new RuntimeException(e.getCause());
+    }
   }
 
   /**
@@ -59,10 +77,9 @@ class DefaultClassUsageFileReader {
       ImmutableMap<Path, SourcePath> jarPathToSourcePath) {
     final ImmutableList.Builder<SourcePath> builder = ImmutableList.builder();
     try {
-      final ImmutableSet<Map.Entry<String, ImmutableList<String>>> classUsageEntries =
-          loadClassUsageMap(classUsageFilePath).entrySet();
-      for (Map.Entry<String, ImmutableList<String>> jarUsedClassesEntry : classUsageEntries) {
-        Path jarAbsolutePath = projectFilesystem.resolve(Paths.get(jarUsedClassesEntry.getKey()));
+      ClassUsageFile classUsageFile = loadClassUsageFile(classUsageFilePath);
+      for (int jar = 0; jar < classUsageFile.getJarCount(); jar++) {
+        Path jarAbsolutePath = projectFilesystem.resolve(classUsageFile.getJarPath(jar));
         SourcePath sourcePath = jarPathToSourcePath.get(jarAbsolutePath);
         if (sourcePath == null) {
           // This indicates a dependency that wasn't among the deps of the rule; i.e.,
@@ -70,8 +87,13 @@ class DefaultClassUsageFileReader {
           continue;
         }
 
-        for (String classAbsolutePath : jarUsedClassesEntry.getValue()) {
-          builder.add(new ArchiveMemberSourcePath(sourcePath, Paths.get(classAbsolutePath)));
+        // The class paths of jars we skip are never decoded.
+        int classCount = classUsageFile.getClassCount(jar);
+        for (int i = 0; i < classCount; i++) {
+          builder.add(
+              new ArchiveMemberSourcePath(
+                  sourcePath,
+                  Paths.get(classUsageFile.getClassPath(jar, i))));
         }
       }
     } catch (IOException e) {
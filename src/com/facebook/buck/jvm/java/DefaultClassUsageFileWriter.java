@@ -18,10 +18,10 @@ package com.facebook.buck.jvm.java;
 
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.util.HumanReadableException;
-import com.facebook.buck.util.ObjectMappers;
 import com.google.common.collect.ImmutableSetMultimap;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Comparator;
@@ -52,9 +52,9 @@ public final class DefaultClassUsageFileWriter implements ClassUsageFileWriter {
   public void writeFile(ProjectFilesystem filesystem) {
     ImmutableSetMultimap<Path, Path> classUsageMap = tracker.getClassUsageMap();
     try {
-      ObjectMappers.WRITER.writeValue(
-          filesystem.resolve(relativePath).toFile(),
-          relativizeMap(classUsageMap, filesystem));
+      Files.write(
+          filesystem.resolve(relativePath),
+          ClassUsageFile.encode(relativizeMap(classUsageMap, filesystem)));
     } catch (IOException e) {
       throw new HumanReadableException(e, "Unable to write used classes file.");
     }
@@ -37,6 +37,7 @@ import com.facebook.buck.rules.BuildableProperties;
 import com.facebook.buck.rules.DefaultBuildTargetSourcePath;
 import com.facebook.buck.rules.ExplicitBuildTargetSourcePath;
 import com.facebook.buck.rules.ExportDependencies;
+import com.facebook.buck.rules.HasRuntimeDeps;
 import com.facebook.buck.rules.InitializableFromDisk;
 import com.facebook.buck.rules.OnDiskBuildInfo;
 import com.facebook.buck.rules.SourcePath;
@@ -65,6 +66,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import javax.annotation.Nullable;
 
@@ -88,7 +90,8 @@ import javax.annotation.Nullable;
 public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
     implements JavaLibrary, HasClasspathEntries, ExportDependencies,
     InitializableFromDisk<JavaLibrary.Data>, AndroidPackageable,
-    SupportsInputBasedRuleKey, SupportsDependencyFileRuleKey, JavaLibraryWithTests {
+    SupportsInputBasedRuleKey, SupportsDependencyFileRuleKey, JavaLibraryWithTests,
+    HasRuntimeDeps {
 
   private static final BuildableProperties OUTPUT_TYPE = new BuildableProperties(LIBRARY);
   private static final Path METADATA_DIR = Paths.get("META-INF");
@@ -254,7 +257,7 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
   }
 
   static Path getUsedClassesFilePath(BuildTarget target, ProjectFilesystem filesystem) {
-    return getOutputJarDirPath(target, filesystem).resolve("used-classes.json");
+    return getOutputJarDirPath(target, filesystem).resolve("used-classes.bin");
   }
 
   /**
@@ -416,6 +419,18 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
                 fullJarProvidedDeps)));
   }
 
+  /**
+   * When compiling against ABI jars generated from source, this rule only depends on the ABI jars
+   * of its dependencies, so that it can be built while they are still compiling. Their full jars
+   * are needed by anything that uses this library, though.
+   */
+  @Override
+  public Stream<BuildTarget> getRuntimeDeps() {
+    return Stream.concat(fullJarDeclaredDeps.stream(), fullJarExportedDeps.stream())
+        .filter(dep -> !getBuildDeps().contains(dep))
+        .map(BuildRule::getBuildTarget);
+  }
+
   @Override
   public Optional<String> getMavenCoords() {
     return mavenCoords;
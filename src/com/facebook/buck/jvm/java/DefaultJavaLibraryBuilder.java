@@ -30,6 +30,7 @@ import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.RichStream;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
@@ -39,6 +40,7 @@ import com.google.common.collect.Sets;
 import java.nio.file.Path;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
@@ -266,11 +268,27 @@ public class DefaultJavaLibraryBuilder {
     }
 
     private boolean shouldBuildAbiFromSource() {
-      return false;
+      return javaBuckConfig != null &&
+          javaBuckConfig.getAbiGenerationMode() != JavaBuckConfig.AbiGenerationMode.CLASS &&
+          getCompileStepFactory() instanceof JavacToJarStepFactory &&
+          ((JavacToJarStepFactory) getCompileStepFactory()).canCompileAbiFromSource();
+    }
+
+    /**
+     * When dependents compile against ABI jars generated from source, neither this library nor
+     * its ABI jar needs to wait for the full jars of its dependencies to be built, only for their
+     * ABI jars. This lets the compiles of a chain of libraries overlap.
+     */
+    private boolean isPipeliningCompiles() {
+      return compileAgainstAbis && shouldBuildAbiFromSource();
     }
 
     protected BuildRule buildAbi() throws NoSuchBuildTargetException {
       BuildTarget abiTarget = params.getBuildTarget();
+      if (HasJavaAbi.isSourceAbiTarget(abiTarget)) {
+        return buildAbiFromSource();
+      }
+
       BuildTarget libraryTarget = HasJavaAbi.getLibraryTarget(abiTarget);
       BuildRule libraryRule = buildRuleResolver.requireRule(libraryTarget);
 
@@ -281,6 +299,25 @@ public class DefaultJavaLibraryBuilder {
           Preconditions.checkNotNull(libraryRule.getSourcePathToOutput()));
     }
 
+    private BuildRule buildAbiFromSource() throws NoSuchBuildTargetException {
+      ImmutableSortedSet<BuildRule> abiDeps = ImmutableSortedSet.copyOf(Iterables.concat(
+          getCompileTimeClasspathAbiDeps(),
+          getCompileStepFactory().getExtraDeps(ruleFinder),
+          ruleFinder.filterBuildRuleInputs(Iterables.concat(srcs, resources))));
+
+      return new CalculateAbiFromSource(
+          params.copyReplacingDeclaredAndExtraDeps(
+              Suppliers.ofInstance(abiDeps),
+              Suppliers.ofInstance(ImmutableSortedSet.of())),
+          ruleFinder,
+          srcs,
+          resources,
+          resourcesRoot,
+          getAbiInputs(),
+          (JavacToJarStepFactory) getCompileStepFactory(),
+          classesToRemoveFromJar);
+    }
+
     protected final BuildRuleParams getFinalParams() throws NoSuchBuildTargetException {
       if (finalParams == null) {
         finalParams = buildFinalParams();
@@ -350,6 +387,23 @@ public class DefaultJavaLibraryBuilder {
     protected BuildRuleParams buildFinalParams() throws NoSuchBuildTargetException {
       ImmutableSortedSet<BuildRule> compileTimeClasspathAbiDeps = getCompileTimeClasspathAbiDeps();
 
+      if (isPipeliningCompiles()) {
+        // Only depend on the ABI jars of the libraries on the classpath. Their full jars are still
+        // built before anything that depends on this library, as they are runtime deps of it.
+        Set<BuildRule> fullJarDeps = getCompileTimeClasspathFullDeps();
+        return params.copyReplacingDeclaredAndExtraDeps(
+            () -> ImmutableSortedSet.copyOf(
+                Sets.difference(getFinalFullJarDeclaredDeps(), fullJarDeps)),
+            () -> ImmutableSortedSet.copyOf(Iterables.concat(
+                Sets.difference(
+                    Sets.union(
+                        params.getExtraDeps().get(),
+                        getCompileTimeClasspathUnfilteredFullDeps()),
+                    fullJarDeps),
+                compileTimeClasspathAbiDeps,
+                getCompileStepFactory().getExtraDeps(ruleFinder))));
+      }
+
       return params.copyReplacingDeclaredAndExtraDeps(
           this::getFinalFullJarDeclaredDeps,
           () -> ImmutableSortedSet.copyOf(Iterables.concat(
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.io.FileStatus;
+import com.facebook.buck.jvm.java.abi.source.api.BootClasspathOracle;
+import com.facebook.buck.util.HumanReadableException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * A {@link BootClasspathOracle} which lists the packages of the platform class path with a file
+ * manager.
+ * <p>
+ * Almost every rule compiles against the same bootclasspath, so when it consists only of jars the
+ * packages listed are shared by every compile against the same, unchanged jars for as long as
+ * Buck runs, rather than being read from the jars again for each rule.
+ */
+class FileManagerBootClasspathOracle implements BootClasspathOracle {
+
+  /**
+   * Contents of the packages of a platform class path, keyed by the status of each of its jars.
+   */
+  private static final Cache<ImmutableMap<Path, FileStatus>, Map<String, ImmutableSet<String>>>
+      SHARED_PACKAGES_CONTENTS = CacheBuilder.newBuilder().maximumSize(4).build();
+
+  private final StandardJavaFileManager fileManager;
+  private final Map<String, ImmutableSet<String>> packagesContents;
+
+  FileManagerBootClasspathOracle(StandardJavaFileManager fileManager) {
+    this(fileManager, SHARED_PACKAGES_CONTENTS);
+  }
+
+  @VisibleForTesting
+  FileManagerBootClasspathOracle(
+      StandardJavaFileManager fileManager,
+      Cache<ImmutableMap<Path, FileStatus>, Map<String, ImmutableSet<String>>>
+          sharedPackagesContents) {
+    this.fileManager = fileManager;
+    this.packagesContents = getPlatformClassPathStatus(fileManager)
+        .map(status -> sharedPackagesContents.asMap()
+            .computeIfAbsent(status, key -> new ConcurrentHashMap<>()))
+        .orElseGet(ConcurrentHashMap::new);
+  }
+
+  @Override
+  public boolean isOnBootClasspath(String binaryName) {
+    String packageName = getPackageName(binaryName);
+    Set<String> packageContents =
+        packagesContents.computeIfAbsent(packageName, this::listPackageContents);
+    return packageContents.contains(binaryName);
+  }
+
+  private ImmutableSet<String> listPackageContents(String packageName) {
+    ImmutableSet.Builder<String> packageContents = ImmutableSet.builder();
+    try {
+      for (JavaFileObject javaFileObject : fileManager.list(
+          StandardLocation.PLATFORM_CLASS_PATH,
+          packageName,
+          EnumSet.of(JavaFileObject.Kind.CLASS),
+          true)) {
+        packageContents.add(
+            fileManager.inferBinaryName(StandardLocation.PLATFORM_CLASS_PATH, javaFileObject));
+      }
+    } catch (IOException e) {
+      throw new HumanReadableException(e, "Failed to list boot classpath contents.");
+    }
+    return packageContents.build();
+  }
+
+  /**
+   * @return the status of each entry on the platform class path, or nothing if the platform class
+   *     path isn't made up only of jars, in which case what it contains can change without its
+   *     status showing it.
+   */
+  private static Optional<ImmutableMap<Path, FileStatus>> getPlatformClassPathStatus(
+      StandardJavaFileManager fileManager) {
+    Iterable<? extends File> platformClassPath =
+        fileManager.getLocation(StandardLocation.PLATFORM_CLASS_PATH);
+    if (platformClassPath == null) {
+      return Optional.empty();
+    }
+
+    ImmutableMap.Builder<Path, FileStatus> status = ImmutableMap.builder();
+    try {
+      for (File file : platformClassPath) {
+        Path path = file.toPath().toAbsolutePath();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        if (!attributes.isRegularFile()) {
+          return Optional.empty();
+        }
+        status.put(path, FileStatus.of(path, attributes));
+      }
+      return Optional.of(status.build());
+    } catch (IOException | IllegalArgumentException e) {
+      // Missing or repeated entries: list the packages for this compile only.
+      return Optional.empty();
+    }
+  }
+
+  private static String getPackageName(String binaryName) {
+    int lastDot = binaryName.lastIndexOf('.');
+    if (lastDot < 0) {
+      return "";
+    }
+
+    return binaryName.substring(0, lastDot);
+  }
+}
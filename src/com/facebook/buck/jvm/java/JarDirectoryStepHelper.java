@@ -22,7 +22,9 @@ import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.Pair;
 import com.facebook.buck.zip.CustomJarOutputStream;
+import com.facebook.buck.zip.CustomZipEntry;
 import com.facebook.buck.zip.DeterministicManifest;
+import com.facebook.buck.zip.RawZipEntryReader;
 import com.facebook.buck.zip.ZipConstants;
 import com.facebook.buck.zip.ZipOutputStreams;
 import com.google.common.base.Preconditions;
@@ -260,7 +262,9 @@ public class JarDirectoryStepHelper {
       Set<String> alreadyAddedEntries,
       JavacEventSink eventSink,
       Iterable<Pattern> blacklist) throws IOException {
-    try (ZipFile zip = new ZipFile(inputFile.toFile())) {
+    try (
+        ZipFile zip = new ZipFile(inputFile.toFile());
+        RawZipEntryReader rawReader = new RawZipEntryReader(inputFile)) {
       for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); ) {
         ZipEntry entry = entries.nextElement();
         String entryName = entry.getName();
@@ -292,6 +296,17 @@ public class JarDirectoryStepHelper {
           continue;
         }
 
+        // Entries that are already deflated don't need to be inflated only to be deflated again:
+        // copy their compressed bytes straight into the new jar, along with the CRC and sizes.
+        if (canCopyRawEntry(rawReader, entry)) {
+          CustomZipEntry rawEntry = new CustomZipEntry(entry);
+          rawEntry.setPrecompressed();
+          jar.putNextEntry(rawEntry);
+          rawReader.copyRawData(entry, jar);
+          jar.closeEntry();
+          continue;
+        }
+
         ZipEntry newEntry = new ZipEntry(entry);
 
         // For deflated entries, the act of re-"putting" this entry means we're re-compressing
@@ -320,6 +335,14 @@ public class JarDirectoryStepHelper {
     }
   }
 
+  private static boolean canCopyRawEntry(RawZipEntryReader rawReader, ZipEntry entry) {
+    return entry.getMethod() == ZipEntry.DEFLATED &&
+        entry.getCrc() != -1 &&
+        entry.getSize() != -1 &&
+        entry.getCompressedSize() != -1 &&
+        rawReader.hasRawData(entry.getName());
+  }
+
   private static Level determineSeverity(ZipEntry entry) {
     return entry.isDirectory() ? Level.FINE : Level.INFO;
   }
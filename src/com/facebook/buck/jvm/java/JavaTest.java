@@ -59,10 +59,12 @@ import com.facebook.buck.test.selectors.TestSelectorList;
 import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.ZipFileTraversal;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -70,10 +72,14 @@ import com.google.common.collect.Sets;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -143,7 +149,7 @@ public class JavaTest
   private static final Logger LOG = Logger.get(JavaTest.class);
 
   @Nullable
-  private ImmutableList<JUnitStep> junits;
+  private ImmutableMap<String, JUnitStep> junitsByTestClass;
 
   @AddToRuleKey
   private final boolean runTestSeparately;
@@ -225,6 +231,7 @@ public class JavaTest
       TestRunningOptions options,
       Optional<Path> outDir,
       Optional<Path> robolectricLogPath,
+      Optional<Path> loadedClassesFile,
       Set<String> testClassNames) {
 
     Iterable<String> reorderedTestClasses =
@@ -241,6 +248,7 @@ public class JavaTest
     JUnitJvmArgs args = JUnitJvmArgs.builder()
         .setTestType(testType)
         .setDirectoryForTestResults(outDir)
+        .setLoadedClassesFile(loadedClassesFile)
         .setClasspathFile(getClassPathFile())
         .setTestRunnerClasspath(TESTRUNNER_CLASSES)
         .setCodeCoverageEnabled(executionContext.isCodeCoverageEnabled())
@@ -298,35 +306,246 @@ public class JavaTest
     ImmutableList.Builder<Step> steps = ImmutableList.builder();
     Path pathToTestOutput = getPathToTestOutputDirectory();
     steps.addAll(MakeCleanDirectoryStep.of(getProjectFilesystem(), pathToTestOutput));
-    if (forkMode() == ForkMode.PER_TEST) {
-      ImmutableList.Builder<JUnitStep> junitsBuilder = ImmutableList.builder();
-      for (String testClass: testClassNames) {
-        junitsBuilder.add(
-          getJUnitStep(
+    boolean isRecordingLoadedClasses =
+        options.isSelectingTestsByLoadedClasses() && canSelectByLoadedClasses();
+    int shardCount = getShardCount(options, testClassNames);
+    if (isRecordingLoadedClasses) {
+      String configuration = getLoadedClassesConfiguration(
+          executionContext,
+          pathResolver,
+          testClassNames,
+          shardCount);
+      steps.add(
+          new AbstractExecutionStep("write loaded classes config") {
+            @Override
+            public StepExecutionResult execute(ExecutionContext context) throws IOException {
+              getProjectFilesystem().writeContentsToPath(
+                  configuration,
+                  LoadedClassesFootprint.getConfigurationFile(pathToTestOutput));
+              return StepExecutionResult.SUCCESS;
+            }
+          });
+    }
+    ImmutableList<ImmutableSet<String>> shards = shardCount == 1 ?
+        ImmutableList.of(ImmutableSet.copyOf(testClassNames)) :
+        shardTestClasses(
+            testClassNames,
+            getPreviousTestClassDurations(testClassNames),
+            shardCount);
+    ImmutableList.Builder<ImmutableList<JUnitStep>> shardSteps = ImmutableList.builder();
+    ImmutableMap.Builder<String, JUnitStep> junitsByTestClassBuilder = ImmutableMap.builder();
+    for (int shard = 0; shard < shards.size(); shard++) {
+      ImmutableList.Builder<JUnitStep> shardJunits = ImmutableList.builder();
+      if (forkMode() == ForkMode.PER_TEST) {
+        for (String testClass : shards.get(shard)) {
+          JUnitStep junit = getJUnitStep(
               executionContext,
               pathResolver,
               options,
               Optional.of(pathToTestOutput),
               Optional.of(pathToTestLogs),
-              Collections.singleton(testClass))
-        );
-      }
-      junits = junitsBuilder.build();
-    } else {
-      junits = ImmutableList.of(
-          getJUnitStep(
+              isRecordingLoadedClasses ?
+                  Optional.of(
+                      LoadedClassesFootprint.getFootprintFile(pathToTestOutput, testClass)) :
+                  Optional.empty(),
+              Collections.singleton(testClass));
+          shardJunits.add(junit);
+          junitsByTestClassBuilder.put(testClass, junit);
+        }
+      } else {
+        JUnitStep junit = getJUnitStep(
             executionContext,
             pathResolver,
             options,
             Optional.of(pathToTestOutput),
             Optional.of(pathToTestLogs),
-            testClassNames)
-      );
+            isRecordingLoadedClasses ?
+                Optional.of(
+                    LoadedClassesFootprint.getFootprintFile(
+                        pathToTestOutput,
+                        getShardName(shard, shards.size()))) :
+                Optional.empty(),
+            shards.get(shard));
+        shardJunits.add(junit);
+        for (String testClass : shards.get(shard)) {
+          junitsByTestClassBuilder.put(testClass, junit);
+        }
+      }
+      shardSteps.add(shardJunits.build());
+    }
+    junitsByTestClass = junitsByTestClassBuilder.build();
+    if (shards.size() == 1) {
+      steps.addAll(shardSteps.build().get(0));
+    } else {
+      steps.add(new ShardedJUnitStep(shardSteps.build()));
     }
-    steps.addAll(junits);
     return steps.build();
   }
 
+  private int getShardCount(TestRunningOptions options, Set<String> testClassNames) {
+    return Math.max(1, Math.min(options.getJavaTestShards(), testClassNames.size()));
+  }
+
+  private static String getShardName(int shard, int shardCount) {
+    return shardCount == 1 ? "all" : "shard-" + shard;
+  }
+
+  /**
+   * @return how long each test class took when the tests were last run, as far as it is known.
+   */
+  private ImmutableMap<String, Long> getPreviousTestClassDurations(Set<String> testClassNames) {
+    Path outputDirectory = getProjectFilesystem().resolve(getPathToTestOutputDirectory());
+    ImmutableMap.Builder<String, Long> durations = ImmutableMap.builder();
+    for (String testClass : testClassNames) {
+      Path testResultFile = outputDirectory.resolve(testClass + ".xml");
+      if (!Files.isRegularFile(testResultFile)) {
+        continue;
+      }
+      try {
+        durations.put(testClass, XmlTestResultParser.parse(testResultFile).getTotalTime());
+      } catch (IOException | RuntimeException e) {
+        LOG.debug(e, "Unable to read the previous results of %s.", testClass);
+      }
+    }
+    return durations.build();
+  }
+
+  /**
+   * Splits the test classes into {@code shardCount} groups which should take about as long as each
+   * other to run, by handing the longest remaining class to the group with the least work so far.
+   * Classes which haven't been run before are assumed to take as long as the average of those
+   * which have.
+   *
+   * @param durations how long each class took when it last ran, in milliseconds.
+   */
+  @VisibleForTesting
+  static ImmutableList<ImmutableSet<String>> shardTestClasses(
+      Set<String> testClassNames,
+      Map<String, Long> durations,
+      int shardCount) {
+    long defaultDuration = Math.max(
+        1,
+        Math.round(
+            testClassNames.stream()
+                .filter(durations::containsKey)
+                .mapToLong(durations::get)
+                .average()
+                .orElse(1)));
+    Map<String, Long> classDurations = new HashMap<>();
+    for (String testClass : testClassNames) {
+      classDurations.put(
+          testClass,
+          Math.max(1, durations.getOrDefault(testClass, defaultDuration)));
+    }
+    List<String> longestFirst = new ArrayList<>(testClassNames);
+    longestFirst.sort(
+        Comparator.<String, Long>comparing(classDurations::get, Comparator.reverseOrder())
+            .thenComparing(Comparator.naturalOrder()));
+
+    long[] shardDurations = new long[shardCount];
+    List<ImmutableSet.Builder<String>> shards = new ArrayList<>(shardCount);
+    for (int shard = 0; shard < shardCount; shard++) {
+      shards.add(ImmutableSet.builder());
+    }
+    for (String testClass : longestFirst) {
+      int shortest = 0;
+      for (int shard = 1; shard < shardCount; shard++) {
+        if (shardDurations[shard] < shardDurations[shortest]) {
+          shortest = shard;
+        }
+      }
+      shards.get(shortest).add(testClass);
+      shardDurations[shortest] += classDurations.get(testClass);
+    }
+    return shards.stream()
+        .map(ImmutableSet.Builder::build)
+        .filter(shard -> !shard.isEmpty())
+        .collect(MoreCollectors.toImmutableList());
+  }
+
+  /**
+   * Subclasses which load the code under test with class loaders of their own should return false,
+   * as the classes they load can't be recorded.
+   *
+   * @return whether the tests of this rule can be skipped when none of the classes they loaded the
+   *     last time they were run have changed since.
+   */
+  protected boolean canSelectByLoadedClasses() {
+    return true;
+  }
+
+  /**
+   * @return whether the tests of this rule were last run with loaded classes being recorded, in
+   *     the same way as they would be run now, and would load the same classes if they were run
+   *     again. The results of that run are then still valid, even if the rule key has changed.
+   */
+  public boolean areLoadedClassesUnchanged(
+      ExecutionContext executionContext,
+      TestRunningOptions options,
+      SourcePathResolver pathResolver) throws IOException {
+    if (!canSelectByLoadedClasses()) {
+      return false;
+    }
+    Set<String> testClassNames = getClassNamesForSources(pathResolver);
+    if (testClassNames.isEmpty()) {
+      return false;
+    }
+    ProjectFilesystem filesystem = getProjectFilesystem();
+    Path classPathFile = filesystem.resolve(getClassPathFile());
+    if (!Files.isRegularFile(classPathFile)) {
+      return false;
+    }
+
+    // The test runner's classes come first, see JUnitJvmArgs.
+    ImmutableList.Builder<Path> classpath = ImmutableList.builder();
+    classpath.add(TESTRUNNER_CLASSES);
+    for (String line : Files.readAllLines(classPathFile, StandardCharsets.UTF_8)) {
+      if (!line.isEmpty()) {
+        classpath.add(Paths.get(line));
+      }
+    }
+
+    Path outputDirectory = filesystem.resolve(getPathToTestOutputDirectory());
+    int shardCount = getShardCount(options, testClassNames);
+    ImmutableSet.Builder<String> footprintNames = ImmutableSet.builder();
+    if (forkMode() == ForkMode.PER_TEST) {
+      footprintNames.addAll(testClassNames);
+    } else {
+      for (int shard = 0; shard < shardCount; shard++) {
+        footprintNames.add(getShardName(shard, shardCount));
+      }
+    }
+    return LoadedClassesFootprint.isUnchanged(
+        getLoadedClassesConfiguration(executionContext, pathResolver, testClassNames, shardCount),
+        outputDirectory,
+        footprintNames.build(),
+        classpath.build());
+  }
+
+  /**
+   * @return everything that affects how the tests are run, other than the classes they load.
+   */
+  private String getLoadedClassesConfiguration(
+      ExecutionContext executionContext,
+      SourcePathResolver pathResolver,
+      Set<String> testClassNames,
+      int shardCount) {
+    return Joiner.on('\n').join(
+        "java: " + javaRuntimeLauncher.getCommand(),
+        "type: " + testType,
+        "fork mode: " + forkMode,
+        "vm args: " + amendVmArgs(vmArgs, pathResolver, executionContext.getTargetDevice()),
+        "env: " + ImmutableSortedMap.copyOf(env),
+        "native libs env: " + ImmutableSortedMap.copyOf(nativeLibsEnvironment),
+        "test rule timeout: " + testRuleTimeoutMs,
+        "test case timeout: " + testCaseTimeoutMs.orElse(
+            executionContext.getDefaultTestTimeoutMillis()),
+        "code coverage: " + executionContext.isCodeCoverageEnabled(),
+        "tests: " + ImmutableSortedSet.copyOf(testClassNames),
+        "shards: " + shardCount,
+        "");
+  }
+
   private static Iterable<String> reorderClasses(Set<String> testClassNames, boolean shuffle) {
     Random rng;
     if (shuffle) {
@@ -457,19 +676,18 @@ public class JavaTest
         Path testResultFile = getProjectFilesystem().getPathForRelativePath(
             getPathToTestOutputDirectory().resolve(path));
         if (!isUsingTestSelectors && !Files.isRegularFile(testResultFile)) {
+          JUnitStep junit = Preconditions.checkNotNull(junitsByTestClass).get(testClass);
           String message;
-          for (JUnitStep junit: Preconditions.checkNotNull(junits)) {
-            if (junit.hasTimedOut()) {
-              message = "test timed out before generating results file";
-            } else {
-              message = "test exited before generating results file";
-            }
-            summaries.add(
-                getTestClassFailedSummary(
-                    testClass,
-                    message,
-                    testRuleTimeoutMs.orElse(0L)));
+          if (junit != null && junit.hasTimedOut()) {
+            message = "test timed out before generating results file";
+          } else {
+            message = "test exited before generating results file";
           }
+          summaries.add(
+              getTestClassFailedSummary(
+                  testClass,
+                  message,
+                  testRuleTimeoutMs.orElse(0L)));
         // Not having a test result file at all (which only happens when we are using test
         // selectors) is interpreted as meaning a test didn't run at all, so we'll completely
         // ignore it.  This is another result of the fact that JUnit is the only thing that can
@@ -682,6 +900,7 @@ public class JavaTest
             options,
             Optional.empty(),
             Optional.empty(),
+            Optional.empty(),
             getClassNamesForSources(pathResolver)
             );
     return ExternalTestRunnerTestSpec.builder()
@@ -31,6 +31,7 @@ import com.facebook.buck.rules.Tool;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
@@ -96,6 +97,29 @@ public class JavacToJarStepFactory extends BaseCompileToJarStepFactory {
             Optional.empty()));
   }
 
+  /**
+   * @return whether {@link #withAbiCompilationMode()} can be used, i.e. whether the compiler runs
+   *     in Buck's JVM, where Buck can stop it after it has entered the sources. Out-of-process
+   *     and external compilers keep using class ABIs.
+   */
+  boolean canCompileAbiFromSource() {
+    return javac instanceof Jsr199Javac;
+  }
+
+  /**
+   * @return a factory whose compile steps produce an ABI jar from the sources, rather than a full
+   *     jar.
+   */
+  JavacToJarStepFactory withAbiCompilationMode() {
+    Preconditions.checkState(canCompileAbiFromSource());
+    return new JavacToJarStepFactory(
+        javac,
+        JavacOptions.builder(javacOptions)
+            .setCompilationMode(Javac.CompilationMode.ABI)
+            .build(),
+        amender);
+  }
+
   @Override
   Optional<String> getBootClasspath(BuildContext context) {
     JavacOptions buildTimeOptions = amender.amend(javacOptions, context);
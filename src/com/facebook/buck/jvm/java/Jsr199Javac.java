@@ -18,6 +18,7 @@ package com.facebook.buck.jvm.java;
 
 import com.facebook.buck.event.api.BuckTracing;
 import com.facebook.buck.jvm.java.abi.SourceBasedAbiStubber;
+import com.facebook.buck.jvm.java.abi.StubGenerator;
 import com.facebook.buck.jvm.java.abi.source.api.BootClasspathOracle;
 import com.facebook.buck.jvm.java.plugin.PluginLoader;
 import com.facebook.buck.jvm.java.plugin.api.BuckJavacTaskListener;
@@ -54,23 +55,19 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import javax.annotation.Nullable;
+import javax.lang.model.SourceVersion;
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
-import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
-import javax.tools.StandardLocation;
 
 /**
  * Command used to compile java libraries with a variety of ways to handle dependencies.
@@ -303,8 +300,25 @@ public abstract class Jsr199Javac implements Javac {
         javacTask.setTaskListener(taskListener);
         javacTask.setProcessors(processorFactory.createProcessors(annotationProcessors));
 
-        // Invoke the compilation and inspect the result.
-        isSuccess = javacTask.call();
+        if (compilationMode == CompilationMode.ABI) {
+          // Stop once the sources (and anything generated from them by annotation processors) have
+          // been entered: that is enough to write out the signatures of every type, and a lot less
+          // work than analyzing and generating code for the method bodies.
+          StubGenerator stubGenerator = new StubGenerator(
+              getTargetVersion(options),
+              javacTask.getElements(),
+              fileManager);
+          javacTask.addPostEnterCallback(topLevelTypes -> {
+            if (!hasErrors(diagnostics)) {
+              stubGenerator.generate(topLevelTypes);
+            }
+          });
+          javacTask.enter();
+          isSuccess = !hasErrors(diagnostics);
+        } else {
+          // Invoke the compilation and inspect the result.
+          isSuccess = javacTask.call();
+        }
       } catch (IOException e) {
         LOG.warn(e, "Unable to close annotation processor class loader. We may be leaking memory.");
       }
@@ -350,6 +364,30 @@ public abstract class Jsr199Javac implements Javac {
     }
   }
 
+  private static boolean hasErrors(DiagnosticCollector<JavaFileObject> diagnostics) {
+    return diagnostics.getDiagnostics().stream()
+        .anyMatch(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR);
+  }
+
+  /**
+   * @return the Java version corresponding to the class file version javac has been asked to
+   *     generate, which is the version that ABI stubs need to be written with.
+   */
+  private static SourceVersion getTargetVersion(ImmutableList<String> options) {
+    int index = options.lastIndexOf("-target");
+    if (index < 0 || index + 1 >= options.size()) {
+      return SourceVersion.latest();
+    }
+
+    String target = options.get(index + 1);
+    try {
+      return SourceVersion.valueOf("RELEASE_" + target.replaceFirst("^1\\.", ""));
+    } catch (IllegalArgumentException e) {
+      throw new HumanReadableException(
+          "Cannot generate an ABI jar for unrecognized target version %s", target);
+    }
+  }
+
   private void close(Iterable<? extends JavaFileObject> compilationUnits) {
     for (JavaFileObject unit : compilationUnits) {
       if (unit instanceof Closeable) {
@@ -397,54 +435,4 @@ public abstract class Jsr199Javac implements Javac {
     }
     return compilationUnits;
   }
-
-  private static class FileManagerBootClasspathOracle implements BootClasspathOracle {
-    private final JavaFileManager fileManager;
-    private final Map<String, Set<String>> packagesContents = new HashMap<>();
-
-    private FileManagerBootClasspathOracle(JavaFileManager fileManager) {
-      this.fileManager = fileManager;
-    }
-
-    @Override
-    public boolean isOnBootClasspath(String binaryName) {
-      String packageName = getPackageName(binaryName);
-      Set<String> packageContents = getPackageContents(packageName);
-      return packageContents.contains(binaryName);
-    }
-
-    private Set<String> getPackageContents(String packageName) {
-      Set<String> packageContents = packagesContents.get(packageName);
-      if (packageContents == null) {
-        packageContents = new HashSet<>();
-
-        try {
-          for (JavaFileObject javaFileObject : this.fileManager.list(
-              StandardLocation.PLATFORM_CLASS_PATH,
-              packageName,
-              EnumSet.of(JavaFileObject.Kind.CLASS),
-              true)) {
-            packageContents.add(
-                fileManager.inferBinaryName(
-                    StandardLocation.PLATFORM_CLASS_PATH,
-                    javaFileObject));
-          }
-        } catch (IOException e) {
-          throw new HumanReadableException(e, "Failed to list boot classpath contents.");
-          // Do nothing
-        }
-        packagesContents.put(packageName, packageContents);
-      }
-      return packageContents;
-    }
-
-    private String getPackageName(String binaryName) {
-      int lastDot = binaryName.lastIndexOf('.');
-      if (lastDot < 0) {
-        return "";
-      }
-
-      return binaryName.substring(0, lastDot);
-    }
-  }
 }
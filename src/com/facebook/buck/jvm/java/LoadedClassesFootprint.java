@@ -0,0 +1,223 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.io.FileStatus;
+import com.facebook.buck.log.Logger;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Tells whether any of the classes loaded by a previous run of a test have changed since, by
+ * comparing the checksums written down by the test runner (see
+ * {@code com.facebook.buck.testrunner.LoadedClassesRecorder}) with those of the class files that
+ * would be loaded from the classpath now.
+ * <p>
+ * The checksums of the members of jars are taken from their central directories, which are kept
+ * for the whole process for as long as the status of the jar doesn't change (see
+ * {@link FileStatus}).
+ */
+final class LoadedClassesFootprint {
+
+  private static final Logger LOG = Logger.get(LoadedClassesFootprint.class);
+
+  private static final String FOOTPRINT_SUFFIX = ".loaded-classes";
+
+  /** Bounds the shared cache by the total number of jar members it holds. */
+  private static final long MAX_CACHED_MEMBERS = 2_000_000;
+
+  private static final Cache<Path, JarIndex> JAR_INDEXES = CacheBuilder.newBuilder()
+      .maximumWeight(MAX_CACHED_MEMBERS)
+      .<Path, JarIndex>weigher((jar, index) -> 1 + index.crcs.size())
+      .build();
+
+  private LoadedClassesFootprint() {
+  }
+
+  /**
+   * @param name the test class run by the JVM, or a name for the group of test classes it runs.
+   * @return the file the test runner writes the classes loaded by one JVM to.
+   */
+  static Path getFootprintFile(Path outputDirectory, String name) {
+    return outputDirectory.resolve(name + FOOTPRINT_SUFFIX);
+  }
+
+  /**
+   * @return the file holding how the tests were run, as passed to
+   *     {@link #isUnchanged(String, Path, Set, List)}.
+   */
+  static Path getConfigurationFile(Path outputDirectory) {
+    return outputDirectory.resolve("loaded-classes-config");
+  }
+
+  /**
+   * @param configuration how the tests would be run now, which has to be the same as when they
+   *     were recorded.
+   * @param outputDirectory where the configuration and footprints of the recorded run were
+   *     written.
+   * @param footprintNames the names of the footprints the test runner would write now, which
+   *     have to be exactly those of the recorded run.
+   * @param classpath the classpath of the test JVM, in order, as absolute paths.
+   * @return whether each recorded class would be loaded from a class file with the same checksum.
+   */
+  static boolean isUnchanged(
+      String configuration,
+      Path outputDirectory,
+      Set<String> footprintNames,
+      List<Path> classpath) throws IOException {
+    Path configurationFile = getConfigurationFile(outputDirectory);
+    if (!Files.isRegularFile(configurationFile) ||
+        !configuration.equals(
+            new String(Files.readAllBytes(configurationFile), StandardCharsets.UTF_8))) {
+      return false;
+    }
+
+    // A footprint of a JVM which wouldn't be run now means the tests were split differently, and
+    // the classes it loaded would go unchecked.
+    Set<String> recordedFootprintNames = new HashSet<>();
+    try (DirectoryStream<Path> footprintFiles =
+             Files.newDirectoryStream(outputDirectory, "*" + FOOTPRINT_SUFFIX)) {
+      for (Path footprintFile : footprintFiles) {
+        String fileName = footprintFile.getFileName().toString();
+        recordedFootprintNames.add(
+            fileName.substring(0, fileName.length() - FOOTPRINT_SUFFIX.length()));
+      }
+    }
+    if (!recordedFootprintNames.equals(footprintNames)) {
+      LOG.verbose(
+          "The footprints in %s are %s rather than %s.",
+          outputDirectory,
+          recordedFootprintNames,
+          footprintNames);
+      return false;
+    }
+
+    // The test classes of a rule usually share most of the classes they load.
+    Map<String, Optional<Long>> currentCrcs = new HashMap<>();
+    for (String footprintName : footprintNames) {
+      Path footprintFile = getFootprintFile(outputDirectory, footprintName);
+      if (!Files.isRegularFile(footprintFile)) {
+        return false;
+      }
+      for (String line : Files.readAllLines(footprintFile, StandardCharsets.UTF_8)) {
+        int space = line.indexOf(' ');
+        if (space <= 0) {
+          LOG.warn("Ignoring malformed loaded classes file %s.", footprintFile);
+          return false;
+        }
+        long recordedCrc;
+        try {
+          recordedCrc = Long.parseLong(line.substring(0, space), 16);
+        } catch (NumberFormatException e) {
+          LOG.warn("Ignoring malformed loaded classes file %s.", footprintFile);
+          return false;
+        }
+        String name = line.substring(space + 1);
+        Optional<Long> currentCrc = currentCrcs.get(name);
+        if (currentCrc == null) {
+          currentCrc = findCrc(name, classpath);
+          currentCrcs.put(name, currentCrc);
+        }
+        if (!currentCrc.isPresent() || currentCrc.get() != recordedCrc) {
+          LOG.verbose("%s has changed since %s was written.", name, footprintFile);
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the checksum of the first class file named {@code name} on {@code classpath}.
+   */
+  private static Optional<Long> findCrc(String name, List<Path> classpath) throws IOException {
+    for (Path entry : classpath) {
+      if (Files.isDirectory(entry)) {
+        Path classFile = entry.resolve(name);
+        if (Files.isRegularFile(classFile)) {
+          return Optional.of(crc(classFile));
+        }
+      } else if (Files.isRegularFile(entry)) {
+        Long crc = getJarIndex(entry).crcs.get(name);
+        if (crc != null) {
+          return Optional.of(crc);
+        }
+      }
+    }
+    return Optional.empty();
+  }
+
+  private static JarIndex getJarIndex(Path jar) throws IOException {
+    FileStatus status = FileStatus.of(jar);
+    JarIndex index = JAR_INDEXES.getIfPresent(jar);
+    if (index == null || !index.status.equals(status)) {
+      Map<String, Long> crcs = new HashMap<>();
+      try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+          ZipEntry entry = entries.nextElement();
+          // Only the first of several entries with the same name can be loaded.
+          if (entry.getName().endsWith(".class")) {
+            crcs.putIfAbsent(entry.getName(), entry.getCrc());
+          }
+        }
+      }
+      index = new JarIndex(status, ImmutableMap.copyOf(crcs));
+      JAR_INDEXES.put(jar, index);
+    }
+    return index;
+  }
+
+  private static long crc(Path file) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[8192];
+    try (InputStream in = Files.newInputStream(file)) {
+      for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+        crc.update(buffer, 0, read);
+      }
+    }
+    return crc.getValue();
+  }
+
+  private static final class JarIndex {
+    final FileStatus status;
+    final ImmutableMap<String, Long> crcs;
+
+    JarIndex(FileStatus status, ImmutableMap<String, Long> crcs) {
+      this.status = status;
+      this.crcs = crcs;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.ExecutorPool;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the shards of the tests of a rule at the same time. The {@link JUnitStep}s of each shard
+ * are run one after the other, as they would be if they weren't sharded. All of the shards write
+ * their results to the same directory, one file per test class, so they are read back as if they
+ * had been run by a single step.
+ */
+class ShardedJUnitStep implements Step {
+
+  private final ImmutableList<ImmutableList<JUnitStep>> shards;
+
+  ShardedJUnitStep(ImmutableList<ImmutableList<JUnitStep>> shards) {
+    this.shards = shards;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    ListeningExecutorService executorService = context.getExecutorService(ExecutorPool.CPU);
+    ImmutableList.Builder<ListenableFuture<StepExecutionResult>> futures = ImmutableList.builder();
+    for (ImmutableList<JUnitStep> shard : shards) {
+      futures.add(executorService.submit(() -> executeShard(shard, context)));
+    }
+    ListenableFuture<List<StepExecutionResult>> results = Futures.allAsList(futures.build());
+    try {
+      for (StepExecutionResult result : results.get()) {
+        if (!result.isSuccess()) {
+          return result;
+        }
+      }
+      return StepExecutionResult.SUCCESS;
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfInstanceOf(e.getCause(), InterruptedException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    } finally {
+      // Stops the other shards if one of them failed, or if we were interrupted.
+      results.cancel(true);
+    }
+  }
+
+  private static StepExecutionResult executeShard(
+      ImmutableList<JUnitStep> shard,
+      ExecutionContext context) throws IOException, InterruptedException {
+    for (JUnitStep step : shard) {
+      StepExecutionResult result = step.execute(context);
+      if (!result.isSuccess()) {
+        return result;
+      }
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @Override
+  public String getShortName() {
+    return "junit";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return shards.stream()
+        .map(shard -> shard.stream()
+            .map(step -> step.getDescription(context))
+            .collect(Collectors.joining(" && ")))
+        .collect(Collectors.joining(" & "));
+  }
+}
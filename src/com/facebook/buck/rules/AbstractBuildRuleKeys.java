@@ -37,5 +37,6 @@ interface AbstractBuildRuleKeys {
   Optional<RuleKey> getInputRuleKey();
   Optional<RuleKey> getDepFileRuleKey();
   Optional<RuleKey> getManifestRuleKey();
+  Optional<RuleKey> getPreprocessedRuleKey();
 
 }
@@ -23,6 +23,8 @@ import com.google.common.collect.ImmutableMap;
 
 import org.immutables.value.Value;
 
+import java.util.Optional;
+
 @Value.Immutable
 @BuckStyleTuple
 abstract class AbstractResourceAwareSchedulingInfo {
@@ -56,6 +58,13 @@ abstract class AbstractResourceAwareSchedulingInfo {
 
   private ResourceAmounts getResourceAmountsForRuleOrDefaultAmounts(BuildRule rule) {
     Preconditions.checkArgument(isResourceAwareSchedulingEnabled());
+    if (rule instanceof OverrideScheduleRule) {
+      Optional<ResourceAmounts> amounts =
+          ((OverrideScheduleRule) rule).getRuleScheduleInfo().getResourceAmounts();
+      if (amounts.isPresent()) {
+        return amounts.get();
+      }
+    }
     if (getAmountsPerRuleType().containsKey(rule.getType())) {
       return getAmountsPerRuleType().get(rule.getType());
     } else {
@@ -16,10 +16,13 @@
 
 package com.facebook.buck.rules;
 
+import com.facebook.buck.util.concurrent.ResourceAmounts;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
 
 import org.immutables.value.Value;
 
+import java.util.Optional;
+
 /**
  * Used to override how the build engine schedules a build rule.
  */
@@ -37,4 +40,10 @@ abstract class AbstractRuleScheduleInfo {
   public int getJobsMultiplier() {
     return 1;
   }
+
+  /**
+   * @return the resources to reserve for the rule when resource-aware scheduling is enabled, in
+   *     place of those configured for its type.
+   */
+  public abstract Optional<ResourceAmounts> getResourceAmounts();
 }
@@ -79,6 +79,12 @@ public class BuildInfo {
      */
     static final String MANIFEST_KEY = "MANIFEST_KEY";
 
+    /**
+     * Key for {@link OnDiskBuildInfo} to identify the {@link RuleKey} made of the manifest key and
+     * the preprocessed inputs of a build rule.
+     */
+    static final String PREPROCESSED_RULE_KEY = "PREPROCESSED_RULE_KEY";
+
     /**
      * Key containing the ID of the build that originally built the rule.
      */
@@ -33,6 +33,7 @@ public abstract class BuildRuleCacheEvent extends AbstractBuckEvent
   public enum CacheStepType {
     INPUT_BASED("input_based"),
     DEPFILE_BASED("depfile_based"),
+    PREPROCESSED_BASED("preprocessed_based"),
     ABI_BASED("abi_based");
 
     private final String name;
@@ -279,6 +279,28 @@ public abstract class BuildRuleEvent extends AbstractBuckEvent implements WorkAd
       return ruleKeys;
     }
 
+    /**
+     * @return the cache check which found the outputs of the rule, if a cache check other than
+     *     the one by its rule key did, so that how often each of them hits can be told apart.
+     */
+    @JsonView(JsonViews.MachineReadableLog.class)
+    public Optional<BuildRuleCacheEvent.CacheStepType> getCacheStepType() {
+      if (!successType.isPresent()) {
+        return Optional.empty();
+      }
+      switch (successType.get()) {
+        case FETCHED_FROM_CACHE_INPUT_BASED:
+          return Optional.of(BuildRuleCacheEvent.CacheStepType.INPUT_BASED);
+        case FETCHED_FROM_CACHE_MANIFEST_BASED:
+          return Optional.of(BuildRuleCacheEvent.CacheStepType.DEPFILE_BASED);
+        case FETCHED_FROM_CACHE_PREPROCESSED:
+          return Optional.of(BuildRuleCacheEvent.CacheStepType.PREPROCESSED_BASED);
+        // $CASES-OMITTED$
+        default:
+          return Optional.empty();
+      }
+    }
+
     @JsonView(JsonViews.MachineReadableLog.class)
     public Optional<HashCode> getOutputHash() {
       return outputHash;
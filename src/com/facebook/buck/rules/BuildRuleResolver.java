@@ -35,6 +35,7 @@ import com.google.common.collect.Ordering;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 
 import javax.annotation.Nullable;
 
@@ -56,6 +57,7 @@ public class BuildRuleResolver {
 
   private final ConcurrentHashMap<BuildTarget, BuildRule> buildRuleIndex;
   private final LoadingCache<Pair<BuildTarget, Class<?>>, Optional<?>> metadataCache;
+  private final ConcurrentHashMap<Object, Object> sharedValues = new ConcurrentHashMap<>();
 
   public BuildRuleResolver(
       TargetGraph targetGraph,
@@ -183,6 +185,15 @@ public class BuildRuleResolver {
     }
   }
 
+  /**
+   * @return the value shared under {@code key} by everything creating rules with this resolver,
+   *     created with {@code supplier} the first time it's asked for. Values go away along with the
+   *     resolver, so unlike values in a static cache they may refer to its rules.
+   */
+  public <T> T computeSharedValueIfAbsent(Object key, Class<T> valueClass, Supplier<T> supplier) {
+    return valueClass.cast(sharedValues.computeIfAbsent(key, k -> supplier.get()));
+  }
+
   @SuppressWarnings("unchecked")
   public <T> Optional<T> getRuleOptionalWithType(
       BuildTarget buildTarget,
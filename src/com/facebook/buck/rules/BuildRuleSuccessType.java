@@ -65,6 +65,15 @@ public enum BuildRuleSuccessType {
       Property.OUTPUTS_HAVE_CHANGED
   ),
 
+  /** Fetched via the {@link com.facebook.buck.artifact_cache.ArtifactCache} using a rule key made
+   * of the manifest key and the preprocessed inputs. */
+  FETCHED_FROM_CACHE_PREPROCESSED(
+      "CACHE",
+      Property.SHOULD_UPLOAD_RESULTING_ARTIFACT,
+      Property.SHOULD_UPDATE_METADATA_ON_DISK,
+      Property.OUTPUTS_HAVE_CHANGED
+  ),
+
   /** Computed input-based {@link RuleKey} matches the one on disk. */
   MATCHING_INPUT_BASED_RULE_KEY(
       "FOUND",
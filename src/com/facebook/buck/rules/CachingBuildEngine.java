@@ -41,6 +41,7 @@ import com.facebook.buck.rules.keys.SizeLimiter;
 import com.facebook.buck.rules.keys.StringRuleKeyHasher;
 import com.facebook.buck.rules.keys.SupportsDependencyFileRuleKey;
 import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
+import com.facebook.buck.rules.keys.SupportsPreprocessedRuleKey;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepFailedException;
@@ -71,6 +72,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.Atomics;
@@ -87,6 +89,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
@@ -385,6 +388,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
   private AsyncFunction<List<BuildResult>, Optional<BuildResult>> checkCaches(
       final BuildRule rule,
       final BuildEngineBuildContext context,
+      final ExecutionContext executionContext,
       final OnDiskBuildInfo onDiskBuildInfo,
       final BuildInfoRecorder buildInfoRecorder) {
     return depResults -> {
@@ -482,23 +486,100 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
               return Futures.immediateFuture(manifestResult);
             }
           }
+
+          // The manifest has no entry for the current headers, so preprocess the inputs and look
+          // the rule up by what they preprocess to.
+          if (usePreprocessedRuleKey(rule)) {
+            return checkPreprocessedCache(
+                rule,
+                context,
+                executionContext,
+                onDiskBuildInfo,
+                buildInfoRecorder,
+                manifestKey.get());
+          }
         }
       }
 
-      // Cache lookups failed, so if we're just trying to populate, we've failed.
-      if (buildMode == BuildMode.POPULATE_FROM_REMOTE_CACHE) {
-        LOG.info("Cannot populate cache for " +
-            rule.getBuildTarget().getFullyQualifiedName());
-        return Futures.immediateFuture(Optional.of(BuildResult.canceled(
-            rule,
-            new HumanReadableException(
-                "Skipping %s: in cache population mode local builds are disabled",
-                rule))));
-      }
-      return Futures.immediateFuture(Optional.empty());
+      return cacheMiss(rule);
     };
   }
 
+  // Preprocessing runs the rule's preprocessor, so schedule it like the rule's own steps rather
+  // than as a cache check, which takes no CPU.
+  private ListenableFuture<Optional<BuildResult>> checkPreprocessedCache(
+      final BuildRule rule,
+      final BuildEngineBuildContext context,
+      final ExecutionContext executionContext,
+      final OnDiskBuildInfo onDiskBuildInfo,
+      final BuildInfoRecorder buildInfoRecorder,
+      final RuleKeyAndInputs manifestKey) {
+    ResourceAmounts ruleAmounts = getRuleResourceAmounts(rule);
+    ListenableFuture<Optional<RuleKey>> preprocessedRuleKey =
+        service.submit(
+            () -> {
+              try (BuildRuleEvent.Scope scope =
+                       BuildRuleEvent.resumeSuspendScope(
+                           context.getEventBus(),
+                           rule,
+                           buildRuleDurationTracker,
+                           ruleKeyFactories.getDefaultRuleKeyFactory())) {
+                return calculatePreprocessedRuleKey(
+                    rule,
+                    context,
+                    executionContext,
+                    manifestKey.getRuleKey());
+              }
+            },
+            ruleAmounts.getCpu() >= 1 ? ruleAmounts : ruleAmounts.withCpu(1));
+    return Futures.transformAsync(
+        preprocessedRuleKey,
+        ruleAsyncFunction(
+            rule,
+            context.getEventBus(),
+            key -> {
+              if (!key.isPresent()) {
+                return cacheMiss(rule);
+              }
+              buildInfoRecorder.addBuildMetadata(
+                  BuildInfo.MetadataKey.PREPROCESSED_RULE_KEY,
+                  key.get().toString());
+              try (BuckEvent.Scope scope =
+                       BuildRuleCacheEvent.startCacheCheckScope(
+                           context.getEventBus(),
+                           rule,
+                           BuildRuleCacheEvent.CacheStepType.PREPROCESSED_BASED)) {
+                Optional<BuildResult> preprocessedResult =
+                    performPreprocessedCacheFetch(
+                        rule,
+                        context,
+                        onDiskBuildInfo,
+                        buildInfoRecorder,
+                        manifestKey,
+                        key.get());
+                if (preprocessedResult.isPresent()) {
+                  return Futures.immediateFuture(preprocessedResult);
+                }
+              }
+              return cacheMiss(rule);
+            }),
+        serviceByAdjustingDefaultWeightsTo(CACHE_CHECK_RESOURCE_AMOUNTS));
+  }
+
+  private ListenableFuture<Optional<BuildResult>> cacheMiss(BuildRule rule) {
+    // Cache lookups failed, so if we're just trying to populate, we've failed.
+    if (buildMode == BuildMode.POPULATE_FROM_REMOTE_CACHE) {
+      LOG.info("Cannot populate cache for " +
+          rule.getBuildTarget().getFullyQualifiedName());
+      return Futures.immediateFuture(Optional.of(BuildResult.canceled(
+          rule,
+          new HumanReadableException(
+              "Skipping %s: in cache population mode local builds are disabled",
+              rule))));
+    }
+    return Futures.immediateFuture(Optional.empty());
+  }
+
   private ListenableFuture<BuildResult> processBuildRule(
       final BuildRule rule,
       final BuildEngineBuildContext buildContext,
@@ -609,7 +690,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     // 4. Return to the current rule and check caches to see if we can avoid building
     // locally.
     AsyncFunction<List<BuildResult>, Optional<BuildResult>> checkCachesCallback =
-        checkCaches(rule, buildContext, onDiskBuildInfo, buildInfoRecorder);
+        checkCaches(rule, buildContext, executionContext, onDiskBuildInfo, buildInfoRecorder);
 
     ListenableFuture<Optional<BuildResult>> checkCachesResult =
         Futures.transformAsync(
@@ -1051,6 +1132,16 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
                   ruleKeys.addAll(OptionalCompat.asSet(onDiskRuleKey));
                 }
 
+                // If the inputs were preprocessed to look the rule up, push the artifact to cache
+                // using the key of what they preprocessed to as well.
+                if (usePreprocessedRuleKey(rule)) {
+                  ruleKeys.addAll(
+                      OptionalCompat.asSet(
+                          buildInfoRecorder
+                              .getBuildMetadataFor(BuildInfo.MetadataKey.PREPROCESSED_RULE_KEY)
+                              .map(RuleKey::new)));
+                }
+
                 // Do the actual upload.
                 try {
 
@@ -1192,11 +1283,14 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
         onDiskBuildInfo.getRuleKey(BuildInfo.MetadataKey.DEP_FILE_RULE_KEY);
     Optional<RuleKey> manifestKey =
         onDiskBuildInfo.getRuleKey(BuildInfo.MetadataKey.MANIFEST_KEY);
+    Optional<RuleKey> preprocessedKey =
+        onDiskBuildInfo.getRuleKey(BuildInfo.MetadataKey.PREPROCESSED_RULE_KEY);
     return BuildRuleKeys.builder()
         .setRuleKey(defaultKey)
         .setInputRuleKey(inputKey)
         .setDepFileRuleKey(depFileKey)
         .setManifestRuleKey(manifestKey)
+        .setPreprocessedRuleKey(preprocessedKey)
         .build();
   }
 
@@ -1678,12 +1772,19 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
   }
 
   private boolean useManifestCaching(BuildRule rule) {
-    return depFiles == DepFiles.CACHE &&
+    return (depFiles == DepFiles.CACHE || depFiles == DepFiles.CACHE_PREPROCESSED) &&
         rule instanceof SupportsDependencyFileRuleKey &&
         rule.isCacheable() &&
         ((SupportsDependencyFileRuleKey) rule).useDependencyFileRuleKeys();
   }
 
+  private boolean usePreprocessedRuleKey(BuildRule rule) {
+    return depFiles == DepFiles.CACHE_PREPROCESSED &&
+        useManifestCaching(rule) &&
+        rule instanceof SupportsPreprocessedRuleKey &&
+        ((SupportsPreprocessedRuleKey) rule).usePreprocessedRuleKey();
+  }
+
   private Optional<RuleKeyAndInputs> calculateDepFileRuleKey(
       BuildRule rule,
       BuildEngineBuildContext context,
@@ -1743,25 +1844,45 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       RuleKeyAndInputs manifestKey,
       ArtifactCache cache)
       throws IOException {
+    updateAndStoreManifest(
+        rule,
+        readManifest(rule, manifestKey),
+        key,
+        inputs,
+        manifestKey,
+        cache);
+  }
 
-    Preconditions.checkState(useManifestCaching(rule));
-
-    final Path manifestPath = getManifestPath(rule);
-    Manifest manifest = new Manifest(manifestKey.getRuleKey());
-
-    // If we already have a manifest downloaded, use that.
+  // Read the manifest we already have downloaded, or start a new one if there isn't one.
+  private Manifest readManifest(BuildRule rule, RuleKeyAndInputs manifestKey) throws IOException {
+    Path manifestPath = getManifestPath(rule);
     if (rule.getProjectFilesystem().exists(manifestPath)) {
       try (InputStream inputStream =
                rule.getProjectFilesystem().newFileInputStream(manifestPath)) {
         Manifest existingManifest = new Manifest(inputStream);
         if (existingManifest.getKey().equals(manifestKey.getRuleKey())) {
-          manifest = existingManifest;
+          return existingManifest;
         }
       }
-    } else {
-      // Ensure the path to manifest exist
-      rule.getProjectFilesystem().createParentDirs(manifestPath);
     }
+    return new Manifest(manifestKey.getRuleKey());
+  }
+
+  private void updateAndStoreManifest(
+      BuildRule rule,
+      Manifest manifest,
+      RuleKey key,
+      ImmutableSet<SourcePath> inputs,
+      RuleKeyAndInputs manifestKey,
+      ArtifactCache cache)
+      throws IOException {
+
+    Preconditions.checkState(useManifestCaching(rule));
+
+    final Path manifestPath = getManifestPath(rule);
+
+    // Ensure the path to manifest exist
+    rule.getProjectFilesystem().createParentDirs(manifestPath);
 
     // If the manifest is larger than the max size, just truncate it.  It might be nice to support
     // some sort of LRU management here to avoid evicting everything, but it'll take some care to do
@@ -1916,6 +2037,114 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
 
   }
 
+  // Preprocess the inputs of the rule and key them by the manifest key and what they preprocessed
+  // to, which is the same whichever headers the inputs come from, as long as they preprocess to the
+  // same thing.
+  private Optional<RuleKey> calculatePreprocessedRuleKey(
+      BuildRule rule,
+      BuildEngineBuildContext context,
+      ExecutionContext executionContext,
+      RuleKey manifestKey)
+      throws IOException, InterruptedException {
+    Preconditions.checkState(usePreprocessedRuleKey(rule));
+    SupportsPreprocessedRuleKey preprocessedRule = (SupportsPreprocessedRuleKey) rule;
+
+    Optional<BuildTarget> optionalTarget = Optional.of(rule.getBuildTarget());
+    try {
+      for (Step step : preprocessedRule.getPreprocessSteps(context.getBuildContext())) {
+        stepRunner.runStepForBuildTarget(
+            executionContext.withProcessExecutor(
+                new ContextualProcessExecutor(
+                    executionContext.getProcessExecutor(),
+                    ImmutableMap.of(
+                        BUILD_RULE_TYPE_CONTEXT_KEY,
+                        rule.getType(),
+                        STEP_TYPE_CONTEXT_KEY,
+                        StepType.BUILD_STEP.toString()))),
+            step,
+            optionalTarget);
+      }
+    } catch (StepFailedException e) {
+      // Treat this as a cache miss, and let building the rule locally report the error.
+      LOG.debug(e, "Failed to preprocess inputs of %s", rule);
+      return Optional.empty();
+    }
+
+    Path preprocessedOutput = preprocessedRule.getPreprocessedOutput();
+    HashCode preprocessedHash =
+        rule.getProjectFilesystem().computeSha1(preprocessedOutput).asHashCode();
+    rule.getProjectFilesystem().deleteFileAtPathIfExists(preprocessedOutput);
+    return Optional.of(
+        new RuleKey(
+            Hashing.sha1().newHasher()
+                .putString("preprocessed", StandardCharsets.UTF_8)
+                .putString(manifestKey.toString(), StandardCharsets.UTF_8)
+                .putBytes(preprocessedHash.asBytes())
+                .hash()));
+  }
+
+  // Fetch an artifact from the cache using the key of what its inputs preprocessed to.
+  private Optional<BuildResult> performPreprocessedCacheFetch(
+      final BuildRule rule,
+      final BuildEngineBuildContext context,
+      OnDiskBuildInfo onDiskBuildInfo,
+      BuildInfoRecorder buildInfoRecorder,
+      RuleKeyAndInputs manifestKey,
+      RuleKey preprocessedRuleKey)
+      throws IOException {
+    Preconditions.checkArgument(usePreprocessedRuleKey(rule));
+
+    // Unpacking the artifact replaces the metadata directory, and the manifest fetched into it, so
+    // read the manifest first to add to it.
+    Manifest manifest = readManifest(rule, manifestKey);
+
+    CacheResult cacheResult =
+        tryToFetchArtifactFromBuildCacheAndOverlayOnTopOfProjectFilesystem(
+            rule,
+            preprocessedRuleKey,
+            context.getArtifactCache(),
+            rule.getProjectFilesystem(),
+            context);
+
+    if (cacheResult.getType().isSuccess()) {
+      fillMissingBuildMetadataFromCache(
+          cacheResult,
+          buildInfoRecorder,
+          BuildInfo.MetadataKey.ORIGIN_BUILD_ID,
+          BuildInfo.MetadataKey.DEP_FILE);
+
+      // The artifact may have been built against different headers, which preprocessed to the
+      // same thing, so its dep-file rule key isn't ours.  Re-calculate it from the dep file it
+      // came with and the headers here, and add it to the manifest so the next lookup finds it
+      // without preprocessing.
+      Optional<RuleKeyAndInputs> depFileRuleKeyAndInputs =
+          calculateDepFileRuleKey(
+              rule,
+              context,
+              onDiskBuildInfo.getValues(BuildInfo.MetadataKey.DEP_FILE),
+              /* allowMissingInputs */ true);
+      if (depFileRuleKeyAndInputs.isPresent()) {
+        buildInfoRecorder.addBuildMetadata(
+            BuildInfo.MetadataKey.DEP_FILE_RULE_KEY,
+            depFileRuleKeyAndInputs.get().getRuleKey().toString());
+        updateAndStoreManifest(
+            rule,
+            manifest,
+            depFileRuleKeyAndInputs.get().getRuleKey(),
+            depFileRuleKeyAndInputs.get().getInputs(),
+            manifestKey,
+            context.getArtifactCache());
+      }
+
+      return Optional.of(
+          BuildResult.success(
+              rule,
+              BuildRuleSuccessType.FETCHED_FROM_CACHE_PREPROCESSED,
+              cacheResult));
+    }
+    return Optional.empty();
+  }
+
   private Optional<RuleKey> calculateInputBasedRuleKey(
       BuildRule rule,
       BuckEventBus eventBus) {
@@ -2024,6 +2253,9 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     ENABLED,
     DISABLED,
     CACHE,
+    // Like CACHE, but when the manifest doesn't find the rule, preprocess its inputs and look it up
+    // by what they preprocess to.
+    CACHE_PREPROCESSED,
   }
 
   public enum MetadataStorage {
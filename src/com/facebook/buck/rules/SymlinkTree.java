@@ -25,7 +25,6 @@ import com.facebook.buck.step.AbstractExecutionStep;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
-import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.SymlinkTreeStep;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
@@ -170,7 +169,6 @@ public class SymlinkTree implements BuildRule, HasRuntimeDeps, SupportsInputBase
       BuildableContext buildableContext) {
     return new ImmutableList.Builder<Step>()
         .add(getVerifyStep())
-        .addAll(MakeCleanDirectoryStep.of(getProjectFilesystem(), root))
         .add(
             new SymlinkTreeStep(
                 getProjectFilesystem(),
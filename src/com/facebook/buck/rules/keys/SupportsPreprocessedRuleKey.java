@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.step.Step;
+import com.google.common.collect.ImmutableList;
+
+import java.nio.file.Path;
+
+/**
+ * Used to tag a rule whose inputs covered by its dep-file can be preprocessed into a single file
+ * much more cheaply than the rule can be built, such as a C/C++ source and its headers.
+ * <p>
+ * When its manifest misses the cache, the rule can be looked up again by a key made of its
+ * manifest key and the contents of the preprocessed file, which only changes when the headers
+ * change in a way that can affect the build.
+ */
+public interface SupportsPreprocessedRuleKey extends SupportsDependencyFileRuleKey {
+
+  boolean usePreprocessedRuleKey();
+
+  /**
+   * @return the steps which write the preprocessed inputs to {@link #getPreprocessedOutput()}.
+   */
+  ImmutableList<Step> getPreprocessSteps(BuildContext context);
+
+  /**
+   * @return the file written by {@link #getPreprocessSteps(BuildContext)}, relative to the root
+   *     of the rule's filesystem.
+   */
+  Path getPreprocessedOutput();
+
+}
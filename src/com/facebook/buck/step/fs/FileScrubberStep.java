@@ -19,6 +19,7 @@ package com.facebook.buck.step.fs;
 import com.facebook.buck.io.FileAttributesScrubber;
 import com.facebook.buck.io.FileContentsScrubber;
 import com.facebook.buck.io.FileScrubber;
+import com.facebook.buck.io.MappedFileContentsScrubber;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
@@ -26,12 +27,16 @@ import com.facebook.buck.step.StepExecutionResult;
 import com.google.common.collect.ImmutableList;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 
 /**
  * Scrub any non-deterministic meta-data from the given file (e.g. timestamp, UID, GID).
+ * <p>
+ * The file is opened once for all the scrubbers, and those which scrub mapped contents one after
+ * the other all work on the same mapping of it.
  */
 public class FileScrubberStep implements Step {
 
@@ -52,18 +57,54 @@ public class FileScrubberStep implements Step {
     return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
   }
 
+  private static ByteBuffer map(FileChannel channel)
+      throws IOException, FileScrubber.ScrubException {
+    long size = channel.size();
+    if (size > Integer.MAX_VALUE) {
+      throw new FileScrubber.ScrubException(
+          String.format("file of %d bytes is too large to be mapped", size));
+    }
+    return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+  }
+
+  /**
+   * Truncates the file to the limit of its mapped contents, if scrubbers have lowered it.
+   */
+  private static void truncate(FileChannel channel, ByteBuffer contents) throws IOException {
+    if (contents.limit() < channel.size()) {
+      channel.truncate(contents.limit());
+    }
+  }
+
   @Override
   public StepExecutionResult execute(ExecutionContext context) throws InterruptedException {
     Path filePath = filesystem.resolve(input);
-    try {
+    try (FileChannel channel = readWriteChannel(filePath)) {
+      // Scrubbers which run one after the other on mapped contents share the same mapping, rather
+      // than each opening and mapping the file again.
+      ByteBuffer contents = null;
       for (FileScrubber scrubber : scrubbers) {
-        try (FileChannel channel = readWriteChannel(filePath)) {
-          if (scrubber instanceof FileContentsScrubber) {
-            ((FileContentsScrubber) scrubber).scrubFile(channel);
-          } else if (scrubber instanceof FileAttributesScrubber) {
-            ((FileAttributesScrubber) scrubber).scrubFileWithPath(filePath);
+        if (scrubber instanceof MappedFileContentsScrubber) {
+          if (contents == null) {
+            contents = map(channel);
           }
+          contents.rewind();
+          ((MappedFileContentsScrubber) scrubber).scrubFile(contents);
+          continue;
+        }
+        if (contents != null) {
+          truncate(channel, contents);
+          contents = null;
         }
+        if (scrubber instanceof FileContentsScrubber) {
+          channel.position(0);
+          ((FileContentsScrubber) scrubber).scrubFile(channel);
+        } else if (scrubber instanceof FileAttributesScrubber) {
+          ((FileAttributesScrubber) scrubber).scrubFileWithPath(filePath);
+        }
+      }
+      if (contents != null) {
+        truncate(channel, contents);
       }
     } catch (IOException | FileContentsScrubber.ScrubException e) {
       context.logError(e, "Error scrubbing non-deterministic metadata from %s", filePath);
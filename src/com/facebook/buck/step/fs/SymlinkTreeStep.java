@@ -16,18 +16,60 @@
 
 package com.facebook.buck.step.fs;
 
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.IntegerCounter;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.concurrent.MoreFutures;
 import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
+/**
+ * Makes {@code root} hold exactly the given links and the directories containing them.
+ * <p>
+ * Rather than deleting the whole tree and linking everything again, the existing tree is compared
+ * with the links it should hold: links which already point at the right place are left alone, and
+ * only those which were added, removed or retargeted are changed. Anything else found in the tree
+ * is removed. New links are created in parallel, one directory at a time per thread.
+ */
 public class SymlinkTreeStep implements Step {
 
+  private static final Logger LOG = Logger.get(SymlinkTreeStep.class);
+
+  private static final String COUNTER_CATEGORY = "symlink_tree";
+
+  private static final IntegerCounter LINKS_ADDED =
+      new IntegerCounter(COUNTER_CATEGORY, "links_added", ImmutableMap.of());
+  private static final IntegerCounter LINKS_REMOVED =
+      new IntegerCounter(COUNTER_CATEGORY, "links_removed", ImmutableMap.of());
+  private static final IntegerCounter LINKS_RETARGETED =
+      new IntegerCounter(COUNTER_CATEGORY, "links_retargeted", ImmutableMap.of());
+  private static final IntegerCounter LINKS_UNCHANGED =
+      new IntegerCounter(COUNTER_CATEGORY, "links_unchanged", ImmutableMap.of());
+
   private final ProjectFilesystem filesystem;
   private final Path root;
   private final ImmutableMap<Path, Path> links;
@@ -38,6 +80,13 @@ public class SymlinkTreeStep implements Step {
     this.links = links;
   }
 
+  /**
+   * @return the counters of the link trees created by this process.
+   */
+  public static ImmutableList<Counter> getCounters() {
+    return ImmutableList.of(LINKS_ADDED, LINKS_REMOVED, LINKS_RETARGETED, LINKS_UNCHANGED);
+  }
+
   @Override
   public String getDescription(ExecutionContext context) {
     return "link tree @ " + root.toString();
@@ -49,21 +98,158 @@ public class SymlinkTreeStep implements Step {
   }
 
   @Override
-  public StepExecutionResult execute(ExecutionContext context) {
+  public StepExecutionResult execute(ExecutionContext context) throws InterruptedException {
+    Map<Path, Path> targets = new LinkedHashMap<>();
+    Set<Path> requiredDirectories = new HashSet<>();
     for (ImmutableMap.Entry<Path, Path> ent : links.entrySet()) {
-      Path target = filesystem.resolve(ent.getValue());
-      Path link = filesystem.resolve(root.resolve(ent.getKey()));
+      targets.put(ent.getKey(), filesystem.resolve(ent.getValue()));
+      for (Path parent = ent.getKey().getParent(); parent != null; parent = parent.getParent()) {
+        requiredDirectories.add(parent);
+      }
+    }
+
+    try {
+      Map<Path, Optional<Path>> existingEntries = new HashMap<>();
+      List<Path> existingDirectories = new ArrayList<>();
+      readExistingTree(existingEntries, existingDirectories);
+
+      // Remove whatever is in the way first, so that links can be created where directories were
+      // and the other way around.
+      int removed = 0;
+      int retargeted = 0;
+      for (Map.Entry<Path, Optional<Path>> entry : existingEntries.entrySet()) {
+        Path target = targets.get(entry.getKey());
+        if (target != null && entry.getValue().equals(Optional.of(target))) {
+          targets.remove(entry.getKey());
+          continue;
+        }
+        filesystem.deleteFileAtPath(root.resolve(entry.getKey()));
+        if (target == null) {
+          removed++;
+        } else {
+          retargeted++;
+        }
+      }
+      existingDirectories.sort(
+          Comparator.comparing(Path::getNameCount, Comparator.reverseOrder()));
+      for (Path directory : existingDirectories) {
+        if (!requiredDirectories.contains(directory)) {
+          filesystem.deleteFileAtPath(root.resolve(directory));
+        }
+      }
+
+      createLinks(targets, context);
+
+      int unchanged = links.size() - targets.size();
+      LINKS_ADDED.inc(targets.size() - retargeted);
+      LINKS_REMOVED.inc(removed);
+      LINKS_RETARGETED.inc(retargeted);
+      LINKS_UNCHANGED.inc(unchanged);
+      LOG.debug(
+          "Link tree %s: %d added, %d removed, %d retargeted, %d unchanged.",
+          root,
+          targets.size() - retargeted,
+          removed,
+          retargeted,
+          unchanged);
+    } catch (IOException e) {
+      context.logError(e, e.getMessage());
+      e.printStackTrace(context.getStdErr());
+      return StepExecutionResult.ERROR;
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  /**
+   * Finds what is already in the tree, by path relative to {@link #root}: the targets of links,
+   * other files (with no target), and directories. Links aren't followed.
+   */
+  private void readExistingTree(
+      Map<Path, Optional<Path>> entries,
+      List<Path> directories) throws IOException {
+    if (filesystem.isSymLink(root) || filesystem.isFile(root)) {
+      filesystem.deleteFileAtPath(root);
+    }
+    if (!filesystem.isDirectory(root)) {
+      return;
+    }
+    Path absoluteRoot = filesystem.resolve(root);
+    filesystem.walkRelativeFileTree(
+        root,
+        EnumSet.noneOf(FileVisitOption.class),
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            Path relativeDir = absoluteRoot.relativize(filesystem.resolve(dir));
+            if (!relativeDir.toString().isEmpty()) {
+              directories.add(relativeDir);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            Path link = filesystem.resolve(file);
+            Optional<Path> target = attrs.isSymbolicLink() ?
+                Optional.of(link.getParent().resolve(filesystem.readSymLink(file))) :
+                Optional.empty();
+            entries.put(absoluteRoot.relativize(link), target);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  /**
+   * Creates the links, keeping at most as many directories in flight as there are threads.
+   */
+  private void createLinks(Map<Path, Path> targets, ExecutionContext context)
+      throws IOException, InterruptedException {
+    Map<Path, Map<Path, Path>> linksByDirectory = new LinkedHashMap<>();
+    for (Map.Entry<Path, Path> entry : targets.entrySet()) {
+      Path link = filesystem.resolve(root.resolve(entry.getKey()));
+      linksByDirectory
+          .computeIfAbsent(link.getParent(), directory -> new LinkedHashMap<>())
+          .put(link, entry.getValue());
+    }
+    if (linksByDirectory.size() <= 1) {
+      for (Map.Entry<Path, Map<Path, Path>> entry : linksByDirectory.entrySet()) {
+        createLinksInDirectory(entry.getKey(), entry.getValue());
+      }
+      return;
+    }
+
+    ListeningExecutorService executorService = context.getExecutorService(ExecutorPool.CPU);
+    try (MoreFutures.InFlightFutures<Object, IOException> inFlight =
+             MoreFutures.inFlight(
+                 context.getConcurrencyLimit().threadLimit,
+                 IOException.class,
+                 result -> {})) {
+      for (Map.Entry<Path, Map<Path, Path>> entry : linksByDirectory.entrySet()) {
+        inFlight.add(
+            executorService.submit(() -> {
+              createLinksInDirectory(entry.getKey(), entry.getValue());
+              return null;
+            }));
+      }
+      inFlight.finish();
+    }
+  }
+
+  private void createLinksInDirectory(Path directory, Map<Path, Path> links) throws IOException {
+    filesystem.mkdirs(directory);
+    for (Map.Entry<Path, Path> entry : links.entrySet()) {
       try {
-        filesystem.mkdirs(link.getParent());
-        filesystem.createSymLink(link, target, true /* force */);
+        filesystem.createSymLink(entry.getKey(), entry.getValue(), false /* force */);
       } catch (IOException e) {
-        String msg = String.format("failed creating linking \"%s\" -> \"%s\"", link, target);
-        context.logError(e, msg);
-        e.printStackTrace(context.getStdErr());
-        return StepExecutionResult.ERROR;
+        throw new IOException(
+            String.format(
+                "failed creating linking \"%s\" -> \"%s\"",
+                entry.getKey(),
+                entry.getValue()),
+            e);
       }
     }
-    return StepExecutionResult.SUCCESS;
   }
 
   @Override
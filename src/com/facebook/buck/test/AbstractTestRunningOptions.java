@@ -63,6 +63,24 @@ abstract class AbstractTestRunningOptions {
     return false;
   }
 
+  /**
+   * Whether Java tests record the classes they load, and are skipped when none of those have
+   * changed since they last ran, even if the rule key of the test has.
+   */
+  @Value.Default
+  public boolean isSelectingTestsByLoadedClasses() {
+    return false;
+  }
+
+  /**
+   * The number of JVMs the test classes of a Java test are spread over, balanced by how long each
+   * class took the last time it was run.
+   */
+  @Value.Default
+  public int getJavaTestShards() {
+    return 1;
+  }
+
   public abstract Optional<String> getPathToXmlTestOutput();
 
   public abstract Optional<String> getPathToJavaAgent();
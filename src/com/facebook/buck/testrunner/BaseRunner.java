@@ -58,6 +58,7 @@ public abstract class BaseRunner {
   protected TestSelectorList testSelectorList;
   protected boolean isDryRun;
   protected boolean shouldExplainTestSelectors;
+  protected File loadedClassesFile;
 
   public abstract void run() throws Throwable;
 
@@ -205,6 +206,7 @@ public abstract class BaseRunner {
     TestSelectorList.Builder testSelectorListBuilder = TestSelectorList.builder();
     boolean isDryRun = false;
     boolean shouldExplainTestSelectors = false;
+    File loadedClassesFile = null;
 
     List<String> testClassNames = new ArrayList<>();
 
@@ -246,6 +248,9 @@ public abstract class BaseRunner {
             System.exit(1);
           }
           break;
+        case "--loaded-classes-file":
+          loadedClassesFile = new File(args[++i]);
+          break;
         default:
           testClassNames.add(args[i]);
       }
@@ -266,6 +271,7 @@ public abstract class BaseRunner {
       testClassNames.removeIf(name -> !testSelectorList.possiblyIncludesClassName(name));
     }
     this.shouldExplainTestSelectors = shouldExplainTestSelectors;
+    this.loadedClassesFile = loadedClassesFile;
   }
 
   protected void runAndExit() {
@@ -274,6 +280,7 @@ public abstract class BaseRunner {
     // Run the tests.
     try {
       run();
+      recordLoadedClasses();
 
       // We're using a successful exit code regardless of test outcome since JUnitRunner
       // is designed to execute all tests and produce a report of success or failure.  We've done
@@ -291,4 +298,19 @@ public abstract class BaseRunner {
     // eventually timeout.
     System.exit(exitCode);
   }
+
+  /**
+   * Writes down the classes loaded by the tests, if asked to. Failing to do so only means that
+   * buck will run the tests again next time, so it doesn't fail the run.
+   */
+  private void recordLoadedClasses() {
+    if (loadedClassesFile == null || isDryRun) {
+      return;
+    }
+    try {
+      LoadedClassesRecorder.record(loadedClassesFile);
+    } catch (Exception e) {
+      System.err.printf("Unable to record the loaded classes in %s: %s\n", loadedClassesFile, e);
+    }
+  }
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.testrunner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Writes down which of the classes on the classpath were loaded by the tests, so that buck can
+ * tell whether a later change could have affected them.
+ * <p>
+ * The file has one line per loaded class, sorted: the CRC-32 of the class file in hex, a space,
+ * and the path of the class file relative to the classpath entry it was loaded from (e.g.
+ * {@code com/example/Foo.class}). Only the first class file of each name on the classpath is
+ * considered, as that is the one the system class loader would have loaded.
+ * <p>
+ * Classes loaded by other class loaders than the system one are not seen.
+ */
+public final class LoadedClassesRecorder {
+
+  private LoadedClassesRecorder() {
+  }
+
+  static void record(File outputFile) throws IOException, ReflectiveOperationException {
+    record(outputFile, ClassLoader.getSystemClassLoader());
+  }
+
+  /**
+   * Writes down the classes on the classpath of {@code classLoader} which it has loaded itself.
+   * The test runner passes the system class loader; tests pass one of their own.
+   */
+  public static void record(File outputFile, ClassLoader classLoader)
+      throws IOException, ReflectiveOperationException {
+    if (!(classLoader instanceof URLClassLoader)) {
+      // Leaving no file just means that the tests will be run again next time.
+      return;
+    }
+    Method findLoadedClass = ClassLoader.class.getDeclaredMethod("findLoadedClass", String.class);
+    findLoadedClass.setAccessible(true);
+
+    Map<String, Long> seen = new TreeMap<>();
+    Map<String, Long> loaded = new TreeMap<>();
+    for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+      if (!"file".equals(url.getProtocol())) {
+        continue;
+      }
+      File entry;
+      try {
+        entry = new File(url.toURI());
+      } catch (URISyntaxException | IllegalArgumentException e) {
+        continue;
+      }
+      if (entry.isDirectory()) {
+        recordDirectory(entry, "", classLoader, findLoadedClass, seen, loaded);
+      } else if (entry.isFile()) {
+        recordJar(entry, classLoader, findLoadedClass, seen, loaded);
+      }
+    }
+
+    File tempFile = new File(outputFile.getPath() + ".tmp");
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8")) {
+      for (Map.Entry<String, Long> entry : loaded.entrySet()) {
+        writer.write(Long.toHexString(entry.getValue()));
+        writer.write(' ');
+        writer.write(entry.getKey());
+        writer.write('\n');
+      }
+    }
+    if (!tempFile.renameTo(outputFile)) {
+      throw new IOException("Unable to rename " + tempFile + " to " + outputFile);
+    }
+  }
+
+  private static void recordJar(
+      File jar,
+      ClassLoader classLoader,
+      Method findLoadedClass,
+      Map<String, Long> seen,
+      Map<String, Long> loaded) throws IOException, ReflectiveOperationException {
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        String name = entry.getName();
+        if (isFirstClassFile(name, seen) && isLoaded(name, classLoader, findLoadedClass)) {
+          loaded.put(name, entry.getCrc());
+        }
+      }
+    }
+  }
+
+  private static void recordDirectory(
+      File directory,
+      String prefix,
+      ClassLoader classLoader,
+      Method findLoadedClass,
+      Map<String, Long> seen,
+      Map<String, Long> loaded) throws IOException, ReflectiveOperationException {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String name = prefix + file.getName();
+      if (file.isDirectory()) {
+        recordDirectory(file, name + "/", classLoader, findLoadedClass, seen, loaded);
+      } else if (isFirstClassFile(name, seen) && isLoaded(name, classLoader, findLoadedClass)) {
+        loaded.put(name, crc(file));
+      }
+    }
+  }
+
+  private static boolean isFirstClassFile(String name, Map<String, Long> seen) {
+    return name.endsWith(".class") && seen.put(name, 0L) == null;
+  }
+
+  private static boolean isLoaded(String name, ClassLoader classLoader, Method findLoadedClass)
+      throws ReflectiveOperationException {
+    String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+    return findLoadedClass.invoke(classLoader, className) != null;
+  }
+
+  private static long crc(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[8192];
+    try (InputStream in = new FileInputStream(file)) {
+      for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+        crc.update(buffer, 0, read);
+      }
+    }
+    return crc.getValue();
+  }
+}
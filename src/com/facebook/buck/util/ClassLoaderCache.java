@@ -16,56 +16,111 @@
 
 package com.facebook.buck.util;
 
+import com.facebook.buck.io.FileStatus;
+import com.facebook.buck.log.Logger;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 
 import java.io.IOException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 import javax.annotation.Nullable;
 
 /**
  * Maintain a cache mapping class paths to class loaders that load from these class paths.  The
- * class loaders remain active until ClassLoaderCache itself is unloaded.
+ * class loaders remain active until ClassLoaderCache itself is unloaded, or until they're among the
+ * least recently used once the cache holds more than its limit of class loaders.
+ * <p>
+ * A cache may outlive a single build (the buck daemon keeps one so that compilers and annotation
+ * processors stay loaded, and JIT compiled, between commands), so the class loaders are keyed by
+ * the contents of the jars on their class paths as well as by the class paths themselves. If a
+ * jar is rebuilt with different contents, the next lookup gets a fresh class loader; the old one
+ * is closed once nothing holds a reference to the cache other than its owner.
  */
 public final class ClassLoaderCache implements AutoCloseable {
 
-  private final Map<ClassLoader, Map<ImmutableList<URL>, ClassLoader>> cache = new HashMap<>();
+  private static final Logger LOG = Logger.get(ClassLoaderCache.class);
+
+  /**
+   * The number of class loaders kept before the least recently used ones are dropped, so that a
+   * long-lived cache doesn't hold on to the class loaders of class paths which are no longer used.
+   */
+  private static final int DEFAULT_MAX_CLASS_LOADERS = 64;
+
+  private final int maxClassLoaders;
+  private final Function<Path, Optional<HashCode>> knownContentHashes;
+
+  // Ordered by access, so that the least recently used class loaders are dropped first.
+  private final LinkedHashMap<CacheKey, CacheEntry> cache = new LinkedHashMap<>(16, 0.75f, true);
+  private final ConcurrentMap<Path, FileContentHash> contentHashes = new ConcurrentHashMap<>();
+  private final List<ClassLoader> staleClassLoaders = new ArrayList<>();
 
   private int referenceCount = 1;
 
-  private synchronized Map<ImmutableList<URL>, ClassLoader> getCacheForParent(
-      @Nullable ClassLoader parentClassLoader) {
-    Map<ImmutableList<URL>, ClassLoader> cacheForParent =
-        cache.get(parentClassLoader);
+  public ClassLoaderCache() {
+    this(path -> Optional.empty());
+  }
 
-    if (cacheForParent == null) {
-      cacheForParent = new HashMap<>();
-      cache.put(parentClassLoader, cacheForParent);
-    }
+  /**
+   * @param knownContentHashes looks up the content hashes of jars which something else, such as
+   *     the daemon's file hash caches, already keeps up to date. Jars it doesn't know about are
+   *     hashed by the cache itself.
+   */
+  public ClassLoaderCache(Function<Path, Optional<HashCode>> knownContentHashes) {
+    this(knownContentHashes, DEFAULT_MAX_CLASS_LOADERS);
+  }
 
-    return cacheForParent;
+  @VisibleForTesting
+  ClassLoaderCache(Function<Path, Optional<HashCode>> knownContentHashes, int maxClassLoaders) {
+    Preconditions.checkArgument(maxClassLoaders > 0);
+    this.knownContentHashes = knownContentHashes;
+    this.maxClassLoaders = maxClassLoaders;
   }
 
-  public synchronized ClassLoader getClassLoaderForClassPath(
+  public ClassLoader getClassLoaderForClassPath(
       @Nullable ClassLoader parentClassLoader,
       ImmutableList<URL> classPath) {
+    // Hash the jars before taking the lock, so that compiles don't wait on each other's hashing.
+    ImmutableList<HashCode> contentKey = getContentKey(classPath);
 
-    Map<ImmutableList<URL>, ClassLoader> cacheForParent =
-        getCacheForParent(parentClassLoader);
-
-    ClassLoader classLoader = cacheForParent.get(classPath);
-    if (classLoader == null) {
-      URL[] urls = classPath.toArray(new URL[classPath.size()]);
-      classLoader = new CachedURLClassLoader(urls, parentClassLoader);
-      cacheForParent.put(classPath, classLoader);
+    synchronized (this) {
+      CacheKey key = new CacheKey(parentClassLoader, classPath);
+      CacheEntry entry = cache.get(key);
+      if (entry != null && entry.contentKey != null && !entry.contentKey.equals(contentKey)) {
+        LOG.debug("Contents of %s changed, creating a new class loader.", classPath);
+        staleClassLoaders.add(entry.classLoader);
+        entry = null;
+      }
+      if (entry == null) {
+        URL[] urls = classPath.toArray(new URL[classPath.size()]);
+        entry = new CacheEntry(new CachedURLClassLoader(urls, parentClassLoader), contentKey);
+        cache.put(key, entry);
+        evictLeastRecentlyUsed();
+      }
+      return entry.classLoader;
     }
-
-    return classLoader;
   }
 
   @VisibleForTesting
@@ -73,10 +128,33 @@ public final class ClassLoaderCache implements AutoCloseable {
       @Nullable ClassLoader parentClassLoader,
       ImmutableList<URL> classPath,
       ClassLoader injectedClassLoader) {
-    Map<ImmutableList<URL>, ClassLoader> cacheForParent =
-        getCacheForParent(parentClassLoader);
+    cache.put(
+        new CacheKey(parentClassLoader, classPath),
+        new CacheEntry(injectedClassLoader, /* contentKey */ null));
+    evictLeastRecentlyUsed();
+  }
+
+  /**
+   * Drops the least recently used class loaders beyond the limit, along with the content hashes
+   * of the jars which no remaining class loader loads from. Dropped class loaders may still be in
+   * use, so they're closed like the ones whose jars changed.
+   */
+  private synchronized void evictLeastRecentlyUsed() {
+    if (cache.size() <= maxClassLoaders) {
+      return;
+    }
+    Iterator<CacheEntry> entries = cache.values().iterator();
+    while (cache.size() > maxClassLoaders) {
+      CacheEntry entry = entries.next();
+      entries.remove();
+      staleClassLoaders.add(entry.classLoader);
+    }
 
-    cacheForParent.put(classPath, injectedClassLoader);
+    Set<URL> usedUrls = new HashSet<>();
+    for (CacheKey key : cache.keySet()) {
+      usedUrls.addAll(key.classPath);
+    }
+    contentHashes.values().removeIf(hash -> !usedUrls.contains(hash.url));
   }
 
   public synchronized ClassLoaderCache addRef() {
@@ -88,23 +166,36 @@ public final class ClassLoaderCache implements AutoCloseable {
   public synchronized void close() throws IOException {
     if (referenceCount > 1) {
       referenceCount -= 1;
+      if (referenceCount == 1) {
+        // Only the owner of the cache is left, so nobody can still be using the class loaders
+        // which were replaced because the contents of their class paths changed, or dropped.
+        List<ClassLoader> toClose = new ArrayList<>(staleClassLoaders);
+        staleClassLoaders.clear();
+        closeAll(toClose);
+      }
       return;
     }
 
+    List<ClassLoader> toClose = new ArrayList<>(staleClassLoaders);
+    for (CacheEntry entry : cache.values()) {
+      toClose.add(entry.classLoader);
+    }
+    closeAll(toClose);
+  }
+
+  private static void closeAll(Iterable<ClassLoader> classLoaders) throws IOException {
     Optional<IOException> caughtEx = Optional.empty();
 
-    for (Map<ImmutableList<URL>, ClassLoader> cacheForParent : cache.values()) {
-      for (ClassLoader cl : cacheForParent.values()) {
-        try {
-          if (cl instanceof CachedURLClassLoader) {
-            ((CachedURLClassLoader) cl).reallyClose();
-          }
-        } catch (IOException ex) {
-          if (caughtEx.isPresent()) {
-            caughtEx.get().addSuppressed(ex);
-          } else {
-            caughtEx = Optional.of(ex);
-          }
+    for (ClassLoader cl : classLoaders) {
+      try {
+        if (cl instanceof CachedURLClassLoader) {
+          ((CachedURLClassLoader) cl).reallyClose();
+        }
+      } catch (IOException ex) {
+        if (caughtEx.isPresent()) {
+          caughtEx.get().addSuppressed(ex);
+        } else {
+          caughtEx = Optional.of(ex);
         }
       }
     }
@@ -114,6 +205,116 @@ public final class ClassLoaderCache implements AutoCloseable {
     }
   }
 
+  /**
+   * @return the content hashes of the jars on {@code classPath}. Directories and anything which
+   *     isn't a local file are assumed not to change.
+   */
+  private ImmutableList<HashCode> getContentKey(ImmutableList<URL> classPath) {
+    ImmutableList.Builder<HashCode> key = ImmutableList.builder();
+    for (URL url : classPath) {
+      key.add(getContentHash(url));
+    }
+    return key.build();
+  }
+
+  private HashCode getContentHash(URL url) {
+    if (!"file".equals(url.getProtocol())) {
+      return HashCode.fromInt(0);
+    }
+
+    Path path;
+    BasicFileAttributes attributes;
+    try {
+      path = Paths.get(url.toURI());
+      attributes = java.nio.file.Files.readAttributes(
+          path,
+          BasicFileAttributes.class,
+          LinkOption.NOFOLLOW_LINKS);
+    } catch (NoSuchFileException e) {
+      return HashCode.fromInt(0);
+    } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+      LOG.debug(e, "Unable to check contents of %s", url);
+      return HashCode.fromInt(0);
+    }
+    if (!attributes.isRegularFile()) {
+      return HashCode.fromInt(0);
+    }
+
+    Optional<HashCode> knownHash = knownContentHashes.apply(path);
+    if (knownHash.isPresent()) {
+      return knownHash.get();
+    }
+
+    // Only rehash jars whose status changed since we last looked at them.
+    FileStatus status;
+    try {
+      status = FileStatus.of(path, attributes, LinkOption.NOFOLLOW_LINKS);
+    } catch (IOException e) {
+      LOG.debug(e, "Unable to check contents of %s", url);
+      return HashCode.fromInt(0);
+    }
+    FileContentHash cached = contentHashes.get(path);
+    if (cached != null && cached.status.equals(status)) {
+      return cached.hash;
+    }
+    try {
+      HashCode hash = Files.asByteSource(path.toFile()).hash(Hashing.sha1());
+      contentHashes.put(path, new FileContentHash(url, status, hash));
+      return hash;
+    } catch (IOException e) {
+      LOG.debug(e, "Unable to hash %s", path);
+      return HashCode.fromInt(0);
+    }
+  }
+
+  private static class CacheKey {
+    @Nullable
+    private final ClassLoader parentClassLoader;
+    private final ImmutableList<URL> classPath;
+
+    private CacheKey(@Nullable ClassLoader parentClassLoader, ImmutableList<URL> classPath) {
+      this.parentClassLoader = parentClassLoader;
+      this.classPath = classPath;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey that = (CacheKey) other;
+      return parentClassLoader == that.parentClassLoader && classPath.equals(that.classPath);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(System.identityHashCode(parentClassLoader), classPath);
+    }
+  }
+
+  private static class CacheEntry {
+    private final ClassLoader classLoader;
+    @Nullable
+    private final ImmutableList<HashCode> contentKey;
+
+    private CacheEntry(ClassLoader classLoader, @Nullable ImmutableList<HashCode> contentKey) {
+      this.classLoader = classLoader;
+      this.contentKey = contentKey;
+    }
+  }
+
+  private static class FileContentHash {
+    private final URL url;
+    private final FileStatus status;
+    private final HashCode hash;
+
+    private FileContentHash(URL url, FileStatus status, HashCode hash) {
+      this.url = url;
+      this.status = status;
+      this.hash = hash;
+    }
+  }
+
   private static class CachedURLClassLoader extends URLClassLoader {
     public CachedURLClassLoader(URL[] urls, @Nullable ClassLoader parent) {
       super(urls, parent);
@@ -66,7 +66,12 @@ abstract class AbstractHashCodeAndFileType {
     return HashCodeAndFileType.builder()
         .setType(Type.ARCHIVE)
         .setGetHashCode(hashCode)
-        .setJarContentHasher(new JarContentHasher(projectFilesystem, archiveRelativePath))
+        .setJarContentHasher(
+            new JarContentHasher(
+                projectFilesystem,
+                archiveRelativePath,
+                hashCode,
+                JarContentHashIndex.getShared()))
         .build();
   }
 
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Maps the content hash of a jar to the hashes of its members, so that a jar's manifest only has
+ * to be read once however many times the jar is rebuilt, fetched from the cache or invalidated in
+ * a {@link ProjectFileHashCache} without actually changing.
+ * <p>
+ * The index is shared by the whole process and bounded by the total number of members it holds.
+ * The daemon saves it when it shuts down and loads it again when it starts.
+ */
+public final class JarContentHashIndex {
+
+  private static final Logger LOG = Logger.get(JarContentHashIndex.class);
+
+  private static final int MAGIC = 0x4a434849;
+  private static final int VERSION = 1;
+  private static final long DEFAULT_MAX_MEMBERS = 500_000;
+
+  private static final JarContentHashIndex SHARED = new JarContentHashIndex(DEFAULT_MAX_MEMBERS);
+
+  private final Cache<HashCode, ImmutableMap<Path, HashCodeAndFileType>> cache;
+
+  @VisibleForTesting
+  JarContentHashIndex(long maxMembers) {
+    this.cache = CacheBuilder.newBuilder()
+        .maximumWeight(maxMembers)
+        .<HashCode, ImmutableMap<Path, HashCodeAndFileType>>weigher(
+            (jarHash, members) -> members.size())
+        .build();
+  }
+
+  public static JarContentHashIndex getShared() {
+    return SHARED;
+  }
+
+  /**
+   * @return the member hashes of the jar with content hash {@code jarHash}, calling
+   *     {@code loader} to compute them if they aren't already known.
+   */
+  ImmutableMap<Path, HashCodeAndFileType> get(
+      HashCode jarHash,
+      Callable<ImmutableMap<Path, HashCodeAndFileType>> loader) throws IOException {
+    try {
+      return cache.get(jarHash, loader);
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new RuntimeException(e.getCause());
+    } catch (UncheckedExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw e;
+    }
+  }
+
+  @VisibleForTesting
+  long size() {
+    return cache.size();
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * Adds the entries saved in {@code file} by {@link #save(Path)}. A missing or unreadable file is
+   * not an error; the entries will just have to be computed again.
+   */
+  public void load(Path file) {
+    try (DataInputStream in =
+             new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        LOG.debug("Ignoring %s as it was written by a different version of buck.", file);
+        return;
+      }
+      int jarCount = in.readInt();
+      for (int jar = 0; jar < jarCount; jar++) {
+        HashCode jarHash = readHashCode(in);
+        int memberCount = in.readInt();
+        ImmutableMap.Builder<Path, HashCodeAndFileType> members = ImmutableMap.builder();
+        for (int member = 0; member < memberCount; member++) {
+          Path memberPath = Paths.get(in.readUTF());
+          members.put(memberPath, HashCodeAndFileType.ofFile(readHashCode(in)));
+        }
+        cache.put(jarHash, members.build());
+      }
+    } catch (NoSuchFileException e) {
+      // Nothing was saved yet.
+    } catch (IOException | RuntimeException e) {
+      LOG.warn(e, "Unable to load jar content hashes from %s.", file);
+    }
+  }
+
+  /**
+   * Writes the entries of the index to {@code file}, replacing it atomically.
+   */
+  public void save(Path file) throws IOException {
+    // Take a copy, as entries may be added or evicted while we write.
+    ImmutableMap<HashCode, ImmutableMap<Path, HashCodeAndFileType>> snapshot =
+        ImmutableMap.copyOf(cache.asMap());
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    Files.createDirectories(file.getParent());
+    try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(snapshot.size());
+      for (Map.Entry<HashCode, ImmutableMap<Path, HashCodeAndFileType>> jar :
+          snapshot.entrySet()) {
+        writeHashCode(out, jar.getKey());
+        out.writeInt(jar.getValue().size());
+        for (Map.Entry<Path, HashCodeAndFileType> member : jar.getValue().entrySet()) {
+          out.writeUTF(member.getKey().toString());
+          writeHashCode(out, member.getValue().getHashCode());
+        }
+      }
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static HashCode readHashCode(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readUnsignedByte()];
+    in.readFully(bytes);
+    return HashCode.fromBytes(bytes);
+  }
+
+  private static void writeHashCode(DataOutputStream out, HashCode hashCode) throws IOException {
+    byte[] bytes = hashCode.asBytes();
+    out.writeByte(bytes.length);
+    out.write(bytes);
+  }
+}
@@ -32,18 +32,34 @@ public class JarContentHasher {
 
   private final ProjectFilesystem filesystem;
   private final Path jarRelativePath;
+  private final HashCode jarHash;
+  private final JarContentHashIndex index;
 
-  public JarContentHasher(ProjectFilesystem filesystem, Path jarRelativePath) {
+  public JarContentHasher(
+      ProjectFilesystem filesystem,
+      Path jarRelativePath,
+      HashCode jarHash,
+      JarContentHashIndex index) {
     Preconditions.checkState(!jarRelativePath.isAbsolute());
     this.filesystem = filesystem;
     this.jarRelativePath = jarRelativePath;
+    this.jarHash = jarHash;
+    this.index = index;
   }
 
   public Path getJarRelativePath() {
     return jarRelativePath;
   }
 
+  /**
+   * @return the hashes of the members of the jar. These only depend on the contents of the jar, so
+   *     are only read from its manifest the first time a jar with these contents is seen.
+   */
   public ImmutableMap<Path, HashCodeAndFileType> getContentHashes() throws IOException {
+    return index.get(jarHash, this::readContentHashes);
+  }
+
+  private ImmutableMap<Path, HashCodeAndFileType> readContentHashes() throws IOException {
     Manifest manifest = filesystem.getJarManifest(jarRelativePath);
     if (manifest == null) {
       throw new UnsupportedOperationException(
@@ -27,6 +27,10 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.SettableFuture;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
@@ -188,4 +192,94 @@ public class MoreFutures {
       throw new RuntimeException(e.getCause());
     }
   }
+
+  /**
+   * @param maxInFlight the number of futures to keep in flight at most.
+   * @param exceptionType a checked exception which the futures and {@code consumer} may fail with.
+   *     It's rethrown as it is, as are {@link IOException}s and unchecked exceptions.
+   * @param consumer what to do with the result of each future, in the order they were added.
+   */
+  public static <T, X extends Exception> InFlightFutures<T, X> inFlight(
+      int maxInFlight,
+      Class<X> exceptionType,
+      ResultConsumer<? super T, X> consumer) {
+    return new InFlightFutures<>(maxInFlight, exceptionType, consumer);
+  }
+
+  /**
+   * Receives the results of the futures added to {@link InFlightFutures}.
+   */
+  public interface ResultConsumer<T, X extends Exception> {
+    void accept(T result) throws IOException, X;
+  }
+
+  /**
+   * Keeps at most a fixed number of futures in flight for the thread which adds them, and hands
+   * their results to a consumer on that thread, in the order they were added. This lets a thread
+   * feed work to an executor without getting further ahead of it than it can hold, and use the
+   * results in a deterministic order.
+   * <p>
+   * Closing it cancels the futures still in flight, which are what's left after a failure.
+   */
+  public static final class InFlightFutures<T, X extends Exception> implements AutoCloseable {
+
+    private final int maxInFlight;
+    private final Class<X> exceptionType;
+    private final ResultConsumer<? super T, X> consumer;
+    private final Deque<ListenableFuture<? extends T>> inFlight = new ArrayDeque<>();
+
+    private InFlightFutures(
+        int maxInFlight,
+        Class<X> exceptionType,
+        ResultConsumer<? super T, X> consumer) {
+      Preconditions.checkArgument(maxInFlight > 0);
+      this.maxInFlight = maxInFlight;
+      this.exceptionType = exceptionType;
+      this.consumer = consumer;
+    }
+
+    /**
+     * Adds {@code future}, first consuming the results of the oldest futures until there's room.
+     */
+    public void add(ListenableFuture<? extends T> future) throws IOException, X {
+      while (inFlight.size() >= maxInFlight) {
+        consumeOldest();
+      }
+      inFlight.addLast(future);
+    }
+
+    /**
+     * Consumes the results of all of the futures still in flight.
+     */
+    public void finish() throws IOException, X {
+      while (!inFlight.isEmpty()) {
+        consumeOldest();
+      }
+    }
+
+    private void consumeOldest() throws IOException, X {
+      T result;
+      try {
+        result = inFlight.getFirst().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for results");
+      } catch (ExecutionException e) {
+        Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+        Throwables.throwIfInstanceOf(e.getCause(), exceptionType);
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new RuntimeException(e.getCause());
+      }
+      inFlight.removeFirst();
+      consumer.accept(result);
+    }
+
+    @Override
+    public void close() {
+      for (ListenableFuture<? extends T> future : inFlight) {
+        future.cancel(true);
+      }
+      inFlight.clear();
+    }
+  }
 }
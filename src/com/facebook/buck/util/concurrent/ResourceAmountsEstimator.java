@@ -25,8 +25,10 @@ public class ResourceAmountsEstimator {
   /**
    * Memory resource unit size has been chosen arbitrarily. We can tune the value if we need.
    */
+  public static final long MEMORY_UNIT_SIZE = 100 * 1024 * 1024;
+
   public static final int DEFAULT_MEMORY_CAP =
-      (int) (Runtime.getRuntime().maxMemory() / (100 * 1024 * 1024));
+      (int) (Runtime.getRuntime().maxMemory() / MEMORY_UNIT_SIZE);
 
   /**
    * Disk IO resource unit size has been chosen arbitrarily. Since most of the jobs are light,
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.zip;
 
+import com.google.common.base.Preconditions;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
@@ -82,6 +83,13 @@ public class CustomJarOutputStream extends CustomZipOutputStream {
 
     @Override
     public void actuallyPutNextEntry(ZipEntry entry) throws IOException {
+      // The digest is of the uncompressed contents, which we never see for precompressed entries.
+      Preconditions.checkState(
+          !shouldHashEntries ||
+              !(entry instanceof CustomZipEntry) ||
+              !((CustomZipEntry) entry).isPrecompressed(),
+          "Cannot hash the contents of precompressed entry %s",
+          entry.getName());
       inner.actuallyPutNextEntry(entry);
 
       currentEntry = entry;
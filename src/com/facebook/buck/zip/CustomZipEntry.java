@@ -30,6 +30,8 @@ public class CustomZipEntry extends ZipEntry {
 
   private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
   private long externalAttributes = 0;
+  private boolean precompressed = false;
+  private boolean predeflated = false;
 
   public CustomZipEntry(ZipEntry other) {
     super(other);
@@ -70,6 +72,8 @@ public class CustomZipEntry extends ZipEntry {
 
     // We need to update the underlying method declared
     setMethod(compressionLevel == NO_COMPRESSION ? STORED : DEFLATED);
+    precompressed = false;
+    predeflated = false;
 
     // Reset the various fields that need to be updated.
     setCrc(0);
@@ -81,6 +85,38 @@ public class CustomZipEntry extends ZipEntry {
     return compressionLevel;
   }
 
+  /**
+   * Marks this entry as holding data that has already been deflated, such as the raw bytes of an
+   * entry in another zip. Bytes written for it are copied to the zip as-is rather than being
+   * compressed again, so the CRC, size and compressed size of the entry must already be set.
+   */
+  public void setPrecompressed() {
+    Preconditions.checkState(getMethod() == DEFLATED, "Only deflated entries can be precompressed");
+    Preconditions.checkState(
+        getCrc() != -1 && getSize() != -1 && getCompressedSize() != -1,
+        "The CRC and sizes of precompressed entries must be known");
+    this.precompressed = true;
+  }
+
+  public boolean isPrecompressed() {
+    return precompressed;
+  }
+
+  /**
+   * Marks this entry as precompressed with data deflated at its own compression level, just as the
+   * zip stream would have deflated it. Unlike the raw bytes of an entry in another zip, it is then
+   * laid out as if the zip stream had deflated it, with a data descriptor, so deflating entries up
+   * front doesn't change the bytes of the zip.
+   */
+  public void setPredeflated() {
+    setPrecompressed();
+    this.predeflated = true;
+  }
+
+  public boolean isPredeflated() {
+    return predeflated;
+  }
+
   public long getExternalAttributes() {
     return externalAttributes;
   }
@@ -53,6 +53,8 @@ class EntryAccounting {
 
   private final ZipEntry entry;
   private final Method method;
+  private final boolean precompressed;
+  private final boolean predeflated;
   private Hasher crc = Hashing.crc32().newHasher();
   private long offset;
   private long length = 0;
@@ -93,6 +95,11 @@ class EntryAccounting {
     if (entry instanceof CustomZipEntry) {
       deflater.setLevel(((CustomZipEntry) entry).getCompressionLevel());
       externalAttributes = ((CustomZipEntry) entry).getExternalAttributes();
+      precompressed = ((CustomZipEntry) entry).isPrecompressed();
+      predeflated = ((CustomZipEntry) entry).isPredeflated();
+    } else {
+      precompressed = false;
+      predeflated = false;
     }
   }
 
@@ -167,7 +174,7 @@ class EntryAccounting {
   }
 
   public long writeLocalFileHeader(OutputStream out) throws IOException {
-    if (method == Method.DEFLATE && entry instanceof CustomZipEntry) {
+    if (method == Method.DEFLATE && entry instanceof CustomZipEntry && isLaidOutAsDeflated()) {
       // See http://www.pkware.com/documents/casestudies/APPNOTE.TXT (section 4.4.4)
       // Essentially, we're about to set bits 1 and 2 to indicate to tools such as zipinfo which
       // level of compression we're using. If we've not set a compression level, then we're using
@@ -213,7 +220,7 @@ class EntryAccounting {
         ByteIo.writeInt(stream, 0);
       } else {
         ByteIo.writeInt(stream, entry.getCrc());
-        ByteIo.writeInt(stream, entry.getSize());
+        ByteIo.writeInt(stream, entry.getCompressedSize());
         ByteIo.writeInt(stream, entry.getSize());
       }
 
@@ -254,6 +261,14 @@ class EntryAccounting {
     if (len == 0) {
       return;
     }
+
+    if (precompressed) {
+      // The data is already deflated and its CRC is already known.
+      out.write(b, off, len);
+      length += len;
+      return;
+    }
+
     updateCrc(b, off, len);
 
     if (method == Method.STORE) {
@@ -274,7 +289,11 @@ class EntryAccounting {
    * Must be called exactly once.
    */
   public long finish(OutputStream out) throws IOException {
-    if (method == Method.STORE) {
+    if (precompressed) {
+      Preconditions.checkState(
+          entry.getCompressedSize() == length,
+          "Number of bytes written differs from what is specified in the entry.");
+    } else if (method == Method.STORE) {
       Preconditions.checkState(
           entry.getSize() == length && entry.getCompressedSize() == length,
           "Number of bytes written differs from what is specified in the entry.");
@@ -302,7 +321,13 @@ class EntryAccounting {
   }
 
   private boolean requiresDataDescriptor() {
-    return method == Method.DEFLATE;
+    return method == Method.DEFLATE && isLaidOutAsDeflated();
+  }
+
+  // Whether the entry is laid out as if we deflated it as it was written, which is the case for
+  // all entries but the raw bytes copied from other zips.
+  private boolean isLaidOutAsDeflated() {
+    return !precompressed || predeflated;
   }
 
   private void updateCrc(byte[] b, int off, int len) {
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.facebook.buck.util.concurrent.MoreFutures;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes entries to a {@link CustomZipOutputStream}, deflating their contents on an executor so
+ * that large zips are compressed using more than one core.
+ * <p>
+ * Entries are written to the zip in the order in which they are added. Each entry's contents are
+ * read on the calling thread, and those small enough to hold in memory are deflated on the
+ * executor exactly as {@link CustomZipOutputStream} would deflate them. Larger ones are streamed
+ * through the zip on the calling thread, so at most {@code parallelism} entries of bounded size are
+ * held in memory at once. Either way the resulting zip is byte-for-byte the same as one written
+ * entry by entry on a single thread.
+ */
+public class ParallelZipEntryWriter implements AutoCloseable {
+
+  private static final int MAX_BUFFERED_ENTRY_SIZE = 1024 * 1024;
+
+  private final CustomZipOutputStream out;
+  private final ListeningExecutorService executor;
+  private final int maxBufferedEntrySize;
+  private final MoreFutures.InFlightFutures<BufferedEntry, IOException> inFlight;
+
+  /**
+   * @param out the zip to write entries to.
+   * @param executor the executor used to deflate entries.
+   * @param parallelism the number of entries to deflate at once.
+   */
+  public ParallelZipEntryWriter(
+      CustomZipOutputStream out,
+      ListeningExecutorService executor,
+      int parallelism) {
+    this(out, executor, parallelism, MAX_BUFFERED_ENTRY_SIZE);
+  }
+
+  @VisibleForTesting
+  ParallelZipEntryWriter(
+      CustomZipOutputStream out,
+      ListeningExecutorService executor,
+      int parallelism,
+      int maxBufferedEntrySize) {
+    Preconditions.checkArgument(maxBufferedEntrySize >= 0);
+    this.out = out;
+    this.executor = executor;
+    this.maxBufferedEntrySize = maxBufferedEntrySize;
+    this.inFlight = MoreFutures.inFlight(parallelism, IOException.class, this::writeEntry);
+  }
+
+  /**
+   * Write {@code entry} to the zip with the contents read from {@code contents}, which is read to
+   * the end but not closed. As with {@link CustomZipOutputStream}, stored entries must have their
+   * CRC and sizes set beforehand. Entries may be written to the zip before this returns.
+   */
+  public void putEntry(CustomZipEntry entry, InputStream contents) throws IOException {
+    byte[] bytes =
+        ByteStreams.toByteArray(ByteStreams.limit(contents, maxBufferedEntrySize + 1L));
+    if (bytes.length <= maxBufferedEntrySize) {
+      if (entry.getMethod() == ZipEntry.DEFLATED) {
+        inFlight.add(executor.submit(() -> deflate(entry, bytes)));
+      } else {
+        inFlight.add(Futures.immediateFuture(new BufferedEntry(entry, bytes)));
+      }
+      return;
+    }
+
+    // Too big to hold in memory, so write the entries before it and stream it through the zip.
+    inFlight.finish();
+    out.putNextEntry(entry);
+    out.write(bytes);
+    ByteStreams.copy(contents, out);
+    out.closeEntry();
+  }
+
+  /**
+   * Write all queued entries to the zip.
+   */
+  public void finish() throws IOException {
+    inFlight.finish();
+  }
+
+  /**
+   * Stop deflating any entries which haven't been written, such as after a failure.
+   */
+  @Override
+  public void close() {
+    inFlight.close();
+  }
+
+  private void writeEntry(BufferedEntry bufferedEntry) throws IOException {
+    out.putNextEntry(bufferedEntry.entry);
+    out.write(bufferedEntry.contents);
+    out.closeEntry();
+  }
+
+  /**
+   * Deflate the contents of the entry just as {@link EntryAccounting} would, and mark it as
+   * predeflated.
+   */
+  private static BufferedEntry deflate(CustomZipEntry entry, byte[] contents) {
+    Deflater deflater = new Deflater(entry.getCompressionLevel(), /* nowrap */ true);
+    try {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8 * 1024];
+      deflater.setInput(contents);
+      deflater.finish();
+      while (!deflater.finished()) {
+        compressed.write(buffer, 0, deflater.deflate(buffer));
+      }
+
+      entry.setCrc(Hashing.crc32().hashBytes(contents).padToLong());
+      entry.setSize(contents.length);
+      entry.setCompressedSize(deflater.getBytesWritten());
+      entry.setPredeflated();
+      return new BufferedEntry(entry, compressed.toByteArray());
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static class BufferedEntry {
+    private final CustomZipEntry entry;
+    private final byte[] contents;
+
+    private BufferedEntry(CustomZipEntry entry, byte[] contents) {
+      this.entry = entry;
+      this.contents = contents;
+    }
+  }
+}
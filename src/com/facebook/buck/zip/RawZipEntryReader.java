@@ -0,0 +1,266 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+
+/**
+ * Gives access to the data of the entries of a zip exactly as it is stored in the file, so that
+ * already compressed entries can be copied into another zip without being inflated and deflated
+ * again.
+ * <p>
+ * Only entries which can be located unambiguously are available: entries with duplicated names,
+ * encrypted entries and anything that needs zip64 extensions are left out, and callers should fall
+ * back to reading those through {@link java.util.zip.ZipFile}.
+ */
+public class RawZipEntryReader implements Closeable {
+
+  private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+  private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+  private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+  private static final int ENCRYPTED_BIT_FLAG = 0x0001;
+
+  private final FileChannel channel;
+  private final ImmutableMap<String, Long> localHeaderOffsets;
+
+  public RawZipEntryReader(Path zipPath) throws IOException {
+    this.channel = FileChannel.open(zipPath, StandardOpenOption.READ);
+    try {
+      this.localHeaderOffsets = readLocalHeaderOffsets(channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return whether the stored data of the entry named {@code name} can be read with
+   *     {@link #copyRawData(ZipEntry, OutputStream)}.
+   */
+  public boolean hasRawData(String name) {
+    return localHeaderOffsets.containsKey(name);
+  }
+
+  /**
+   * Copy the data of {@code entry} to {@code out} as it is stored in the zip, that is, still
+   * compressed if the entry is deflated.
+   *
+   * @param entry an entry of this zip, as read from its central directory.
+   * @param out the stream to copy the data to. It is not closed.
+   */
+  public void copyRawData(ZipEntry entry, OutputStream out) throws IOException {
+    // Deliberately not closed, as that would close the stream we're writing to.
+    copyRawData(entry, Channels.newChannel(out));
+  }
+
+  /**
+   * Copy the data of {@code entry} to {@code target} as it is stored in the zip. When
+   * {@code target} is a file, the operating system may do this without copying the data through
+   * the JVM at all.
+   */
+  public void copyRawData(ZipEntry entry, WritableByteChannel target) throws IOException {
+    long position = getDataOffset(entry);
+    long remaining = entry.getCompressedSize();
+    while (remaining > 0) {
+      long transferred = channel.transferTo(position, remaining, target);
+      check(transferred > 0, "unable to read data of " + entry.getName());
+      position += transferred;
+      remaining -= transferred;
+    }
+  }
+
+  /**
+   * @return a stream of the data of {@code entry} as it is stored in the zip. Reading the stream
+   *     doesn't move the position of the zip's channel, so streams for different entries may be
+   *     read concurrently.
+   */
+  public InputStream openRawStream(ZipEntry entry) throws IOException {
+    final long start = getDataOffset(entry);
+    final long end = start + entry.getCompressedSize();
+    return new InputStream() {
+      private long position = start;
+
+      @Override
+      public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        if (position >= end) {
+          return -1;
+        }
+        int toRead = (int) Math.min(len, end - position);
+        int read = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+        check(read >= 0, "unexpected end of zip");
+        position += read;
+        return read;
+      }
+
+      @Override
+      public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, end - position);
+      }
+    };
+  }
+
+  private long getDataOffset(ZipEntry entry) throws IOException {
+    Long localHeaderOffset = localHeaderOffsets.get(entry.getName());
+    check(localHeaderOffset != null, "no raw data available for " + entry.getName());
+
+    ByteBuffer header = read(channel, localHeaderOffset, ZipEntry.LOCHDR);
+    check(header.getInt(0) == ZipEntry.LOCSIG, "expected local header signature");
+    check(
+        header.getShort(ZipEntry.LOCHOW) == entry.getMethod(),
+        "compression method of local header differs from the central directory");
+
+    long dataOffset = localHeaderOffset +
+        ZipEntry.LOCHDR +
+        unsignedShort(header, ZipEntry.LOCNAM) +
+        unsignedShort(header, ZipEntry.LOCEXT);
+    check(
+        dataOffset + entry.getCompressedSize() <= channel.size(),
+        "entry data extends past the end of the zip");
+    return dataOffset;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private static ImmutableMap<String, Long> readLocalHeaderOffsets(FileChannel channel)
+      throws IOException {
+    long size = channel.size();
+    if (size < ZipEntry.ENDHDR) {
+      return ImmutableMap.of();
+    }
+
+    // Search backwards from the end of the zip for the end of central directory signature. It may
+    // be followed by a comment of up to 64k.
+    int tailLength = (int) Math.min(size, ZipEntry.ENDHDR + MAX_COMMENT_LENGTH);
+    long tailOffset = size - tailLength;
+    ByteBuffer tail = read(channel, tailOffset, tailLength);
+    int eocd = tailLength - ZipEntry.ENDHDR;
+    while (eocd >= 0 && tail.getInt(eocd) != ZipEntry.ENDSIG) {
+      eocd--;
+    }
+    if (eocd < 0) {
+      return ImmutableMap.of();
+    }
+
+    int entryCount = unsignedShort(tail, eocd + ZipEntry.ENDTOT);
+    long cdSize = unsignedInt(tail, eocd + ZipEntry.ENDSIZ);
+    long cdOffset = unsignedInt(tail, eocd + ZipEntry.ENDOFF);
+    if (entryCount == ZIP64_MAGIC_COUNT || cdSize == ZIP64_MAGIC || cdOffset == ZIP64_MAGIC) {
+      return ImmutableMap.of();
+    }
+
+    // Offsets are relative to the start of the zip data, which isn't necessarily the start of the
+    // file (e.g. for self-extracting archives).
+    long cdStart = tailOffset + eocd - cdSize;
+    long base = cdStart - cdOffset;
+    check(cdStart >= 0 && base >= 0, "invalid central directory offset");
+    check(cdSize <= Integer.MAX_VALUE, "central directory too large");
+
+    ByteBuffer cd = read(channel, cdStart, (int) cdSize);
+    Map<String, Long> offsets = new HashMap<>();
+    Set<String> excluded = new HashSet<>();
+    int pos = 0;
+    for (int i = 0; i < entryCount; i++) {
+      check((long) pos + ZipEntry.CENHDR <= cd.limit(), "truncated central directory");
+      check(cd.getInt(pos) == ZipEntry.CENSIG, "expected central directory header signature");
+      int nameLength = unsignedShort(cd, pos + ZipEntry.CENNAM);
+      check(
+          (long) pos + ZipEntry.CENHDR + nameLength <= cd.limit(),
+          "truncated central directory");
+      byte[] nameBytes = new byte[nameLength];
+      ((ByteBuffer) cd.duplicate().position(pos + ZipEntry.CENHDR)).get(nameBytes);
+      String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+      boolean usable =
+          (cd.getShort(pos + ZipEntry.CENFLG) & ENCRYPTED_BIT_FLAG) == 0 &&
+          unsignedInt(cd, pos + ZipEntry.CENSIZ) != ZIP64_MAGIC &&
+          unsignedInt(cd, pos + ZipEntry.CENLEN) != ZIP64_MAGIC &&
+          unsignedInt(cd, pos + ZipEntry.CENOFF) != ZIP64_MAGIC;
+      if (!excluded.contains(name)) {
+        if (offsets.containsKey(name)) {
+          offsets.remove(name);
+          excluded.add(name);
+        } else if (usable) {
+          offsets.put(name, base + unsignedInt(cd, pos + ZipEntry.CENOFF));
+        } else {
+          excluded.add(name);
+        }
+      }
+
+      long next = (long) pos +
+          ZipEntry.CENHDR +
+          nameLength +
+          unsignedShort(cd, pos + ZipEntry.CENEXT) +
+          unsignedShort(cd, pos + ZipEntry.CENCOM);
+      check(next <= cd.limit(), "truncated central directory");
+      pos = (int) next;
+    }
+
+    return ImmutableMap.copyOf(offsets);
+  }
+
+  private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, offset + buffer.position());
+      check(read >= 0, "unexpected end of zip");
+    }
+    buffer.flip();
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return buffer;
+  }
+
+  private static int unsignedShort(ByteBuffer buffer, int index) {
+    return buffer.getShort(index) & 0xFFFF;
+  }
+
+  private static long unsignedInt(ByteBuffer buffer, int index) {
+    return buffer.getInt(index) & ZIP64_MAGIC;
+  }
+
+  private static void check(boolean expression, String msg) throws IOException {
+    if (!expression) {
+      throw new IOException(msg);
+    }
+  }
+}
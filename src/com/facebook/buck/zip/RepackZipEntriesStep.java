@@ -18,6 +18,7 @@ package com.facebook.buck.zip;
 
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.google.common.collect.ImmutableSet;
@@ -26,9 +27,7 @@ import com.google.common.io.ByteStreams;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.zip.ZipEntry;
@@ -95,32 +94,30 @@ public class RepackZipEntriesStep implements Step {
     try (
         ZipInputStream in =
             new ZipInputStream(new BufferedInputStream(Files.newInputStream(inputFile)));
-        CustomZipOutputStream out = ZipOutputStreams.newOutputStream(outputFile)) {
+        CustomZipOutputStream out = ZipOutputStreams.newOutputStream(outputFile);
+        ParallelZipEntryWriter writer =
+            new ParallelZipEntryWriter(
+                out,
+                context.getExecutorService(ExecutorPool.CPU),
+                context.getConcurrencyLimit().threadLimit)) {
       for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
         CustomZipEntry customEntry = new CustomZipEntry(entry);
         if (entries.contains(customEntry.getName())) {
           customEntry.setCompressionLevel(compressionLevel.getValue());
         }
 
-        InputStream toUse;
         // If we're using STORED files, we must pre-calculate the CRC.
         if (customEntry.getMethod() == ZipEntry.STORED) {
-          try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-            ByteStreams.copy(in, bos);
-            byte[] bytes = bos.toByteArray();
-            customEntry.setCrc(Hashing.crc32().hashBytes(bytes).padToLong());
-            customEntry.setSize(bytes.length);
-            customEntry.setCompressedSize(bytes.length);
-            toUse = new ByteArrayInputStream(bytes);
-          }
+          byte[] bytes = ByteStreams.toByteArray(in);
+          customEntry.setCrc(Hashing.crc32().hashBytes(bytes).padToLong());
+          customEntry.setSize(bytes.length);
+          customEntry.setCompressedSize(bytes.length);
+          writer.putEntry(customEntry, new ByteArrayInputStream(bytes));
         } else {
-          toUse = in;
+          writer.putEntry(customEntry, in);
         }
-
-        out.putNextEntry(customEntry);
-        ByteStreams.copy(toUse, out);
-        out.closeEntry();
       }
+      writer.finish();
 
       return StepExecutionResult.SUCCESS;
     } catch (IOException e) {
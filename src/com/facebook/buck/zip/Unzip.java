@@ -21,29 +21,47 @@ import com.facebook.buck.io.MorePosixFilePermissions;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.util.MoreCollectors;
 import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
 
 public class Unzip {
 
@@ -55,22 +73,51 @@ public class Unzip {
     OVERWRITE_AND_CLEAN_DIRECTORIES,
   }
 
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
   private static void writeZipContents(
       ZipFile zip,
+      RawZipEntryReader rawReader,
       ZipArchiveEntry entry,
       ProjectFilesystem filesystem,
       Path target) throws IOException {
     // Write file
-    try (InputStream is = zip.getInputStream(entry)) {
-      if (entry.isUnixSymlink()) {
+    if (entry.isUnixSymlink()) {
+      try (InputStream is = zip.getInputStream(entry)) {
         filesystem.createSymLink(
             target,
             filesystem.getPath(new String(ByteStreams.toByteArray(is), Charsets.UTF_8)),
                   /* force */ true);
-      } else {
-        try (OutputStream out = filesystem.newFileOutputStream(target)) {
-          ByteStreams.copy(is, out);
-        }
+      }
+    } else if (rawReader.hasRawData(entry.getName()) && entry.getMethod() == ZipEntry.STORED) {
+      // Stored entries can go straight from one file to the other.
+      try (FileChannel out = FileChannel.open(
+          filesystem.resolve(target),
+          StandardOpenOption.WRITE,
+          StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        rawReader.copyRawData(entry, out);
+      }
+    } else if (rawReader.hasRawData(entry.getName()) && entry.getMethod() == ZipEntry.DEFLATED) {
+      // Unlike the streams of commons-compress' ZipFile, which all share one RandomAccessFile, the
+      // raw streams can be read concurrently.
+      Inflater inflater = new Inflater(/* nowrap */ true);
+      try (InputStream is = new InflaterInputStream(
+               // The inflater may ask for a byte beyond the compressed data.
+               new SequenceInputStream(
+                   rawReader.openRawStream(entry),
+                   new ByteArrayInputStream(new byte[1])),
+               inflater,
+               COPY_BUFFER_SIZE);
+           OutputStream out = filesystem.newFileOutputStream(target)) {
+        ByteStreams.copy(is, out);
+      } finally {
+        inflater.end();
+      }
+    } else {
+      try (InputStream is = zip.getInputStream(entry);
+           OutputStream out = filesystem.newFileOutputStream(target)) {
+        ByteStreams.copy(is, out);
       }
     }
 
@@ -181,6 +228,27 @@ public class Unzip {
       ProjectFilesystem filesystem,
       Path relativePath,
       ExistingFileMode existingFileMode) throws IOException {
+    return extractZipFile(
+        zipFile,
+        filesystem,
+        relativePath,
+        existingFileMode,
+        MoreExecutors.newDirectExecutorService(),
+        /* parallelism */ 1);
+  }
+
+  /**
+   * Unzips a file to a destination and returns the paths of the written files. Directories are
+   * created up front, after which the contents of up to {@code parallelism} files are written at
+   * once using {@code executor}.
+   */
+  public static ImmutableList<Path> extractZipFile(
+      Path zipFile,
+      ProjectFilesystem filesystem,
+      Path relativePath,
+      ExistingFileMode existingFileMode,
+      ListeningExecutorService executor,
+      int parallelism) throws IOException {
 
     // We want to remove stale contents of directories listed in zipFile, but avoid deleting and
     // re-creating any directories that already exist. We *also* want to avoid a full recursive
@@ -188,7 +256,8 @@ public class Unzip {
     // contents of zipFile and then scan the existing filesystem to remove stale artifacts.
 
     ImmutableList.Builder<Path> filesWritten = ImmutableList.builder();
-    try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+    try (ZipFile zip = new ZipFile(zipFile.toFile());
+         RawZipEntryReader rawReader = new RawZipEntryReader(zipFile)) {
       // Get the list of paths in zipFile.  Keep them sorted by path, so dirs come before contents.
       SortedMap<Path, ZipArchiveEntry> pathMap = new TreeMap<>();
       for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
@@ -202,6 +271,7 @@ public class Unzip {
           fillIntermediatePaths(p.getKey(), pathMap);
         }
       }
+      List<Map.Entry<Path, ZipArchiveEntry>> filesToWrite = new ArrayList<>();
       for (SortedMap.Entry<Path, ZipArchiveEntry> p : pathMap.entrySet()) {
         Path target = p.getKey();
         ZipArchiveEntry entry = p.getValue();
@@ -230,13 +300,73 @@ public class Unzip {
             filesystem.createParentDirs(target);
           }
           filesWritten.add(target);
-          writeZipContents(zip, entry, filesystem, target);
+          filesToWrite.add(p);
         }
       }
+      // Now that the directory structure is in place, the files can be written in any order.
+      writeFiles(zip, rawReader, filesToWrite, filesystem, executor, parallelism);
     }
     return filesWritten.build();
   }
 
+  private static void writeFiles(
+      ZipFile zip,
+      RawZipEntryReader rawReader,
+      List<Map.Entry<Path, ZipArchiveEntry>> files,
+      ProjectFilesystem filesystem,
+      ListeningExecutorService executor,
+      int parallelism) throws IOException {
+    AtomicInteger nextFile = new AtomicInteger();
+    AtomicBoolean failed = new AtomicBoolean();
+    List<ListenableFuture<Void>> workers = new ArrayList<>();
+    for (int i = 0; i < Math.min(parallelism, files.size()); i++) {
+      workers.add(executor.submit(() -> {
+        for (int index = nextFile.getAndIncrement();
+             index < files.size() && !failed.get();
+             index = nextFile.getAndIncrement()) {
+          Map.Entry<Path, ZipArchiveEntry> file = files.get(index);
+          try {
+            writeZipContents(zip, rawReader, file.getValue(), filesystem, file.getKey());
+          } catch (IOException | RuntimeException e) {
+            failed.set(true);
+            throw e;
+          }
+        }
+        return null;
+      }));
+    }
+
+    // Wait for every worker, even after a failure, so that none is left using the zip once it's
+    // closed.
+    Throwable failure = null;
+    boolean interrupted = false;
+    for (ListenableFuture<Void> worker : workers) {
+      while (true) {
+        try {
+          worker.get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+          failed.set(true);
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause();
+          }
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while unzipping");
+    }
+    if (failure != null) {
+      Throwables.throwIfInstanceOf(failure, IOException.class);
+      Throwables.throwIfUnchecked(failure);
+      throw new RuntimeException(failure);
+    }
+  }
+
   public static ImmutableList<Path> extractZipFile(
       Path zipFile,
       ProjectFilesystem filesystem,
@@ -252,13 +382,29 @@ public class Unzip {
       Path zipFile,
       final Path destination,
       ExistingFileMode existingFileMode) throws IOException {
+    return extractZipFile(
+        zipFile,
+        destination,
+        existingFileMode,
+        MoreExecutors.newDirectExecutorService(),
+        /* parallelism */ 1);
+  }
+
+  public static ImmutableList<Path> extractZipFile(
+      Path zipFile,
+      final Path destination,
+      ExistingFileMode existingFileMode,
+      ListeningExecutorService executor,
+      int parallelism) throws IOException {
     // Create output directory if it does not exist
     Files.createDirectories(destination);
     return extractZipFile(
         zipFile,
         new ProjectFilesystem(destination),
         destination.getFileSystem().getPath(""),
-        existingFileMode).stream()
+        existingFileMode,
+        executor,
+        parallelism).stream()
         .map(input -> destination.resolve(input).toAbsolutePath())
         .collect(MoreCollectors.toImmutableList());
   }
@@ -20,6 +20,7 @@ import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 
@@ -47,7 +48,12 @@ public class UnzipStep implements Step {
     Path out = filesystem.getPathForRelativeExistingPath(destinationDirectory).toAbsolutePath();
 
     try {
-      Unzip.extractZipFile(zip, out, Unzip.ExistingFileMode.OVERWRITE);
+      Unzip.extractZipFile(
+          zip,
+          out,
+          Unzip.ExistingFileMode.OVERWRITE,
+          context.getExecutorService(ExecutorPool.CPU),
+          context.getConcurrencyLimit().threadLimit);
     } catch (IOException e) {
       LOG.warn(e, "Unable to unpack zip: %s", zipFile);
       return StepExecutionResult.ERROR;
@@ -24,12 +24,12 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.Pair;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.ExecutorPool;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteSource;
-import com.google.common.io.ByteStreams;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
@@ -175,20 +175,26 @@ public class ZipStep implements Step {
       BufferedOutputStream baseOut =
           new BufferedOutputStream(filesystem.newFileOutputStream(pathToZipFile));
       CustomZipOutputStream out =
-          ZipOutputStreams.newOutputStream(baseOut, THROW_EXCEPTION)) {
+          ZipOutputStreams.newOutputStream(baseOut, THROW_EXCEPTION);
+      ParallelZipEntryWriter writer =
+          new ParallelZipEntryWriter(
+              out,
+              context.getExecutorService(ExecutorPool.CPU),
+              context.getConcurrencyLimit().threadLimit)) {
 
       filesystem.walkRelativeFileTree(baseDir, pathFileVisitor);
 
-      // Write the entries out using the iteration order of the tree map above.
+      // Write the entries out using the iteration order of the tree map above, compressing them
+      // in parallel.
       for (Pair<CustomZipEntry, Optional<Path>> entry : entries.values()) {
-        out.putNextEntry(entry.getFirst());
-        if (entry.getSecond().isPresent()) {
-          try (InputStream input = filesystem.newFileInputStream(entry.getSecond().get())) {
-            ByteStreams.copy(input, out);
-          }
+        try (InputStream input =
+                 entry.getSecond().isPresent() ?
+                     filesystem.newFileInputStream(entry.getSecond().get()) :
+                     ByteSource.empty().openStream()) {
+          writer.putEntry(entry.getFirst(), input);
         }
-        out.closeEntry();
       }
+      writer.finish();
 
     } catch (IOException e) {
       context.logError(e, "Error creating zip file %s", pathToZipFile);
@@ -41,7 +41,9 @@ import com.facebook.buck.zip.ZipScrubberStep;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
 import com.google.common.hash.Hashing;
 
 import org.junit.Before;
@@ -198,7 +200,47 @@ public class ExopackageInstallerIntegrationTest {
     setDefaultFullBuildState();
 
     checkExoInstall(1, 2, 2, 3);
+    device.resetCommandCounts();
     checkExoInstall(0, 0, 0, 0);
+    // The install manifest says that everything is there already.
+    assertEquals(0, device.listDirCount);
+    assertEquals(0, device.pushCount);
+  }
+
+  @Test
+  public void testExoFilesArePushedAtOnce() throws Exception {
+    device.abi = SdkConstants.ABI_ARMEABI_V7A;
+    setDefaultFullBuildState();
+
+    device.resetCommandCounts();
+    checkExoInstall(1, 2, 2, 3);
+    assertEquals(1, device.pushCount);
+  }
+
+  @Test
+  public void testExoReinstallWithoutInstallManifest() throws Exception {
+    device.abi = SdkConstants.ABI_ARMEABI_V7A;
+    setDefaultFullBuildState();
+
+    checkExoInstall(1, 2, 2, 3);
+
+    device.deviceState.remove(ExopackageInstaller.INSTALL_MANIFEST.toString());
+    device.deviceState.put("secondary-dex/exopackage_temp-secondary-abcdef.dex.jar-1.tmp", "");
+    currentBuildState = new ExoState(
+        currentBuildState.apkContent,
+        currentBuildState.manifestContent,
+        ImmutableList.of(
+            "secondary-dex0\n",
+            "new-secondary-dex1\n"
+        ),
+        currentBuildState.nativeLibsContents,
+        currentBuildState.resourcesContents);
+
+    device.resetCommandCounts();
+    checkExoInstall(0, 1, 0, 0);
+    // Without the manifest, what is installed already is found by listing the directories.
+    assertEquals(3, device.listDirCount);
+    assertEquals(1, device.pushCount);
   }
 
   private void setDefaultFullBuildState() {
@@ -467,6 +509,10 @@ public class ExopackageInstallerIntegrationTest {
     private Optional<ExopackageInstaller.PackageInfo> fakePackageInfo;
     private String packageSignature;
 
+    // Number of commands of interest run.
+    private int listDirCount;
+    private int pushCount;
+
     // Per install state.
     private int allowedInstalledApks;
     private int allowedInstalledDexes;
@@ -564,10 +610,14 @@ public class ExopackageInstallerIntegrationTest {
       }
       String output = Joiner.on("\n").join(res) + "\n";
       debug("ls " + dirPath + "\n" + output);
+      listDirCount++;
       return output;
     }
 
     private String getInstallRootRelative(String dirPath) {
+      if ((dirPath + "/").equals(installRoot)) {
+        return "";
+      }
       assertTrue(dirPath.startsWith(installRoot));
       return dirPath.substring(installRoot.length());
     }
@@ -575,9 +625,9 @@ public class ExopackageInstallerIntegrationTest {
     @Override
     public void rmFiles(String dirPath, Iterable<String> filesToDelete) throws Exception {
       debug("rmfiles dir=" + dirPath + " files=" + ImmutableList.copyOf(filesToDelete));
-      dirPath = getInstallRootRelative(dirPath);
+      Path dir = Paths.get(getInstallRootRelative(dirPath));
       for (String s : filesToDelete) {
-        deviceState.remove(dirPath + "/" + s);
+        deviceState.remove(dir.resolve(s).toString());
       }
     }
 
@@ -606,8 +656,29 @@ public class ExopackageInstallerIntegrationTest {
               installRoot,
               targetDevicePath),
           targetDevicePath.toString().startsWith(installRoot.toString()));
+      pushCount++;
+      recordInstall(
+          Paths.get(getInstallRootRelative(targetDevicePath.toString())),
+          source);
+    }
+
+    @Override
+    public void installFiles(
+        String agentCommand,
+        int port,
+        Path targetDeviceDir,
+        ImmutableMap<Path, Path> sources) throws Exception {
+      assertEquals(installRoot, targetDeviceDir + "/");
+      pushCount++;
+      for (Map.Entry<Path, Path> entry : sources.entrySet()) {
+        assertFalse(entry.getKey().isAbsolute());
+        assertTrue(entry.getValue().isAbsolute());
+        recordInstall(entry.getKey(), entry.getValue());
+      }
+    }
+
+    private void recordInstall(Path targetDevicePath, Path source) {
       debug("installing " + targetDevicePath);
-      targetDevicePath = Paths.get(getInstallRootRelative(targetDevicePath.toString()));
       deviceState.put(targetDevicePath.toString(), filesystem.readFileIfItExists(source).get());
 
       if (targetDevicePath.startsWith(ExopackageInstaller.SECONDARY_DEX_DIR)) {
@@ -625,11 +696,16 @@ public class ExopackageInstallerIntegrationTest {
           allowedInstalledResources--;
           assertTrue(allowedInstalledResources >= 0);
         }
-      } else {
+      } else if (!targetDevicePath.equals(ExopackageInstaller.INSTALL_MANIFEST)) {
         fail("Unrecognized target path (" + targetDevicePath + ")");
       }
     }
 
+    @Override
+    public String readFile(String path) throws Exception {
+      return deviceState.getOrDefault(getInstallRootRelative(path), "");
+    }
+
     @Override
     public void mkDirP(String mkdirCommand, String dirpath) throws Exception {
       // TODO(cjhopman): verify that directories are made before being written to.
@@ -650,6 +726,11 @@ public class ExopackageInstallerIntegrationTest {
       throw new UnsupportedOperationException("Tried to get prop " + name);
     }
 
+    public void resetCommandCounts() {
+      listDirCount = 0;
+      pushCount = 0;
+    }
+
     public void setAllowedInstallCounts(
         int expectedApksInstalled,
         int expectedDexesInstalled,
@@ -834,7 +915,15 @@ public class ExopackageInstallerIntegrationTest {
       throw new RuntimeException(e);
     }
 
-    assertEquals(expectedState, device.deviceState);
+    assertEquals(
+        expectedState,
+        Maps.filterKeys(
+            device.deviceState,
+            path -> !path.equals(ExopackageInstaller.INSTALL_MANIFEST.toString())));
+    assertTrue(
+        "install manifest should be left on the device",
+        ExopackageInstaller.parseInstallManifest(
+            device.deviceState.get(ExopackageInstaller.INSTALL_MANIFEST.toString())).isPresent());
     assertEquals(
         "apk should be installed but wasn't", 0, device.allowedInstalledApks);
     assertEquals(
@@ -24,6 +24,7 @@ import static org.junit.Assert.assertTrue;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 
@@ -150,6 +151,34 @@ public class ExopackageInstallerTest {
     assertFalse(optionalInfo.isPresent());
   }
 
+  @Test
+  public void testInstallManifestRoundTrip() {
+    ImmutableMap<Path, String> files = ImmutableMap.of(
+        Paths.get("secondary-dex/secondary-0fa1f9cfb3c0effa8000d2d86d267985b158df9f.dex.jar"),
+        "0fa1f9cfb3c0effa8000d2d86d267985b158df9f",
+        Paths.get("secondary-dex/metadata.txt"),
+        "2add18058985241f7999eb026868cebb9ef63379");
+
+    String manifest = ExopackageInstaller.formatInstallManifest(files);
+
+    assertEquals(Optional.of(files), ExopackageInstaller.parseInstallManifest(manifest));
+    // adb may turn line endings into \r\n.
+    assertEquals(
+        Optional.of(files),
+        ExopackageInstaller.parseInstallManifest(manifest.replace("\n", "\r\n")));
+  }
+
+  @Test
+  public void testMissingOrCorruptInstallManifestIsIgnored() {
+    assertFalse(ExopackageInstaller.parseInstallManifest("").isPresent());
+    assertFalse(
+        ExopackageInstaller.parseInstallManifest("secondary-dex/metadata.txt abcdef\n")
+            .isPresent());
+    String manifest = ExopackageInstaller.formatInstallManifest(
+        ImmutableMap.of(Paths.get("resources/metadata.txt"), "abcdef"));
+    assertFalse(ExopackageInstaller.parseInstallManifest(manifest + "garbage\n").isPresent());
+  }
+
   @Test
   public void testChunkArgs() {
     assertEquals(
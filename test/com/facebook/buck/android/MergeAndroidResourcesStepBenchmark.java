@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.android.aapt.RDotTxtEntry;
+import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.SortedSetMultimap;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures merging the symbols files of many resource libraries and writing their R.java files,
+ * as done by {@link DummyRDotJava}. Each library has resources of its own and also sees the
+ * resources of the libraries it depends on, as aapt reports them.
+ */
+public class MergeAndroidResourcesStepBenchmark {
+  @Param({"1500"})
+  private int libraryCount = 1500;
+
+  @Param({"50"})
+  private int resourcesPerLibrary = 50;
+
+  @Param({"10"})
+  private int depsPerLibrary = 10;
+
+  @Param({"1", "8"})
+  private int threads = 8;
+
+  private TemporaryPaths tmp = new TemporaryPaths();
+  private ProjectFilesystem filesystem;
+  private ImmutableMap<Path, String> symbolsFileToPackage;
+  private ListeningExecutorService executorService;
+  private MergeAndroidResourcesStep step;
+
+  @Before
+  public void setUpTest() throws Exception {
+    libraryCount = 20;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    tmp.before();
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    ImmutableMap.Builder<Path, String> builder = ImmutableMap.builder();
+    for (int library = 0; library < libraryCount; library++) {
+      List<String> lines = new ArrayList<>();
+      for (int dep = Math.max(0, library - depsPerLibrary); dep <= library; dep++) {
+        for (int i = 0; i < resourcesPerLibrary; i++) {
+          lines.add(String.format("int string lib%d_string%d 0x7f%06x", dep, i, i));
+        }
+      }
+      Path symbolsFile = Paths.get("lib" + library, "R.txt");
+      filesystem.mkdirs(symbolsFile.getParent());
+      filesystem.writeLinesToPath(lines, symbolsFile);
+      builder.put(symbolsFile, getPackage(library));
+    }
+    symbolsFileToPackage = builder.build();
+    executorService = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threads));
+    step = MergeAndroidResourcesStep.createStepForDummyRDotJava(
+        filesystem,
+        /* pathResolver */ null,
+        ImmutableList.of(),
+        Paths.get("output"),
+        /* forceFinalResourceIds */ false,
+        /* unionPackage */ Optional.empty(),
+        /* rName */ Optional.empty(),
+        /* useOldStyleableFormat */ false);
+  }
+
+  @After
+  @AfterExperiment
+  public void tearDown() {
+    executorService.shutdownNow();
+    tmp.after();
+  }
+
+  @Test
+  public void mergeResourcesCorrectness() throws Exception {
+    mergeResources();
+    String lastRDotJava = filesystem.readFileIfItExists(
+        Paths.get("output", getPackage(libraryCount - 1).replace('.', '/'), "R.java")).get();
+    assertThat(
+        lastRDotJava,
+        containsString(String.format("public static int lib%d_string0=", libraryCount - 1)));
+  }
+
+  @Benchmark
+  public void mergeResources(int reps) throws Exception {
+    for (int i = 0; i < reps; i++) {
+      mergeResources();
+    }
+  }
+
+  private void mergeResources() throws Exception {
+    SortedSetMultimap<String, RDotTxtEntry> packageToResources =
+        MergeAndroidResourcesStep.sortSymbols(
+            symbolsFileToPackage,
+            Optional.empty(),
+            ImmutableMap.of(),
+            EnumSet.noneOf(RType.class),
+            filesystem,
+            /* useOldStyleableFormat */ false,
+            executorService,
+            threads);
+    step.writePerPackageRDotJava(packageToResources, filesystem, executorService, threads);
+  }
+
+  private static String getPackage(int library) {
+    return "com.example.lib" + library;
+  }
+}
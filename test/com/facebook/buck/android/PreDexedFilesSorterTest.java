@@ -30,6 +30,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
 
 import org.hamcrest.Matchers;
 import org.junit.Before;
@@ -40,6 +41,8 @@ import org.junit.rules.TemporaryFolder;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 public class PreDexedFilesSorterTest {
@@ -192,6 +195,59 @@ public class PreDexedFilesSorterTest {
     }
   }
 
+  @Test
+  public void testGrowingOneLibraryOnlyChangesNearbySecondaryDexes() throws IOException {
+    int numberOfLibraries = 400;
+    int libraryWeight = (int) DEX_WEIGHT_LIMIT / 40;
+    List<DexWithClasses> libraries = new ArrayList<>();
+    for (int i = 0; i < numberOfLibraries; i++) {
+      libraries.add(
+          createFakeDexWithClasses(
+              Paths.get("secondary").resolve(String.format("secondary%03d.dex", i)),
+              ImmutableSet.of(String.format("secondary.secondary%d.class", i)),
+              libraryWeight));
+    }
+    Multimap<Path, Path> before = sortSecondaryDexes(libraries);
+
+    libraries.set(
+        50,
+        createFakeDexWithClasses(
+            Paths.get("secondary").resolve("secondary050.dex"),
+            ImmutableSet.of("secondary.secondary50.class"),
+            libraryWeight * 3));
+    Multimap<Path, Path> after = sortSecondaryDexes(libraries);
+
+    int unchanged = 0;
+    for (Path secondaryDex : before.keySet()) {
+      if (ImmutableSet.copyOf(before.get(secondaryDex))
+          .equals(ImmutableSet.copyOf(after.get(secondaryDex)))) {
+        unchanged++;
+      }
+    }
+    assertThat(before.keySet().size(), Matchers.greaterThan(10));
+    assertThat(before.keySet().size() - unchanged, Matchers.lessThanOrEqualTo(3));
+  }
+
+  private Multimap<Path, Path> sortSecondaryDexes(List<DexWithClasses> libraries)
+      throws IOException {
+    PreDexedFilesSorter sorter = new PreDexedFilesSorter(
+        Optional.empty(),
+        ImmutableMultimap.<APKModule, DexWithClasses>builder()
+            .putAll(moduleGraph.getRootAPKModule(), libraries)
+            .build(),
+        ImmutableSet.of(PRIMARY_DEX_PATTERN),
+        moduleGraph,
+        tempDir.getRoot().toPath().resolve("scratch"),
+        DEX_WEIGHT_LIMIT,
+        DexStore.JAR,
+        tempDir.getRoot().toPath().resolve("secondary"),
+        tempDir.getRoot().toPath().resolve("additional"));
+    return sorter
+        .sortIntoPrimaryAndSecondaryDexes(new FakeProjectFilesystem(), ImmutableList.builder())
+        .get(APKModuleGraph.ROOT_APKMODULE_NAME)
+        .secondaryOutputToInputs;
+  }
+
   private ImmutableMap<String, PreDexedFilesSorter.Result> generatePreDexSorterResults(
       int numberOfPrimaryDexes,
       int numberOfSecondaryDexes, int numberOfExtraDexes) throws IOException {
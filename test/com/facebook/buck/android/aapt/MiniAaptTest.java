@@ -25,6 +25,7 @@ import static org.junit.Assert.fail;
 import com.facebook.buck.android.aapt.MiniAapt.ResourceParseException;
 import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
 import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.counters.IntegerCounter;
 import com.facebook.buck.event.DefaultBuckEventBus;
 import com.facebook.buck.model.BuildId;
 import com.facebook.buck.rules.BuildRuleResolver;
@@ -38,6 +39,7 @@ import com.facebook.buck.timing.FakeClock;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
+import org.hamcrest.Matchers;
 import org.hamcrest.core.IsEqual;
 import org.hamcrest.junit.ExpectedException;
 import org.junit.Rule;
@@ -46,7 +48,9 @@ import org.junit.Test;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import javax.xml.xpath.XPathExpressionException;
 
@@ -105,6 +109,58 @@ public class MiniAaptTest {
             new FakeRDotTxtEntry(IdType.INT, RType.ID, "button2")));
   }
 
+  @Test
+  public void testIdsOfAnElementAreDefinedInAttributeNameOrder()
+      throws IOException, ResourceParseException {
+    filesystem.writeLinesToPath(
+        ImmutableList.of(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+            "<RelativeLayout>",
+            "<Button android:layout_below=\"@+id/below\" android:id=\"@+id/button\" />",
+            "</RelativeLayout>"),
+        Paths.get("resource.xml"));
+
+    MiniAapt aapt = new MiniAapt(
+        resolver,
+        filesystem,
+        new FakeSourcePath(filesystem, "res"),
+        Paths.get("R.txt"),
+        ImmutableSet.of());
+    aapt.processXmlFile(filesystem, Paths.get("resource.xml"), ImmutableSet.builder());
+
+    Map<String, String> idValues = aapt.getResourceCollector().getResources().stream()
+        .collect(Collectors.toMap(entry -> entry.name, entry -> entry.idValue));
+    assertThat(idValues.get("button"), Matchers.lessThan(idValues.get("below")));
+  }
+
+  @Test
+  public void testUnchangedXmlFilesAreNotParsedAgain()
+      throws IOException, ResourceParseException {
+    ImmutableList<String> contents = ImmutableList.of(
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+        "<LinearLayout>",
+        "<Button android:id=\"@+id/unchanged_" + System.nanoTime() + "\" />",
+        "</LinearLayout>");
+    filesystem.writeLinesToPath(contents, Paths.get("first.xml"));
+    filesystem.writeLinesToPath(contents, Paths.get("second.xml"));
+    IntegerCounter reused = (IntegerCounter) MiniAapt.getCounters().stream()
+        .filter(counter -> counter.getName().equals("xml_files_reused"))
+        .findFirst()
+        .get();
+
+    MiniAapt aapt = new MiniAapt(
+        resolver,
+        filesystem,
+        new FakeSourcePath(filesystem, "res"),
+        Paths.get("R.txt"),
+        ImmutableSet.of());
+    aapt.processXmlFile(filesystem, Paths.get("first.xml"), ImmutableSet.builder());
+    long reusedBefore = reused.get();
+    aapt.processXmlFile(filesystem, Paths.get("second.xml"), ImmutableSet.builder());
+
+    assertEquals(reusedBefore + 1, reused.get());
+    assertEquals(1, aapt.getResourceCollector().getResources().size());
+  }
 
   @Test
   public void testParsingFilesUnderValuesDirectory() throws IOException, ResourceParseException {
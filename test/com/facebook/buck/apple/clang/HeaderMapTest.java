@@ -211,6 +211,24 @@ public class HeaderMapTest {
     assertArrayEquals(bytes, hmap1.getBytes());
   }
 
+  @Test
+  public void testPresizedBuilderMatchesGrownBuilder() {
+    int n = 1001;
+
+    HeaderMap.Builder grownBuilder = HeaderMap.builder();
+    HeaderMap.Builder presizedBuilder = HeaderMap.builder(n);
+    for (int i = 0; i < n; i++) {
+      assertTrue(grownBuilder.add("Foo/" + i + ".h", "value of foo/", i + ".h"));
+      assertTrue(presizedBuilder.add("Foo/" + i + ".h", "value of foo/", i + ".h"));
+    }
+    assertFalse(presizedBuilder.add("FOO/1.h", "", "another value for foo1??"));
+    HeaderMap hmap = presizedBuilder.build();
+
+    assertEquals(2048, hmap.getNumBuckets());
+    assertEquals("value of foo/1000.h", hmap.lookup("foo/1000.H"));
+    assertThatHeaderMapsAreEqual(grownBuilder.build(), hmap);
+  }
+
   private void assertThatSplitPathWorksOnPath(Path path) {
     String[] result = HeaderMap.Builder.splitPath(path);
     assertNotNull(result);
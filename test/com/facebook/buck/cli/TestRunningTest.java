@@ -19,6 +19,7 @@ package com.facebook.buck.cli;
 import static com.facebook.buck.rules.BuildRuleSuccessType.BUILT_LOCALLY;
 import static com.facebook.buck.rules.BuildRuleSuccessType.FETCHED_FROM_CACHE;
 import static com.facebook.buck.rules.BuildRuleSuccessType.MATCHING_RULE_KEY;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.createNiceMock;
 import static org.easymock.EasyMock.expect;
@@ -31,13 +32,18 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.jvm.java.DefaultJavaPackageFinder;
+import com.facebook.buck.jvm.java.JUnitStep;
 import com.facebook.buck.jvm.java.JavaLibrary;
 import com.facebook.buck.jvm.java.JavaLibraryBuilder;
 import com.facebook.buck.jvm.java.JavaLibraryDescription;
+import com.facebook.buck.jvm.java.JavaTest;
+import com.facebook.buck.jvm.java.JavaTestBuilder;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.rules.BuildResult;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.CachingBuildEngine;
@@ -57,6 +63,7 @@ import com.facebook.buck.shell.GenruleDescription;
 import com.facebook.buck.step.DefaultStepRunner;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.ExecutionOrderAwareFakeStep;
+import com.facebook.buck.step.Step;
 import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.test.FakeTestResults;
 import com.facebook.buck.test.TestCaseSummary;
@@ -65,6 +72,7 @@ import com.facebook.buck.test.TestResults;
 import com.facebook.buck.test.TestRunningOptions;
 import com.facebook.buck.test.result.type.ResultType;
 import com.facebook.buck.testutil.TargetGraphFactory;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -76,6 +84,7 @@ import com.google.common.util.concurrent.MoreExecutors;
 
 import org.hamcrest.Matchers;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -85,6 +94,7 @@ import org.w3c.dom.NodeList;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
@@ -92,6 +102,9 @@ import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -104,6 +117,9 @@ public class TestRunningTest {
   private static final TestRunningOptions DEFAULT_OPTIONS = TestRunningOptions.builder().build();
   private static final Logger LOG = Logger.get(TestRunningTest.class);
 
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
   @BeforeClass
   public static void setUp() {
     pathsFromRoot = ImmutableSortedSet.of("java/");
@@ -721,6 +737,85 @@ public class TestRunningTest {
     verify(cachingBuildEngine, testRuleKeyFileHelper);
   }
 
+  @Test
+  public void javaTestRunIsAvoidedOnlyWhileItsLoadedClassesAndConfigurationAreUnchanged()
+      throws Exception {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(resolver));
+    BuildTarget target = BuildTargetFactory.newInstance("//:test");
+    JavaTest test = JavaTestBuilder.createBuilder(target)
+        .addSrc(Paths.get("FooTest.java"))
+        .build(resolver, filesystem);
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    TestRunningOptions options = TestRunningOptions.builder()
+        .setSelectingTestsByLoadedClasses(true)
+        .build();
+
+    // What the build of the rule and a previous run of its tests would have left behind.
+    Path testJar = pathResolver.getAbsolutePath(test.getSourcePathToOutput());
+    Files.createDirectories(testJar.getParent());
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(testJar))) {
+      zip.putNextEntry(new ZipEntry("com/example/FooTest.class"));
+      zip.closeEntry();
+    }
+    Path libClass = tmp.getRoot().resolve("lib/com/example/Lib.class");
+    Files.createDirectories(libClass.getParent());
+    Files.write(libClass, "lib".getBytes(UTF_8));
+    Path classPathFile = BuildTargets.getGenPath(filesystem, target, "%s/classpath-file");
+    filesystem.mkdirs(classPathFile.getParent());
+    filesystem.writeContentsToPath(tmp.getRoot().resolve("lib").toString(), classPathFile);
+    for (Step step : test.runTests(
+        executionContext,
+        options,
+        pathResolver,
+        TestRule.NOOP_REPORTING_CALLBACK)) {
+      if (!(step instanceof JUnitStep)) {
+        step.execute(executionContext);
+      }
+    }
+    Path outputDirectory = filesystem.resolve(test.getPathToTestOutputDirectory());
+    Files.write(outputDirectory.resolve("com.example.FooTest.xml"), new byte[0]);
+    CRC32 crc = new CRC32();
+    crc.update("lib".getBytes(UTF_8));
+    Files.write(
+        outputDirectory.resolve("all.loaded-classes"),
+        ImmutableList.of(Long.toHexString(crc.getValue()) + " com/example/Lib.class"),
+        UTF_8);
+
+    assertTrue(
+        "Test won't be rerun while its loaded classes are unchanged",
+        isTestRunAvoidedByLoadedClasses(test, executionContext, pathResolver, options));
+
+    Files.write(libClass, "changed lib".getBytes(UTF_8));
+    assertFalse(
+        "Test will be rerun when a class it loaded has changed",
+        isTestRunAvoidedByLoadedClasses(test, executionContext, pathResolver, options));
+
+    Files.write(libClass, "lib".getBytes(UTF_8));
+    assertFalse(
+        "Test will be rerun when it would be run differently",
+        isTestRunAvoidedByLoadedClasses(
+            test,
+            TestExecutionContext.newBuilder().setCodeCoverageEnabled(true).build(),
+            pathResolver,
+            options));
+  }
+
+  private static boolean isTestRunAvoidedByLoadedClasses(
+      TestRule test,
+      ExecutionContext executionContext,
+      SourcePathResolver pathResolver,
+      TestRunningOptions options) throws IOException {
+    return TestRunning.isTestRunAvoidedByLoadedClasses(
+        test,
+        executionContext,
+        pathResolver,
+        options,
+        Callables.<TestResults>returning(null));
+  }
+
   @Test
   public void whenAllTestsAreSeparateTestsRunInOrder() throws Exception {
     CommandRunnerParams commandRunnerParams = CommandRunnerParamsForTesting
@@ -38,11 +38,15 @@ import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.args.RuleKeyAppendableFunction;
 import com.facebook.buck.rules.coercer.FrameworkPath;
+import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
+import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.testutil.MoreAsserts;
 import com.facebook.buck.util.MoreCollectors;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -51,6 +55,7 @@ import com.google.common.collect.ImmutableSortedSet;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
@@ -205,4 +210,100 @@ public class CxxCompilationDatabaseTest {
     MoreAsserts.assertIterablesEquals(expectedEntries, observedEntries);
   }
 
+  @Test
+  public void compilationDatabaseFragmentsHoldTheEntriesOfEachDirectory() throws Exception {
+    BuildTarget testBuildTarget = BuildTargetFactory.newInstance("//foo:baz#compilation-database");
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    BuildRuleParams testBuildRuleParams = new FakeBuildRuleParamsBuilder(testBuildTarget)
+        .setProjectFilesystem(filesystem)
+        .build();
+    BuildRuleResolver testBuildRuleResolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathResolver testSourcePathResolver =
+        new SourcePathResolver(new SourcePathRuleFinder(testBuildRuleResolver));
+
+    ImmutableSortedSet.Builder<CxxPreprocessAndCompile> rules = ImmutableSortedSet.naturalOrder();
+    for (String source : ImmutableList.of("foo/a.cpp", "bar/b.cpp", "foo/c.cpp", "d.cpp")) {
+      BuildTarget compileTarget = BuildTarget
+          .builder(testBuildTarget.getUnflavoredBuildTarget())
+          .addFlavors(InternalFlavor.of("compile-" + source.replace('/', '-')))
+          .build();
+      rules.add(testBuildRuleResolver.addToIndex(
+          CxxPreprocessAndCompile.preprocessAndCompile(
+              new FakeBuildRuleParamsBuilder(compileTarget)
+                  .setProjectFilesystem(filesystem)
+                  .build(),
+              new PreprocessorDelegate(
+                  testSourcePathResolver,
+                  CxxPlatformUtils.DEFAULT_COMPILER_DEBUG_PATH_SANITIZER,
+                  CxxPlatformUtils.DEFAULT_PLATFORM.getHeaderVerification(),
+                  filesystem.getRootPath(),
+                  new GccPreprocessor(new HashedFileTool(Paths.get("preprocessor"))),
+                  PreprocessorFlags.builder().build(),
+                  new RuleKeyAppendableFunction<FrameworkPath, Path>() {
+                    @Override
+                    public void appendToRuleKey(RuleKeyObjectSink sink) {
+                      // Do nothing.
+                    }
+
+                    @Override
+                    public Path apply(FrameworkPath input) {
+                      throw new UnsupportedOperationException("should not be called");
+                    }
+                  },
+                  Optional.empty(),
+                  /* leadingIncludePaths */ Optional.empty()),
+              new CompilerDelegate(
+                  testSourcePathResolver,
+                  CxxPlatformUtils.DEFAULT_COMPILER_DEBUG_PATH_SANITIZER,
+                  new GccCompiler(new HashedFileTool(Paths.get("compiler"))),
+                  CxxToolFlags.of()),
+              Paths.get(source + ".o"),
+              new FakeSourcePath(filesystem, source),
+              CxxSource.Type.CXX,
+              Optional.empty(),
+              CxxPlatformUtils.DEFAULT_COMPILER_DEBUG_PATH_SANITIZER,
+              CxxPlatformUtils.DEFAULT_ASSEMBLER_DEBUG_PATH_SANITIZER,
+              Optional.empty())));
+    }
+    CxxCompilationDatabase compilationDatabase =
+        CxxCompilationDatabase.createCompilationDatabase(testBuildRuleParams, rules.build(), true);
+
+    ExecutionContext context = TestExecutionContext.newInstance();
+    for (Step step :
+         compilationDatabase.getBuildSteps(
+             FakeBuildContext.withSourcePathResolver(testSourcePathResolver),
+             new FakeBuildableContext())) {
+      assertEquals(0, step.execute(context).getExitCode());
+    }
+
+    // The whole database lists the sources a directory at a time, as its fragments do.
+    assertEquals(
+        ImmutableList.of("d.cpp", "bar/b.cpp", "foo/a.cpp", "foo/c.cpp"),
+        readFiles(
+            filesystem,
+            testSourcePathResolver.getRelativePath(compilationDatabase.getSourcePathToOutput())));
+    Path fragments = compilationDatabase.getPathToFragments();
+    assertEquals(
+        ImmutableList.of("d.cpp"),
+        readFiles(filesystem, fragments.resolve("compile_commands.json")));
+    assertEquals(
+        ImmutableList.of("bar/b.cpp"),
+        readFiles(filesystem, fragments.resolve("bar/compile_commands.json")));
+    assertEquals(
+        ImmutableList.of("foo/a.cpp", "foo/c.cpp"),
+        readFiles(filesystem, fragments.resolve("foo/compile_commands.json")));
+  }
+
+  private static ImmutableList<String> readFiles(ProjectFilesystem filesystem, Path database)
+      throws IOException {
+    ImmutableList.Builder<String> files = ImmutableList.builder();
+    JsonNode entries = ObjectMappers.READER.readTree(filesystem.readFileIfItExists(database).get());
+    for (JsonNode entry : entries) {
+      files.add(
+          filesystem.getRootPath().relativize(Paths.get(entry.get("file").asText())).toString());
+    }
+    return files.build();
+  }
+
 }
@@ -19,15 +19,18 @@ package com.facebook.buck.cxx;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.FakeBuildRule;
 import com.facebook.buck.rules.FakeBuildRuleParamsBuilder;
 import com.facebook.buck.rules.FakeSourcePath;
 import com.facebook.buck.rules.HashedFileTool;
 import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.RuleScheduleInfo;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.TargetGraph;
@@ -37,20 +40,32 @@ import com.facebook.buck.rules.args.SourcePathArg;
 import com.facebook.buck.rules.args.StringArg;
 import com.facebook.buck.rules.keys.DefaultRuleKeyFactory;
 import com.facebook.buck.testutil.FakeFileHashCache;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.concurrent.ConcurrencyLimit;
+import com.facebook.buck.util.concurrent.ResourceAllocationFairness;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
 
+import org.junit.Rule;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Optional;
 
 public class CxxLinkTest {
 
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
   private static final Linker DEFAULT_LINKER = new GnuLinker(new HashedFileTool(Paths.get("ld")));
   private static final Path DEFAULT_OUTPUT = Paths.get("test.exe");
   private static final ImmutableList<Arg> DEFAULT_ARGS =
@@ -213,4 +228,133 @@ public class CxxLinkTest {
     assertEquals(ruleKey1, ruleKey2);
   }
 
+  @Test
+  public void heavyLinksReserveTheirShareOfTheCoresAndTheirMemory() throws Exception {
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer())));
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    filesystem.writeBytesToPath(new byte[3 * 1024 * 1024], Paths.get("libfoo.a"));
+    FakeBuildRule archive =
+        new FakeBuildRule(BuildTargetFactory.newInstance("//foo:foo"), filesystem, pathResolver);
+    archive.setOutputFile("libfoo.a");
+    BuildRuleParams params = new FakeBuildRuleParamsBuilder("//foo:bar")
+        .setProjectFilesystem(filesystem)
+        .setDeclaredDeps(ImmutableSortedSet.of(archive))
+        .build();
+
+    // Links with at least 2MB of inputs are heavy, and two of them share the eight threads.
+    CxxLinkScheduler scheduler =
+        new CxxLinkScheduler(
+            2 * 1024 * 1024,
+            2,
+            concurrencyLimit(8, 10),
+            ImmutableList.of("-Wl,--threads", "-Wl,--thread-count,{threads}"));
+    RuleScheduleInfo scheduleInfo =
+        new CxxLink(
+            params,
+            DEFAULT_LINKER,
+            DEFAULT_OUTPUT,
+            DEFAULT_ARGS,
+            Optional.empty(),
+            /* cacheable */ true,
+            /* thinLto */ false,
+            Optional.of(scheduler))
+            .getRuleScheduleInfo();
+    assertEquals(4, scheduleInfo.getJobsMultiplier());
+    assertEquals(Optional.of(ResourceAmounts.of(4, 1, 0, 0)), scheduleInfo.getResourceAmounts());
+    assertEquals(
+        ImmutableList.of("-Wl,--threads", "-Wl,--thread-count,4"),
+        scheduler.getThreadsFlags(3 * 1024 * 1024));
+
+    // Other links are scheduled as they would be without a lane for heavy links.
+    RuleScheduleInfo linkScheduleInfo = RuleScheduleInfo.builder().setJobsMultiplier(2).build();
+    assertEquals(
+        linkScheduleInfo,
+        new CxxLink(
+            params,
+            DEFAULT_LINKER,
+            DEFAULT_OUTPUT,
+            DEFAULT_ARGS,
+            Optional.of(linkScheduleInfo),
+            /* cacheable */ true,
+            /* thinLto */ false,
+            Optional.of(
+                new CxxLinkScheduler(
+                    4 * 1024 * 1024,
+                    2,
+                    concurrencyLimit(8, 10),
+                    ImmutableList.of())))
+            .getRuleScheduleInfo());
+    assertEquals(ImmutableList.of(), scheduler.getThreadsFlags(1024 * 1024));
+  }
+
+  @Test
+  public void heavyLinksReserveNoMoreThanAllOfTheMemory() {
+    CxxLinkScheduler scheduler = new CxxLinkScheduler(0, 1, concurrencyLimit(4, 3), ImmutableList.of());
+    assertEquals(
+        Optional.of(ResourceAmounts.of(4, 3, 0, 0)),
+        scheduler.getRuleScheduleInfo(RuleScheduleInfo.DEFAULT, 1024L * 1024 * 1024)
+            .getResourceAmounts());
+  }
+
+  @Test
+  public void thinArchivesWeighAsMuchAsTheObjectsTheyReferTo() throws Exception {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer())));
+    filesystem.writeBytesToPath(new byte[2 * 1024 * 1024], Paths.get("first.o"));
+    filesystem.writeBytesToPath(new byte[1024 * 1024 + 1], Paths.get("second.o"));
+    try (OutputStream stream = filesystem.newFileOutputStream(Paths.get("libfoo.a"))) {
+      ArchiveWriter.write(
+          stream,
+          /* thin */ true,
+          ImmutableList.of(
+              new ArchiveWriter.Member(
+                  "first.o",
+                  filesystem.resolve("first.o"),
+                  2 * 1024 * 1024,
+                  ImmutableList.of("first")),
+              new ArchiveWriter.Member(
+                  "second.o",
+                  filesystem.resolve("second.o"),
+                  1024 * 1024 + 1,
+                  ImmutableList.of("second"))));
+    }
+    FakeBuildRule archive =
+        new FakeBuildRule(BuildTargetFactory.newInstance("//foo:foo"), filesystem, pathResolver);
+    archive.setOutputFile("libfoo.a");
+    BuildRuleParams params = new FakeBuildRuleParamsBuilder("//foo:bar")
+        .setProjectFilesystem(filesystem)
+        .setDeclaredDeps(ImmutableSortedSet.of(archive))
+        .build();
+
+    // The archive only holds the headers of its members, but links as if it held them.
+    RuleScheduleInfo scheduleInfo =
+        new CxxLink(
+            params,
+            DEFAULT_LINKER,
+            DEFAULT_OUTPUT,
+            DEFAULT_ARGS,
+            Optional.empty(),
+            /* cacheable */ true,
+            /* thinLto */ false,
+            Optional.of(
+                new CxxLinkScheduler(
+                    3 * 1024 * 1024,
+                    1,
+                    concurrencyLimit(4, 10),
+                    ImmutableList.of())))
+            .getRuleScheduleInfo();
+    assertEquals(Optional.of(ResourceAmounts.of(4, 1, 0, 0)), scheduleInfo.getResourceAmounts());
+  }
+
+  private static ConcurrencyLimit concurrencyLimit(int threads, int memory) {
+    return new ConcurrencyLimit(
+        threads,
+        ResourceAllocationFairness.FAIR,
+        threads,
+        ResourceAmountsEstimator.DEFAULT_AMOUNTS,
+        ResourceAmounts.of(threads, memory, 0, 0));
+  }
+
 }
@@ -16,11 +16,14 @@
 
 package com.facebook.buck.cxx;
 
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.BuildTarget;
@@ -557,4 +560,54 @@ public class CxxPreprocessAndCompileTest {
     assertThat(command, hasItem(CompilerWithColorSupport.COLOR_FLAG));
   }
 
+  @Test
+  public void preprocessStepWritesOutPreprocessedSource() throws Exception {
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer())
+    ));
+    BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+    BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+    Path input = Paths.get("test.cpp");
+    Path scratchDir = Paths.get("scratch");
+
+    CxxPreprocessAndCompile buildRule =
+        CxxPreprocessAndCompile.preprocessAndCompile(
+            params,
+            new PreprocessorDelegate(
+                pathResolver,
+                CxxPlatformUtils.DEFAULT_COMPILER_DEBUG_PATH_SANITIZER,
+                CxxPlatformUtils.DEFAULT_PLATFORM.getHeaderVerification(),
+                DEFAULT_WORKING_DIR,
+                DEFAULT_PREPROCESSOR,
+                PreprocessorFlags.builder().setOtherFlags(DEFAULT_TOOL_FLAGS).build(),
+                DEFAULT_FRAMEWORK_PATH_SEARCH_PATH_FUNCTION,
+                Optional.empty(),
+                /* leadingIncludePaths */ Optional.empty()),
+            new CompilerDelegate(
+                pathResolver,
+                CxxPlatformUtils.DEFAULT_COMPILER_DEBUG_PATH_SANITIZER,
+                DEFAULT_COMPILER,
+                CxxToolFlags.of()),
+            DEFAULT_OUTPUT,
+            new FakeSourcePath(input.toString()),
+            DEFAULT_INPUT_TYPE,
+            Optional.empty(),
+            CxxPlatformUtils.DEFAULT_COMPILER_DEBUG_PATH_SANITIZER,
+            CxxPlatformUtils.DEFAULT_ASSEMBLER_DEBUG_PATH_SANITIZER,
+            Optional.empty());
+    assertTrue(buildRule.usePreprocessedRuleKey());
+    assertThat(
+        buildRule.getPreprocessedOutput().getFileName().toString(),
+        equalTo(DEFAULT_OUTPUT.getFileName() + ".i"));
+
+    ImmutableList<String> command =
+        buildRule.makePreprocessStep(pathResolver, scratchDir).getCommand();
+    assertThat(command.get(0), equalTo("preprocessor"));
+    assertThat(command, hasItems("-O3", "-E"));
+    assertThat(command, not(hasItem("-c")));
+    assertThat(
+        command.subList(command.size() - 2, command.size()),
+        equalTo(ImmutableList.of("-o", buildRule.getPreprocessedOutput().toString())));
+  }
+
 }
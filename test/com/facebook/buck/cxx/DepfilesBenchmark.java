@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.PathSourcePath;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Measures reading the depfile of a translation unit including thousands of headers, as is done
+ * after every compilation using depfiles, and checking each header it includes.
+ */
+public class DepfilesBenchmark {
+  @Param({"300"})
+  private int libraryCount = 300;
+
+  @Param({"10"})
+  private int headersPerLibrary = 10;
+
+  @Param({"500"})
+  private int systemHeaderCount = 500;
+
+  private TemporaryPaths tmp = new TemporaryPaths();
+  private BuckEventBus eventBus;
+  private ProjectFilesystem filesystem;
+  private HeaderPathNormalizer headerPathNormalizer;
+  private HeaderVerification headerVerification;
+  private Path depfile;
+  private byte[] depfileContents;
+  private int headerCount;
+
+  @Before
+  public void setUpTest() throws Exception {
+    libraryCount = 20;
+    systemHeaderCount = 20;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    tmp.before();
+    eventBus = BuckEventBusFactory.newInstance();
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer())));
+    HeaderPathNormalizer.Builder normalizer = new HeaderPathNormalizer.Builder(pathResolver);
+
+    // The depfile lists the source, then the headers it includes through the symlink trees of
+    // the libraries it depends on, some it includes relative to itself, and system headers.
+    StringBuilder contents = new StringBuilder("buck-out/gen/app/main.cpp.o: \\\n  app/main.cpp");
+    normalizer.addHeader(new PathSourcePath(filesystem, Paths.get("app/main.h")));
+    contents.append(" \\\n  app/../app/main.h");
+    headerCount = 1;
+    for (int library = 0; library < libraryCount; library++) {
+      Path treeRoot =
+          Paths.get(String.format("buck-out/gen/lib%d/lib%d#headers", library, library));
+      ImmutableMap.Builder<Path, SourcePath> headerMap = ImmutableMap.builder();
+      for (int header = 0; header < headersPerLibrary; header++) {
+        Path name = Paths.get(String.format("lib%d/header%d.h", library, header));
+        headerMap.put(
+            name,
+            new PathSourcePath(
+                filesystem,
+                Paths.get(String.format("lib%d/include/header%d.h", library, header))));
+        contents.append(" \\\n  ").append(treeRoot.resolve(name));
+        headerCount++;
+      }
+      normalizer.addSymlinkTree(new PathSourcePath(filesystem, treeRoot), headerMap.build());
+    }
+    for (int header = 0; header < systemHeaderCount; header++) {
+      contents.append(String.format(" \\\n  /usr/include/c++/v1/header%d", header));
+    }
+    contents.append('\n');
+
+    headerPathNormalizer = normalizer.build();
+    headerVerification =
+        HeaderVerification.of(
+            HeaderVerification.Mode.ERROR,
+            ImmutableSortedSet.of(),
+            ImmutableSortedSet.of("/usr/include/.*"));
+    depfileContents = contents.toString().getBytes(StandardCharsets.UTF_8);
+    depfile = Paths.get("buck-out/gen/app/main.cpp.o.dep.tmp");
+    filesystem.mkdirs(depfile.getParent());
+    filesystem.writeBytesToPath(depfileContents, depfile);
+  }
+
+  @After
+  @AfterExperiment
+  public void tearDown() {
+    tmp.after();
+  }
+
+  @Test
+  public void parseDepfileCorrectness() throws Exception {
+    Depfiles.Depfile parsed = Depfiles.parseDepfile(depfileContents);
+    assertEquals(
+        2 + libraryCount * headersPerLibrary + systemHeaderCount,
+        parsed.getPrereqs().size());
+    assertEquals(
+        Depfiles.parseDepfile(
+            new StringReader(new String(depfileContents, StandardCharsets.UTF_8))),
+        parsed);
+  }
+
+  @Test
+  public void processDepfileCorrectness() throws Exception {
+    ImmutableList<Path> headers = processDepfile();
+    assertEquals(headerCount, headers.size());
+    assertEquals(filesystem.resolve("app/main.h"), headers.get(0));
+    assertEquals(filesystem.resolve("lib0/include/header0.h"), headers.get(1));
+    for (Path header : headers) {
+      assertTrue(header.isAbsolute());
+    }
+  }
+
+  @Benchmark
+  public void parseDepfile(int reps) throws Exception {
+    for (int i = 0; i < reps; i++) {
+      Depfiles.parseDepfile(depfileContents);
+    }
+  }
+
+  @Benchmark
+  public void processDepfile(int reps) throws Exception {
+    for (int i = 0; i < reps; i++) {
+      processDepfile();
+    }
+  }
+
+  private ImmutableList<Path> processDepfile()
+      throws IOException, Depfiles.HeaderVerificationException {
+    return Depfiles.parseAndOutputBuckCompatibleDepfile(
+        eventBus,
+        filesystem,
+        headerPathNormalizer,
+        headerVerification,
+        depfile,
+        Paths.get("app/main.cpp"),
+        Paths.get("buck-out/gen/app/main.cpp.o"));
+  }
+}
@@ -21,6 +21,7 @@ import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.cxx.elf.Elf;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.integration.ProjectWorkspace;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
@@ -41,7 +42,7 @@ public class ElfClearProgramHeadersStepTest {
   public TemporaryPaths tmp = new TemporaryPaths();
 
   @Test
-  public void test() throws IOException {
+  public void test() throws IOException, InterruptedException {
     ProjectWorkspace workspace =
         TestDataHelper.createProjectWorkspaceForScenario(this, "elf_shared_lib", tmp);
     workspace.setUp();
@@ -49,7 +50,9 @@ public class ElfClearProgramHeadersStepTest {
         ElfClearProgramHeadersStep.of(
             new ProjectFilesystem(tmp.getRoot()),
             tmp.getRoot().getFileSystem().getPath("libfoo.so"));
-    step.execute(TestExecutionContext.newInstance());
+    assertThat(
+        step.execute(TestExecutionContext.newInstance()),
+        Matchers.equalTo(StepExecutionResult.SUCCESS));
 
     // Verify that the program table section is empty.
     try (FileChannel channel =
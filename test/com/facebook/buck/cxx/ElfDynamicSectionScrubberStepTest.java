@@ -25,6 +25,7 @@ import com.facebook.buck.cxx.elf.ElfHeader;
 import com.facebook.buck.cxx.elf.ElfSection;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.Pair;
+import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.integration.ProjectWorkspace;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
@@ -47,7 +48,7 @@ public class ElfDynamicSectionScrubberStepTest {
   public TemporaryPaths tmp = new TemporaryPaths();
 
   @Test
-  public void test() throws IOException {
+  public void test() throws IOException, InterruptedException {
     ProjectWorkspace workspace =
         TestDataHelper.createProjectWorkspaceForScenario(this, "elf_shared_lib", tmp);
     workspace.setUp();
@@ -55,7 +56,9 @@ public class ElfDynamicSectionScrubberStepTest {
         ElfDynamicSectionScrubberStep.of(
             new ProjectFilesystem(tmp.getRoot()),
             tmp.getRoot().getFileSystem().getPath("libfoo.so"));
-    step.execute(TestExecutionContext.newInstance());
+    assertThat(
+        step.execute(TestExecutionContext.newInstance()),
+        Matchers.equalTo(StepExecutionResult.SUCCESS));
 
     // Verify that the relevant dynamic section tag have been zero'd out.
     try (FileChannel channel =
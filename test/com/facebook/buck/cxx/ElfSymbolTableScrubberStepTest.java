@@ -24,6 +24,7 @@ import com.facebook.buck.cxx.elf.Elf;
 import com.facebook.buck.cxx.elf.ElfSection;
 import com.facebook.buck.cxx.elf.ElfSymbolTable;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.integration.ProjectWorkspace;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
@@ -48,7 +49,7 @@ public class ElfSymbolTableScrubberStepTest {
   public TemporaryPaths tmp = new TemporaryPaths();
 
   @Test
-  public void test() throws IOException {
+  public void test() throws IOException, InterruptedException {
     ProjectWorkspace workspace =
         TestDataHelper.createProjectWorkspaceForScenario(this, "elf_shared_lib", tmp);
     workspace.setUp();
@@ -58,7 +59,9 @@ public class ElfSymbolTableScrubberStepTest {
             tmp.getRoot().getFileSystem().getPath("libfoo.so"),
             ".dynsym",
             /* allowMissing */ false);
-    step.execute(TestExecutionContext.newInstance());
+    assertThat(
+        step.execute(TestExecutionContext.newInstance()),
+        Matchers.equalTo(StepExecutionResult.SUCCESS));
 
     // Verify that the symbol table values and sizes are zero.
     try (FileChannel channel =
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.apple.clang.HeaderMap;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.model.BuildTargets;
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.FakeBuildContext;
+import com.facebook.buck.rules.FakeBuildableContext;
+import com.facebook.buck.rules.PathSourcePath;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+/**
+ * Measures setting up the headers of a graph of C/C++ libraries, as is done before any of them
+ * can be compiled, in each of the ways headers can be laid out.
+ */
+public class HeaderModeBenchmark {
+  @Param({"SYMLINK_TREE_WITH_HEADER_MAP", "HEADER_MAP_ONLY"})
+  private CxxPreprocessables.HeaderMode mode = CxxPreprocessables.HeaderMode.HEADER_MAP_ONLY;
+
+  @Param({"5000"})
+  private int libraryCount = 5000;
+
+  @Param({"10"})
+  private int headersPerLibrary = 10;
+
+  private TemporaryPaths tmp = new TemporaryPaths();
+  private ProjectFilesystem filesystem;
+  private BuildContext buildContext;
+  private ImmutableList<HeaderSymlinkTree> headerRules;
+
+  @Before
+  public void setUpTest() throws Exception {
+    libraryCount = 20;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    tmp.before();
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
+    buildContext = FakeBuildContext.withSourcePathResolver(new SourcePathResolver(ruleFinder));
+
+    ImmutableList.Builder<HeaderSymlinkTree> rules = ImmutableList.builder();
+    for (int library = 0; library < libraryCount; library++) {
+      BuildTarget target = BuildTargetFactory.newInstance(
+          String.format("//lib%d:lib%d#headers", library, library));
+      filesystem.mkdirs(Paths.get(String.format("lib%d/include", library)));
+      ImmutableMap.Builder<Path, SourcePath> headers = ImmutableMap.builder();
+      for (int header = 0; header < headersPerLibrary; header++) {
+        Path source = Paths.get(String.format("lib%d/include/header%d.h", library, header));
+        filesystem.writeContentsToPath("#pragma once\n", source);
+        headers.put(
+            Paths.get(String.format("lib%d/header%d.h", library, header)),
+            new PathSourcePath(filesystem, source));
+      }
+      rules.add(
+          CxxPreprocessables.createHeaderSymlinkTreeBuildRule(
+              target,
+              filesystem,
+              BuildTargets.getGenPath(filesystem, target, "%s"),
+              headers.build(),
+              mode,
+              ruleFinder));
+    }
+    headerRules = rules.build();
+  }
+
+  @After
+  @AfterExperiment
+  public void tearDown() {
+    tmp.after();
+  }
+
+  @Test
+  public void setUpHeadersCorrectness() throws Exception {
+    for (CxxPreprocessables.HeaderMode headerMode :
+        ImmutableList.of(
+            CxxPreprocessables.HeaderMode.SYMLINK_TREE_WITH_HEADER_MAP,
+            CxxPreprocessables.HeaderMode.HEADER_MAP_ONLY)) {
+      tearDown();
+      tmp = new TemporaryPaths();
+      mode = headerMode;
+      setUpBenchmark();
+      setUpHeaders();
+
+      Path buckOut = filesystem.resolve(filesystem.getBuckPaths().getBuckOut());
+      long symlinkCount;
+      try (Stream<Path> paths = Files.walk(buckOut)) {
+        symlinkCount = paths.filter(Files::isSymbolicLink).count();
+      }
+      assertEquals(
+          mode == CxxPreprocessables.HeaderMode.HEADER_MAP_ONLY ?
+              0 :
+              libraryCount * headersPerLibrary,
+          symlinkCount);
+
+      // Every header is found through the header map, wherever it points.
+      HeaderSymlinkTree rule = headerRules.get(0);
+      HeaderMap headerMap = HeaderMap.loadFromFile(rule.getHeaderMap().get().toFile());
+      assertEquals(headersPerLibrary, headerMap.getNumEntries());
+      String header = headerMap.lookup("lib0/header0.h");
+      assertTrue(Files.isRegularFile(rule.getIncludePath().resolve(header)));
+    }
+  }
+
+  @Benchmark
+  public void setUpHeaders(int reps) throws Exception {
+    for (int i = 0; i < reps; i++) {
+      setUpHeaders();
+    }
+  }
+
+  private void setUpHeaders() throws IOException, InterruptedException {
+    ExecutionContext context = TestExecutionContext.newInstance();
+    for (HeaderSymlinkTree rule : headerRules) {
+      for (Step step : rule.getBuildSteps(buildContext, new FakeBuildableContext())) {
+        assertTrue(step.execute(context).isSuccess());
+      }
+    }
+  }
+}
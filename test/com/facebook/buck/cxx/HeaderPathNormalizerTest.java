@@ -27,6 +27,7 @@ import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableList;
 
 import org.hamcrest.Matchers;
 import org.junit.Test;
@@ -135,4 +136,40 @@ public class HeaderPathNormalizerTest {
         normalizer.getSourcePathForAbsolutePath(pathResolver.getAbsolutePath(headerPath)),
         Matchers.equalTo(headerPath));
   }
+
+  @Test
+  public void unnormalizedPathStringsAreLookedUpLikePaths() {
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer())
+    ));
+    HeaderPathNormalizer normalizer =
+        new HeaderPathNormalizer.Builder(pathResolver)
+            .addHeader(new PathSourcePath(filesystem, filesystem.getPath("foo/bar.h")))
+            .addHeaderDir(new PathSourcePath(filesystem, filesystem.getPath("dir")))
+            .build();
+    Path root = filesystem.getRootPath();
+    for (String path : ImmutableList.of(
+        "foo/bar.h",
+        "./foo//bar.h",
+        "foo/../foo/bar.h",
+        "other/../foo/bar.h",
+        root.resolve("foo/bar.h").toString(),
+        "foo/baz.h",
+        "foo/bar.h/../baz.h",
+        "dir",
+        "dir/sub/header.h",
+        "dir/sub/../../foo/bar.h",
+        "dir/../dir/header.h",
+        "../foo/bar.h",
+        "/foo/bar.h")) {
+      assertThat(
+          path,
+          normalizer.getAbsolutePathForUnnormalizedPath(root, path),
+          Matchers.equalTo(
+              normalizer.getAbsolutePathForUnnormalizedPath(root.resolve(path).normalize())));
+    }
+    assertThat(
+        normalizer.getAbsolutePathForUnnormalizedPath(root, "dir/sub/header.h"),
+        Matchers.equalTo(Optional.of(root.resolve("dir/sub/header.h"))));
+  }
 }
@@ -39,6 +39,10 @@ import com.google.common.hash.HashCode;
 
 import org.junit.Test;
 
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
 public class HeaderVerificationTest {
 
   private RuleKey getRuleKey(HeaderVerification headerVerification) {
@@ -89,4 +93,51 @@ public class HeaderVerificationTest {
                     ImmutableSortedSet.of(".*"),
                     ImmutableSortedSet.of())))));
   }
+
+  @Test
+  public void literalPrefixesOfWhitelistRegexes() {
+    assertThat(
+        HeaderVerification.getLiteralPrefix("/usr/include/.*"),
+        equalTo(Optional.of("/usr/include/")));
+    assertThat(
+        HeaderVerification.getLiteralPrefix("^/opt/sdk\\.1/.*$"),
+        equalTo(Optional.of("/opt/sdk.1/")));
+    assertThat(
+        HeaderVerification.getLiteralPrefix("\\Q/a.b+c/\\E.*"),
+        equalTo(Optional.of("/a.b+c/")));
+    assertThat(HeaderVerification.getLiteralPrefix(".*"), equalTo(Optional.of("")));
+    assertThat(
+        HeaderVerification.getLiteralPrefix("/usr/include/.*\\.h"),
+        equalTo(Optional.empty()));
+    assertThat(
+        HeaderVerification.getLiteralPrefix("/usr/include/foo.h"),
+        equalTo(Optional.empty()));
+    assertThat(HeaderVerification.getLiteralPrefix("/usr/(a|b)/.*"), equalTo(Optional.empty()));
+    assertThat(HeaderVerification.getLiteralPrefix("\\w+/.*"), equalTo(Optional.empty()));
+    assertThat(HeaderVerification.getLiteralPrefix("/usr\\.*"), equalTo(Optional.empty()));
+  }
+
+  @Test
+  public void whitelistMatchesLikeRegexes() {
+    HeaderVerification headerVerification =
+        HeaderVerification.of(
+            HeaderVerification.Mode.ERROR,
+            ImmutableSortedSet.of("/usr/include/.*", "^/opt/sdk\\.1/.*$"),
+            ImmutableSortedSet.of("/platform/.*\\.h"));
+    for (String header : ImmutableList.of(
+        "/usr/include/stdio.h",
+        "/usr/include/",
+        "/usr/include/a\nb.h",
+        "/usr/local/include/stdio.h",
+        "/opt/sdk.1/foo.h",
+        "/opt/sdkx1/foo.h",
+        "/platform/foo.h",
+        "/platform/foo.hpp",
+        "foo.h")) {
+      boolean matchesRegex =
+          Stream.of("/usr/include/.*", "^/opt/sdk\\.1/.*$", "/platform/.*\\.h")
+              .anyMatch(regex -> Pattern.compile(regex).matcher(header).matches());
+      assertThat(header, headerVerification.isWhitelisted(header), equalTo(matchesRegex));
+    }
+  }
 }
@@ -409,4 +409,59 @@ public class NativeLinkablesTest {
         Matchers.equalTo(ImmutableMap.<BuildTarget, NativeLinkable>of(a.getBuildTarget(), a)));
   }
 
+  @Test
+  public void memoizedLinkablesAreOrderedTopologically() {
+    FakeNativeLinkable e = newLinkable("//:e", NativeLinkable.Linkage.ANY);
+    FakeNativeLinkable d = newLinkable("//:d", NativeLinkable.Linkage.SHARED, e);
+    FakeNativeLinkable c = newLinkable("//:c", NativeLinkable.Linkage.ANY, e);
+    FakeNativeLinkable b = newLinkable("//:b", NativeLinkable.Linkage.STATIC, c, d);
+    FakeNativeLinkable a = newLinkable("//:a", NativeLinkable.Linkage.ANY, e, b);
+    for (Linker.LinkableDepType linkStyle : Linker.LinkableDepType.values()) {
+      for (ImmutableList<NativeLinkable> inputs :
+          ImmutableList.of(
+              ImmutableList.<NativeLinkable>of(a),
+              ImmutableList.<NativeLinkable>of(d, c),
+              ImmutableList.<NativeLinkable>of(e, b, a))) {
+        ImmutableMap<BuildTarget, NativeLinkable> expected =
+            NativeLinkables.getNativeLinkables(
+                CxxPlatformUtils.DEFAULT_PLATFORM,
+                inputs,
+                linkStyle,
+                x -> true);
+        // Once to memoize the deps, then again to use them.
+        for (int i = 0; i < 2; i++) {
+          assertThat(
+              ImmutableList.copyOf(
+                  NativeLinkables.getNativeLinkables(
+                      CxxPlatformUtils.DEFAULT_PLATFORM,
+                      inputs,
+                      linkStyle).entrySet()),
+              Matchers.equalTo(ImmutableList.copyOf(expected.entrySet())));
+        }
+      }
+    }
+    assertThat(
+        NativeLinkables.getTransitiveNativeLinkables(
+            CxxPlatformUtils.DEFAULT_PLATFORM,
+            ImmutableList.of(b)).keySet(),
+        Matchers.containsInAnyOrder(
+            b.getBuildTarget(),
+            c.getBuildTarget(),
+            d.getBuildTarget(),
+            e.getBuildTarget()));
+  }
+
+  private static FakeNativeLinkable newLinkable(
+      String target,
+      NativeLinkable.Linkage preferredLinkage,
+      NativeLinkable... deps) {
+    return new FakeNativeLinkable(
+        target,
+        ImmutableList.copyOf(deps),
+        ImmutableList.of(),
+        preferredLinkage,
+        NativeLinkableInput.builder().build(),
+        ImmutableMap.of());
+  }
+
 }
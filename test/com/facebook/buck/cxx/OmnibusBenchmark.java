@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures working out the omnibus links of several binaries which share a large graph of native
+ * deps, as is done when making the rules of the Python or Lua binaries in a build.
+ */
+public class OmnibusBenchmark {
+  @Param({"20000"})
+  private int nodeCount = 20000;
+
+  @Param({"4"})
+  private int depsPerNode = 4;
+
+  // One in this many nodes prefers to be linked as a shared library.
+  @Param({"50"})
+  private int sharedNodeRatio = 50;
+
+  @Param({"10"})
+  private int binaryCount = 10;
+
+  @Param({"20"})
+  private int rootsPerBinary = 20;
+
+  private List<List<NativeLinkTarget>> binaries;
+
+  @Before
+  public void setUpTest() {
+    nodeCount = 500;
+    binaryCount = 3;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() {
+    // Each node depends on a few of the nodes made before it, so that the graph is acyclic, with
+    // some of the nodes being prebuilt shared libraries which don't depend on anything.
+    Random random = new Random(0);
+    List<NativeLinkable> nodes = new ArrayList<>(nodeCount);
+    for (int i = 0; i < nodeCount; i++) {
+      String target = String.format("//lib%d:lib%d", i, i);
+      if (i % sharedNodeRatio == 0) {
+        nodes.add(new OmnibusSharedOnlyNode(target));
+        continue;
+      }
+      ImmutableSet.Builder<NativeLinkable> deps = ImmutableSet.builder();
+      for (int j = 0; i > 0 && j < depsPerNode; j++) {
+        deps.add(nodes.get(random.nextInt(i)));
+      }
+      nodes.add(new OmnibusNode(target, deps.build()));
+    }
+
+    // The roots of each binary depend on nodes from the top half of the graph.
+    binaries = new ArrayList<>(binaryCount);
+    for (int binary = 0; binary < binaryCount; binary++) {
+      List<NativeLinkTarget> roots = new ArrayList<>(rootsPerBinary);
+      for (int root = 0; root < rootsPerBinary; root++) {
+        roots.add(
+            new OmnibusRootNode(
+                String.format("//bin%d:ext%d", binary, root),
+                ImmutableSet.of(
+                    nodes.get(nodeCount / 2 + random.nextInt(nodeCount - nodeCount / 2)),
+                    nodes.get(nodeCount / 2 + random.nextInt(nodeCount - nodeCount / 2)))));
+      }
+      binaries.add(roots);
+    }
+  }
+
+  @Test
+  public void sharedGraphCorrectness() {
+    NativeLinkableGraph sharedGraph =
+        new NativeLinkableGraph(CxxPlatformUtils.DEFAULT_PLATFORM);
+    for (List<NativeLinkTarget> roots : binaries) {
+      Omnibus.OmnibusSpec shared = Omnibus.buildSpec(sharedGraph, roots, ImmutableList.of());
+      Omnibus.OmnibusSpec unshared =
+          Omnibus.buildSpec(CxxPlatformUtils.DEFAULT_PLATFORM, roots, ImmutableList.of());
+      assertFalse(shared.getBody().isEmpty());
+      assertFalse(shared.getExcluded().isEmpty());
+      assertEquals(unshared.getGraph(), shared.getGraph());
+      assertEquals(unshared.getBody(), shared.getBody());
+      assertEquals(unshared.getDeps(), shared.getDeps());
+      assertEquals(unshared.getExcluded(), shared.getExcluded());
+    }
+  }
+
+  @Benchmark
+  public void buildSpecsWithSharedGraph(int reps) {
+    for (int i = 0; i < reps; i++) {
+      NativeLinkableGraph graph = new NativeLinkableGraph(CxxPlatformUtils.DEFAULT_PLATFORM);
+      for (List<NativeLinkTarget> roots : binaries) {
+        Omnibus.buildSpec(graph, roots, ImmutableList.of());
+      }
+    }
+  }
+
+  @Benchmark
+  public void buildSpecsWithGraphPerBinary(int reps) {
+    for (int i = 0; i < reps; i++) {
+      for (List<NativeLinkTarget> roots : binaries) {
+        Omnibus.buildSpec(CxxPlatformUtils.DEFAULT_PLATFORM, roots, ImmutableList.of());
+      }
+    }
+  }
+}
@@ -16,6 +16,8 @@
 
 package com.facebook.buck.cxx;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
@@ -450,6 +452,106 @@ public class OmnibusTest {
             Linker.LinkableDepType.STATIC_PIC));
   }
 
+  @Test
+  public void linksWithTheSameResolverShareTheirNativeLinkableGraph()
+      throws NoSuchBuildTargetException {
+    NativeLinkable a = new OmnibusNode("//:a");
+    NativeLinkable b = new OmnibusSharedOnlyNode("//:b");
+    NativeLinkable c = new OmnibusNode("//:c", ImmutableList.of(a, b));
+    NativeLinkable d = new OmnibusNode("//:d", ImmutableList.of(c));
+    NativeLinkable e = new OmnibusNode("//:e", ImmutableList.of(a));
+    ImmutableList<NativeLinkTarget> firstRoots =
+        ImmutableList.of(
+            new OmnibusRootNode("//:first1", ImmutableList.of(d)),
+            new OmnibusRootNode("//:first2", ImmutableList.of(e, b)));
+    ImmutableList<NativeLinkable> firstExcluded = ImmutableList.of();
+    ImmutableList<NativeLinkTarget> secondRoots =
+        ImmutableList.of(
+            new OmnibusRootNode("//:second2", ImmutableList.of(c, e)),
+            new OmnibusRootNode("//:second1", ImmutableList.of(d)));
+    ImmutableList<NativeLinkable> secondExcluded =
+        ImmutableList.of(new OmnibusNode("//:excluded_root", ImmutableList.of(e)));
+
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(
+            TargetGraph.EMPTY,
+            new DefaultTargetNodeToBuildRuleTransformer());
+    NativeLinkableGraph graph =
+        Omnibus.getNativeLinkableGraph(resolver, CxxPlatformUtils.DEFAULT_PLATFORM);
+    ImmutableMap<String, SourcePath> firstLibs =
+        getSharedLibraries(resolver, "//:first", firstRoots, firstExcluded);
+    ImmutableMap<String, SourcePath> secondLibs =
+        getSharedLibraries(resolver, "//:second", secondRoots, secondExcluded);
+    assertSame(
+        graph,
+        Omnibus.getNativeLinkableGraph(resolver, CxxPlatformUtils.DEFAULT_PLATFORM));
+
+    // The links made with the shared graph are the same as those made walking the deps of each
+    // link on its own, in the same order.
+    assertSameSpec(graph, firstRoots, firstExcluded);
+    assertSameSpec(graph, secondRoots, secondExcluded);
+    assertEquals(
+        ImmutableList.copyOf(
+            getSharedLibraries(
+                new BuildRuleResolver(
+                    TargetGraph.EMPTY,
+                    new DefaultTargetNodeToBuildRuleTransformer()),
+                "//:first",
+                firstRoots,
+                firstExcluded).entrySet()),
+        ImmutableList.copyOf(firstLibs.entrySet()));
+    assertEquals(
+        ImmutableList.copyOf(
+            getSharedLibraries(
+                new BuildRuleResolver(
+                    TargetGraph.EMPTY,
+                    new DefaultTargetNodeToBuildRuleTransformer()),
+                "//:second",
+                secondRoots,
+                secondExcluded).entrySet()),
+        ImmutableList.copyOf(secondLibs.entrySet()));
+  }
+
+  private void assertSameSpec(
+      NativeLinkableGraph graph,
+      ImmutableList<NativeLinkTarget> roots,
+      ImmutableList<NativeLinkable> excluded) {
+    Omnibus.OmnibusSpec shared = Omnibus.buildSpec(graph, roots, excluded);
+    Omnibus.OmnibusSpec unshared =
+        Omnibus.buildSpec(CxxPlatformUtils.DEFAULT_PLATFORM, roots, excluded);
+    assertEquals(unshared.getGraph(), shared.getGraph());
+    assertEquals(
+        ImmutableList.copyOf(unshared.getRoots().keySet()),
+        ImmutableList.copyOf(shared.getRoots().keySet()));
+    assertEquals(
+        ImmutableList.copyOf(unshared.getBody().keySet()),
+        ImmutableList.copyOf(shared.getBody().keySet()));
+    assertEquals(
+        ImmutableList.copyOf(unshared.getExcluded().keySet()),
+        ImmutableList.copyOf(shared.getExcluded().keySet()));
+    assertEquals(
+        ImmutableList.copyOf(unshared.getDeps().keySet()),
+        ImmutableList.copyOf(shared.getDeps().keySet()));
+  }
+
+  private ImmutableMap<String, SourcePath> getSharedLibraries(
+      BuildRuleResolver resolver,
+      String target,
+      ImmutableList<NativeLinkTarget> roots,
+      ImmutableList<NativeLinkable> excluded)
+      throws NoSuchBuildTargetException {
+    return toSonameMap(
+        Omnibus.getSharedLibraries(
+            new FakeBuildRuleParamsBuilder(BuildTargetFactory.newInstance(target)).build(),
+            resolver,
+            new SourcePathRuleFinder(resolver),
+            CxxPlatformUtils.DEFAULT_CONFIG,
+            CxxPlatformUtils.DEFAULT_PLATFORM,
+            ImmutableList.of(),
+            roots,
+            excluded));
+  }
+
   private CxxLink getCxxLinkRule(SourcePathRuleFinder ruleFinder, SourcePath path) {
     return ((CxxLink) ruleFinder.getRuleOrThrow((ExplicitBuildTargetSourcePath) path));
   }
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.step.fs.WriteFileStep;
+import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.DefaultProcessExecutor;
+import com.facebook.buck.util.ProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+
+public class WriteArchiveStepIntegrationTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private ProcessExecutor executor;
+
+  @Before
+  public void setUp() throws Exception {
+    assumeTrue(Platform.detect() == Platform.LINUX);
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    executor = new DefaultProcessExecutor(new TestConsole());
+    assumeTrue(run("gcc", "--version").getExitCode() == 0);
+  }
+
+  @Test
+  public void archivesCanBeLinkedAgainst() throws Exception {
+    for (boolean thin : ImmutableList.of(false, true)) {
+      Path output = Paths.get(thin ? "out/libthin.a" : "out/libregular.a");
+      compile("lib/first.c", "int first(void) { return 1; }\nint shared_counter;\n");
+      compile(
+          "lib/a_long_object_name.c",
+          "static int hidden(void) { return 2; }\nint second(void) { return hidden(); }\n");
+      writeArchive(output, thin, Paths.get("lib/first.o"), Paths.get("lib/a_long_object_name.o"));
+
+      // Thin archives refer to their members by their paths relative to the archive.
+      String members = thin ? "out/../lib/" : "";
+      String index = run("nm", "--print-armap", output.toString()).getStdout().get();
+      assertThat(index, containsString("first in " + members + "first.o"));
+      assertThat(index, containsString("shared_counter in " + members + "first.o"));
+      assertThat(index, containsString("second in " + members + "a_long_object_name.o"));
+      assertThat(index, not(containsString("hidden in")));
+
+      filesystem.writeContentsToPath(
+          "int first(void);\nint second(void);\nint main(void) { return first() + second(); }\n",
+          Paths.get("main.c"));
+      ProcessExecutor.Result link =
+          run("gcc", "main.c", output.toString(), "-o", thin ? "main-thin" : "main-regular");
+      assertEquals(link.getStderr().orElse(""), 0, link.getExitCode());
+    }
+  }
+
+  @Test
+  public void archivesAreDeterministicAndPickUpChangedObjects() throws Exception {
+    Path output = Paths.get("out/lib.a");
+    compile("lib/first.c", "int first(void) { return 1; }\n");
+    compile("lib/second.c", "int second(void) { return 2; }\n");
+    writeArchive(output, false, Paths.get("lib/first.o"), Paths.get("lib/second.o"));
+    byte[] contents = Files.readAllBytes(filesystem.resolve(output));
+
+    filesystem.deleteFileAtPath(output);
+    writeArchive(output, false, Paths.get("lib/first.o"), Paths.get("lib/second.o"));
+    assertArrayEquals(contents, Files.readAllBytes(filesystem.resolve(output)));
+
+    // Only the changed object has its symbols read again, but the index reflects the change.
+    compile("lib/second.c", "int renamed(void) { return 2; }\n");
+    writeArchive(output, false, Paths.get("lib/first.o"), Paths.get("lib/second.o"));
+    String index = run("nm", "--print-armap", output.toString()).getStdout().get();
+    assertThat(index, containsString("first in first.o"));
+    assertThat(index, containsString("renamed in second.o"));
+    assertThat(index, not(containsString("second in second.o")));
+  }
+
+  @Test
+  public void objectsWithTheSameSizeAndModificationTimeAreReadAgainIfTheyChanged()
+      throws Exception {
+    Path output = Paths.get("out/lib.a");
+    Path object = Paths.get("lib/first.o");
+    compile("lib/first.c", "int first(void) { return 1; }\n");
+    writeArchive(output, false, object);
+    long size = filesystem.getFileSize(object);
+    FileTime lastModified = filesystem.getLastModifiedTime(object);
+
+    // Objects fetched from the cache all have the same modification time, so an object can be
+    // swapped for another which defines different symbols without either of them changing.
+    compile("lib/first.c", "int frist(void) { return 1; }\n");
+    assertEquals(size, filesystem.getFileSize(object));
+    filesystem.setLastModifiedTime(object, lastModified);
+    writeArchive(output, false, object);
+    String index = run("nm", "--print-armap", output.toString()).getStdout().get();
+    assertThat(index, containsString("frist in first.o"));
+    assertThat(index, not(containsString("first in first.o")));
+  }
+
+  @Test
+  public void archivesOfObjectsOtherThanElfObjectsAreWrittenByTheArchiver() throws Exception {
+    Path output = Paths.get("out/lib.a");
+    compile("lib/first.c", "int first(void) { return 1; }\n");
+    filesystem.writeContentsToPath("BC\u00c0\u00de bitcode", Paths.get("lib/second.o"));
+    writeArchive(
+        output,
+        false,
+        ImmutableList.of(
+            new WriteFileStep(
+                filesystem,
+                "written by the archiver",
+                output,
+                /* executable */ false)),
+        Paths.get("lib/first.o"),
+        Paths.get("lib/second.o"));
+    assertEquals(
+        Optional.of("written by the archiver\n"),
+        filesystem.readFileIfItExists(output));
+  }
+
+  private void compile(String source, String contents) throws IOException, InterruptedException {
+    Path path = Paths.get(source);
+    filesystem.mkdirs(path.getParent());
+    filesystem.writeContentsToPath(contents, path);
+    ProcessExecutor.Result result =
+        run("gcc", "-c", source, "-o", source.replaceAll("\\.c$", ".o"));
+    assertEquals(result.getStderr().orElse(""), 0, result.getExitCode());
+  }
+
+  private void writeArchive(Path output, boolean thin, Path... inputs)
+      throws IOException, InterruptedException {
+    writeArchive(output, thin, ImmutableList.of(), inputs);
+  }
+
+  private void writeArchive(
+      Path output,
+      boolean thin,
+      ImmutableList<Step> archiverSteps,
+      Path... inputs)
+      throws IOException, InterruptedException {
+    filesystem.mkdirs(output.getParent());
+    WriteArchiveStep step =
+        new WriteArchiveStep(
+            filesystem,
+            output,
+            ImmutableList.copyOf(inputs),
+            thin,
+            output.resolveSibling(output.getFileName() + ".symbols"),
+            archiverSteps);
+    ExecutionContext context = TestExecutionContext.newInstance();
+    assertEquals(
+        ((TestConsole) context.getConsole()).getTextWrittenToStdErr(),
+        0,
+        step.execute(context).getExitCode());
+  }
+
+  private ProcessExecutor.Result run(String... command)
+      throws IOException, InterruptedException {
+    return executor.launchAndExecute(
+        ProcessExecutorParams.builder()
+            .setCommand(ImmutableList.copyOf(command))
+            .setDirectory(filesystem.getRootPath())
+            .build());
+  }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.dalvik;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.classes.ClasspathTraversal;
+import com.facebook.buck.jvm.java.classes.FileLike;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class DalvikStatsCacheTest {
+
+  private static final ImmutableList<Class<?>> CLASSES = ImmutableList.of(
+      DalvikStatsTool.class,
+      DalvikStatsCache.class,
+      DalvikAwareZipSplitter.class,
+      DalvikStatsCacheTest.class);
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ListeningExecutorService executor;
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() {
+    executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(3));
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void precomputedStatsMatchEstimatesOfJarsAndDirectories() throws IOException {
+    Path jar = tmp.getRoot().resolve("classes.jar");
+    Path directory = tmp.newFolder("classes");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+      for (Class<?> clazz : CLASSES) {
+        out.putNextEntry(new ZipEntry(getClassPath(clazz)));
+        out.write(getClassBytes(clazz));
+        out.closeEntry();
+        Path classFile = directory.resolve(getClassPath(clazz));
+        Files.createDirectories(classFile.getParent());
+        Files.write(classFile, getClassBytes(clazz));
+      }
+      out.putNextEntry(new ZipEntry("META-INF/pom.properties"));
+      out.closeEntry();
+    }
+    ImmutableSet<Path> inFiles = ImmutableSet.of(jar, directory);
+
+    DalvikStatsCache cache = new DalvikStatsCache(executor, 2);
+    cache.precompute(inFiles, filesystem);
+    Map<String, DalvikStatsTool.Stats> firstStats = new HashMap<>();
+    traverse(inFiles, entry -> {
+      DalvikStatsTool.Stats stats = cache.getStats(entry);
+      try (InputStream is = entry.getInput()) {
+        DalvikStatsTool.Stats expected = entry.getRelativePath().endsWith(".class") ?
+            DalvikStatsTool.getEstimate(is) :
+            DalvikStatsTool.Stats.ZERO;
+        assertEquals(expected.estimatedLinearAllocSize, stats.estimatedLinearAllocSize);
+        assertEquals(expected.methodReferences, stats.methodReferences);
+        assertEquals(expected.fieldReferences, stats.fieldReferences);
+      }
+      firstStats.put(entry.getContainer() + "!" + entry.getRelativePath(), stats);
+    });
+
+    // Another split of the same inputs reuses the stats rather than estimating them again.
+    DalvikStatsCache secondCache = new DalvikStatsCache(executor, 2);
+    secondCache.precompute(inFiles, filesystem);
+    traverse(inFiles, entry -> assertSame(
+        firstStats.get(entry.getContainer() + "!" + entry.getRelativePath()),
+        secondCache.getStats(entry)));
+  }
+
+  private interface Visitor {
+    void visit(FileLike entry) throws IOException;
+  }
+
+  private void traverse(ImmutableSet<Path> inFiles, Visitor visitor) throws IOException {
+    new ClasspathTraversal(inFiles, filesystem) {
+      @Override
+      public void visit(FileLike fileLike) throws IOException {
+        visitor.visit(fileLike);
+      }
+    }.traverse();
+  }
+
+  private static String getClassPath(Class<?> clazz) {
+    return clazz.getName().replace('.', '/') + ".class";
+  }
+
+  private static byte[] getClassBytes(Class<?> clazz) throws IOException {
+    try (InputStream is = clazz.getResourceAsStream("/" + getClassPath(clazz))) {
+      return ByteStreams.toByteArray(is);
+    }
+  }
+}
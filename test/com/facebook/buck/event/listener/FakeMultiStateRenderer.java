@@ -17,13 +17,22 @@
 package com.facebook.buck.event.listener;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 public class FakeMultiStateRenderer implements MultiStateRenderer {
   private final ImmutableList<Long> threadIds;
+  private final ImmutableSet<Long> idleThreadIds;
   private boolean lastSortWasByTime = false;
 
   public FakeMultiStateRenderer(ImmutableList<Long> executorIds) {
+    this(executorIds, ImmutableSet.of());
+  }
+
+  public FakeMultiStateRenderer(
+      ImmutableList<Long> executorIds,
+      ImmutableSet<Long> idleExecutorIds) {
     this.threadIds = executorIds;
+    this.idleThreadIds = idleExecutorIds;
   }
 
   @Override
@@ -52,6 +61,11 @@ public class FakeMultiStateRenderer implements MultiStateRenderer {
     return "t" + executorID;
   }
 
+  @Override
+  public boolean isExecutorIdle(long executorID) {
+    return idleThreadIds.contains(executorID);
+  }
+
   public boolean lastSortWasByTime() {
     return lastSortWasByTime;
   }
@@ -83,6 +83,7 @@ import com.facebook.buck.testutil.TestConsole;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.timing.Clock;
 import com.facebook.buck.timing.IncrementingFakeClock;
+import com.facebook.buck.timing.SettableFakeClock;
 import com.facebook.buck.util.autosparse.AutoSparseStateEvents;
 import com.facebook.buck.util.environment.DefaultExecutionEnvironment;
 import com.facebook.buck.util.unit.SizeUnit;
@@ -2399,6 +2400,96 @@ public class SuperConsoleEventBusListenerTest {
     }
   }
 
+  @Test
+  public void renderLinesCollapsesIdleThreads() throws IOException {
+    Clock fakeClock = new IncrementingFakeClock(TimeUnit.SECONDS.toNanos(1));
+    BuckEventBus eventBus = BuckEventBusFactory.newInstance(fakeClock);
+    try (SuperConsoleEventBusListener listener = createSuperConsole(fakeClock, eventBus)) {
+      FakeMultiStateRenderer fakeRenderer =
+          new FakeMultiStateRenderer(
+              ImmutableList.of(2L, 1L, 4L, 8L, 5L),
+              ImmutableSet.of(4L, 5L));
+
+      ImmutableList.Builder<String> lines = ImmutableList.builder();
+      listener.renderLines(fakeRenderer, lines, 2, false);
+      assertThat(
+          lines.build(),
+          equalTo(
+              ImmutableList.of(
+                  " |=> Status of thread 2",
+                  " |=> 4 MORE THREADS: t1 t8 2 IDLE")));
+
+      // Idle threads that get a full line of their own are still rendered individually.
+      lines = ImmutableList.builder();
+      listener.renderLines(fakeRenderer, lines, 4, false);
+      assertThat(
+          lines.build(),
+          equalTo(
+              ImmutableList.of(
+                  " |=> Status of thread 2",
+                  " |=> Status of thread 1",
+                  " |=> Status of thread 4",
+                  " |=> 2 MORE THREADS: t8 1 IDLE")));
+    }
+  }
+
+  @Test
+  public void frameUpdateOnlyRewritesChangedLines() throws IOException {
+    SettableFakeClock fakeClock = new SettableFakeClock(0L, 0L);
+    BuckEventBus eventBus = BuckEventBusFactory.newInstance(fakeClock);
+    try (SuperConsoleEventBusListener listener = createSuperConsole(fakeClock, eventBus)) {
+      TestConsole console = (TestConsole) listener.console;
+      eventBus.postWithoutConfiguring(
+          configureTestEventAtTime(
+              ProjectGenerationEvent.started(),
+              0L,
+              TimeUnit.MILLISECONDS,
+              /* threadId */ 0L));
+      listener.render();
+      String firstFrame = console.getTextWrittenToStdErr();
+      assertThat(firstFrame, equalTo("[+] GENERATING PROJECT...0.0s\n"));
+
+      // Rendering an unchanged frame writes nothing.
+      listener.render();
+      assertThat(console.getTextWrittenToStdErr(), equalTo(firstFrame));
+
+      fakeClock.setCurrentTimeMillis(100L);
+      listener.render();
+      assertThat(
+          console.getTextWrittenToStdErr(),
+          equalTo(firstFrame + "[+] GENERATING PROJECT...0.1s\n"));
+
+      // Log lines scroll the frame, so they force a full redraw.
+      ImmutableList<String> lines = listener.createRenderLinesAtTime(100L);
+      assertThat(
+          listener.createFrameUpdate(lines, ImmutableList.of("Hello world!")),
+          equalTo("Hello world!\n[+] GENERATING PROJECT...0.1s\n"));
+      assertThat(listener.createFrameUpdate(lines, ImmutableList.of()), equalTo(""));
+    }
+  }
+
+  @Test
+  public void renderIntervalBacksOffWhenRenderingIsExpensive() {
+    assertThat(
+        SuperConsoleEventBusListener.getAdaptiveRenderIntervalMs(100, 0),
+        equalTo(100L));
+    assertThat(
+        SuperConsoleEventBusListener.getAdaptiveRenderIntervalMs(
+            100,
+            TimeUnit.MILLISECONDS.toNanos(1)),
+        equalTo(100L));
+    assertThat(
+        SuperConsoleEventBusListener.getAdaptiveRenderIntervalMs(
+            100,
+            TimeUnit.MILLISECONDS.toNanos(5)),
+        equalTo(250L));
+    assertThat(
+        SuperConsoleEventBusListener.getAdaptiveRenderIntervalMs(
+            100,
+            TimeUnit.SECONDS.toNanos(1)),
+        equalTo(1000L));
+  }
+
   private void validateConsole(
       SuperConsoleEventBusListener listener,
       long timeMs,
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event.listener;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.cli.FakeBuckConfig;
+import com.facebook.buck.event.AbstractBuckEvent;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.event.TestEventConfigurator;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.parser.ParseEvent;
+import com.facebook.buck.rules.BuildEvent;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleDurationTracker;
+import com.facebook.buck.rules.BuildRuleEvent;
+import com.facebook.buck.rules.BuildRuleKeys;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.BuildRuleStatus;
+import com.facebook.buck.rules.BuildRuleSuccessType;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.step.StepEvent;
+import com.facebook.buck.test.TestResultSummaryVerbosity;
+import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.timing.SettableFakeClock;
+import com.facebook.buck.util.environment.DefaultExecutionEnvironment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CPU cost of a second of super console rendering during a build with many threads:
+ * ten frames, one every 100ms, as the render scheduler renders them by default.
+ */
+public class SuperConsoleRenderBenchmark {
+  @Param({"8", "64", "256"})
+  private int threadCount = 8;
+
+  private static final int THREAD_LINE_LIMIT = 10;
+  private static final long BUILD_START_TIME_MS = 1000;
+  private static final long CURRENT_TIME_MS = 60000;
+  private static final int FRAMES_PER_SECOND = 10;
+
+  private SuperConsoleEventBusListener listener;
+
+  @Before
+  public void setUpTest() throws Exception {
+    threadCount = 256;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    SettableFakeClock clock = new SettableFakeClock(CURRENT_TIME_MS, 0);
+    BuckEventBus eventBus = BuckEventBusFactory.newInstance(clock);
+    listener = new SuperConsoleEventBusListener(
+        new SuperConsoleConfig(
+            FakeBuckConfig.builder()
+                .setSections(
+                    ImmutableMap.of(
+                        "ui",
+                        ImmutableMap.of("thread_line_limit", Integer.toString(THREAD_LINE_LIMIT))))
+                .build()),
+        new TestConsole(),
+        clock,
+        TestResultSummaryVerbosity.of(false, false),
+        new DefaultExecutionEnvironment(
+            ImmutableMap.copyOf(System.getenv()),
+            System.getProperties()),
+        Optional.empty(),
+        Locale.US,
+        Paths.get("test.log"),
+        TimeZone.getTimeZone("UTC"));
+    eventBus.register(listener);
+
+    BuildEvent.Started buildStarted = BuildEvent.started(ImmutableSet.of("//some/package:all"));
+    post(eventBus, buildStarted, BUILD_START_TIME_MS, 0);
+    ParseEvent.Started parseStarted = ParseEvent.started(ImmutableSet.of());
+    post(eventBus, parseStarted, BUILD_START_TIME_MS, 0);
+    post(eventBus, ParseEvent.finished(parseStarted, Optional.empty()), BUILD_START_TIME_MS, 0);
+
+    SourcePathResolver pathResolver = new SourcePathResolver(new SourcePathRuleFinder(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer())));
+    BuildRuleDurationTracker durationTracker = new BuildRuleDurationTracker();
+    for (long threadId = 0; threadId < threadCount; threadId++) {
+      BuildRule rule = new FakeBuildRule(
+          BuildTargetFactory.newInstance("//some/package:target" + threadId),
+          pathResolver,
+          ImmutableSortedSet.of());
+      BuildRuleEvent.Started ruleStarted = BuildRuleEvent.started(rule, durationTracker);
+      post(eventBus, ruleStarted, CURRENT_TIME_MS - threadId * 100, threadId);
+      // Leave a quarter of the threads idle, as is typical towards the end of a build.
+      if (threadId % 4 == 0) {
+        post(
+            eventBus,
+            BuildRuleEvent.finished(
+                ruleStarted,
+                BuildRuleKeys.of(new RuleKey("aaaa")),
+                BuildRuleStatus.SUCCESS,
+                CacheResult.miss(),
+                Optional.empty(),
+                Optional.of(BuildRuleSuccessType.BUILT_LOCALLY),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty()),
+            CURRENT_TIME_MS - threadId * 50,
+            threadId);
+      } else {
+        post(
+            eventBus,
+            StepEvent.started("javac", "javac description", UUID.randomUUID()),
+            CURRENT_TIME_MS - threadId * 50,
+            threadId);
+      }
+    }
+  }
+
+  private static void post(BuckEventBus eventBus, AbstractBuckEvent event, long time, long thread) {
+    eventBus.postWithoutConfiguring(
+        TestEventConfigurator.configureTestEventAtTime(
+            event,
+            time,
+            TimeUnit.MILLISECONDS,
+            thread));
+  }
+
+  @Test
+  public void renderSecondCorrectness() throws Exception {
+    for (int frame = 0; frame < FRAMES_PER_SECOND; frame++) {
+      ImmutableList<String> lines = renderFrame(frame);
+      assertThat(
+          Iterables.size(Iterables.filter(lines, line -> line.startsWith(" |=> "))),
+          equalTo(THREAD_LINE_LIMIT));
+      assertThat(
+          Iterables.getLast(lines),
+          containsString(String.format("%d IDLE", threadCount / 4)));
+    }
+  }
+
+  @Benchmark
+  public void renderSecond(int reps) {
+    for (int i = 0; i < reps; i++) {
+      for (int frame = 0; frame < FRAMES_PER_SECOND; frame++) {
+        renderFrame(frame);
+      }
+    }
+  }
+
+  private ImmutableList<String> renderFrame(int frame) {
+    return listener.createRenderLinesAtTime(
+        CURRENT_TIME_MS + frame * TimeUnit.SECONDS.toMillis(1) / FRAMES_PER_SECOND);
+  }
+}
@@ -16,17 +16,26 @@
 
 package com.facebook.buck.jvm.java;
 
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
@@ -47,8 +56,8 @@ public class DefaultClassUsageFileWriterTest {
     Path testJarPath = filesystem.getPathForRelativePath("test.jar");
     Path testTwoJarPath = filesystem.getPathForRelativePath("test2.jar");
 
-    Path outputOne = filesystem.getPathForRelativePath("used-classes-one.json");
-    Path outputTwo = filesystem.getPathForRelativePath("used-classes-two.json");
+    Path outputOne = filesystem.getPathForRelativePath("used-classes-one.bin");
+    Path outputTwo = filesystem.getPathForRelativePath("used-classes-two.bin");
 
     FakeStandardJavaFileManager fakeFileManager = new FakeStandardJavaFileManager();
     fakeFileManager.addFile(testJarPath, OTHER_FILE_NAME, JavaFileObject.Kind.OTHER);
@@ -87,4 +96,105 @@ public class DefaultClassUsageFileWriterTest {
         new String(Files.readAllBytes(outputOne)),
         new String(Files.readAllBytes(outputTwo)));
   }
+
+  @Test
+  public void writtenFileCanBeReadBack() throws IOException {
+    ProjectFilesystem filesystem = FakeProjectFilesystem.createRealTempFilesystem();
+    Path testJarPath = filesystem.getPathForRelativePath("test.jar");
+    Path testTwoJarPath = filesystem.getPathForRelativePath("test2.jar");
+    Path output = filesystem.getPathForRelativePath("used-classes.bin");
+
+    FakeStandardJavaFileManager fakeFileManager = new FakeStandardJavaFileManager();
+    fakeFileManager.addFile(testTwoJarPath, "B", JavaFileObject.Kind.CLASS);
+    fakeFileManager.addFile(testJarPath, "B", JavaFileObject.Kind.CLASS);
+    fakeFileManager.addFile(testJarPath, "A", JavaFileObject.Kind.CLASS);
+
+    DefaultClassUsageFileWriter writer = new DefaultClassUsageFileWriter(output);
+    StandardJavaFileManager wrappedFileManager = writer.wrapFileManager(fakeFileManager);
+    for (JavaFileObject javaFileObject : wrappedFileManager.list(null, null, null, false)) {
+      javaFileObject.openInputStream();
+    }
+    writer.writeFile(filesystem);
+
+    assertEquals(
+        ImmutableMap.of(
+            "test.jar", ImmutableList.of("A", "B"),
+            "test2.jar", ImmutableList.of("B")),
+        DefaultClassUsageFileReader.loadClassUsageFile(output).toMap());
+  }
+
+  @Test
+  public void truncatedFilesAreRejected() throws IOException {
+    ProjectFilesystem filesystem = FakeProjectFilesystem.createRealTempFilesystem();
+    Path testJarPath = filesystem.getPathForRelativePath("test.jar");
+    Path testTwoJarPath = filesystem.getPathForRelativePath("test2.jar");
+    Path output = filesystem.getPathForRelativePath("used-classes.bin");
+
+    FakeStandardJavaFileManager fakeFileManager = new FakeStandardJavaFileManager();
+    fakeFileManager.addFile(testTwoJarPath, "B", JavaFileObject.Kind.CLASS);
+    fakeFileManager.addFile(testJarPath, "A", JavaFileObject.Kind.CLASS);
+
+    DefaultClassUsageFileWriter writer = new DefaultClassUsageFileWriter(output);
+    StandardJavaFileManager wrappedFileManager = writer.wrapFileManager(fakeFileManager);
+    for (JavaFileObject javaFileObject : wrappedFileManager.list(null, null, null, false)) {
+      javaFileObject.openInputStream();
+    }
+    writer.writeFile(filesystem);
+    byte[] contents = Files.readAllBytes(output);
+
+    // The header, the offsets of 4 strings, 2 jar records and 2 class indexes.
+    int tablesSize = 4 * 4 + 4 * 4 + 2 * 3 * 4 + 2 * 4;
+    for (int length = 0; length < tablesSize; length++) {
+      Files.write(output, Arrays.copyOf(contents, length));
+      try {
+        DefaultClassUsageFileReader.loadClassUsageFile(output);
+        fail("Loaded a class usage file truncated to " + length + " bytes");
+      } catch (IOException e) {
+        assertThat(e.getMessage(), startsWith("Invalid class usage file"));
+      }
+    }
+  }
+
+  @Test
+  public void outOfBoundsIndexesOffsetsAndLengthsAreRejected() throws IOException {
+    ProjectFilesystem filesystem = FakeProjectFilesystem.createRealTempFilesystem();
+    Path testJarPath = filesystem.getPathForRelativePath("test.jar");
+    Path testTwoJarPath = filesystem.getPathForRelativePath("test2.jar");
+    Path output = filesystem.getPathForRelativePath("used-classes.bin");
+
+    FakeStandardJavaFileManager fakeFileManager = new FakeStandardJavaFileManager();
+    fakeFileManager.addFile(testTwoJarPath, "B", JavaFileObject.Kind.CLASS);
+    fakeFileManager.addFile(testJarPath, "A", JavaFileObject.Kind.CLASS);
+
+    DefaultClassUsageFileWriter writer = new DefaultClassUsageFileWriter(output);
+    StandardJavaFileManager wrappedFileManager = writer.wrapFileManager(fakeFileManager);
+    for (JavaFileObject javaFileObject : wrappedFileManager.list(null, null, null, false)) {
+      javaFileObject.openInputStream();
+    }
+    writer.writeFile(filesystem);
+    byte[] contents = Files.readAllBytes(output);
+
+    // Every int in the tables, and the length of each string.
+    int tablesSize = 4 * 4 + 4 * 4 + 2 * 3 * 4 + 2 * 4;
+    List<Integer> positions = new ArrayList<>();
+    for (int position = 0; position < tablesSize; position += 4) {
+      positions.add(position);
+    }
+    for (int string = 0; string < 4; string++) {
+      positions.add(tablesSize + ByteBuffer.wrap(contents).getInt(4 * 4 + 4 * string));
+    }
+    for (int position : positions) {
+      for (int value : new int[] {-1, Integer.MAX_VALUE}) {
+        byte[] corrupt = contents.clone();
+        ByteBuffer.wrap(corrupt).putInt(position, value);
+        Files.write(output, corrupt);
+        try {
+          DefaultClassUsageFileReader.loadClassUsageFile(output);
+          fail("Loaded a class usage file with " + value + " at " + position);
+        } catch (IOException e) {
+          assertThat(e.getMessage(), startsWith("Invalid class usage file"));
+        }
+      }
+    }
+  }
 }
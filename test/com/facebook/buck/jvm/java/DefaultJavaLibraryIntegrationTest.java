@@ -35,7 +35,6 @@ import com.facebook.buck.artifact_cache.DirArtifactCacheTestUtil;
 import com.facebook.buck.artifact_cache.TestArtifactCaches;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
-import com.facebook.buck.json.HasJsonField;
 import com.facebook.buck.jvm.java.testutil.AbiCompilationModeTest;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
@@ -46,16 +45,14 @@ import com.facebook.buck.testutil.integration.ProjectWorkspace.ProcessResult;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.testutil.integration.TestDataHelper;
 import com.facebook.buck.testutil.integration.ZipInspector;
-import com.facebook.buck.util.ObjectMappers;
 import com.facebook.buck.util.environment.Platform;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Strings;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Ordering;
 
-import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -566,12 +563,7 @@ public class DefaultJavaLibraryIntegrationTest extends AbiCompilationModeTest {
     Path bizClassUsageFilePath = BuildTargets.getGenPath(
         filesystem,
         bizTarget,
-        "lib__%s__output/used-classes.json");
-
-    final List<String> lines = Files.readAllLines(
-        workspace.getPath(bizClassUsageFilePath), UTF_8);
-
-    assertEquals("Expected just one line of JSON", 1, lines.size());
+        "lib__%s__output/used-classes.bin");
 
     final String utilJarPath;
     if (compileAgainstAbis.equals(TRUE)) {
@@ -583,11 +575,10 @@ public class DefaultJavaLibraryIntegrationTest extends AbiCompilationModeTest {
     final String utilClassPath =
         MorePaths.pathWithPlatformSeparators("com/example/Util.class");
 
-    JsonNode jsonNode = ObjectMappers.READER.readTree(lines.get(0));
-    assertThat(jsonNode,
-        new HasJsonField(utilJarPath,
-            Matchers.equalTo(
-                ObjectMappers.legacyCreate().valueToTree(new String[]{utilClassPath}))));
+    assertEquals(
+        ImmutableMap.of(utilJarPath, ImmutableList.of(utilClassPath)),
+        DefaultClassUsageFileReader.loadClassUsageFile(workspace.getPath(bizClassUsageFilePath))
+            .toMap());
   }
 
   @Test
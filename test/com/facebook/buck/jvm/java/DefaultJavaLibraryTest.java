@@ -31,6 +31,7 @@ import static org.junit.Assert.fail;
 
 import com.facebook.buck.android.AndroidLibraryBuilder;
 import com.facebook.buck.android.AndroidPlatformTarget;
+import com.facebook.buck.cli.FakeBuckConfig;
 import com.facebook.buck.event.BuckEventBusFactory;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.jvm.core.JavaPackageFinder;
@@ -797,6 +798,48 @@ public class DefaultJavaLibraryTest extends AbiCompilationModeTest {
     assertThat(originalRuleKey, Matchers.not(equalTo(affectedRuleKey)));
   }
 
+  /**
+   * Tests that with source ABIs, a library compiles against the source ABI of its dep rather than
+   * waiting for the dep's full jar, which is still needed at runtime.
+   */
+  @Test
+  public void testCompilingAgainstSourceAbisDependsOnlyOnTheAbisOfDeps() throws Exception {
+    JavaBuckConfig javaBuckConfig = JavaBuckConfig.of(
+        FakeBuckConfig.builder()
+            .setSections(
+                "[" + JavaBuckConfig.SECTION + "]",
+                JavaBuckConfig.PROPERTY_COMPILE_AGAINST_ABIS + " = true",
+                "abi_generation_mode = source")
+            .build());
+    BuildTarget depTarget = BuildTargetFactory.newInstance("//:dep");
+    BuildTarget libraryTarget = BuildTargetFactory.newInstance("//:lib");
+    TargetNode<?, ?> depNode = JavaLibraryBuilder.createBuilder(depTarget, javaBuckConfig)
+        .addSrc(Paths.get("Dep.java"))
+        .build();
+    TargetNode<?, ?> libraryNode = JavaLibraryBuilder.createBuilder(libraryTarget, javaBuckConfig)
+        .addSrc(Paths.get("Lib.java"))
+        .addDep(depTarget)
+        .build();
+    ruleResolver = new BuildRuleResolver(
+        TargetGraphFactory.newInstance(depNode, libraryNode),
+        new DefaultTargetNodeToBuildRuleTransformer());
+
+    DefaultJavaLibrary library = (DefaultJavaLibrary) ruleResolver.requireRule(libraryTarget);
+    BuildRule dep = ruleResolver.requireRule(depTarget);
+    BuildRule depSourceAbi = ruleResolver.requireRule(HasJavaAbi.getSourceAbiJar(depTarget));
+    BuildRule librarySourceAbi =
+        ruleResolver.requireRule(HasJavaAbi.getSourceAbiJar(libraryTarget));
+
+    assertThat(depSourceAbi, Matchers.instanceOf(CalculateAbiFromSource.class));
+    assertThat(library.getBuildDeps(), Matchers.hasItem(depSourceAbi));
+    assertThat(library.getBuildDeps(), Matchers.not(Matchers.hasItem(dep)));
+    assertThat(librarySourceAbi.getBuildDeps(), Matchers.hasItem(depSourceAbi));
+    assertThat(librarySourceAbi.getBuildDeps(), Matchers.not(Matchers.hasItem(dep)));
+    assertEquals(
+        ImmutableList.of(depTarget),
+        library.getRuntimeDeps().collect(MoreCollectors.toImmutableList()));
+  }
+
   /**
    * Tests that input-based rule keys work properly with simple Java library deps.
    */
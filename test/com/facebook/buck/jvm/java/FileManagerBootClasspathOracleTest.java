@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.FileStatus;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+public class FileManagerBootClasspathOracleTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final Cache<ImmutableMap<Path, FileStatus>, Map<String, ImmutableSet<String>>>
+      sharedPackagesContents = CacheBuilder.newBuilder().build();
+
+  @Test
+  public void compilesAgainstTheSameJarsShareThePackagesListed() throws IOException {
+    File bootJar = tmp.newFile("boot.jar");
+    writeJar(bootJar, "java/lang/Object.class", "java/lang/String.class");
+
+    try (StandardJavaFileManager first = newFileManager(bootJar);
+         StandardJavaFileManager second = newFileManager(bootJar)) {
+      FileManagerBootClasspathOracle firstOracle =
+          new FileManagerBootClasspathOracle(first, sharedPackagesContents);
+      assertTrue(firstOracle.isOnBootClasspath("java.lang.String"));
+      assertFalse(firstOracle.isOnBootClasspath("java.lang.Integer"));
+
+      FileManagerBootClasspathOracle secondOracle =
+          new FileManagerBootClasspathOracle(second, sharedPackagesContents);
+      assertTrue(secondOracle.isOnBootClasspath("java.lang.Object"));
+      assertEquals(1, sharedPackagesContents.size());
+    }
+  }
+
+  @Test
+  public void rewritingABootJarIsNoticed() throws IOException {
+    File bootJar = tmp.newFile("boot.jar");
+    writeJar(bootJar, "java/lang/Object.class");
+    try (StandardJavaFileManager fileManager = newFileManager(bootJar)) {
+      assertFalse(
+          new FileManagerBootClasspathOracle(fileManager, sharedPackagesContents)
+              .isOnBootClasspath("java.lang.String"));
+    }
+
+    writeJar(bootJar, "java/lang/Object.class", "java/lang/String.class");
+    try (StandardJavaFileManager fileManager = newFileManager(bootJar)) {
+      assertTrue(
+          new FileManagerBootClasspathOracle(fileManager, sharedPackagesContents)
+              .isOnBootClasspath("java.lang.String"));
+    }
+  }
+
+  @Test
+  public void directoriesOnTheBootClasspathAreNotShared() throws IOException {
+    File bootDir = tmp.newFolder("boot");
+    try (StandardJavaFileManager fileManager = newFileManager(bootDir)) {
+      assertFalse(
+          new FileManagerBootClasspathOracle(fileManager, sharedPackagesContents)
+              .isOnBootClasspath("java.lang.Object"));
+    }
+    assertEquals(0, sharedPackagesContents.size());
+  }
+
+  private static StandardJavaFileManager newFileManager(File bootClasspath) throws IOException {
+    StandardJavaFileManager fileManager =
+        ToolProvider.getSystemJavaCompiler().getStandardFileManager(null, null, null);
+    fileManager.setLocation(StandardLocation.PLATFORM_CLASS_PATH, ImmutableList.of(bootClasspath));
+    return fileManager;
+  }
+
+  private static void writeJar(File jar, String... entries) throws IOException {
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+      for (String entry : entries) {
+        out.putNextEntry(new ZipEntry(entry));
+        out.closeEntry();
+      }
+    }
+  }
+}
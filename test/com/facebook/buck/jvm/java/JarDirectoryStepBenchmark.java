@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableSortedSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Measures merging many jars of deflated class files into one, as is done when building a
+ * java_binary.
+ */
+public class JarDirectoryStepBenchmark {
+  @Param({"50", "500"})
+  private int jarCount = 50;
+
+  @Param({"20"})
+  private int entriesPerJar = 20;
+
+  private static final int ENTRY_SIZE = 4096;
+
+  private TemporaryPaths tmp = new TemporaryPaths();
+  private ProjectFilesystem filesystem;
+  private ImmutableSortedSet<Path> inputJars;
+
+  @Before
+  public void setUpTest() throws Exception {
+    jarCount = 10;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    tmp.before();
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+
+    // Fill the entries with something that compresses roughly as well as class files do.
+    Random random = new Random(0);
+    byte[] content = new byte[ENTRY_SIZE];
+    ImmutableSortedSet.Builder<Path> jars = ImmutableSortedSet.naturalOrder();
+    for (int jar = 0; jar < jarCount; jar++) {
+      Path jarPath = tmp.getRoot().resolve("lib" + jar + ".jar");
+      try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jarPath))) {
+        for (int entry = 0; entry < entriesPerJar; entry++) {
+          for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(8));
+          }
+          out.putNextEntry(new ZipEntry(String.format("com/example/lib%d/C%d.class", jar, entry)));
+          out.write(content);
+          out.closeEntry();
+        }
+      }
+      jars.add(jarPath);
+    }
+    inputJars = jars.build();
+  }
+
+  @After
+  @AfterExperiment
+  public void tearDown() {
+    tmp.after();
+  }
+
+  @Test
+  public void mergeJarsCorrectness() throws Exception {
+    Path output = runJarDirectoryStep();
+    try (ZipFile zip = new ZipFile(output.toFile())) {
+      long classCount = zip.stream()
+          .filter(entry -> entry.getName().endsWith(".class"))
+          .count();
+      assertEquals(jarCount * entriesPerJar, classCount);
+    }
+  }
+
+  @Benchmark
+  public void mergeJars(int reps) throws Exception {
+    for (int i = 0; i < reps; i++) {
+      runJarDirectoryStep();
+    }
+  }
+
+  private Path runJarDirectoryStep() throws IOException {
+    Path output = tmp.getRoot().resolve("output.jar");
+    Files.deleteIfExists(output);
+    JarDirectoryStep step = new JarDirectoryStep(
+        filesystem,
+        output,
+        inputJars,
+        /* main class */ null,
+        /* manifest file */ null);
+    assertEquals(0, step.execute(TestExecutionContext.newInstance()).getExitCode());
+    return output;
+  }
+}
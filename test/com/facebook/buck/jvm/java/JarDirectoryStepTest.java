@@ -21,6 +21,7 @@ import static java.util.jar.Attributes.Name.IMPLEMENTATION_VERSION;
 import static java.util.jar.Attributes.Name.MANIFEST_VERSION;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasItem;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -38,10 +39,12 @@ import com.facebook.buck.zip.CustomZipOutputStream;
 import com.facebook.buck.zip.ZipConstants;
 import com.facebook.buck.zip.ZipOutputStreams;
 import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
 
 import org.apache.commons.compress.archivers.zip.ZipUtil;
@@ -66,7 +69,9 @@ import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -494,6 +499,60 @@ public class JarDirectoryStepTest {
     assertEquals("peas", readAttributes.getValue("From-Zip"));
   }
 
+  @Test
+  public void deflatedEntriesAreCopiedWithoutBeingRecompressed() throws IOException {
+    byte[] data = Strings.repeat("compress me please ", 1000).getBytes(UTF_8);
+
+    // Use a compression level we'd never pick ourselves, so that recompressing would show.
+    Path inputJar = folder.getRoot().resolve("input.jar");
+    try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(inputJar))) {
+      zos.setLevel(Deflater.BEST_SPEED);
+      zos.putNextEntry(new ZipEntry("deflated.txt"));
+      zos.write(data);
+      zos.closeEntry();
+
+      ZipEntry stored = new ZipEntry("stored.txt");
+      stored.setMethod(ZipEntry.STORED);
+      stored.setSize(data.length);
+      stored.setCompressedSize(data.length);
+      stored.setCrc(Hashing.crc32().hashBytes(data).padToLong());
+      zos.putNextEntry(stored);
+      zos.write(data);
+      zos.closeEntry();
+    }
+
+    Path outputJar = folder.getRoot().resolve("output.jar");
+    JarDirectoryStep step = new JarDirectoryStep(
+        new ProjectFilesystem(folder.getRoot()),
+        outputJar,
+        ImmutableSortedSet.of(inputJar),
+        /* main class */ null,
+        /* manifest file */ null);
+    assertEquals(0, step.execute(TestExecutionContext.newInstance()).getExitCode());
+
+    try (ZipFile input = new ZipFile(inputJar.toFile());
+         ZipFile output = new ZipFile(outputJar.toFile())) {
+      ZipEntry inputEntry = input.getEntry("deflated.txt");
+      ZipEntry outputEntry = output.getEntry("deflated.txt");
+      assertEquals(ZipEntry.DEFLATED, outputEntry.getMethod());
+      assertEquals(inputEntry.getCrc(), outputEntry.getCrc());
+      assertEquals(inputEntry.getCompressedSize(), outputEntry.getCompressedSize());
+      assertEquals(ZipEntry.STORED, output.getEntry("stored.txt").getMethod());
+    }
+
+    // Reading the jar as a stream checks the local headers and CRCs as well.
+    try (ZipInputStream is = new ZipInputStream(Files.newInputStream(outputJar))) {
+      int seen = 0;
+      for (ZipEntry entry = is.getNextEntry(); entry != null; entry = is.getNextEntry()) {
+        if (entry.getName().endsWith(".txt")) {
+          assertArrayEquals(entry.getName(), data, ByteStreams.toByteArray(is));
+          seen++;
+        }
+      }
+      assertEquals(2, seen);
+    }
+  }
+
   private Manifest createManifestWithExampleSection(Map<String, String> attributes) {
     Manifest manifest = new Manifest();
     Attributes attrs = new Attributes();
@@ -31,6 +31,8 @@ import com.facebook.buck.step.TargetDevice;
 import com.facebook.buck.testutil.MoreAsserts;
 import com.facebook.buck.util.MoreCollectors;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 
 import org.hamcrest.Matchers;
@@ -134,6 +136,31 @@ public class JavaTestRuleTest {
             transitiveDep.getBuildTarget()));
   }
 
+  @Test
+  public void testClassesAreShardedByTheirPreviousDurations() {
+    ImmutableList<ImmutableSet<String>> shards = JavaTest.shardTestClasses(
+        ImmutableSet.of("ATest", "BTest", "CTest", "DTest", "ETest"),
+        ImmutableMap.of("ATest", 100L, "BTest", 60L, "CTest", 50L, "DTest", 10L),
+        2);
+
+    // ETest hasn't been run before, so it's assumed to take the average of the others, 55ms.
+    assertEquals(
+        ImmutableList.of(
+            ImmutableSet.of("ATest", "CTest"),
+            ImmutableSet.of("BTest", "ETest", "DTest")),
+        shards);
+  }
+
+  @Test
+  public void testClassesAreNotShardedMoreThanThereAreClasses() {
+    ImmutableList<ImmutableSet<String>> shards = JavaTest.shardTestClasses(
+        ImmutableSet.of("ATest", "BTest"),
+        ImmutableMap.of(),
+        4);
+
+    assertEquals(ImmutableList.of(ImmutableSet.of("ATest"), ImmutableSet.of("BTest")), shards);
+  }
+
   private JavaTest newRule(ImmutableList<String> vmArgs) throws NoSuchBuildTargetException {
     return JavaTestBuilder
         .createBuilder(BuildTargetFactory.newInstance("//example:test"))
@@ -17,6 +17,7 @@
 package com.facebook.buck.jvm.java;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -46,6 +47,8 @@ import com.google.common.collect.ImmutableSortedSet;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -195,6 +198,60 @@ public class Jsr199JavacIntegrationTest {
         new String(Files.readAllBytes(pathToSrcsList), StandardCharsets.UTF_8).trim());
   }
 
+  @Test
+  public void abiCompilationWritesStubsWithoutAnalyzingMethodBodies()
+      throws IOException, InterruptedException {
+    Path exampleJava = tmp.newFile("AbiExample.java");
+    Files.write(
+        exampleJava,
+        Joiner.on('\n')
+            .join(
+                "package com.example;",
+                "public class AbiExample {",
+                // A type error which javac would only find when attributing the method body.
+                "  public int get() { return \"not an int\"; }",
+                "  private void hidden() {}",
+                "}")
+            .getBytes(Charsets.UTF_8));
+    Path outputDirectory = tmp.newFolder("abi-out");
+
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    JavacExecutionContext javacExecutionContext = JavacExecutionContext.of(
+        new JavacEventSinkToBuckEventBusBridge(executionContext.getBuckEventBus()),
+        executionContext.getStdErr(),
+        executionContext.getClassLoaderCache(),
+        executionContext.getVerbosity(),
+        executionContext.getCellPathResolver(),
+        executionContext.getJavaPackageFinder(),
+        createProjectFilesystem(),
+        NoOpClassUsageFileWriter.instance(),
+        executionContext.getEnvironment(),
+        executionContext.getProcessExecutor(),
+        ImmutableList.of(),
+        Optional.empty());
+
+    int exitCode = new JdkProvidedInMemoryJavac().buildWithClasspath(
+        javacExecutionContext,
+        BuildTargetFactory.newInstance("//some:example#source-abi"),
+        ImmutableList.of(
+            "-source", JavacOptions.TARGETED_JAVA_VERSION,
+            "-target", JavacOptions.TARGETED_JAVA_VERSION,
+            "-d", outputDirectory.toString()),
+        ImmutableList.of(),
+        ImmutableSortedSet.of(Paths.get("AbiExample.java")),
+        pathToSrcsList,
+        Optional.empty(),
+        Javac.CompilationMode.ABI);
+    assertEquals("javac should exit with code 0.", 0, exitCode);
+
+    ClassNode stub = new ClassNode();
+    new ClassReader(
+        Files.readAllBytes(outputDirectory.resolve("com/example/AbiExample.class")))
+        .accept(stub, 0);
+    assertTrue(stub.methods.stream().anyMatch(method -> method.name.equals("get")));
+    assertFalse(stub.methods.stream().anyMatch(method -> method.name.equals("hidden")));
+  }
+
   public static final class MockJavac implements JavaCompiler {
 
     public MockJavac() {
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testrunner.LoadedClassesRecorder;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class LoadedClassesFootprintTest {
+
+  private static final String CONFIGURATION = "java: java\ntests: [com.example.FooTest]\n";
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private Path outputDirectory;
+  private Path classesDirectory;
+  private Path jar;
+  private Path footprintFile;
+
+  @Before
+  public void setUp() throws IOException {
+    outputDirectory = tmp.newFolder("output");
+    classesDirectory = tmp.newFolder("classes");
+    jar = tmp.getRoot().resolve("lib.jar");
+    footprintFile = LoadedClassesFootprint.getFootprintFile(outputDirectory, "all");
+
+    writeClassFile("com/example/FooTest.class", "test");
+    writeJar("lib");
+    Files.write(
+        LoadedClassesFootprint.getConfigurationFile(outputDirectory),
+        CONFIGURATION.getBytes(UTF_8));
+    Files.write(
+        footprintFile,
+        ImmutableList.of(
+            crc("lib") + " com/example/Lib.class",
+            crc("test") + " com/example/FooTest.class"),
+        UTF_8);
+  }
+
+  @Test
+  public void unchangedClassesAreUnchanged() throws IOException {
+    assertTrue(isUnchanged(CONFIGURATION));
+  }
+
+  @Test
+  public void changingALoadedClassInAJarIsAChange() throws IOException {
+    writeJar("lib, changed");
+    assertFalse(isUnchanged(CONFIGURATION));
+  }
+
+  @Test
+  public void replacingAJarWithOneOfTheSameSizeAndModificationTimeIsAChange()
+      throws IOException {
+    assertTrue(isUnchanged(CONFIGURATION));
+
+    // Like a jar fetched again from the artifact cache, which always gets the same modification
+    // time.
+    Path replacement = tmp.getRoot().resolve("replacement.jar");
+    writeJar(replacement, "lix");
+    Files.setLastModifiedTime(replacement, Files.getLastModifiedTime(jar));
+    assertEquals(Files.size(jar), Files.size(replacement));
+    Files.move(replacement, jar, StandardCopyOption.REPLACE_EXISTING);
+
+    assertFalse(isUnchanged(CONFIGURATION));
+  }
+
+  @Test
+  public void changingALoadedClassInADirectoryIsAChange() throws IOException {
+    writeClassFile("com/example/FooTest.class", "test, changed");
+    assertFalse(isUnchanged(CONFIGURATION));
+  }
+
+  @Test
+  public void changingAClassWhichWasNotLoadedIsNotAChange() throws IOException {
+    writeClassFile("com/example/Unused.class", "unused");
+    assertTrue(isUnchanged(CONFIGURATION));
+  }
+
+  @Test
+  public void shadowingALoadedClassIsAChange() throws IOException {
+    writeClassFile("com/example/Lib.class", "shadowed lib");
+    assertFalse(isUnchanged(CONFIGURATION));
+  }
+
+  @Test
+  public void removingALoadedClassIsAChange() throws IOException {
+    Files.delete(jar);
+    assertFalse(isUnchanged(CONFIGURATION));
+  }
+
+  @Test
+  public void changingTheConfigurationIsAChange() throws IOException {
+    assertFalse(isUnchanged(CONFIGURATION + "code coverage: true\n"));
+  }
+
+  @Test
+  public void missingOrMalformedFootprintsAreChanges() throws IOException {
+    Files.write(footprintFile, ImmutableList.of("com/example/Lib.class"), UTF_8);
+    assertFalse(isUnchanged(CONFIGURATION));
+
+    Files.delete(footprintFile);
+    assertFalse(isUnchanged(CONFIGURATION));
+  }
+
+  @Test
+  public void footprintsOfJvmsWhichWouldNotBeRunNowAreChanges() throws IOException {
+    Files.copy(footprintFile, LoadedClassesFootprint.getFootprintFile(outputDirectory, "shard-1"));
+    assertFalse(isUnchanged(CONFIGURATION));
+  }
+
+  @Test
+  public void footprintsWrittenByTheTestRunnerAreRead() throws Exception {
+    String loaded = Loaded.class.getName().replace('.', '/') + ".class";
+    String notLoaded = NotLoaded.class.getName().replace('.', '/') + ".class";
+    byte[] loadedBytes = readClassFile(loaded);
+    writeClassFile(loaded, loadedBytes);
+    writeClassFile(notLoaded, readClassFile(notLoaded));
+    try (URLClassLoader classLoader = new URLClassLoader(
+        new URL[] {classesDirectory.toUri().toURL(), jar.toUri().toURL()},
+        /* parent */ null)) {
+      classLoader.loadClass(Loaded.class.getName());
+      LoadedClassesRecorder.record(footprintFile.toFile(), classLoader);
+    }
+
+    assertEquals(
+        ImmutableList.of(Long.toHexString(crc(loadedBytes)) + " " + loaded),
+        Files.readAllLines(footprintFile, UTF_8));
+    assertTrue(isUnchanged(CONFIGURATION));
+
+    writeClassFile(notLoaded, "changed");
+    assertTrue(isUnchanged(CONFIGURATION));
+
+    writeClassFile(loaded, "changed");
+    assertFalse(isUnchanged(CONFIGURATION));
+  }
+
+  private boolean isUnchanged(String configuration) throws IOException {
+    return LoadedClassesFootprint.isUnchanged(
+        configuration,
+        outputDirectory,
+        ImmutableSet.of("all"),
+        ImmutableList.of(classesDirectory, jar));
+  }
+
+  private void writeClassFile(String name, String contents) throws IOException {
+    writeClassFile(name, contents.getBytes(UTF_8));
+  }
+
+  private void writeClassFile(String name, byte[] contents) throws IOException {
+    Path classFile = classesDirectory.resolve(name);
+    Files.createDirectories(classFile.getParent());
+    Files.write(classFile, contents);
+  }
+
+  private static byte[] readClassFile(String name) throws IOException {
+    try (InputStream in = LoadedClassesFootprintTest.class.getClassLoader()
+        .getResourceAsStream(name)) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+
+  private void writeJar(String libContents) throws IOException {
+    // Give each version of the jar a different modification time, as it's part of what tells them
+    // apart.
+    FileTime lastModifiedTime = Files.exists(jar) ?
+        FileTime.fromMillis(Files.getLastModifiedTime(jar).toMillis() + 1000) :
+        FileTime.fromMillis(1000);
+    writeJar(jar, libContents);
+    Files.setLastModifiedTime(jar, lastModifiedTime);
+  }
+
+  private static void writeJar(Path jar, String libContents) throws IOException {
+    try (OutputStream out = Files.newOutputStream(jar);
+         ZipOutputStream zip = new ZipOutputStream(out)) {
+      zip.putNextEntry(new ZipEntry("com/example/Lib.class"));
+      zip.write(libContents.getBytes(UTF_8));
+      zip.closeEntry();
+    }
+  }
+
+  private static String crc(String contents) {
+    return Long.toHexString(crc(contents.getBytes(UTF_8)));
+  }
+
+  private static long crc(byte[] contents) {
+    CRC32 crc = new CRC32();
+    crc.update(contents);
+    return crc.getValue();
+  }
+
+  /** Loaded by the round trip test from a class loader of its own. */
+  public static class Loaded {
+  }
+
+  /** On the classpath of the round trip test, but never loaded from it. */
+  public static class NotLoaded {
+  }
+}
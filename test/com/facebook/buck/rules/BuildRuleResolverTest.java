@@ -21,6 +21,8 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import com.facebook.buck.jvm.java.JavaBinary;
@@ -147,4 +149,23 @@ public class BuildRuleResolverTest {
     resolver.getRuleWithType(BuildTargetFactory.newInstance("//foo:bar"), JavaBinary.class);
   }
 
+  @Test
+  public void sharedValuesAreSharedByOneResolverOnly() {
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    StringBuilder value = resolver.computeSharedValueIfAbsent(
+        "key",
+        StringBuilder.class,
+        StringBuilder::new);
+    assertSame(
+        value,
+        resolver.computeSharedValueIfAbsent("key", StringBuilder.class, StringBuilder::new));
+
+    BuildRuleResolver otherResolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    assertNotSame(
+        value,
+        otherResolver.computeSharedValueIfAbsent("key", StringBuilder.class, StringBuilder::new));
+  }
+
 }
@@ -26,6 +26,7 @@ import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -61,6 +62,7 @@ import com.facebook.buck.rules.keys.RuleKeyFactories;
 import com.facebook.buck.rules.keys.RuleKeyFieldLoader;
 import com.facebook.buck.rules.keys.SupportsDependencyFileRuleKey;
 import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
+import com.facebook.buck.rules.keys.SupportsPreprocessedRuleKey;
 import com.facebook.buck.shell.Genrule;
 import com.facebook.buck.shell.GenruleBuilder;
 import com.facebook.buck.step.AbstractExecutionStep;
@@ -102,6 +104,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 import com.google.common.hash.HashCode;
 import com.google.common.util.concurrent.AbstractListeningExecutorService;
 import com.google.common.util.concurrent.Futures;
@@ -2728,6 +2731,155 @@ public class CachingBuildEngineTest {
           Matchers.not(hasItem(staleDepFileRuleKey)));
     }
 
+    @Test
+    public void preprocessedBasedCacheHitWhenManifestMisses() throws Exception {
+      // Create a simple rule which just writes a file, and whose input always preprocesses to
+      // the same thing.
+      BuildTarget target = BuildTargetFactory.newInstance("//:rule");
+      BuildRuleParams params =
+          new FakeBuildRuleParamsBuilder(target)
+              .setProjectFilesystem(filesystem)
+              .build();
+      final SourcePath input =
+          new PathSourcePath(filesystem, filesystem.getRootPath().getFileSystem().getPath("input"));
+      filesystem.writeContentsToPath("contents", pathResolver.getRelativePath(input));
+      final Path output = Paths.get("output");
+      final Path preprocessedOutput = Paths.get("preprocessed");
+      PreprocessedBuildRule rule =
+          new PreprocessedBuildRule(params) {
+            @AddToRuleKey
+            private final SourcePath path = input;
+            @Override
+            public ImmutableList<Step> getBuildSteps(
+                BuildContext context,
+                BuildableContext buildableContext) {
+              buildableContext.recordArtifact(output);
+              return ImmutableList.of(
+                  new WriteFileStep(filesystem, "stuff", output, /* executable */ false));
+            }
+            @Override
+            public ImmutableList<Step> getPreprocessSteps(BuildContext context) {
+              return ImmutableList.of(
+                  new WriteFileStep(
+                      filesystem,
+                      "preprocessed",
+                      preprocessedOutput,
+                      /* executable */ false));
+            }
+            @Override
+            public Path getPreprocessedOutput() {
+              return preprocessedOutput;
+            }
+            @Override
+            public Predicate<SourcePath> getCoveredByDepFilePredicate() {
+              return (SourcePath path) -> true;
+            }
+            @Override
+            public Predicate<SourcePath> getExistenceOfInterestPredicate() {
+              return (SourcePath path) -> false;
+            }
+            @Override
+            public ImmutableList<SourcePath> getInputsAfterBuildingLocally(BuildContext context) {
+              return ImmutableList.of(input);
+            }
+
+            @Override
+            public SourcePath getSourcePathToOutput() {
+              return new ExplicitBuildTargetSourcePath(getBuildTarget(), output);
+            }
+          };
+
+      // Build the rule locally, which stores it in the cache under the preprocessed key as well.
+      BuildResult result =
+          preprocessedCachingBuildEngine().build(
+              buildContext,
+              TestExecutionContext.newInstance(),
+              rule).get();
+      assertThat(
+          getSuccess(result),
+          equalTo(BuildRuleSuccessType.BUILT_LOCALLY));
+      OnDiskBuildInfo onDiskBuildInfo =
+          buildContext.createOnDiskBuildInfoFor(target, filesystem, buildInfoStore);
+      RuleKey preprocessedRuleKey =
+          onDiskBuildInfo.getRuleKey(BuildInfo.MetadataKey.PREPROCESSED_RULE_KEY).get();
+      RuleKey builtDepFileRuleKey =
+          onDiskBuildInfo.getRuleKey(BuildInfo.MetadataKey.DEP_FILE_RULE_KEY).get();
+      LazyPath fetchedArtifact = LazyPath.ofInstance(tmp.newFile("fetched_artifact.zip"));
+      assertThat(
+          cache.fetch(preprocessedRuleKey, fetchedArtifact).getType(),
+          equalTo(CacheResultType.HIT));
+      assertFalse(filesystem.exists(preprocessedOutput));
+
+      // Change the input in a way the manifest doesn't know about, but which preprocesses to the
+      // same thing, and build again from scratch.
+      filesystem.writeContentsToPath("other contents", pathResolver.getRelativePath(input));
+      fileHashCache.invalidate(pathResolver.getAbsolutePath(input));
+      filesystem.deleteFileAtPath(output);
+      defaultRuleKeyFactory =
+          new DefaultRuleKeyFactory(FIELD_LOADER, fileHashCache, pathResolver, ruleFinder);
+      inputBasedRuleKeyFactory = new InputBasedRuleKeyFactory(
+          FIELD_LOADER,
+          fileHashCache,
+          pathResolver,
+          ruleFinder,
+          NO_INPUT_FILE_SIZE_LIMIT);
+      CachingBuildEngine cachingBuildEngine = preprocessedCachingBuildEngine();
+      result =
+          cachingBuildEngine.build(
+              buildContext,
+              TestExecutionContext.newInstance(),
+              rule).get();
+      assertThat(
+          getSuccess(result),
+          equalTo(BuildRuleSuccessType.FETCHED_FROM_CACHE_PREPROCESSED));
+      assertTrue(filesystem.exists(output));
+
+      // The dep-file rule key is re-calculated for the current input, and the manifest now has an
+      // entry for it, so the next lookup doesn't need to preprocess.
+      RuleKey depFileRuleKey =
+          buildContext.createOnDiskBuildInfoFor(target, filesystem, buildInfoStore)
+              .getRuleKey(BuildInfo.MetadataKey.DEP_FILE_RULE_KEY)
+              .get();
+      assertThat(depFileRuleKey, Matchers.not(equalTo(builtDepFileRuleKey)));
+      Path fetchedManifest = tmp.newFile("fetched_manifest");
+      assertThat(
+          cache.fetch(
+              cachingBuildEngine.getManifestRuleKey(rule, buildContext.getEventBus()).get(),
+              LazyPath.ofInstance(fetchedManifest)).getType(),
+          equalTo(CacheResultType.HIT));
+      assertThat(
+          loadManifest(fetchedManifest).toMap().keySet(),
+          equalTo(ImmutableSet.of(builtDepFileRuleKey, depFileRuleKey)));
+      assertThat(
+          cache.fetch(
+              depFileRuleKey,
+              LazyPath.ofInstance(tmp.newFile("fetched_dep_file_artifact.zip"))).getType(),
+          equalTo(CacheResultType.HIT));
+
+      // The event for the rule tells which cache check hit.
+      BuildRuleEvent.Finished finished =
+          Iterables.getLast(
+              Iterables.filter(listener.getEvents(), BuildRuleEvent.Finished.class));
+      assertThat(
+          finished.getCacheStepType(),
+          equalTo(Optional.of(BuildRuleCacheEvent.CacheStepType.PREPROCESSED_BASED)));
+    }
+
+    private CachingBuildEngine preprocessedCachingBuildEngine() {
+      return cachingBuildEngineFactory()
+          .setDepFiles(CachingBuildEngine.DepFiles.CACHE_PREPROCESSED)
+          .setRuleKeyFactories(
+              RuleKeyFactories.of(
+                  defaultRuleKeyFactory,
+                  inputBasedRuleKeyFactory,
+                  new DefaultDependencyFileRuleKeyFactory(
+                      FIELD_LOADER,
+                      fileHashCache,
+                      pathResolver,
+                      ruleFinder)))
+          .build();
+    }
+
   }
 
   public static class UncachableRuleTests extends CommonFixture {
@@ -3504,6 +3656,19 @@ public class CachingBuildEngineTest {
     }
   }
 
+  private abstract static class PreprocessedBuildRule
+      extends DepFileBuildRule
+      implements SupportsPreprocessedRuleKey {
+    public PreprocessedBuildRule(
+        BuildRuleParams buildRuleParams) {
+      super(buildRuleParams);
+    }
+    @Override
+    public boolean usePreprocessedRuleKey() {
+      return true;
+    }
+  }
+
   private static class RuleWithSteps extends AbstractBuildRule {
 
     private final ImmutableList<Step> steps;
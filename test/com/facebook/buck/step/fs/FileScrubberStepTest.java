@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.FileContentsScrubber;
+import com.facebook.buck.io.MappedFileContentsScrubber;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FileScrubberStepTest {
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void mappedScrubbersShareOneMappingAndTruncateToItsLimit() throws Exception {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    Path path = Paths.get("file");
+    filesystem.writeBytesToPath(new byte[] {1, 2, 3, 4, 5, 6}, path);
+
+    List<ByteBuffer> buffers = new ArrayList<>();
+    MappedFileContentsScrubber zeroFirst = contents -> {
+      buffers.add(contents);
+      contents.put((byte) 0);
+    };
+    MappedFileContentsScrubber dropLast = contents -> {
+      buffers.add(contents);
+      contents.limit(contents.limit() - 2);
+    };
+    FileContentsScrubber zeroSecond = channel -> {
+      assertEquals(4, channel.size());
+      channel.write(ByteBuffer.wrap(new byte[] {0, 0}));
+    };
+
+    FileScrubberStep step =
+        new FileScrubberStep(filesystem, path, ImmutableList.of(zeroFirst, dropLast, zeroSecond));
+    assertTrue(step.execute(TestExecutionContext.newInstance()).isSuccess());
+
+    assertSame(buffers.get(0), buffers.get(1));
+    assertArrayEquals(
+        new byte[] {0, 0, 3, 4},
+        Files.readAllBytes(filesystem.resolve(path)));
+  }
+}
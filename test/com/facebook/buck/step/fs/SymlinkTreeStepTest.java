@@ -17,11 +17,13 @@
 package com.facebook.buck.step.fs;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.TestExecutionContext;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 import org.junit.Rule;
@@ -29,8 +31,11 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.Optional;
 
 public class SymlinkTreeStepTest {
@@ -39,7 +44,7 @@ public class SymlinkTreeStepTest {
   public final TemporaryFolder tmpDir = new TemporaryFolder();
 
   @Test
-  public void testSymlinkFiles() throws IOException {
+  public void testSymlinkFiles() throws IOException, InterruptedException {
 
     ProjectFilesystem projectFilesystem = new ProjectFilesystem(tmpDir.getRoot().toPath());
 
@@ -76,4 +81,59 @@ public class SymlinkTreeStepTest {
 
   }
 
+  @Test
+  public void testOnlyChangedLinksAreReplaced() throws IOException, InterruptedException {
+    ProjectFilesystem projectFilesystem = new ProjectFilesystem(tmpDir.getRoot().toPath());
+    ExecutionContext context = TestExecutionContext.newInstance();
+    Path root = Paths.get("symlink-tree-root");
+    for (String source : ImmutableList.of("source1", "source2", "source3")) {
+      projectFilesystem.writeContentsToPath(source, Paths.get(source));
+    }
+
+    Path unchanged = Paths.get("a", "unchanged");
+    Path retargeted = Paths.get("a", "retargeted");
+    Path removed = Paths.get("b", "removed");
+    Path becomesDirectory = Paths.get("c");
+    Path added = Paths.get("c", "added");
+    assertTrue(
+        new SymlinkTreeStep(
+            projectFilesystem,
+            root,
+            ImmutableMap.of(
+                unchanged, Paths.get("source1"),
+                retargeted, Paths.get("source1"),
+                removed, Paths.get("source1"),
+                becomesDirectory, Paths.get("source1")))
+            .execute(context)
+            .isSuccess());
+    projectFilesystem.writeContentsToPath("stray", root.resolve("a/stray-file"));
+    FileTime unchangedTime = Files.getLastModifiedTime(
+        projectFilesystem.resolve(root.resolve(unchanged)),
+        LinkOption.NOFOLLOW_LINKS);
+
+    assertTrue(
+        new SymlinkTreeStep(
+            projectFilesystem,
+            root,
+            ImmutableMap.of(
+                unchanged, Paths.get("source1"),
+                retargeted, Paths.get("source2"),
+                added, Paths.get("source3")))
+            .execute(context)
+            .isSuccess());
+
+    assertEquals(
+        unchangedTime,
+        Files.getLastModifiedTime(
+            projectFilesystem.resolve(root.resolve(unchanged)),
+            LinkOption.NOFOLLOW_LINKS));
+    assertEquals(Optional.of("source1"), projectFilesystem.readFirstLine(root.resolve(unchanged)));
+    assertEquals(
+        Optional.of("source2"),
+        projectFilesystem.readFirstLine(root.resolve(retargeted)));
+    assertEquals(Optional.of("source3"), projectFilesystem.readFirstLine(root.resolve(added)));
+    assertFalse(projectFilesystem.exists(root.resolve("a/stray-file")));
+    assertFalse(projectFilesystem.exists(root.resolve("b")));
+  }
+
 }
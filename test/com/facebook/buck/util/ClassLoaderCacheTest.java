@@ -16,14 +16,19 @@
 
 package com.facebook.buck.util;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assume.assumeThat;
+import static org.junit.Assume.assumeTrue;
 
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
 
 import org.hamcrest.Matchers;
 import org.junit.Before;
@@ -35,6 +40,13 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class ClassLoaderCacheTest {
   @Rule
@@ -107,4 +119,110 @@ public class ClassLoaderCacheTest {
       assertThat(cl.getResource("baz"), Matchers.equalTo(bazFile.toURI().toURL()));
     }
   }
+
+  @Test
+  public void classLoadersAreReusedWhileTheContentsOfTheirJarsAreUnchanged() throws Exception {
+    Path jar = tempFolder.getRoot().toPath().resolve("lib.jar");
+    writeJar(jar, "first");
+    ImmutableList<URL> classPath = ImmutableList.of(jar.toUri().toURL());
+
+    try (ClassLoaderCache clc = new ClassLoaderCache()) {
+      ClassLoader parent = ClassLoader.getSystemClassLoader();
+      ClassLoader cl1 = clc.getClassLoaderForClassPath(parent, classPath);
+
+      // Rewriting the jar with the same contents, as a rebuild would, keeps the class loader.
+      writeJar(jar, "first");
+      Files.setLastModifiedTime(jar, FileTime.fromMillis(0));
+      assertSame(cl1, clc.getClassLoaderForClassPath(parent, classPath));
+
+      // Changing its contents gives a new one, while the old one stays usable until the last
+      // reference to the cache held by its users is released.
+      ClassLoaderCache reference = clc.addRef();
+      writeJar(jar, "second");
+      ClassLoader cl2 = clc.getClassLoaderForClassPath(parent, classPath);
+      assertNotSame(cl1, cl2);
+      assertNotNull(cl1.getResource("resource.txt"));
+      reference.close();
+      assertNull(cl1.getResource("resource.txt"));
+      assertNotNull(cl2.getResource("resource.txt"));
+    }
+  }
+
+  @Test
+  public void jarsRewrittenWithTheSameSizeAndModificationTimeAreHashedAgain() throws Exception {
+    Path jar = tempFolder.getRoot().toPath().resolve("lib.jar");
+    writeJar(jar, "first");
+    Files.setLastModifiedTime(jar, FileTime.fromMillis(0));
+    long size = Files.size(jar);
+    ImmutableList<URL> classPath = ImmutableList.of(jar.toUri().toURL());
+
+    try (ClassLoaderCache clc = new ClassLoaderCache()) {
+      ClassLoader parent = ClassLoader.getSystemClassLoader();
+      ClassLoader cl1 = clc.getClassLoaderForClassPath(parent, classPath);
+
+      // Jars fetched from the cache all have the same modification time, so rewriting one in
+      // place can leave its size, modification time and inode unchanged.
+      writeJar(jar, "other");
+      Files.setLastModifiedTime(jar, FileTime.fromMillis(0));
+      assumeTrue(Files.size(jar) == size);
+      assertNotSame(cl1, clc.getClassLoaderForClassPath(parent, classPath));
+    }
+  }
+
+  @Test
+  public void knownContentHashesAreUsedInsteadOfHashingJars() throws Exception {
+    Path jar = tempFolder.getRoot().toPath().resolve("lib.jar");
+    writeJar(jar, "first");
+    ImmutableList<URL> classPath = ImmutableList.of(jar.toUri().toURL());
+    AtomicReference<HashCode> knownHash = new AtomicReference<>(HashCode.fromInt(1));
+
+    try (ClassLoaderCache clc = new ClassLoaderCache(path -> Optional.of(knownHash.get()))) {
+      ClassLoader parent = ClassLoader.getSystemClassLoader();
+      ClassLoader cl1 = clc.getClassLoaderForClassPath(parent, classPath);
+
+      // The jar's contents changing goes unnoticed until its known hash does.
+      writeJar(jar, "second");
+      assertSame(cl1, clc.getClassLoaderForClassPath(parent, classPath));
+      knownHash.set(HashCode.fromInt(2));
+      assertNotSame(cl1, clc.getClassLoaderForClassPath(parent, classPath));
+    }
+  }
+
+  @Test
+  public void leastRecentlyUsedClassLoadersAreDroppedAndClosed() throws Exception {
+    new File(fooDir, "qux").createNewFile();
+    ClassLoader parent = ClassLoader.getSystemClassLoader();
+    ImmutableList<URL> fooClassPath = ImmutableList.of(fooDir.toURI().toURL());
+    ImmutableList<URL> barClassPath = ImmutableList.of(barDir.toURI().toURL());
+    ImmutableList<URL> bothClassPath =
+        ImmutableList.of(fooDir.toURI().toURL(), barDir.toURI().toURL());
+
+    try (ClassLoaderCache clc = new ClassLoaderCache(path -> Optional.empty(), 2)) {
+      ClassLoaderCache reference = clc.addRef();
+      ClassLoader barLoader = clc.getClassLoaderForClassPath(parent, barClassPath);
+      ClassLoader fooLoader = clc.getClassLoaderForClassPath(parent, fooClassPath);
+      assertSame(barLoader, clc.getClassLoaderForClassPath(parent, barClassPath));
+
+      // The class loader for foo is the least recently used, so it's dropped to make room.
+      clc.getClassLoaderForClassPath(parent, bothClassPath);
+      assertSame(barLoader, clc.getClassLoaderForClassPath(parent, barClassPath));
+      assertNotSame(fooLoader, clc.getClassLoaderForClassPath(parent, fooClassPath));
+
+      // Its users may still hold on to it until they release the cache.
+      assertNotNull(fooLoader.getResource("qux"));
+      reference.close();
+      assertNull(fooLoader.getResource("qux"));
+      assertNotNull(barLoader.getResource("baz"));
+    }
+  }
+
+  private static void writeJar(Path jar, String contents) throws IOException {
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+      ZipEntry entry = new ZipEntry("resource.txt");
+      entry.setTime(0);
+      out.putNextEntry(entry);
+      out.write(contents.getBytes(UTF_8));
+      out.closeEntry();
+    }
+  }
 }
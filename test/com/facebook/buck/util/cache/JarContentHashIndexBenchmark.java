@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.ArchiveMemberPath;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.zip.CustomJarOutputStream;
+import com.facebook.buck.zip.ZipOutputStreams;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * Measures computing the hashes of the classes a library used from the ABI jars of its deps, as
+ * is done for its dep file rule key, when the hashes of the jars themselves are already known.
+ */
+public class JarContentHashIndexBenchmark {
+  @Param({"300"})
+  private int jarCount = 300;
+
+  @Param({"200"})
+  private int classesPerJar = 200;
+
+  @Param({"20"})
+  private int usedClassesPerJar = 20;
+
+  private TemporaryPaths tmp = new TemporaryPaths();
+  private ProjectFilesystem filesystem;
+  private ImmutableList<Path> jars;
+  private ImmutableList<HashCode> jarHashes;
+
+  @Before
+  public void setUpTest() throws Exception {
+    jarCount = 10;
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    tmp.before();
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    ImmutableList.Builder<Path> jarsBuilder = ImmutableList.builder();
+    ImmutableList.Builder<HashCode> jarHashesBuilder = ImmutableList.builder();
+    for (int jar = 0; jar < jarCount; jar++) {
+      Path jarPath = Paths.get("lib" + jar + "-abi.jar");
+      try (CustomJarOutputStream out =
+               ZipOutputStreams.newJarOutputStream(filesystem.newFileOutputStream(jarPath))) {
+        out.setEntryHashingEnabled(true);
+        for (int i = 0; i < classesPerJar; i++) {
+          out.writeEntry(
+              getClassPath(jar, i),
+              new ByteArrayInputStream(getClassPath(jar, i).getBytes(StandardCharsets.UTF_8)));
+        }
+      }
+      jarsBuilder.add(jarPath);
+      jarHashesBuilder.add(filesystem.computeSha1(jarPath).asHashCode());
+    }
+    jars = jarsBuilder.build();
+    jarHashes = jarHashesBuilder.build();
+  }
+
+  @After
+  @AfterExperiment
+  public void tearDown() {
+    tmp.after();
+  }
+
+  @Test
+  public void hashUsedClassesCorrectness() throws Exception {
+    HashCode expected = Hashing.murmur3_128().hashString(
+        getClassPath(jarCount - 1, usedClassesPerJar - 1),
+        StandardCharsets.UTF_8);
+    assertEquals(expected, hashUsedClasses());
+  }
+
+  /**
+   * Each rep uses a new file hash cache, as happens after the deps have been rebuilt or fetched
+   * from the cache.
+   */
+  @Benchmark
+  public void hashUsedClassesWithWarmIndex(int reps) throws Exception {
+    for (int i = 0; i < reps; i++) {
+      hashUsedClasses();
+    }
+  }
+
+  @Benchmark
+  public void hashUsedClassesWithColdIndex(int reps) throws Exception {
+    for (int i = 0; i < reps; i++) {
+      JarContentHashIndex.getShared().invalidateAll();
+      hashUsedClasses();
+    }
+  }
+
+  private HashCode hashUsedClasses() throws IOException {
+    DefaultFileHashCache cache = new DefaultFileHashCache(filesystem, Optional.empty());
+    HashCode last = null;
+    for (int jar = 0; jar < jarCount; jar++) {
+      cache.set(jars.get(jar), jarHashes.get(jar));
+      for (int i = 0; i < usedClassesPerJar; i++) {
+        last = cache.get(ArchiveMemberPath.of(jars.get(jar), Paths.get(getClassPath(jar, i))));
+      }
+    }
+    return last;
+  }
+
+  private static String getClassPath(int jar, int index) {
+    return String.format("com/example/lib%d/C%d.class", jar, index);
+  }
+}
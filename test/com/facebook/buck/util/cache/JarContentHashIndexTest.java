@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.zip.CustomJarOutputStream;
+import com.facebook.buck.zip.ZipOutputStreams;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JarContentHashIndexTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void membersAreOnlyReadOnceForTheSameJarContents() throws IOException {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Path jarPath = Paths.get("lib.jar");
+    writeJar(filesystem, jarPath);
+    HashCode jarHash = filesystem.computeSha1(jarPath).asHashCode();
+    JarContentHashIndex index = new JarContentHashIndex(100);
+
+    ImmutableMap<Path, HashCodeAndFileType> first =
+        new JarContentHasher(filesystem, jarPath, jarHash, index).getContentHashes();
+
+    // A jar at a different path, but with the same contents, doesn't need to be read at all.
+    AtomicInteger loads = new AtomicInteger();
+    ImmutableMap<Path, HashCodeAndFileType> second = index.get(
+        jarHash,
+        () -> {
+          loads.incrementAndGet();
+          return ImmutableMap.of();
+        });
+
+    assertEquals(2, first.size());
+    assertEquals(first, second);
+    assertEquals(0, loads.get());
+  }
+
+  @Test
+  public void savedIndexCanBeLoadedAgain() throws IOException {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Path jarPath = Paths.get("lib.jar");
+    writeJar(filesystem, jarPath);
+    HashCode jarHash = filesystem.computeSha1(jarPath).asHashCode();
+    JarContentHashIndex index = new JarContentHashIndex(100);
+    ImmutableMap<Path, HashCodeAndFileType> expected =
+        new JarContentHasher(filesystem, jarPath, jarHash, index).getContentHashes();
+
+    Path savedIndex = tmp.getRoot().resolve("buck-out/.jar_content_hashes");
+    index.save(savedIndex);
+    JarContentHashIndex loadedIndex = new JarContentHashIndex(100);
+    loadedIndex.load(savedIndex);
+
+    assertEquals(1, loadedIndex.size());
+    assertEquals(
+        expected,
+        loadedIndex.get(
+            jarHash,
+            () -> {
+              throw new AssertionError("Jar should not be read again.");
+            }));
+  }
+
+  @Test
+  public void corruptIndexIsIgnored() throws IOException {
+    Path savedIndex = tmp.newFile("corrupt");
+    Files.write(savedIndex, "not an index".getBytes(StandardCharsets.UTF_8));
+    JarContentHashIndex index = new JarContentHashIndex(100);
+    index.load(savedIndex);
+    index.load(tmp.getRoot().resolve("missing"));
+    assertEquals(0, index.size());
+  }
+
+  private static void writeJar(ProjectFilesystem filesystem, Path jarPath) throws IOException {
+    try (CustomJarOutputStream jar =
+             ZipOutputStreams.newJarOutputStream(filesystem.newFileOutputStream(jarPath))) {
+      jar.setEntryHashingEnabled(true);
+      for (String name : new String[] {"A.class", "B.class"}) {
+        jar.writeEntry(name, new ByteArrayInputStream(name.getBytes(StandardCharsets.UTF_8)));
+      }
+    }
+  }
+}
@@ -19,13 +19,19 @@ package com.facebook.buck.util.concurrent;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 public class MoreFuturesTest {
 
   @Test
@@ -75,4 +81,39 @@ public class MoreFuturesTest {
     canceledFuture.cancel(/* mayInterruptIfRunning */ true);
     MoreFutures.getFailure(canceledFuture);
   }
+
+  @Test
+  public void inFlightFuturesAreConsumedInOrderOnceThereIsNoRoomForMore() throws IOException {
+    List<String> consumed = new ArrayList<>();
+    try (MoreFutures.InFlightFutures<String, IOException> inFlight =
+             MoreFutures.inFlight(2, IOException.class, consumed::add)) {
+      inFlight.add(Futures.immediateFuture("a"));
+      inFlight.add(Futures.immediateFuture("b"));
+      assertEquals(ImmutableList.of(), consumed);
+
+      inFlight.add(Futures.immediateFuture("c"));
+      assertEquals(ImmutableList.of("a"), consumed);
+
+      inFlight.finish();
+      assertEquals(ImmutableList.of("a", "b", "c"), consumed);
+    }
+  }
+
+  @Test
+  public void inFlightFuturesAreCancelledAfterAFailure() {
+    IOException failure = new IOException();
+    SettableFuture<String> unresolvedFuture = SettableFuture.create();
+    List<String> consumed = new ArrayList<>();
+    try (MoreFutures.InFlightFutures<String, IOException> inFlight =
+             MoreFutures.inFlight(2, IOException.class, consumed::add)) {
+      inFlight.add(Futures.immediateFailedFuture(failure));
+      inFlight.add(unresolvedFuture);
+      inFlight.finish();
+      fail("The failure should have been rethrown.");
+    } catch (IOException e) {
+      assertEquals(failure, e);
+    }
+    assertEquals(ImmutableList.of(), consumed);
+    assertTrue(unresolvedFuture.isCancelled());
+  }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+public class ParallelZipEntryWriterTest {
+
+  private static final int MAX_BUFFERED_ENTRY_SIZE = 64 * 1024;
+
+  private ListeningExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void outputIsIdenticalToWritingEntriesSerially() throws IOException {
+    Map<String, byte[]> contents = createContents();
+
+    ByteArrayOutputStream serial = new ByteArrayOutputStream();
+    try (CustomZipOutputStream out = ZipOutputStreams.newOutputStream(serial)) {
+      int index = 0;
+      for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+        out.putNextEntry(createEntry(entry.getKey(), entry.getValue(), index++));
+        out.write(entry.getValue());
+        out.closeEntry();
+      }
+    }
+
+    assertArrayEquals(serial.toByteArray(), writeZip(contents, 3));
+    assertArrayEquals(serial.toByteArray(), writeZip(contents, 1));
+  }
+
+  @Test(expected = IOException.class)
+  public void failuresToReadEntriesArePropagated() throws IOException {
+    try (CustomZipOutputStream out =
+             ZipOutputStreams.newOutputStream(new ByteArrayOutputStream());
+         ParallelZipEntryWriter writer = new ParallelZipEntryWriter(out, executor, 2)) {
+      writer.putEntry(
+          new CustomZipEntry("broken.txt"),
+          new InputStream() {
+            @Override
+            public int read() throws IOException {
+              throw new IOException("cannot read");
+            }
+          });
+      writer.finish();
+    }
+  }
+
+  private byte[] writeZip(Map<String, byte[]> contents, int parallelism) throws IOException {
+    ByteArrayOutputStream zip = new ByteArrayOutputStream();
+    try (CustomZipOutputStream out = ZipOutputStreams.newOutputStream(zip);
+         ParallelZipEntryWriter writer =
+             new ParallelZipEntryWriter(out, executor, parallelism, MAX_BUFFERED_ENTRY_SIZE)) {
+      int index = 0;
+      for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+        writer.putEntry(
+            createEntry(entry.getKey(), entry.getValue(), index++),
+            new ByteArrayInputStream(entry.getValue()));
+      }
+      writer.finish();
+    }
+    return zip.toByteArray();
+  }
+
+  // Entries of various sizes, some of which are too big to be deflated up front.
+  private static Map<String, byte[]> createContents() {
+    Random random = new Random(0);
+    Map<String, byte[]> contents = new LinkedHashMap<>();
+    contents.put("dir/", new byte[0]);
+    contents.put("dir/empty.txt", new byte[0]);
+    contents.put("dir/small.txt", "hello world".getBytes(UTF_8));
+    for (int i = 0; i < 20; i++) {
+      byte[] bytes = new byte[random.nextInt(4 * MAX_BUFFERED_ENTRY_SIZE)];
+      for (int j = 0; j < bytes.length; j++) {
+        // Limit the alphabet so that the data is compressible.
+        bytes[j] = (byte) ('a' + random.nextInt(16));
+      }
+      contents.put("dir/file" + i + ".txt", bytes);
+    }
+    return contents;
+  }
+
+  private static CustomZipEntry createEntry(String name, byte[] contents, int index) {
+    CustomZipEntry entry = new CustomZipEntry(name);
+    entry.setFakeTime();
+    // Cycle through stored entries and the various compression levels.
+    int level = name.endsWith("/") ? Deflater.NO_COMPRESSION : index % 4 * 3;
+    entry.setCompressionLevel(level);
+    if (level == Deflater.NO_COMPRESSION) {
+      entry.setSize(contents.length);
+      entry.setCompressedSize(contents.length);
+      entry.setCrc(Hashing.crc32().hashBytes(contents).padToLong());
+    }
+    return entry;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class RawZipEntryReaderTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private static final byte[] DATA = Strings.repeat("raw data ", 500).getBytes(UTF_8);
+
+  @Test
+  public void rawDataOfDeflatedEntriesInflatesToTheOriginalContents() throws IOException {
+    Path zipPath = tmp.getRoot().resolve("example.zip");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zipPath))) {
+      // A comment after the central directory shouldn't confuse the reader.
+      out.setComment("a comment");
+      addEntry(out, "first.txt");
+      addEntry(out, "second.txt");
+    }
+
+    try (ZipFile zip = new ZipFile(zipPath.toFile());
+         RawZipEntryReader reader = new RawZipEntryReader(zipPath)) {
+      for (String name : new String[] {"first.txt", "second.txt"}) {
+        assertTrue(reader.hasRawData(name));
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        reader.copyRawData(zip.getEntry(name), raw);
+        InflaterInputStream inflated = new InflaterInputStream(
+            new ByteArrayInputStream(raw.toByteArray()),
+            new Inflater(/* nowrap */ true));
+        assertArrayEquals(name, DATA, ByteStreams.toByteArray(inflated));
+      }
+      assertFalse(reader.hasRawData("missing.txt"));
+    }
+  }
+
+  @Test
+  public void offsetsAreRelativeToTheStartOfTheZipData() throws IOException {
+    // Zips may be prefixed with arbitrary data, as self-extracting archives are.
+    Path zipPath = tmp.getRoot().resolve("prefixed.zip");
+    try (OutputStream os = Files.newOutputStream(zipPath)) {
+      os.write(Strings.repeat("#!/bin/sh\n", 10).getBytes(UTF_8));
+      try (ZipOutputStream out = new ZipOutputStream(os)) {
+        addEntry(out, "entry.txt");
+      }
+    }
+
+    try (ZipFile zip = new ZipFile(zipPath.toFile());
+         RawZipEntryReader reader = new RawZipEntryReader(zipPath)) {
+      ByteArrayOutputStream raw = new ByteArrayOutputStream();
+      reader.copyRawData(zip.getEntry("entry.txt"), raw);
+      InflaterInputStream inflated = new InflaterInputStream(
+          new ByteArrayInputStream(raw.toByteArray()),
+          new Inflater(/* nowrap */ true));
+      assertArrayEquals(DATA, ByteStreams.toByteArray(inflated));
+    }
+  }
+
+  @Test
+  public void duplicateEntriesAreNotAvailable() throws IOException {
+    Path zipPath = tmp.getRoot().resolve("duplicates.zip");
+    try (CustomZipOutputStream out =
+             ZipOutputStreams.newOutputStream(
+                 zipPath,
+                 ZipOutputStreams.HandleDuplicates.APPEND_TO_ZIP)) {
+      addEntry(out, "dupe.txt");
+      addEntry(out, "dupe.txt");
+      addEntry(out, "unique.txt");
+    }
+
+    try (RawZipEntryReader reader = new RawZipEntryReader(zipPath)) {
+      assertFalse(reader.hasRawData("dupe.txt"));
+      assertTrue(reader.hasRawData("unique.txt"));
+    }
+  }
+
+  @Test
+  public void truncatedCentralDirectoriesAreRejected() throws IOException {
+    Path zipPath = tmp.getRoot().resolve("example.zip");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zipPath))) {
+      addEntry(out, "first.txt");
+      addEntry(out, "second.txt");
+    }
+    byte[] contents = Files.readAllBytes(zipPath);
+    int eocd = contents.length - ZipEntry.ENDHDR;
+    ByteBuffer end = ByteBuffer.wrap(contents, eocd, ZipEntry.ENDHDR).slice()
+        .order(ByteOrder.LITTLE_ENDIAN);
+    int cdSize = end.getInt(ZipEntry.ENDSIZ);
+
+    // Drop the end of the central directory, but still claim it has both entries.
+    Path truncatedPath = tmp.getRoot().resolve("truncated.zip");
+    for (int cut = 1; cut < cdSize; cut++) {
+      end.putInt(ZipEntry.ENDSIZ, cdSize - cut);
+      try (OutputStream out = Files.newOutputStream(truncatedPath)) {
+        out.write(contents, 0, eocd - cut);
+        out.write(contents, eocd, ZipEntry.ENDHDR);
+      }
+      try (RawZipEntryReader reader = new RawZipEntryReader(truncatedPath)) {
+        fail("Read a central directory truncated by " + cut + " bytes");
+      } catch (IOException e) {
+        // Callers fall back to reading the zip with ZipFile.
+      }
+    }
+  }
+
+  private static void addEntry(ZipOutputStream out, String name) throws IOException {
+    out.putNextEntry(new ZipEntry(name));
+    out.write(DATA);
+    out.closeEntry();
+  }
+
+  private static void addEntry(CustomZipOutputStream out, String name) throws IOException {
+    out.putNextEntry(new ZipEntry(name));
+    out.write(DATA);
+    out.closeEntry();
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.zip;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -27,7 +28,11 @@ import com.facebook.buck.testutil.Zip;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
@@ -41,7 +46,11 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class UnzipTest {
   private static final byte[] DUMMY_FILE_CONTENTS = "BUCK Unzip Test String!\nNihao\n".getBytes();
@@ -231,4 +240,52 @@ public class UnzipTest {
     assertTrue(Files.exists(extractFolder.toAbsolutePath().resolve("foo")));
     assertTrue(Files.exists(extractFolder.toAbsolutePath().resolve("foo/bar")));
   }
+
+  @Test
+  public void testExtractZipFileInParallel() throws IOException {
+    Map<String, byte[]> contents = new TreeMap<>();
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+      for (int i = 0; i < 50; i++) {
+        String name = String.format("dir%d/file%d.txt", i % 5, i);
+        byte[] bytes = Strings.repeat(name, 100 * i).getBytes(Charsets.UTF_8);
+        ZipEntry entry = new ZipEntry(name);
+        if (i % 2 == 0) {
+          entry.setMethod(ZipEntry.STORED);
+          entry.setSize(bytes.length);
+          entry.setCrc(Hashing.crc32().hashBytes(bytes).padToLong());
+        }
+        zip.putNextEntry(entry);
+        zip.write(bytes);
+        zip.closeEntry();
+        contents.put(name, bytes);
+      }
+    }
+
+    // Existing files are overwritten, even when they're longer than the new contents.
+    Path extractFolder = tmpFolder.newFolder();
+    Files.createDirectories(extractFolder.resolve("dir0"));
+    Files.write(extractFolder.resolve("dir0/file0.txt"), new byte[100]);
+
+    ListeningExecutorService executor =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+    ImmutableList<Path> result;
+    try {
+      result = Unzip.extractZipFile(
+          zipFile.toAbsolutePath(),
+          extractFolder.toAbsolutePath(),
+          Unzip.ExistingFileMode.OVERWRITE,
+          executor,
+          4);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(contents.size(), result.size());
+    for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+      assertArrayEquals(
+          entry.getKey(),
+          entry.getValue(),
+          Files.readAllBytes(extractFolder.resolve(entry.getKey())));
+    }
+  }
 }
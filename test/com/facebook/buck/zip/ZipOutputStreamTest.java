@@ -35,6 +35,7 @@ import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.io.MorePosixFilePermissions;
 import com.facebook.buck.testutil.Zip;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
@@ -62,6 +63,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
@@ -226,6 +228,46 @@ public class ZipOutputStreamTest {
       return time;
     }
 
+    @Test
+    public void precompressedEntriesAreWrittenVerbatim() throws IOException {
+      byte[] input = Strings.repeat("cheese", 1000).getBytes(UTF_8);
+      Deflater deflater = new Deflater(BEST_COMPRESSION, /* nowrap */ true);
+      deflater.setInput(input);
+      deflater.finish();
+      byte[] buffer = new byte[input.length];
+      byte[] compressed = Arrays.copyOf(buffer, deflater.deflate(buffer));
+      deflater.end();
+
+      try (CustomZipOutputStream out = ZipOutputStreams.newOutputStream(output, mode)) {
+        CustomZipEntry entry = new CustomZipEntry("precompressed.txt");
+        entry.setCrc(calcCrc(input));
+        entry.setSize(input.length);
+        entry.setCompressedSize(compressed.length);
+        entry.setPrecompressed();
+        out.putNextEntry(entry);
+        out.write(compressed);
+      }
+
+      try (ZipInputStream in = new ZipInputStream(Files.newInputStream(output))) {
+        ZipEntry entry = in.getNextEntry();
+        assertEquals("precompressed.txt", entry.getName());
+        assertArrayEquals(input, ByteStreams.toByteArray(in));
+        assertNull(in.getNextEntry());
+      }
+
+      try (ZipFile zip = new ZipFile(output.toFile())) {
+        ZipArchiveEntry entry = zip.getEntry("precompressed.txt");
+        assertEquals(compressed.length, entry.getCompressedSize());
+        assertEquals(calcCrc(input), entry.getCrc());
+      }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void precompressedEntriesMustHaveTheirSizesSet() {
+      CustomZipEntry entry = new CustomZipEntry("precompressed.txt");
+      entry.setPrecompressed();
+    }
+
     @Test
     public void compressionCanBeSetOnAPerFileBasisAndIsHonoured() throws IOException {
       // Create some input that can be compressed.